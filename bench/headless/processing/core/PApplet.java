@@ -0,0 +1,36 @@
+package processing.core;
+
+/** Math-only stand-in for processing's PApplet, used by bench/run.sh with HEADLESS=1 on machines without a display, where the static initializer of the real PApplet fails.
+ *  Provides the static helpers the library calls, nothing else. Never ship it with the library. */
+public class PApplet implements PConstants {
+
+	public static final float sqrt (float _a) { return (float)Math.sqrt(_a); }
+	public static final float radians (float _a) { return _a*DEG_TO_RAD; }
+	public static final float degrees (float _a) { return _a*RAD_TO_DEG; }
+	public static final float sin (float _a) { return (float)Math.sin(_a); }
+	public static final float cos (float _a) { return (float)Math.cos(_a); }
+	public static final float tan (float _a) { return (float)Math.tan(_a); }
+	public static final float acos (float _a) { return (float)Math.acos(_a); }
+	public static final float asin (float _a) { return (float)Math.asin(_a); }
+	public static final float atan2 (float _a, float _b) { return (float)Math.atan2(_a,_b); }
+	public static final float exp (float _a) { return (float)Math.exp(_a); }
+	public static final float log (float _a) { return (float)Math.log(_a); }
+	public static final float pow (float _a, float _b) { return (float)Math.pow(_a,_b); }
+	public static final float abs (float _a) { return Math.abs(_a); }
+	public static final int abs (int _a) { return Math.abs(_a); }
+	public static final float max (float _a, float _b) { return Math.max(_a,_b); }
+	public static final int max (int _a, int _b) { return Math.max(_a,_b); }
+	public static final float min (float _a, float _b) { return Math.min(_a,_b); }
+	public static final int min (int _a, int _b) { return Math.min(_a,_b); }
+	public static final float constrain (float _a, float _low, float _high) { return _a < _low ? _low : (_a > _high ? _high : _a); }
+	public static final int constrain (int _a, int _low, int _high) { return _a < _low ? _low : (_a > _high ? _high : _a); }
+	public static final float sq (float _a) { return _a*_a; }
+	public static final float dist (float _x1, float _y1, float _z1, float _x2, float _y2, float _z2) { return (float)Math.sqrt(sq(_x2-_x1)+sq(_y2-_y1)+sq(_z2-_z1)); }
+	public static final float lerp (float _start, float _stop, float _amount) { return _start+(_stop-_start)*_amount; }
+	public static final float map (float _value, float _start1, float _stop1, float _start2, float _stop2) { return _start2+(_stop2-_start2)*((_value-_start1)/(_stop1-_start1)); }
+	public static final int floor (float _a) { return (int)Math.floor(_a); }
+	public static final int ceil (float _a) { return (int)Math.ceil(_a); }
+	public static final int round (float _a) { return Math.round(_a); }
+	public static void println (String _what) { System.out.println(_what); }
+	public static void println (Object _what) { System.out.println(_what); }
+}
@@ -0,0 +1,19 @@
+#!/bin/sh
+# Compiles the library and the checks and benchmarks of bench/, then runs one of them, e.g.
+#   bench/run.sh AllocationCheck
+# Checks exit with status 1 if they fail. Run from any directory.
+# processing's PApplet needs a display. Without one, set HEADLESS=1 to put the math-only shim of bench/headless in front of core.jar.
+cd "$(dirname "$0")/.." || exit 1
+CP=lib/base/core/core.jar:lib/user/SimpleOpenNI/SimpleOpenNI.jar
+OUT=bench/classes
+if [ -n "$HEADLESS" ]; then
+	CP=$OUT/headless:$CP
+	mkdir -p $OUT/headless
+	javac -d $OUT/headless bench/headless/processing/core/PApplet.java -cp $CP || exit 1
+fi
+mkdir -p $OUT/classes
+javac -cp $CP -d $OUT/classes src/therapeuticskeleton/*.java bench/therapeuticskeleton/*.java || exit 1
+[ -z "$1" ] && exit 0
+CLASS=$1
+shift
+exec java -cp $OUT/classes:$CP therapeuticskeleton.$CLASS "$@"
@@ -0,0 +1,100 @@
+package therapeuticskeleton;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+
+/** Checks that Skeleton.update does not allocate in steady state. A skeleton with all features switched on is updated from a SyntheticJointSource:
+ *  mirror therapy, validator, filter, predictor, recording, frame publishing with a reader, posture and gesture evaluation with a posture library and an event listener,
+ *  the event history, a gesture recognizer, a repetition counter and statistics without log file. Derived quantities are calculated in every update cycle.
+ *  After a warm-up, the bytes allocated by the updating thread are measured with com.sun.management.ThreadMXBean. Fails if a single byte was allocated per update. <br>
+ *  The only allowed allocation is the file check of the posture library, at most once per PostureLibrary.RELOAD_INTERVAL: java.io.File allocates to pass the path to the file system. */
+public class AllocationCheck implements SkeletonEventListener {
+
+	private static final int WARM_UP = 20000;
+	private static final int MEASURED = 10000;
+	// bytes java.io.File allocates for lastModified and length, per file check
+	private static final long FILE_CHECK_BYTES = 256;
+
+	private int events = 0;
+
+	public void postureEntered (SkeletonFrame _frame, short _posture, int _frameCount) { events++; }
+	public void postureHeld (SkeletonFrame _frame, short _posture, int _frameCount, float _heldTime) { events++; }
+	public void postureExited (SkeletonFrame _frame, short _posture, int _frameCount, float _heldTime) { events++; }
+	public void gestureRecognized (SkeletonFrame _frame, short _gesture, int _frameCount) { events++; }
+
+	public static void main (String[] _args) throws Exception {
+		File postureFile = File.createTempFile("postures",".txt");
+		File sessionFile = File.createTempFile("session",".tskl");
+		postureFile.deleteOnExit();
+		sessionFile.deleteOnExit();
+		PrintWriter writer = new PrintWriter(postureFile);
+		writer.println("posture ARMS_RAISED");
+		writer.println("angle LEFT_UPPER_ARM Y 0 60");
+		writer.println("angle RIGHT_UPPER_ARM Y 0 60");
+		writer.println("posture HANDS_TOGETHER");
+		writer.println("distance LEFT_HAND RIGHT_HAND 0 100 exact");
+		writer.close();
+
+		SyntheticJointSource source = new SyntheticJointSource(30f);
+		Skeleton skeleton = new Skeleton(source,1,true);
+		skeleton.setMirrorTherapy(Skeleton.MIRROR_THERAPY_LEFT);
+		skeleton.setLazyEvaluation(false);
+		skeleton.setJointValidator(new JointValidator(JointValidator.HOLD));
+		skeleton.setJointFilter(new JointFilter(JointFilter.ONE_EURO));
+		skeleton.setJointPredictor(new JointPredictor(0.05f));
+		SkeletonRecorder recorder = new SkeletonRecorder(sessionFile.getPath());
+		skeleton.startRecording(recorder);
+		skeleton.setPublishFrames(true);
+		skeleton.setEvaluatePostureAndGesture(true);
+		// wide tolerance, so the synthetic movement passes postures and events are delivered
+		skeleton.setPostureTolerance(1f);
+		skeleton.setPostureLibrary(new PostureLibrary(postureFile.getPath()));
+		AllocationCheck listener = new AllocationCheck();
+		skeleton.addEventListener(listener);
+		skeleton.setEvaluateStatistics(true,null);
+
+		// a template of one period of the synthetic movement, 4 seconds
+		GestureTemplate template = new GestureTemplate("abduction",Skeleton.JOINT_MASK_ARMS);
+		int frame = 0;
+		for (; frame<120; frame++) {
+			source.nextFrame();
+			skeleton.update(frame,30f);
+			template.addFrame(skeleton);
+		}
+		GestureRecognizer recognizer = new GestureRecognizer();
+		recognizer.addTemplate(template,0.5f);
+		skeleton.setGestureRecognizer(recognizer);
+		RepetitionCounter counter = new RepetitionCounter();
+		counter.addExercise(RepetitionCounter.ABDUCTION_LEFT_SHOULDER,(float)Math.toRadians(15));
+		counter.addExercise(RepetitionCounter.ANGLE_RIGHT_ELBOW,(float)Math.toRadians(10));
+		skeleton.setRepetitionCounter(counter);
+
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+		long thread = Thread.currentThread().getId();
+		for (int end=frame+WARM_UP; frame<end; frame++) update(source,skeleton,frame);
+		long start = System.currentTimeMillis();
+		long before = threads.getThreadAllocatedBytes(thread);
+		for (int end=frame+MEASURED; frame<end; frame++) update(source,skeleton,frame);
+		long allocated = threads.getThreadAllocatedBytes(thread)-before;
+		long fileChecks = (System.currentTimeMillis()-start)/PostureLibrary.RELOAD_INTERVAL+1;
+
+		skeleton.stopRecording();
+		recorder.close();
+		System.out.println("events: "+listener.events+", repetitions: "+counter.getRepetitionCount(0)+", last recorded gesture: "+recognizer.getLastGesture());
+		System.out.println("allocated: "+allocated+" bytes in "+MEASURED+" updates, at most "+fileChecks+" file checks of the posture library");
+		if (allocated > fileChecks*FILE_CHECK_BYTES) {
+			System.out.println("FAILED: Skeleton.update allocates in steady state");
+			System.exit(1);
+		}
+		System.out.println("passed");
+	}
+
+	private static void update (SyntheticJointSource _source, Skeleton _skeleton, int _frame) {
+		_source.nextFrame();
+		_skeleton.update(_frame,30f);
+		// a reader of the published frames
+		SkeletonFrame published = _skeleton.acquireFrame();
+		if (published != null) published.release();
+	}
+}
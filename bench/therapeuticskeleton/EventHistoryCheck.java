@@ -0,0 +1,153 @@
+package therapeuticskeleton;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+/** Checks SkeletonEventHistory against a brute-force history that keeps all events in a list. Random posture and gesture events are added in update cycles
+ *  whose capture times advance by 0 to 3 frames, with several events in one cycle and now and then a cycle that goes back in time, as after a rewound replay. <br>
+ *  The ring buffer wraps around many times for capacities 1, 7 and 256. After every update cycle the events kept must be the newest ones of the list, with the same times,
+ *  and indexOf, countPostures and countGestures must give the results of scanning the kept events, for random ranges and ranges starting or ending at an event.
+ *  Counts and posture times since the last clear must match as well, also after the history was cleared. Fails with exit status 1. */
+public class EventHistoryCheck {
+
+	private static final int[] CAPACITIES = {1,7,256};
+	private static final int CYCLES = 4000;
+	private static final int CLEAR_CYCLE = 3000;
+	private static final long FRAME_NANOS = 1000000000L/30;
+	private static final int RANGES_PER_CYCLE = 20;
+
+	private static boolean failed = false;
+
+	public static void main (String[] _args) {
+		for (int capacity : CAPACITIES) check(capacity);
+		if (failed) System.exit(1);
+		System.out.println("passed");
+	}
+
+	private static void check (int _capacity) {
+		Random random = new Random(_capacity);
+		SkeletonEventHistory history = new SkeletonEventHistory(_capacity);
+		// the brute-force history: all events since the last clear
+		ArrayList<long[]> events = new ArrayList<long[]>();
+		int[] postureCount = new int[SkeletonPosture.NUMBER_OF_POSES];
+		int[] gestureCount = new int[SkeletonGesture.NUMBER_OF_GESTURES];
+		long[] postureTime = new long[SkeletonPosture.NUMBER_OF_POSES];
+		short activePosture = SkeletonPosture.NO_POSE;
+		long activeSince = 0L;
+		long lastTime = Long.MIN_VALUE;
+		long now = 0L;
+		int added = 0, ranges = 0, wrongEvents = 0, wrongIndices = 0, wrongCounts = 0, wrongTotals = 0;
+
+		for (int cycle=0; cycle<CYCLES; cycle++) {
+			now += random.nextInt(10) == 0 ? -random.nextInt(5)*FRAME_NANOS : random.nextInt(4)*FRAME_NANOS;
+			history.update(now);
+			if (cycle == CLEAR_CYCLE) {
+				history.clear();
+				events.clear();
+				postureCount = new int[SkeletonPosture.NUMBER_OF_POSES];
+				gestureCount = new int[SkeletonGesture.NUMBER_OF_GESTURES];
+				postureTime = new long[SkeletonPosture.NUMBER_OF_POSES];
+				activeSince = now;
+				lastTime = Long.MIN_VALUE;
+			}
+			int numberOfEvents = random.nextInt(4);
+			for (int e=0; e<numberOfEvents; e++) {
+				// events of an earlier capture time get the time of the last event
+				long time = Math.max(now,lastTime);
+				long held = 0L;
+				short type, code;
+				if (random.nextBoolean()) {
+					type = SkeletonEventHistory.GESTURE_RECOGNIZED;
+					code = (short)(1+random.nextInt(SkeletonGesture.NUMBER_OF_GESTURES-1));
+					gestureCount[code]++;
+				} else if (activePosture != SkeletonPosture.NO_POSE) {
+					type = SkeletonEventHistory.POSTURE_EXITED;
+					code = activePosture;
+					held = time-activeSince;
+					postureTime[code] += held;
+					activePosture = SkeletonPosture.NO_POSE;
+				} else {
+					type = SkeletonEventHistory.POSTURE_ENTERED;
+					code = (short)(1+random.nextInt(SkeletonPosture.NUMBER_OF_POSES-1));
+					postureCount[code]++;
+					activePosture = code;
+					activeSince = time;
+				}
+				history.add(type,code);
+				events.add(new long[] {type,code,time,held});
+				lastTime = time;
+				added++;
+			}
+
+			// the kept events are the newest ones
+			int size = Math.min(events.size(),_capacity);
+			int offset = events.size()-size;
+			if (history.getSize() != size) wrongEvents++;
+			for (int i=0; i<size; i++) {
+				long[] event = events.get(offset+i);
+				if (history.getType(i) != event[0] || history.getCode(i) != event[1] || history.getTimestamp(i) != event[2] || history.getDuration(i) != event[3]) wrongEvents++;
+			}
+			// ranges from random times and from the times of kept events, [_from,_to) may be empty or reversed
+			for (int r=0; r<RANGES_PER_CYCLE; r++) {
+				long from = randomTime(random,history,size,now);
+				long to = random.nextInt(4) == 0 ? from : randomTime(random,history,size,now);
+				ranges++;
+				if (history.indexOf(from) != indexOf(events,offset,from)) wrongIndices++;
+				for (short p=SkeletonPosture.NO_POSE; p<=SkeletonPosture.NUMBER_OF_POSES; p++) {
+					int expected = p > SkeletonPosture.NO_POSE && p < SkeletonPosture.NUMBER_OF_POSES ? count(events,offset,SkeletonEventHistory.POSTURE_ENTERED,p,from,to) : 0;
+					if (history.countPostures(p,from,to) != expected) wrongCounts++;
+				}
+				for (short g=SkeletonGesture.NO_GESTURE; g<=SkeletonGesture.NUMBER_OF_GESTURES; g++) {
+					int expected = g > SkeletonGesture.NO_GESTURE && g < SkeletonGesture.NUMBER_OF_GESTURES ? count(events,offset,SkeletonEventHistory.GESTURE_RECOGNIZED,g,from,to) : 0;
+					if (history.countGestures(g,from,to) != expected) wrongCounts++;
+				}
+			}
+			// totals since the last clear, a posture held right now counts up to the current cycle
+			for (short p=1; p<SkeletonPosture.NUMBER_OF_POSES; p++) {
+				long time = postureTime[p]+(p == activePosture && now > activeSince ? now-activeSince : 0L);
+				if (history.getPostureCount(p) != postureCount[p] || history.getPostureTime(p) != time) wrongTotals++;
+			}
+			for (short g=1; g<SkeletonGesture.NUMBER_OF_GESTURES; g++) {
+				if (history.getGestureCount(g) != gestureCount[g]) wrongTotals++;
+			}
+		}
+
+		System.out.println(String.format("capacity %d: %d events added, %d kept, %d ranges counted",_capacity,added,history.getSize(),ranges));
+		check(wrongEvents == 0,"capacity "+_capacity+": "+wrongEvents+" kept events differ from the newest events");
+		check(wrongIndices == 0,"capacity "+_capacity+": "+wrongIndices+" wrong indices");
+		check(wrongCounts == 0,"capacity "+_capacity+": "+wrongCounts+" wrong counts of postures and gestures in a range");
+		check(wrongTotals == 0,"capacity "+_capacity+": "+wrongTotals+" wrong counts or posture times since the last clear");
+		check(added > 2*_capacity,"capacity "+_capacity+": the ring did not wrap around");
+	}
+
+	// a time before, between or after the kept events, or the time of a kept event
+	private static long randomTime (Random _random, SkeletonEventHistory _history, int _size, long _now) {
+		if (_size > 0 && _random.nextBoolean()) {
+			long time = _history.getTimestamp(_random.nextInt(_size));
+			return time+(_random.nextInt(3)-1);
+		}
+		return _now+(_random.nextInt(2*_history.getCapacity()+40)-_history.getCapacity()-20)*FRAME_NANOS;
+	}
+	// the first kept event at or after the time, scanning all kept events
+	private static int indexOf (ArrayList<long[]> _events, int _offset, long _time) {
+		for (int i=_offset; i<_events.size(); i++) {
+			if (_events.get(i)[2] >= _time) return i-_offset;
+		}
+		return _events.size()-_offset;
+	}
+	// kept events of the type and code in [_from,_to)
+	private static int count (ArrayList<long[]> _events, int _offset, short _type, short _code, long _from, long _to) {
+		int count = 0;
+		for (int i=_offset; i<_events.size(); i++) {
+			long[] event = _events.get(i);
+			if (event[0] == _type && event[1] == _code && event[2] >= _from && event[2] < _to) count++;
+		}
+		return count;
+	}
+
+	private static void check (boolean _condition, String _message) {
+		if (_condition) return;
+		System.out.println("FAILED: "+_message);
+		failed = true;
+	}
+}
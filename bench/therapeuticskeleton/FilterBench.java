@@ -0,0 +1,70 @@
+package therapeuticskeleton;
+
+import java.lang.management.ManagementFactory;
+
+/** Measures JointFilter on a SyntheticJointSource with 8 mm gaussian noise, for each filter type. A second skeleton reads the same frames without noise.
+ *  Prints the RMS error of the joint positions against the clean skeleton, the path of the left hand relative to the clean path, the time per frame of the filter
+ *  and the bytes it allocates. The filters must reduce the error and must not allocate. Fails with exit status 1. <br>
+ *  bench/run.sh FilterBench [frames], default 20000 frames, the first 100 are not measured. */
+public class FilterBench {
+
+	private static final float NOISE = 8f;
+	private static final int SETTLE_FRAMES = 100;
+	private static final String[] NAMES = {"none","One Euro","Kalman"};
+
+	public static void main (String[] _args) {
+		int frames = _args.length > 0 ? Integer.parseInt(_args[0]) : 20000;
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+		long thread = Thread.currentThread().getId();
+		float[] filtered = new float[Skeleton.NUMBER_OF_JOINTS*3];
+		float[] clean = new float[Skeleton.NUMBER_OF_JOINTS*3];
+		boolean failed = false;
+		double unfilteredError = 0;
+		for (short type=JointFilter.NONE; type<=JointFilter.KALMAN; type++) {
+			SyntheticJointSource source = new SyntheticJointSource(30f);
+			Skeleton noisySkeleton = new Skeleton(new NoisyJointSource(source,NOISE,1),1,true);
+			Skeleton cleanSkeleton = new Skeleton(source,1,true);
+			noisySkeleton.setEvaluateStatistics(false,null);
+			cleanSkeleton.setEvaluateStatistics(false,null);
+			JointFilter filter = new JointFilter(type);
+			noisySkeleton.setJointFilter(filter);
+			double squaredError = 0, path = 0, cleanPath = 0;
+			int n = 0;
+			for (int f=0; f<frames; f++) {
+				source.nextFrame();
+				noisySkeleton.update(f,30f);
+				cleanSkeleton.update(f,30f);
+				if (f == SETTLE_FRAMES) filter.resetMeasurement();
+				if (f < SETTLE_FRAMES) continue;
+				noisySkeleton.copyJoints(filtered,0);
+				cleanSkeleton.copyJoints(clean,0);
+				for (int i=0; i<filtered.length; i++) squaredError += (filtered[i]-clean[i])*(filtered[i]-clean[i]);
+				n += filtered.length;
+				path += noisySkeleton.getJointDelta(Skeleton.LEFT_HAND);
+				cleanPath += cleanSkeleton.getJointDelta(Skeleton.LEFT_HAND);
+			}
+			double error = Math.sqrt(squaredError/n);
+			if (type == JointFilter.NONE) unfilteredError = error;
+			float filterMicros = filter.getAverageFilterNanos()/1000f;
+
+			// the filter alone, on the positions of the last frame
+			noisySkeleton.copyJoints(filtered,0);
+			long before = threads.getThreadAllocatedBytes(thread);
+			for (int f=0; f<frames; f++) filter.filter(filtered,Skeleton.JOINT_MASK_ALL,1f/30f);
+			long allocated = threads.getThreadAllocatedBytes(thread)-before;
+
+			System.out.println(String.format("%-8s RMS error %.2f mm, left hand path %.2f times the clean path, %.2f us per frame, %d bytes allocated in %d frames",
+					NAMES[type],error,path/cleanPath,filterMicros,allocated,frames));
+			if (allocated > 0) {
+				System.out.println("FAILED: "+NAMES[type]+" filter allocates");
+				failed = true;
+			}
+			if (type != JointFilter.NONE && error >= unfilteredError) {
+				System.out.println("FAILED: "+NAMES[type]+" filter does not reduce the error");
+				failed = true;
+			}
+		}
+		if (failed) System.exit(1);
+		System.out.println("passed");
+	}
+}
@@ -0,0 +1,128 @@
+package therapeuticskeleton;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/** Stress test of the reference counted frame pool of Skeleton. The main thread updates a skeleton from a SequenceJointSource with frame publishing switched on,
+ *  while reader threads acquire the published frames, hold up to HELD frames at once for a random time, retain some of them a second time and release them again. <br>
+ *  A held frame must never be refilled: its frame count and joints must be the same when it is released as when it was acquired, and they must belong to one frame.
+ *  Acquired frames must not get older for a reader, retaining a held frame must succeed, and the pool must not grow beyond the frames the readers can hold,
+ *  plus the published frame and the one being filled. Fails with exit status 1. */
+public class FramePoolCheck {
+
+	private static final int UPDATES = 200000;
+	private static final int READERS = 4;
+	private static final int HELD = 3;
+	private static final int MAX_POOL_SIZE = READERS*HELD+2;
+	private static final int MAX_HOLD_NANOS = 200000;
+
+	private static volatile boolean running = true;
+	private static boolean failed = false;
+
+	public static void main (String[] _args) throws Exception {
+		SequenceJointSource source = new SequenceJointSource();
+		Skeleton skeleton = new Skeleton(source,1,true);
+		skeleton.setPublishFrames(true);
+		Reader[] readers = new Reader[READERS];
+		Thread[] threads = new Thread[READERS];
+		for (int r=0; r<READERS; r++) {
+			readers[r] = new Reader(skeleton,r);
+			threads[r] = new Thread(readers[r],"FramePoolCheck-reader-"+r);
+			threads[r].start();
+		}
+		int maxPoolSize = 0;
+		for (int sequence=0; sequence<UPDATES; sequence++) {
+			source.setSequence(sequence);
+			skeleton.update(sequence,30f);
+			maxPoolSize = Math.max(maxPoolSize,skeleton.getFramePoolSize());
+		}
+		running = false;
+		for (int r=0; r<READERS; r++) threads[r].join();
+
+		long acquired = 0, refilled = 0, torn = 0, older = 0, failedRetains = 0;
+		for (int r=0; r<READERS; r++) {
+			acquired += readers[r].acquired.get();
+			refilled += readers[r].refilled.get();
+			torn += readers[r].torn.get();
+			older += readers[r].older.get();
+			failedRetains += readers[r].failedRetains.get();
+		}
+		System.out.println(String.format("%d updates, %d frames acquired by %d readers, pool size %d, at most %d allowed",
+				UPDATES,acquired,READERS,maxPoolSize,MAX_POOL_SIZE));
+		check(refilled == 0,refilled+" held frames were refilled");
+		check(torn == 0,torn+" frames mixed joints of different frames");
+		check(older == 0,older+" acquired frames were older than a frame acquired before");
+		check(failedRetains == 0,failedRetains+" retains of held frames failed");
+		check(maxPoolSize <= MAX_POOL_SIZE,"the pool grew beyond the frames the readers can hold");
+		check(acquired > 0,"no frames acquired");
+		if (failed) System.exit(1);
+		System.out.println("passed");
+	}
+
+	// acquires frames and holds up to HELD of them, the oldest is released first
+	private static class Reader implements Runnable {
+		private Skeleton skeleton;
+		private Random random;
+		private SkeletonFrame[] held = new SkeletonFrame[HELD];
+		private boolean[] retained = new boolean[HELD];
+		private int[] heldFrameCount = new int[HELD];
+		private float[][] heldJoints = new float[HELD][Skeleton.NUMBER_OF_JOINTS*3];
+		private float[] joints = new float[Skeleton.NUMBER_OF_JOINTS*3];
+		private int next = 0;
+		private int last = -1;
+		private AtomicLong acquired = new AtomicLong();
+		private AtomicLong refilled = new AtomicLong();
+		private AtomicLong torn = new AtomicLong();
+		private AtomicLong older = new AtomicLong();
+		private AtomicLong failedRetains = new AtomicLong();
+
+		private Reader (Skeleton _skeleton, long _seed) {
+			skeleton = _skeleton;
+			random = new Random(_seed);
+		}
+
+		public void run () {
+			while (running) {
+				release(next);
+				SkeletonFrame frame = skeleton.acquireFrame();
+				if (frame == null) continue;
+				acquired.incrementAndGet();
+				int frameCount = frame.getFrameCount();
+				if (frameCount < last) older.incrementAndGet();
+				last = frameCount;
+				frame.copyJoints(heldJoints[next],0);
+				if (!SequenceJointSource.matches(frameCount,heldJoints[next],null)) torn.incrementAndGet();
+				held[next] = frame;
+				heldFrameCount[next] = frameCount;
+				// hand some frames to a second consumer
+				retained[next] = random.nextInt(4) == 0;
+				if (retained[next] && !frame.retain()) {
+					failedRetains.incrementAndGet();
+					retained[next] = false;
+				}
+				next = (next+1)%HELD;
+				// hold the frames for a while, the skeleton keeps publishing meanwhile
+				if (random.nextInt(4) == 0) LockSupport.parkNanos(random.nextInt(MAX_HOLD_NANOS));
+			}
+			for (int i=0; i<HELD; i++) release(i);
+		}
+
+		private void release (int _index) {
+			SkeletonFrame frame = held[_index];
+			if (frame == null) return;
+			frame.copyJoints(joints,0);
+			if (frame.getFrameCount() != heldFrameCount[_index] || !Arrays.equals(joints,heldJoints[_index])) refilled.incrementAndGet();
+			if (retained[_index]) frame.release();
+			frame.release();
+			held[_index] = null;
+		}
+	}
+
+	private static void check (boolean _condition, String _message) {
+		if (_condition) return;
+		System.out.println("FAILED: "+_message);
+		failed = true;
+	}
+}
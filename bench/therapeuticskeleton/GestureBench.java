@@ -0,0 +1,219 @@
+package therapeuticskeleton;
+
+import java.util.Random;
+
+import processing.core.*;
+
+/** Compares GestureRecognizer with full subsequence DTW. Templates are random arm movements of 2 seconds, recorded from a PoseJointSource.
+ *  The live movement wanders randomly and performs a template now and then, at 0.8 to 1.2 times its speed with 1 degree of jitter. <br>
+ *  The reference matches every template in every update against the last frames with the whole DTW matrix, no warping band and no early abandoning.
+ *  Both must find every performed gesture and nothing else. Prints the time per update of both, of a recognizer without warping band and abandoning,
+ *  and the share of cells the recognizer computed. Fails with exit status 1. <br>
+ *  bench/run.sh GestureBench [templates] [gestures], default 48 templates and 20 performed gestures. The reference takes about 10 ms per update. */
+public class GestureBench {
+
+	private static final int TEMPLATE_LENGTH = 60;
+	private static final float THRESHOLD = 0.05f;
+	private static final int BACKGROUND_FRAMES = 120;
+	// frames after a gesture in which it must be reported
+	private static final int REPORT_FRAMES = 20;
+	// frames the reference looks back, longer than the slowest performance
+	private static final int REFERENCE_FRAMES = 2*TEMPLATE_LENGTH;
+
+	private static boolean failed = false;
+
+	private static PoseJointSource source = new PoseJointSource();
+	private static PVector leftUpperArm = new PVector();
+	private static PVector leftLowerArm = new PVector();
+	private static PVector rightUpperArm = new PVector();
+	private static PVector rightLowerArm = new PVector();
+
+	public static void main (String[] _args) {
+		int numberOfTemplates = _args.length > 0 ? Integer.parseInt(_args[0]) : 48;
+		int numberOfGestures = _args.length > 1 ? Integer.parseInt(_args[1]) : 20;
+		Random random = new Random(7);
+		Skeleton skeleton = new Skeleton(source,1,false);
+		skeleton.setEvaluateStatistics(false,null);
+
+		// templates: abduction of both shoulders and flexion of the elbows in degrees
+		float[][][] curves = new float[numberOfTemplates][][];
+		GestureTemplate[] templates = new GestureTemplate[numberOfTemplates];
+		GestureRecognizer recognizer = new GestureRecognizer();
+		// streaming DTW over the whole column, every path is followed to the end
+		GestureRecognizer unpruned = new GestureRecognizer();
+		unpruned.setWarpingWindow(1f);
+		int frameCount = 0;
+		for (int t=0; t<numberOfTemplates; t++) {
+			curves[t] = curve(random);
+			templates[t] = new GestureTemplate("gesture"+t,0);
+			for (int i=0; i<TEMPLATE_LENGTH; i++) {
+				pose(curves[t][i][0],curves[t][i][1],curves[t][i][2]);
+				skeleton.update(frameCount++,30f);
+				templates[t].addFrame(skeleton);
+			}
+			recognizer.addTemplate(templates[t],THRESHOLD);
+			unpruned.addTemplate(templates[t],Float.POSITIVE_INFINITY);
+		}
+		skeleton.setGestureRecognizer(recognizer);
+		recognizer.resetMeasurement();
+		Reference reference = new Reference(templates);
+
+		int recognizerHits = 0, recognizerOthers = 0, referenceHits = 0, referenceOthers = 0, referenceRepeats = 0;
+		long recognizerNanos = 0, unprunedNanos = 0, referenceNanos = 0;
+		int updates = 0;
+		float[] background = {90f,90f,30f};
+		float[] angles = new float[3];
+		int previousGesture = GestureRecognizer.NO_GESTURE;
+		for (int g=0; g<numberOfGestures; g++) {
+			int gesture = random.nextInt(numberOfTemplates);
+			float speed = 0.8f+random.nextFloat()*0.4f;
+			int backgroundEnd = updates+BACKGROUND_FRAMES;
+			int gestureEnd = backgroundEnd+(int)Math.ceil((TEMPLATE_LENGTH-1)/speed);
+			int reportEnd = gestureEnd+REPORT_FRAMES;
+			int referenceBest = GestureRecognizer.NO_GESTURE;
+			float referenceBestCost = Float.POSITIVE_INFINITY;
+			for (; updates<reportEnd; updates++) {
+				if (updates < backgroundEnd) {
+					for (int k=0; k<3; k++) background[k] = PApplet.constrain(background[k]+(float)random.nextGaussian()*3f,0f,170f);
+					pose(background[0],background[1],background[2]);
+				} else if (updates < gestureEnd) {
+					float x = (updates-backgroundEnd)*speed;
+					int i = (int)x;
+					float fraction = x-i;
+					for (int k=0; k<3; k++) angles[k] = PApplet.lerp(curves[gesture][i][k],curves[gesture][i+1][k],fraction)+(float)random.nextGaussian();
+					pose(angles[0],angles[1],angles[2]);
+				} else {
+					pose(background[0],background[1],background[2]);
+				}
+				long start = System.nanoTime();
+				skeleton.update(frameCount++,30f);
+				recognizerNanos += System.nanoTime()-start;
+				start = System.nanoTime();
+				unpruned.update(skeleton,frameCount);
+				unprunedNanos += System.nanoTime()-start;
+				start = System.nanoTime();
+				int referenceGesture = reference.update(skeleton);
+				referenceNanos += System.nanoTime()-start;
+
+				int recognized = recognizer.getCurrentGesture();
+				boolean expected = updates >= backgroundEnd;
+				if (recognized != GestureRecognizer.NO_GESTURE) {
+					if (expected && recognized == gesture) recognizerHits++;
+					else recognizerOthers++;
+				}
+				if (referenceGesture != GestureRecognizer.NO_GESTURE) {
+					// full DTW has no notion of a reported match, the last gesture keeps matching while the path lingers on its last frame
+					if (!expected && referenceGesture == previousGesture) referenceRepeats++;
+					else if (!expected) referenceOthers++;
+					else if (reference.bestCost < referenceBestCost) {
+						referenceBestCost = reference.bestCost;
+						referenceBest = referenceGesture;
+					}
+				}
+			}
+			if (referenceBest == gesture) referenceHits++;
+			else if (referenceBest != GestureRecognizer.NO_GESTURE) referenceOthers++;
+			previousGesture = gesture;
+		}
+
+		System.out.println(numberOfTemplates+" templates of "+TEMPLATE_LENGTH+" frames, "+numberOfGestures+" gestures performed in "+updates+" updates");
+		System.out.println(String.format("recognizer: %d found, %d other reports, %.1f us per update, %.1f%% of the cells computed",
+				recognizerHits,recognizerOthers,recognizerNanos/1000.0/updates,recognizer.getComputedCellRatio()*100));
+		System.out.println(String.format("without warping band and abandoning: %.1f us per update, %.1f%% of the cells computed",
+				unprunedNanos/1000.0/updates,unpruned.getComputedCellRatio()*100));
+		System.out.println(String.format("full DTW: %d found, %d other matches, %d frames still matching the last gesture, %.1f us per update",
+				referenceHits,referenceOthers,referenceRepeats,referenceNanos/1000.0/updates));
+		check(recognizerHits == numberOfGestures && recognizerOthers == 0,"the recognizer must report every gesture once and nothing else");
+		check(referenceHits == numberOfGestures && referenceOthers == 0,"full DTW must find every gesture and nothing else");
+		if (failed) System.exit(1);
+		System.out.println("passed");
+	}
+
+	// a smooth random movement of 2 seconds: abduction of both shoulders and flexion of the elbows in degrees
+	private static float[][] curve (Random _random) {
+		float[][] curve = new float[TEMPLATE_LENGTH][3];
+		float[] phase = new float[6];
+		for (int k=0; k<phase.length; k++) phase[k] = _random.nextFloat()*PConstants.TWO_PI;
+		for (int i=0; i<TEMPLATE_LENGTH; i++) {
+			float t = (float)i/TEMPLATE_LENGTH*PConstants.TWO_PI;
+			for (int k=0; k<3; k++) curve[i][k] = 80f+60f*PApplet.sin(t*(1+k%2)+phase[k])+30f*PApplet.sin(2*t+phase[k+3]);
+		}
+		return curve;
+	}
+
+	private static void pose (float _leftAbduction, float _rightAbduction, float _flexion) {
+		float left = PApplet.radians(_leftAbduction), right = PApplet.radians(_rightAbduction), flexion = PApplet.radians(_flexion);
+		leftUpperArm.set(-PApplet.sin(left),-PApplet.cos(left),0.05f);
+		rightUpperArm.set(PApplet.sin(right),-PApplet.cos(right),0.07f);
+		leftLowerArm.set(leftUpperArm.x,leftUpperArm.y*PApplet.cos(flexion),PApplet.sin(flexion));
+		rightLowerArm.set(rightUpperArm.x,rightUpperArm.y*PApplet.cos(flexion),PApplet.sin(flexion));
+		source.setArms(leftUpperArm,leftLowerArm,rightUpperArm,rightLowerArm);
+	}
+
+	private static void check (boolean _condition, String _message) {
+		if (_condition) return;
+		System.out.println("FAILED: "+_message);
+		failed = true;
+	}
+
+	// subsequence DTW recomputed over the last REFERENCE_FRAMES frames in every update, with the cost of GestureRecognizer
+	private static class Reference {
+		private final GestureTemplate[] templates;
+		private final float[][] history = new float[REFERENCE_FRAMES][Skeleton.NUMBER_OF_JOINTS*3];
+		private final short[] allJoints = new short[Skeleton.NUMBER_OF_JOINTS];
+		private float[] cost = new float[TEMPLATE_LENGTH+1];
+		private float[] lastCost = new float[TEMPLATE_LENGTH+1];
+		private int length = 0;
+		private int next = 0;
+		private float bestCost = Float.POSITIVE_INFINITY;
+
+		private Reference (GestureTemplate[] _templates) {
+			templates = _templates;
+			for (short j=0; j<Skeleton.NUMBER_OF_JOINTS; j++) allJoints[j] = j;
+		}
+
+		// returns the template with the lowest mean cost of a subsequence ending now, if it is at most the threshold
+		private int update (Skeleton _skeleton) {
+			GestureTemplate.copyFrame(_skeleton.jointsLCS(),allJoints,history[next],0);
+			next = (next+1)%REFERENCE_FRAMES;
+			length = Math.min(length+1,REFERENCE_FRAMES);
+			int best = GestureRecognizer.NO_GESTURE;
+			bestCost = Float.POSITIVE_INFINITY;
+			for (int t=0; t<templates.length; t++) {
+				float meanCost = match(templates[t]);
+				if (meanCost <= THRESHOLD && meanCost < bestCost) {
+					bestCost = meanCost;
+					best = t;
+				}
+			}
+			return best;
+		}
+
+		private float match (GestureTemplate _template) {
+			short[] joints = _template.joints();
+			float[] frames = _template.frames();
+			int templateLength = _template.getLength();
+			int dimensions = _template.getDimensions();
+			java.util.Arrays.fill(lastCost,Float.POSITIVE_INFINITY);
+			for (int h=0; h<length; h++) {
+				float[] frame = history[(next-length+h+REFERENCE_FRAMES)%REFERENCE_FRAMES];
+				// a subsequence may start at every frame
+				cost[0] = 0f;
+				for (int i=1; i<=templateLength; i++) {
+					float distance = 0f;
+					for (int j=0, p=(i-1)*dimensions; j<joints.length; j++, p+=3) {
+						int s = joints[j]*3;
+						float dx = frame[s]-frames[p], dy = frame[s+1]-frames[p+1], dz = frame[s+2]-frames[p+2];
+						distance += dx*dx+dy*dy+dz*dz;
+					}
+					float previous = Math.min(cost[i-1],Math.min(lastCost[i],i == 1 ? 0f : lastCost[i-1]));
+					cost[i] = previous+distance/joints.length;
+				}
+				float[] swap = lastCost;
+				lastCost = cost;
+				cost = swap;
+			}
+			return lastCost[templateLength]/templateLength;
+		}
+	}
+}
@@ -0,0 +1,245 @@
+package therapeuticskeleton;
+
+import processing.core.*;
+
+/** Checks the gestures of SkeletonGesture with scripted movements of a PoseJointSource at 30 frames per second and the default tolerance.
+ *  A script moves the hands along a path relative to the shoulders, the elbows follow from the arm lengths. Between scripts the arms hang and rest for a second. <br>
+ *  Every gesture is performed once by a script and must be recognized exactly once, i.e. become recognized in one update cycle and stay recognized while its end pose holds,
+ *  while no other gesture is recognized. Near misses, too slow, too short, off the path or with bent arms, must not be recognized at all. <br>
+ *  Then tables with 1 to 10 copies of the gesture table, with slightly shifted bounds, evaluate all scripts. Prints the time of evaluate per update cycle for each size,
+ *  the features are calculated before. Fails with exit status 1, also if 10 copies take 10 times as long as one. <br>
+ *  bench/run.sh GestureTableCheck [rounds], default 200 rounds of all scripts per table size. */
+public class GestureTableCheck {
+
+	private static final float FRAME_RATE = 30f;
+	private static final float UPPER_ARM = 300f;
+	private static final float LOWER_ARM = 280f;
+	private static final float REACH = UPPER_ARM+LOWER_ARM;
+	private static final int REST_FRAMES = 30;
+	private static final int[] COPIES = {1,2,4,8,10};
+
+	private static PoseJointSource source = new PoseJointSource();
+	private static Skeleton skeleton = new Skeleton(source,1,false);
+	private static int frameCount = 0;
+	private static boolean failed = false;
+
+	// scripted movements: the gesture performed, NO_GESTURE for near misses
+	private static final Script[] SCRIPTS = {
+		new Script("push",SkeletonGesture.PUSH_GESTURE,0.5f) {
+			// both hands straight forward from close to the shoulders, elbows out. the elbows end bent by 34 degree, a reach needs a straighter arm
+			void hands (float _t, PVector _left, PVector _right) { push(_t,_left,_right,0f); }
+		},
+		new Script("push too slow",SkeletonGesture.NO_GESTURE,3f) {
+			void hands (float _t, PVector _left, PVector _right) { push(_t,_left,_right,0f); }
+		},
+		new Script("push downwards",SkeletonGesture.NO_GESTURE,0.5f) {
+			void hands (float _t, PVector _left, PVector _right) { push(_t,_left,_right,1f); }
+		},
+		new Script("swipe left",SkeletonGesture.SWIPE_LEFT_GESTURE,0.4f) {
+			void hands (float _t, PVector _left, PVector _right) { hanging(_left); _right.set(PApplet.lerp(350f,-250f,_t),-200f,-300f); }
+		},
+		new Script("swipe left too slow",SkeletonGesture.NO_GESTURE,2f) {
+			void hands (float _t, PVector _left, PVector _right) { hanging(_left); _right.set(PApplet.lerp(350f,-250f,_t),-200f,-300f); }
+		},
+		new Script("swipe left too short",SkeletonGesture.NO_GESTURE,0.4f) {
+			void hands (float _t, PVector _left, PVector _right) { hanging(_left); _right.set(PApplet.lerp(350f,0f,_t),-200f,-300f); }
+		},
+		new Script("swipe right",SkeletonGesture.SWIPE_RIGHT_GESTURE,0.4f) {
+			void hands (float _t, PVector _left, PVector _right) { _left.set(PApplet.lerp(-350f,250f,_t),-200f,-300f); hanging(_right); }
+		},
+		new Script("swipe right above the chest",SkeletonGesture.NO_GESTURE,0.4f) {
+			void hands (float _t, PVector _left, PVector _right) { _left.set(PApplet.lerp(-350f,250f,_t),300f,-300f); hanging(_right); }
+		},
+		new Script("raise arms",SkeletonGesture.RAISE_ARMS_GESTURE,1f) {
+			void hands (float _t, PVector _left, PVector _right) { raise(_t,REACH,_left,_right); }
+		},
+		new Script("raise arms too slow",SkeletonGesture.NO_GESTURE,4f) {
+			void hands (float _t, PVector _left, PVector _right) { raise(_t,REACH,_left,_right); }
+		},
+		new Script("raise bent arms",SkeletonGesture.NO_GESTURE,1f) {
+			void hands (float _t, PVector _left, PVector _right) { raise(_t,450f,_left,_right); }
+		},
+		new Script("circle",SkeletonGesture.CIRCLE_GESTURE,1.6f) {
+			void hands (float _t, PVector _left, PVector _right) { hanging(_left); circle(_t*PConstants.TWO_PI,_right); }
+		},
+		new Script("circle too slow",SkeletonGesture.NO_GESTURE,4f) {
+			void hands (float _t, PVector _left, PVector _right) { hanging(_left); circle(_t*PConstants.TWO_PI,_right); }
+		},
+		new Script("three quarters of a circle and back",SkeletonGesture.NO_GESTURE,1.6f) {
+			void hands (float _t, PVector _left, PVector _right) { hanging(_left); circle((_t < 0.5f ? _t : 1f-_t)*3f*PConstants.PI,_right); }
+		},
+		new Script("reach",SkeletonGesture.REACH_GESTURE,0.5f) {
+			void hands (float _t, PVector _left, PVector _right) { hanging(_left); _right.set(0f,PApplet.lerp(-150f,-100f,_t),PApplet.lerp(-150f,-571f,_t)); }
+		},
+		new Script("reach with a bent arm",SkeletonGesture.NO_GESTURE,0.5f) {
+			void hands (float _t, PVector _left, PVector _right) { hanging(_left); _right.set(0f,PApplet.lerp(-150f,-100f,_t),PApplet.lerp(-150f,-500f,_t)); }
+		}
+	};
+
+	public static void main (String[] _args) {
+		int rounds = _args.length > 0 ? Integer.parseInt(_args[0]) : 200;
+		skeleton.setEvaluateStatistics(false,null);
+		skeleton.setEvaluatePostureAndGesture(true);
+		for (Script script : SCRIPTS) {
+			int[] recognitions = new int[SkeletonGesture.NUMBER_OF_GESTURES];
+			boolean[] last = new boolean[SkeletonGesture.NUMBER_OF_GESTURES];
+			rest();
+			for (int f=0; f<script.frames()+REST_FRAMES; f++) {
+				perform(script,f);
+				for (short g=1; g<SkeletonGesture.NUMBER_OF_GESTURES; g++) {
+					boolean recognized = skeleton.isGestureRecognized(g);
+					if (recognized && !last[g]) recognitions[g]++;
+					last[g] = recognized;
+				}
+			}
+			String result = "";
+			boolean correct = true;
+			for (short g=1; g<SkeletonGesture.NUMBER_OF_GESTURES; g++) {
+				if (recognitions[g] > 0) result += " gesture "+g+" "+recognitions[g]+"x";
+				correct &= recognitions[g] == (g == script.gesture ? 1 : 0);
+			}
+			System.out.println(script.name+":"+(result.length() > 0 ? result : " nothing recognized"));
+			check(correct,script.name+": "+(script.gesture == SkeletonGesture.NO_GESTURE ? "no gesture" : "gesture "+script.gesture+" once")+" expected");
+		}
+
+		// the same movements with bigger tables, timed without the features
+		skeleton.setEvaluatePostureAndGesture(false);
+		float[] nanosPerUpdate = new float[COPIES.length];
+		for (int i=0; i<COPIES.length; i++) {
+			SkeletonGesture.Table table = copies(COPIES[i]);
+			SkeletonGesture gesture = new SkeletonGesture(skeleton,table);
+			long nanos = 0;
+			int updates = 0;
+			int recognized = 0;
+			for (int round=0; round<rounds; round++) {
+				for (Script script : SCRIPTS) {
+					rest();
+					for (int f=0; f<script.frames()+REST_FRAMES; f++) {
+						perform(script,f);
+						skeleton.features();
+						long start = System.nanoTime();
+						gesture.evaluate(frameCount);
+						long end = System.nanoTime();
+						// the first half warms up
+						if (round >= rounds/2) {
+							nanos += end-start;
+							updates++;
+						}
+						if (gesture.isGestureRecognized((short)1)) recognized++;
+					}
+				}
+			}
+			nanosPerUpdate[i] = nanos/(float)updates;
+			System.out.println(String.format("%d gestures: %.0f ns per update cycle",table.getNumberOfGestures()-1,nanosPerUpdate[i]));
+			check(recognized > 0,COPIES[i]+" copies: the copied push gesture was never recognized");
+		}
+		int most = COPIES.length-1;
+		check(nanosPerUpdate[most] < COPIES[most]*nanosPerUpdate[0],COPIES[most]+" copies of the gestures take "+COPIES[most]+" times as long as one");
+		if (failed) System.exit(1);
+		System.out.println("passed");
+	}
+
+	// the movement in frames 0..frames()-1, then the end pose is held
+	private abstract static class Script {
+		private String name;
+		private short gesture;
+		private float seconds;
+		private Script (String _name, short _gesture, float _seconds) {
+			name = _name;
+			gesture = _gesture;
+			seconds = _seconds;
+		}
+		private int frames () {
+			return Math.round(seconds*FRAME_RATE)+1;
+		}
+		// positions of the hands relative to their shoulders at 0..1 of the movement, x to the right of the user, y up, z away from the sensor
+		abstract void hands (float _t, PVector _left, PVector _right);
+	}
+
+	private static PVector left = new PVector(), right = new PVector();
+	private static PVector leftUpperArm = new PVector(), leftLowerArm = new PVector(), rightUpperArm = new PVector(), rightLowerArm = new PVector();
+
+	private static void perform (Script _script, int _frame) {
+		float t = Math.min(1f,_frame/(float)(_script.frames()-1));
+		_script.hands(t,left,right);
+		update();
+	}
+	// hanging arms, bent a little, so every gesture starts anew
+	private static void rest () {
+		for (int f=0; f<REST_FRAMES; f++) {
+			hanging(left);
+			hanging(right);
+			update();
+		}
+	}
+	private static void update () {
+		arm(left,-1f,leftUpperArm,leftLowerArm);
+		arm(right,1f,rightUpperArm,rightLowerArm);
+		source.setArms(leftUpperArm,leftLowerArm,rightUpperArm,rightLowerArm);
+		skeleton.update(frameCount++,FRAME_RATE);
+	}
+
+	private static void hanging (PVector _hand) {
+		_hand.set(0f,-560f,-50f);
+	}
+	// _down: 0 for hands moving along the z axis, 1 for hands moving forward and down at 45 degree
+	private static void push (float _t, PVector _left, PVector _right, float _down) {
+		float distance = PApplet.lerp(100f,555f,_t);
+		_left.set(0f,-distance*_down*0.7071f,-distance*(_down > 0f ? 0.7071f : 1f));
+		_right.set(_left);
+	}
+	// both arms from hanging down over the sides to pointing up, in the frontal plane
+	private static void raise (float _t, float _distance, PVector _left, PVector _right) {
+		float angle = -PConstants.HALF_PI+_t*PConstants.PI;
+		_right.set(_distance*PApplet.cos(angle),_distance*PApplet.sin(angle),0f);
+		_left.set(-_right.x,_right.y,0f);
+	}
+	// the right hand circles counterclockwise from the right around the shoulder, in front of the body
+	private static void circle (float _angle, PVector _right) {
+		_right.set(420f*PApplet.cos(_angle),420f*PApplet.sin(_angle),-250f);
+	}
+
+	// directions of upper and lower arm that put the hand at the position relative to the shoulder. the elbow bends outwards and down
+	private static PVector pole = new PVector(), elbow = new PVector(), axis = new PVector();
+	private static void arm (PVector _hand, float _side, PVector _upperArm, PVector _lowerArm) {
+		float distance = Math.min(_hand.mag(),REACH);
+		axis.set(_hand);
+		axis.normalize();
+		// the elbow lies on the circle of points at UPPER_ARM from the shoulder and LOWER_ARM from the hand
+		float along = (distance*distance+UPPER_ARM*UPPER_ARM-LOWER_ARM*LOWER_ARM)/(2f*distance);
+		float across = PApplet.sqrt(Math.max(0f,UPPER_ARM*UPPER_ARM-along*along));
+		pole.set(_side,-1f,0.5f);
+		pole.sub(PVector.mult(axis,pole.dot(axis)));
+		pole.normalize();
+		elbow.set(axis);
+		elbow.mult(along);
+		elbow.add(PVector.mult(pole,across));
+		_upperArm.set(elbow);
+		axis.mult(distance);
+		_lowerArm.set(axis);
+		_lowerArm.sub(elbow);
+	}
+
+	// the gesture table with its gestures repeated, the bounds of every copy shifted by 0.01 degree or mm so no predicates are shared across copies
+	private static SkeletonGesture.Table copies (int _copies) {
+		float[][] conditions = SkeletonGesture.table().conditions();
+		int gestures = SkeletonGesture.NUMBER_OF_GESTURES-1;
+		float[][] copied = new float[conditions.length*_copies][];
+		for (int k=0; k<_copies; k++) {
+			for (int c=0; c<conditions.length; c++) {
+				float[] condition = conditions[c].clone();
+				condition[0] += k*gestures;
+				condition[3] += k*0.01f;
+				condition[4] += k*0.01f;
+				copied[k*conditions.length+c] = condition;
+			}
+		}
+		return new SkeletonGesture.Table(copied,1+gestures*_copies);
+	}
+
+	private static void check (boolean _condition, String _message) {
+		if (_condition) return;
+		System.out.println("FAILED: "+_message);
+		failed = true;
+	}
+}
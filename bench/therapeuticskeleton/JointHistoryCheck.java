@@ -0,0 +1,156 @@
+package therapeuticskeleton;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import processing.core.*;
+
+/** Checks JointHistory against a brute-force history that keeps the left hand of every update cycle of a long SyntheticJointSource run in a list. <br>
+ *  For capacities and levels 1x1, 1x4, 7x3 and 300x4 all levels fill up and drop positions many times, and the history is cleared once on the way. After every update cycle
+ *  the history must hold exactly the positions the list predicts: level l keeps the newest blocks of 2^l update cycles that left level l-1, each the mean of its positions
+ *  and capture times, the oldest level drops older blocks. A block waiting for its partner is missing, which leaves a gap of at most 2^l update cycles per level.
+ *  get, getTimestamp, getFrames and copyPositions must match the means, ordered from the oldest to the newest across the level boundaries.
+ *  Afterwards a run of 20 horizons must not allocate a single byte in add, and getSize never exceeds capacity*levels. Fails with exit status 1. */
+public class JointHistoryCheck {
+
+	private static final int[][] SIZES = {{1,1},{1,4},{7,3},{300,4}};
+	private static final float FRAME_RATE = 30f;
+	// update cycles of the run in horizons of the history, the clear happens after the first horizon
+	private static final int HORIZONS = 5;
+	private static final int MEMORY_HORIZONS = 20;
+	private static final float POSITION_EPSILON = 1e-2f;
+
+	private static boolean failed = false;
+
+	public static void main (String[] _args) {
+		for (int[] size : SIZES) check(size[0],size[1]);
+		if (failed) System.exit(1);
+		System.out.println("passed");
+	}
+
+	private static void check (int _capacity, int _levels) {
+		JointHistory history = new JointHistory(_capacity,_levels);
+		long horizon = history.getHorizon();
+		int cycles = (int)(HORIZONS*horizon)+3;
+		int clearCycle = (int)horizon+1;
+		SyntheticJointSource source = new SyntheticJointSource(FRAME_RATE);
+		float[] joints = new float[Skeleton.NUMBER_OF_JOINTS*3];
+		float[] confidence = new float[Skeleton.NUMBER_OF_JOINTS];
+		PMatrix3D[] orientation = new PMatrix3D[Skeleton.NUMBER_OF_JOINTS];
+		for (int i=0; i<orientation.length; i++) orientation[i] = new PMatrix3D();
+		float[] orientationConfidence = new float[Skeleton.NUMBER_OF_JOINTS];
+		// the brute-force history: the hand of all update cycles since the last clear, as {x, y, z, capture time}
+		ArrayList<double[]> positions = new ArrayList<double[]>();
+		PVector position = new PVector();
+		float[] copied = new float[_capacity*_levels*3];
+		int wrongSizes = 0, wrongPositions = 0, wrongTimestamps = 0, wrongFrames = 0, wrongCopies = 0, unordered = 0, gaps = 0, checked = 0;
+
+		for (int cycle=0; cycle<cycles; cycle++) {
+			source.nextFrame();
+			source.fetchJoints(1,Skeleton.JOINT_MASK_UPPER_BODY,joints,confidence,orientation,orientationConfidence);
+			float x = joints[Skeleton.LEFT_HAND*3], y = joints[Skeleton.LEFT_HAND*3+1], z = joints[Skeleton.LEFT_HAND*3+2];
+			long time = source.getTimestamp(1);
+			if (cycle == clearCycle) {
+				history.clear();
+				positions.clear();
+			}
+			history.add(x,y,z,time);
+			positions.add(new double[] {x,y,z,time});
+
+			// the blocks the list predicts, oldest first, as {level, first update cycle}
+			int[][] blocks = expectedBlocks(positions.size(),_capacity,_levels);
+			if (history.getSize() != blocks.length) {
+				wrongSizes++;
+				continue;
+			}
+			int numberOfCopied = history.copyPositions(copied,0);
+			if (numberOfCopied != blocks.length) wrongCopies++;
+			int covered = 0;
+			for (int i=0; i<blocks.length; i++) {
+				int frames = 1<<blocks[i][0];
+				double[] mean = mean(positions,blocks[i][1],frames);
+				history.get(i,position);
+				checked++;
+				if (Math.abs(position.x-mean[0]) > POSITION_EPSILON || Math.abs(position.y-mean[1]) > POSITION_EPSILON || Math.abs(position.z-mean[2]) > POSITION_EPSILON) wrongPositions++;
+				if (Math.abs(history.getTimestamp(i)-mean[3]) > frames) wrongTimestamps++;
+				if (history.getFrames(i) != frames) wrongFrames++;
+				if (i < numberOfCopied && (copied[i*3] != position.x || copied[i*3+1] != position.y || copied[i*3+2] != position.z)) wrongCopies++;
+				if (i > 0 && history.getTimestamp(i) <= history.getTimestamp(i-1)) unordered++;
+				covered += frames;
+			}
+			// update cycles missing between the oldest and the newest position: the blocks waiting for their partners
+			int missing = blocks.length > 0 ? positions.size()-blocks[0][1]-covered : 0;
+			int maxMissing = _levels > 1 ? (1<<(_levels-1))-1 : 0;
+			if (missing < 0 || missing > maxMissing) gaps++;
+			// out of range indices leave the vector alone and give 0
+			position.set(-1f,-1f,-1f);
+			history.get(blocks.length,position);
+			if (position.x != -1f || history.getTimestamp(-1) != 0L || history.getFrames(blocks.length) != 0) wrongSizes++;
+		}
+
+		System.out.println(String.format("capacity %d, %d levels: %d update cycles, horizon %d, %d positions kept, %d positions compared",
+				_capacity,_levels,cycles,horizon,history.getSize(),checked));
+		check(wrongSizes == 0,_capacity+"x"+_levels+": "+wrongSizes+" wrong sizes or out of range results");
+		check(wrongPositions == 0,_capacity+"x"+_levels+": "+wrongPositions+" positions differ from the mean of their update cycles");
+		check(wrongTimestamps == 0,_capacity+"x"+_levels+": "+wrongTimestamps+" capture times differ from the mean of their update cycles");
+		check(wrongFrames == 0,_capacity+"x"+_levels+": "+wrongFrames+" wrong numbers of update cycles per position");
+		check(wrongCopies == 0,_capacity+"x"+_levels+": "+wrongCopies+" copied positions differ from get");
+		check(unordered == 0,_capacity+"x"+_levels+": "+unordered+" positions not ordered from the oldest to the newest");
+		check(gaps == 0,_capacity+"x"+_levels+": "+gaps+" histories with more update cycles missing than the waiting positions");
+		check(positions.size() > 2*horizon,_capacity+"x"+_levels+": the oldest level did not drop positions");
+		checkMemory(_capacity,_levels);
+	}
+
+	// adds the positions of many horizons after a warm-up, measuring the bytes allocated by this thread
+	private static void checkMemory (int _capacity, int _levels) {
+		JointHistory history = new JointHistory(_capacity,_levels);
+		long cycles = MEMORY_HORIZONS*history.getHorizon();
+		// the warm-up runs the same loop, so the measured one is compiled already
+		add(history,cycles);
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+		long thread = Thread.currentThread().getId();
+		long before = threads.getThreadAllocatedBytes(thread);
+		int maxSize = add(history,cycles);
+		long allocated = threads.getThreadAllocatedBytes(thread)-before;
+		check(allocated == 0,_capacity+"x"+_levels+": add allocated "+allocated+" bytes in "+cycles+" update cycles");
+		check(maxSize <= _capacity*_levels,_capacity+"x"+_levels+": "+maxSize+" positions kept");
+	}
+	// returns the most positions kept
+	private static int add (JointHistory _history, long _cycles) {
+		int maxSize = 0;
+		for (long cycle=0; cycle<_cycles; cycle++) {
+			_history.add(cycle,-cycle,2000f,cycle*33333333L);
+			maxSize = Math.max(maxSize,_history.getSize());
+		}
+		return maxSize;
+	}
+
+	// level n receives the blocks of 2^n update cycles leaving level n-1, merged in pairs from the oldest. a block leaving alone waits for its partner
+	private static int[][] expectedBlocks (int _numberOfPositions, int _capacity, int _levels) {
+		ArrayList<int[]> blocks = new ArrayList<int[]>();
+		int entered = _numberOfPositions;
+		for (int l=0; l<_levels; l++) {
+			int kept = Math.min(entered,_capacity);
+			// blocks newest first, reversed below
+			for (int k=entered-1; k>=entered-kept; k--) blocks.add(new int[] {l,k<<l});
+			entered = (entered-kept)/2;
+		}
+		int[][] result = new int[blocks.size()][];
+		for (int i=0; i<result.length; i++) result[i] = blocks.get(result.length-1-i);
+		return result;
+	}
+	// the mean of position and capture time of _frames update cycles from _first
+	private static double[] mean (ArrayList<double[]> _positions, int _first, int _frames) {
+		double[] mean = new double[4];
+		for (int i=_first; i<_first+_frames; i++) {
+			for (int c=0; c<4; c++) mean[c] += _positions.get(i)[c];
+		}
+		for (int c=0; c<4; c++) mean[c] /= _frames;
+		return mean;
+	}
+
+	private static void check (boolean _condition, String _message) {
+		if (_condition) return;
+		System.out.println("FAILED: "+_message);
+		failed = true;
+	}
+}
@@ -0,0 +1,181 @@
+package therapeuticskeleton;
+
+import java.util.Random;
+import processing.core.*;
+
+/** Checks JointValidator with faults injected into the joints of a joint source, for the policies HOLD, INTERPOLATE and REJECT. <br>
+ *  A SequenceJointSource moves all joints on a straight line, so the repaired positions are known exactly. The left hand jumps for one frame, drops out for 3 frames,
+ *  jumps again in the second frame after the dropout, so it is interpolated with the velocity over the gap, ends a limb 70% too long for one frame
+ *  and drops out for 8 frames at a maximum gap of 5 frames. Every frame the left hand must be the last valid position (HOLD, REJECT) or its position on the line (INTERPOLATE),
+ *  after the maximum gap the position of the frame before, and then the measured one again. All other joints must pass unchanged.
+ *  The synthesized and rejected joints and all counters must match the script. <br>
+ *  A NoisyJointSource with 10mm noise on a SyntheticJointSource makes a hand jump by 400mm or drop out for 1 to 4 frames every 20 frames. Every fault must be counted
+ *  and repaired to within 250mm of the noiseless hand, and no noisy frame may be invalid. The faults are the same for all policies, the mean distance of the repaired hands
+ *  from the noiseless hands is printed. Fails with exit status 1. */
+public class JointValidatorCheck {
+
+	private static final short[] POLICIES = {JointValidator.HOLD,JointValidator.INTERPOLATE,JointValidator.REJECT};
+	private static final String[] POLICY_NAMES = {"HOLD","INTERPOLATE","REJECT"};
+	private static final float DT = 1f/30f;
+	// the scripted faults of the left hand: frame of the jump, the dropout, the long limb and the long dropout
+	private static final int FRAMES = 60;
+	private static final int JUMP = 10;
+	private static final int DROPOUT = 20;
+	private static final int DROPOUT_FRAMES = 3;
+	private static final int JUMP_AFTER_DROPOUT = DROPOUT+DROPOUT_FRAMES+1;
+	private static final int LIMB = 30;
+	private static final int GAP = 40;
+	private static final int GAP_FRAMES = 8;
+	private static final int MAX_GAP_FRAMES = 5;
+	private static final float POSITION_EPSILON = 1e-3f;
+	// the noisy run
+	private static final int NOISY_FRAMES = 6000;
+	private static final float NOISE = 10f;
+	private static final float JUMP_DISTANCE = 400f;
+	private static final float MAX_ERROR = 250f;
+
+	private static boolean failed = false;
+
+	public static void main (String[] _args) {
+		for (int p=0; p<POLICIES.length; p++) {
+			checkScript(p);
+			checkNoisy(p);
+		}
+		if (failed) System.exit(1);
+		System.out.println("passed");
+	}
+
+	private static void checkScript (int _policy) {
+		String name = POLICY_NAMES[_policy];
+		JointValidator validator = new JointValidator(POLICIES[_policy]);
+		validator.setMaxGapFrames(MAX_GAP_FRAMES);
+		SequenceJointSource source = new SequenceJointSource();
+		float[] position = new float[Skeleton.NUMBER_OF_JOINTS*3];
+		float[] confidence = new float[Skeleton.NUMBER_OF_JOINTS];
+		PMatrix3D[] orientation = orientations();
+		float[] orientationConfidence = new float[Skeleton.NUMBER_OF_JOINTS];
+		float[] truth = new float[Skeleton.NUMBER_OF_JOINTS*3];
+		int hand = Skeleton.LEFT_HAND*3;
+		int wrongPositions = 0, wrongOthers = 0, wrongMasks = 0;
+
+		for (int f=0; f<FRAMES; f++) {
+			source.setSequence(f);
+			source.fetchJoints(1,Skeleton.JOINT_MASK_ALL,position,confidence,orientation,orientationConfidence);
+			System.arraycopy(position,0,truth,0,truth.length);
+			if (f == JUMP || f == JUMP_AFTER_DROPOUT) position[hand] += 500f;
+			if (f >= DROPOUT && f < DROPOUT+DROPOUT_FRAMES || f >= GAP && f < GAP+GAP_FRAMES) confidence[Skeleton.LEFT_HAND] = 0f;
+			// the hand moves by 50mm only, but the limb from the elbow gets 70% longer
+			if (f == LIMB) position[hand] += 50f;
+			validator.validate(position,confidence,Skeleton.JOINT_MASK_ALL,DT);
+
+			// the frame whose hand position is expected, and the tags
+			boolean invalid = f == JUMP || f == JUMP_AFTER_DROPOUT || f == LIMB || f >= DROPOUT && f < DROPOUT+DROPOUT_FRAMES || f >= GAP && f < GAP+GAP_FRAMES;
+			boolean tooLong = f >= GAP+MAX_GAP_FRAMES && f < GAP+GAP_FRAMES;
+			int expected = f;
+			if (tooLong) {
+				expected = POLICIES[_policy] == JointValidator.INTERPOLATE ? GAP+MAX_GAP_FRAMES-1 : GAP-1;
+			} else if (invalid && POLICIES[_policy] != JointValidator.INTERPOLATE) {
+				expected = f >= GAP ? GAP-1 : f >= DROPOUT && f < DROPOUT+DROPOUT_FRAMES ? DROPOUT-1 : f-1;
+			}
+			int synthesized = invalid ? 1<<Skeleton.LEFT_HAND : 0;
+			int rejected = tooLong || invalid && POLICIES[_policy] == JointValidator.REJECT ? 1<<Skeleton.LEFT_HAND : 0;
+			for (int k=0; k<3; k++) {
+				if (Math.abs(position[hand+k]-(truth[hand+k]-f+expected)) > POSITION_EPSILON) wrongPositions++;
+			}
+			for (int i=0; i<truth.length; i++) {
+				if (i/3 != Skeleton.LEFT_HAND && position[i] != truth[i]) wrongOthers++;
+			}
+			if (validator.getSynthesizedJointMask() != synthesized || validator.getRejectedJointMask() != rejected) wrongMasks++;
+		}
+
+		int synthesizedFrames = 2+DROPOUT_FRAMES+1+GAP_FRAMES;
+		int rejectedFrames = POLICIES[_policy] == JointValidator.REJECT ? synthesizedFrames : GAP_FRAMES-MAX_GAP_FRAMES;
+		System.out.println(String.format("%s script: %d low confidence, %d displaced, %d limb lengths, %d synthesized, %d rejected frames",name,
+				validator.getLowConfidenceCount(),validator.getDisplacementCount(),validator.getLimbLengthCount(),validator.getSynthesizedCount(),validator.getRejectedFrameCount()));
+		check(wrongPositions == 0,name+": "+wrongPositions+" coordinates of the left hand not repaired as expected");
+		check(wrongOthers == 0,name+": "+wrongOthers+" coordinates of valid joints changed");
+		check(wrongMasks == 0,name+": "+wrongMasks+" frames with wrong synthesized or rejected joints");
+		check(validator.getValidateCount() == FRAMES && validator.getJointCount() == FRAMES*Skeleton.NUMBER_OF_JOINTS,name+": wrong number of frames or joints validated");
+		check(validator.getLowConfidenceCount() == DROPOUT_FRAMES+GAP_FRAMES,name+": wrong number of joints with low confidence");
+		check(validator.getDisplacementCount() == 2,name+": wrong number of displaced joints");
+		check(validator.getLimbLengthCount() == 1,name+": wrong number of joints with a wrong limb length");
+		check(validator.getSynthesizedCount() == synthesizedFrames,name+": wrong number of synthesized joints");
+		check(validator.getRejectedFrameCount() == rejectedFrames,name+": wrong number of rejected frames");
+	}
+
+	private static void checkNoisy (int _policy) {
+		String name = POLICY_NAMES[_policy];
+		Random random = new Random(1);
+		JointValidator validator = new JointValidator(POLICIES[_policy]);
+		SyntheticJointSource clean = new SyntheticJointSource(30f);
+		SyntheticJointSource synthetic = new SyntheticJointSource(30f);
+		NoisyJointSource source = new NoisyJointSource(synthetic,NOISE,1);
+		float[] position = new float[Skeleton.NUMBER_OF_JOINTS*3];
+		float[] truth = new float[Skeleton.NUMBER_OF_JOINTS*3];
+		float[] confidence = new float[Skeleton.NUMBER_OF_JOINTS];
+		PMatrix3D[] orientation = orientations();
+		float[] orientationConfidence = new float[Skeleton.NUMBER_OF_JOINTS];
+		int jumps = 0, dropouts = 0, repaired = 0, wrongMasks = 0, farOff = 0;
+		float error = 0f;
+		int hand = Skeleton.LEFT_HAND;
+		int dropoutEnd = 0;
+
+		for (int f=0; f<NOISY_FRAMES; f++) {
+			clean.nextFrame();
+			synthetic.nextFrame();
+			clean.fetchJoints(1,Skeleton.JOINT_MASK_ALL,truth,confidence,orientation,orientationConfidence);
+			source.fetchJoints(1,Skeleton.JOINT_MASK_ALL,position,confidence,orientation,orientationConfidence);
+			int faulty = 0;
+			// a fault every 20 frames after a second of warm-up, of one hand
+			if (f >= 30 && f%20 == 0) {
+				hand = random.nextBoolean() ? Skeleton.LEFT_HAND : Skeleton.RIGHT_HAND;
+				if (random.nextBoolean()) {
+					PVector jump = new PVector((float)random.nextGaussian(),(float)random.nextGaussian(),(float)random.nextGaussian());
+					jump.normalize();
+					jump.mult(JUMP_DISTANCE);
+					position[hand*3] += jump.x;
+					position[hand*3+1] += jump.y;
+					position[hand*3+2] += jump.z;
+					faulty = 1<<hand;
+					jumps++;
+				} else {
+					dropoutEnd = f+1+random.nextInt(4);
+				}
+			}
+			if (f < dropoutEnd) {
+				confidence[hand] = 0f;
+				faulty = 1<<hand;
+				dropouts++;
+			}
+			validator.validate(position,confidence,Skeleton.JOINT_MASK_ALL,DT);
+			if (validator.getSynthesizedJointMask() != faulty) wrongMasks++;
+			if (faulty != 0) {
+				float distance = PApplet.dist(position[hand*3],position[hand*3+1],position[hand*3+2],truth[hand*3],truth[hand*3+1],truth[hand*3+2]);
+				if (distance > MAX_ERROR) farOff++;
+				error += distance;
+				repaired++;
+			}
+		}
+
+		float meanError = error/repaired;
+		System.out.println(String.format("%s noisy: %d jumps, %d frames dropped out, repaired hands %.1f mm from the noiseless hands on average",name,jumps,dropouts,meanError));
+		check(validator.getDisplacementCount() == jumps,name+": "+validator.getDisplacementCount()+" displaced joints counted for "+jumps+" jumps");
+		check(validator.getLowConfidenceCount() == dropouts,name+": "+validator.getLowConfidenceCount()+" joints with low confidence counted for "+dropouts+" dropped out");
+		check(validator.getLimbLengthCount() == 0,name+": "+validator.getLimbLengthCount()+" noisy limbs taken for a wrong limb length");
+		check(wrongMasks == 0,name+": "+wrongMasks+" frames synthesize other joints than the faulty ones");
+		check(farOff == 0,name+": "+farOff+" repaired hands more than "+MAX_ERROR+"mm from the noiseless hand");
+		check(validator.getRejectedFrameCount() == (POLICIES[_policy] == JointValidator.REJECT ? repaired : 0),name+": wrong number of rejected frames");
+	}
+
+	private static PMatrix3D[] orientations () {
+		PMatrix3D[] orientation = new PMatrix3D[Skeleton.NUMBER_OF_JOINTS];
+		for (int i=0; i<orientation.length; i++) orientation[i] = new PMatrix3D();
+		return orientation;
+	}
+
+	private static void check (boolean _condition, String _message) {
+		if (_condition) return;
+		System.out.println("FAILED: "+_message);
+		failed = true;
+	}
+}
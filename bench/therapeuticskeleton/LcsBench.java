@@ -0,0 +1,78 @@
+package therapeuticskeleton;
+
+import processing.core.*;
+
+/** Compares the transformation of joints to the local coordinate system by SkeletonMath, which inverts the orthonormal axes analytically,
+ *  with the general inversion by PMatrix3D.invert followed by a transformation per joint. Joints of a SyntheticJointSource are rotated by a changing rigid rotation,
+ *  so the local coordinate system takes all orientations. Both must agree to MAX_ERROR mm. Prints the time per frame of both. Fails with exit status 1. <br>
+ *  bench/run.sh LcsBench [frames], default 200000 frames, measured in the last of 3 runs. */
+public class LcsBench {
+
+	private static final float MAX_ERROR = 0.01f;
+	private static final int RUNS = 3;
+
+	public static void main (String[] _args) {
+		int frames = _args.length > 0 ? Integer.parseInt(_args[0]) : 200000;
+		SyntheticJointSource source = new SyntheticJointSource(30f);
+		Skeleton skeleton = new Skeleton(source,1,true);
+		skeleton.setEvaluateStatistics(false,null);
+		SkeletonMath math = new SkeletonMath(skeleton);
+		float[] global = new float[Skeleton.NUMBER_OF_JOINTS*3];
+		float[] analytic = new float[Skeleton.NUMBER_OF_JOINTS*3];
+		float[] inverted = new float[Skeleton.NUMBER_OF_JOINTS*3];
+		PMatrix3D rotation = new PMatrix3D();
+		PMatrix3D transform = new PMatrix3D();
+		PMatrix3D inverse = new PMatrix3D();
+		PVector joint = new PVector(), rotated = new PVector();
+		float maxError = 0f;
+		long analyticNanos = 0, invertedNanos = 0;
+		for (int run=0; run<RUNS; run++) {
+			for (int f=0; f<frames; f++) {
+				source.nextFrame();
+				skeleton.update(f,30f);
+				skeleton.copyJointsUnmirrored(global,0);
+				rotation.reset();
+				rotation.rotateY(f*0.013f);
+				rotation.rotateX(f*0.007f);
+				rotation.rotateZ(f*0.003f);
+				for (int i=0; i<global.length; i+=3) {
+					joint.set(global[i],global[i+1],global[i+2]);
+					rotation.mult(joint,rotated);
+					global[i] = rotated.x;
+					global[i+1] = rotated.y;
+					global[i+2] = rotated.z;
+				}
+
+				long start = System.nanoTime();
+				math.calculateLocalCoordSys(global);
+				math.getJointsLCS(global,analytic,Skeleton.JOINT_MASK_ALL);
+				long middle = System.nanoTime();
+				math.calculateLocalCoordSys(global);
+				PVector x = math.getOrientationX(), y = math.getOrientationY(), z = math.getOrientationZ(), origin = math.getOrigin();
+				transform.set(x.x,y.x,z.x,origin.x, x.y,y.y,z.y,origin.y, x.z,y.z,z.z,origin.z, 0f,0f,0f,1f);
+				inverse.set(transform);
+				inverse.invert();
+				for (int i=0; i<global.length; i+=3) {
+					joint.set(global[i],global[i+1],global[i+2]);
+					inverse.mult(joint,rotated);
+					inverted[i] = rotated.x;
+					inverted[i+1] = rotated.y;
+					inverted[i+2] = rotated.z;
+				}
+				long end = System.nanoTime();
+				if (run == RUNS-1) {
+					analyticNanos += middle-start;
+					invertedNanos += end-middle;
+				}
+				for (int i=0; i<global.length; i++) maxError = Math.max(maxError,Math.abs(analytic[i]-inverted[i]));
+			}
+		}
+		System.out.println(String.format("analytic inverse: %.0f ns per frame, PMatrix3D.invert: %.0f ns per frame, largest difference %.5f mm",
+				analyticNanos/(double)frames,invertedNanos/(double)frames,maxError));
+		if (maxError > MAX_ERROR) {
+			System.out.println("FAILED: the local joints differ by more than "+MAX_ERROR+" mm");
+			System.exit(1);
+		}
+		System.out.println("passed");
+	}
+}
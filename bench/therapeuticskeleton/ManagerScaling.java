@@ -0,0 +1,76 @@
+package therapeuticskeleton;
+
+/** Measures how the update time of SkeletonManager scales with the number of users and worker threads. Users are generated by a SyntheticJointSource, posture and gesture are evaluated.
+ *  Prints the time per update cycle for 1 to 16 users, sequentially and on as many threads as processors are available.
+ *  Before, it checks that an update interrupted while the workers run returns only when all skeletons are updated, and keeps the interrupt status. */
+public class ManagerScaling {
+
+	private static final int WARM_UP = 2000;
+	private static final int MEASURED = 3000;
+	private static final int[] USERS = {1,2,4,6,8,12,16};
+
+	public static void main (String[] _args) {
+		int processors = Runtime.getRuntime().availableProcessors();
+		checkInterrupt(Math.max(2,processors));
+
+		int[] threads = processors > 1 ? new int[] {1,processors} : new int[] {1};
+		System.out.println("processors: "+processors);
+		System.out.println("users\t"+(threads.length > 1 ? "1 thread [us]\t"+processors+" threads [us]\tspeedup" : "1 thread [us]"));
+		for (int u=0; u<USERS.length; u++) {
+			StringBuilder line = new StringBuilder().append(USERS[u]);
+			double sequential = 0;
+			for (int t=0; t<threads.length; t++) {
+				double micros = measure(USERS[u],threads[t]);
+				if (t == 0) sequential = micros;
+				line.append('\t').append(String.format("%.1f",micros));
+				if (t > 0) line.append("\t\t").append(String.format("%.2f",sequential/micros));
+			}
+			System.out.println(line);
+		}
+	}
+
+	// microseconds per update cycle
+	private static double measure (int _users, int _threads) {
+		SyntheticJointSource source = new SyntheticJointSource(30f);
+		source.setNumberOfUsers(_users);
+		SkeletonManager manager = new SkeletonManager(source,true,_threads);
+		manager.setEvaluatePostureAndGesture(true);
+		int frame = 0;
+		for (; frame<WARM_UP; frame++) {
+			source.nextFrame();
+			manager.update(frame,30f);
+		}
+		long start = System.nanoTime();
+		for (int end=frame+MEASURED; frame<end; frame++) {
+			source.nextFrame();
+			manager.update(frame,30f);
+		}
+		double micros = (System.nanoTime()-start)/1000.0/MEASURED;
+		manager.shutdown();
+		return micros;
+	}
+
+	// an interrupted caller must not return while workers still update skeletons, the tasks would be reused in the next update
+	private static void checkInterrupt (int _threads) {
+		SyntheticJointSource source = new SyntheticJointSource(30f);
+		source.setNumberOfUsers(SkeletonManager.MAX_USERS);
+		SkeletonManager manager = new SkeletonManager(source,true,_threads);
+		manager.setEvaluatePostureAndGesture(true);
+		for (int frame=0; frame<1000; frame++) {
+			source.nextFrame();
+			Thread.currentThread().interrupt();
+			manager.update(frame,30f);
+			if (!Thread.interrupted()) fail("update cleared the interrupt status");
+			for (int i=0; i<manager.getNumberOfSkeletons(); i++) {
+				if (manager.getSkeleton(i).getTimestamp() != source.getTimestamp(1)) fail("update returned before skeleton "+i+" was updated");
+			}
+		}
+		manager.shutdown();
+		System.out.println("interrupted updates complete: passed");
+	}
+
+	private static void fail (String _message) {
+		System.out.println("FAILED: "+_message);
+		System.exit(1);
+	}
+}
@@ -0,0 +1,46 @@
+package therapeuticskeleton;
+
+import java.util.Random;
+
+import processing.core.*;
+
+/** JointSource adding gaussian noise to the joint positions of another source, like the jitter of a depth sensor. Seeded, so the noise is reproducible. */
+public class NoisyJointSource implements JointSource {
+
+	private JointSource source;
+	private Random random;
+	private float deviation;
+
+	/** Constructor for the NoisyJointSource.
+	 *  @param _source the source of the joints
+	 *  @param _deviation the standard deviation of the noise in mm, per coordinate
+	 *  @param _seed the seed of the noise */
+	public NoisyJointSource (JointSource _source, float _deviation, long _seed) {
+		source = _source;
+		deviation = _deviation;
+		random = new Random(_seed);
+	}
+
+	public boolean fetchJoints (int _userId, int _jointMask, float[] _position, float[] _positionConfidence, PMatrix3D[] _orientation, float[] _orientationConfidence) {
+		if (!source.fetchJoints(_userId,_jointMask,_position,_positionConfidence,_orientation,_orientationConfidence)) return false;
+		for (int i=0; i<Skeleton.NUMBER_OF_JOINTS; i++) {
+			if ((_jointMask & (1<<i)) == 0) continue;
+			_position[i*3] += (float)random.nextGaussian()*deviation;
+			_position[i*3+1] += (float)random.nextGaussian()*deviation;
+			_position[i*3+2] += (float)random.nextGaussian()*deviation;
+		}
+		return true;
+	}
+
+	public long getTimestamp (int _userId) {
+		return source.getTimestamp(_userId);
+	}
+
+	public int getTrackedUsers (int[] _userIds) {
+		return source.getTrackedUsers(_userIds);
+	}
+
+	public void convertRealWorldToProjective (PVector _realWorld, PVector _projective) {
+		source.convertRealWorldToProjective(_realWorld,_projective);
+	}
+}
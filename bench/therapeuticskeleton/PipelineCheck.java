@@ -0,0 +1,134 @@
+package therapeuticskeleton;
+
+import java.io.File;
+import java.util.concurrent.locks.LockSupport;
+
+import processing.core.*;
+
+/** Checks the ring and the triple buffer of SkeletonPipeline for both back-pressure policies. A producer thread captures frames stamped with sequence numbers:
+ *  the frame count and every joint position and orientation of a frame are derived from its number. It reads the analyzed frames after every capture,
+ *  while the analysis thread records every raw frame it analyzes with a SkeletonRecorder. <br>
+ *  The recorded frames must be in strictly increasing order, i.e. without duplicates and reordering, and every frame must carry the joints of its number, i.e. not be torn.
+ *  Recorded and dropped frames must add up to the captured ones and match the metrics of the pipeline. Frames read through the triple buffer must be newer than
+ *  the frames read before, must not be torn and must not change while they are read. Fails with exit status 1. */
+public class PipelineCheck {
+
+	private static final int FRAMES = 100000;
+	private static final int RING_SIZE = 4;
+	private static final long DRAIN_TIMEOUT_MILLIS = 10000;
+	private static final int PAUSE_INTERVAL = 8;
+	private static final long PAUSE_NANOS = 50000L;
+
+	private static boolean failed = false;
+
+	public static void main (String[] _args) throws Exception {
+		check(SkeletonPipeline.BACK_PRESSURE_DROP_OLDEST,"drop oldest");
+		check(SkeletonPipeline.BACK_PRESSURE_BLOCK,"block");
+		if (failed) System.exit(1);
+		System.out.println("passed");
+	}
+
+	private static void check (short _backPressure, String _name) throws Exception {
+		File sessionFile = File.createTempFile("pipeline",".tskl");
+		sessionFile.deleteOnExit();
+		final SkeletonRecorder recorder = new SkeletonRecorder(sessionFile.getPath());
+		SequenceJointSource source = new SequenceJointSource();
+		SkeletonPipeline pipeline = new SkeletonPipeline(source,true,RING_SIZE,_backPressure);
+		// posture evaluation slows the analysis down, so the ring runs full
+		pipeline.getManager().setEvaluatePostureAndGesture(true);
+		pipeline.getManager().setListener(new SkeletonManagerListener() {
+			public void skeletonAdded (Skeleton _skeleton) { _skeleton.startRecording(recorder); }
+			public void skeletonRetired (Skeleton _skeleton) { _skeleton.stopRecording(); }
+		});
+		pipeline.start();
+
+		// the producer: capture and readLatest run on this thread, as on the draw thread of a sketch
+		Reader reader = new Reader();
+		long drops = 0;
+		for (int sequence=0; sequence<FRAMES; sequence++) {
+			source.setSequence(sequence);
+			if (!pipeline.capture(sequence,30f)) drops++;
+			reader.read(pipeline);
+			// pauses let the analysis thread catch up, so it takes frames while the ring is full as well as while it is nearly empty
+			if (sequence%PAUSE_INTERVAL == 0) LockSupport.parkNanos(PAUSE_NANOS);
+		}
+		long deadline = System.currentTimeMillis()+DRAIN_TIMEOUT_MILLIS;
+		while (pipeline.getAnalysisCount() < pipeline.getCaptureCount()-pipeline.getDropCount() && System.currentTimeMillis() < deadline) {
+			reader.read(pipeline);
+			Thread.sleep(1);
+		}
+		pipeline.stop();
+		reader.read(pipeline);
+		pipeline.getManager().shutdown();
+		recorder.close();
+
+		// every raw frame the analysis thread took, in the order it took them
+		SkeletonReplayer replayer = new SkeletonReplayer(sessionFile.getPath());
+		float[] position = new float[Skeleton.NUMBER_OF_JOINTS*3];
+		float[] positionConfidence = new float[Skeleton.NUMBER_OF_JOINTS];
+		PMatrix3D[] orientation = new PMatrix3D[Skeleton.NUMBER_OF_JOINTS];
+		float[] orientationConfidence = new float[Skeleton.NUMBER_OF_JOINTS];
+		for (int i=0; i<Skeleton.NUMBER_OF_JOINTS; i++) orientation[i] = new PMatrix3D();
+		int records = 0;
+		int last = -1;
+		int outOfOrder = 0;
+		int torn = 0;
+		while (replayer.nextFrame()) {
+			int sequence = replayer.getFrameCount();
+			if (sequence <= last) outOfOrder++;
+			last = sequence;
+			replayer.fetchJoints(1,Skeleton.JOINT_MASK_ALL,position,positionConfidence,orientation,orientationConfidence);
+			if (!SequenceJointSource.matches(sequence,position,orientation)) torn++;
+			records++;
+		}
+
+		System.out.println(String.format("%s: captured %d, analyzed %d, dropped %d, recorded %d, read %d, max queue depth %d, blocked %.1f ms",
+				_name,pipeline.getCaptureCount(),pipeline.getAnalysisCount(),pipeline.getDropCount(),records,reader.reads,pipeline.getMaxQueueDepth(),pipeline.getBlockedNanos()/1e6));
+		check(outOfOrder == 0,_name+": "+outOfOrder+" raw frames analyzed twice or out of order");
+		check(torn == 0,_name+": "+torn+" torn raw frames analyzed");
+		check(pipeline.getCaptureCount() == FRAMES,_name+": capture count "+FRAMES+" expected");
+		check(pipeline.getDropCount() == drops,_name+": drop count does not match the captures that dropped a frame");
+		check(records == pipeline.getAnalysisCount(),_name+": analysis count does not match the analyzed raw frames");
+		check(records+pipeline.getDropCount() == FRAMES,_name+": analyzed and dropped raw frames do not add up to the captured ones");
+		check(last == FRAMES-1,_name+": the last raw frame was not analyzed");
+		check(pipeline.getMaxQueueDepth() <= RING_SIZE,_name+": queue deeper than the ring");
+		if (_backPressure == SkeletonPipeline.BACK_PRESSURE_BLOCK) {
+			check(pipeline.getDropCount() == 0,_name+": raw frames dropped");
+		}
+		check(reader.outOfOrder == 0,_name+": "+reader.outOfOrder+" frames read twice or out of order");
+		check(reader.torn == 0,_name+": "+reader.torn+" torn frames read");
+		check(reader.changed == 0,_name+": "+reader.changed+" frames changed while they were read");
+		check(reader.last == FRAMES-1,_name+": the last analyzed frame was not read");
+	}
+
+	// reads the analyzed frames on the producer thread
+	private static class Reader {
+		private float[] joints = new float[Skeleton.NUMBER_OF_JOINTS*3];
+		private int last = -1;
+		private long reads = 0;
+		private int outOfOrder = 0;
+		private int torn = 0;
+		private int changed = 0;
+		private void read (SkeletonPipeline _pipeline) {
+			boolean fresh = _pipeline.readLatest();
+			SkeletonFrame frame = _pipeline.getFrame(0);
+			if (frame == null) return;
+			int sequence = frame.getFrameCount();
+			if (fresh) {
+				if (sequence <= last) outOfOrder++;
+				reads++;
+			} else if (sequence != last) {
+				changed++;
+			}
+			last = sequence;
+			frame.copyJoints(joints,0);
+			if (!SequenceJointSource.matches(sequence,joints,null) || frame.getFrameCount() != sequence) torn++;
+		}
+	}
+
+	private static void check (boolean _condition, String _message) {
+		if (_condition) return;
+		System.out.println("FAILED: "+_message);
+		failed = true;
+	}
+}
@@ -0,0 +1,83 @@
+package therapeuticskeleton;
+
+import processing.core.*;
+
+/** JointSource for one user standing 2 m in front of the sensor, whose arms are posed directly by directions of the limbs.
+ *  Every call of setArms starts a new frame, frames are 1/30 second apart. Joints of the legs stay at the origin, use it for upper body tracking. */
+public class PoseJointSource implements JointSource {
+
+	private static final float UPPER_ARM_LENGTH = 300f;
+	private static final float LOWER_ARM_LENGTH = 280f;
+	private static final long FRAME_NANOS = 1000000000L/30;
+
+	private float[] position = new float[Skeleton.NUMBER_OF_JOINTS*3];
+	private long frameCount = 0;
+	private PVector shoulder = new PVector();
+	private PVector elbow = new PVector();
+
+	/** Constructor for the PoseJointSource, with hanging arms. */
+	public PoseJointSource () {
+		set(Skeleton.HEAD,0f,500f,2000f);
+		set(Skeleton.NECK,0f,300f,2000f);
+		set(Skeleton.TORSO,0f,0f,2000f);
+		set(Skeleton.LEFT_SHOULDER,-200f,300f,2000f);
+		set(Skeleton.RIGHT_SHOULDER,200f,300f,2000f);
+		setArms(new PVector(0f,-1f,0f),new PVector(0f,-1f,0f),new PVector(0f,-1f,0f),new PVector(0f,-1f,0f));
+	}
+
+	/** Poses the arms and starts a new frame. Directions are in the global coordinate system of the sensor, x to the right of the user, y up, z away from the sensor.
+	 *  @param _leftUpperArm direction from left shoulder to left elbow, normalized here
+	 *  @param _leftLowerArm direction from left elbow to left hand, normalized here
+	 *  @param _rightUpperArm direction from right shoulder to right elbow, normalized here
+	 *  @param _rightLowerArm direction from right elbow to right hand, normalized here */
+	public void setArms (PVector _leftUpperArm, PVector _leftLowerArm, PVector _rightUpperArm, PVector _rightLowerArm) {
+		setArm(Skeleton.LEFT_SHOULDER,Skeleton.LEFT_ELBOW,Skeleton.LEFT_HAND,_leftUpperArm,_leftLowerArm);
+		setArm(Skeleton.RIGHT_SHOULDER,Skeleton.RIGHT_ELBOW,Skeleton.RIGHT_HAND,_rightUpperArm,_rightLowerArm);
+		frameCount++;
+	}
+
+	public boolean fetchJoints (int _userId, int _jointMask, float[] _position, float[] _positionConfidence, PMatrix3D[] _orientation, float[] _orientationConfidence) {
+		for (int i=0; i<Skeleton.NUMBER_OF_JOINTS; i++) {
+			if ((_jointMask & (1<<i)) == 0) continue;
+			System.arraycopy(position,i*3,_position,i*3,3);
+			_positionConfidence[i] = 1f;
+			_orientation[i].reset();
+			_orientationConfidence[i] = 1f;
+		}
+		return true;
+	}
+
+	public long getTimestamp (int _userId) {
+		return frameCount*FRAME_NANOS;
+	}
+
+	public int getTrackedUsers (int[] _userIds) {
+		if (_userIds.length == 0) return 0;
+		_userIds[0] = 1;
+		return 1;
+	}
+
+	public void convertRealWorldToProjective (PVector _realWorld, PVector _projective) {
+		_projective.set(_realWorld);
+	}
+
+	// -----------------------------------------------------------------
+	// PRIVATE HELPER METHODS
+	private void setArm (short _shoulder, short _elbow, short _hand, PVector _upperArm, PVector _lowerArm) {
+		shoulder.set(position[_shoulder*3],position[_shoulder*3+1],position[_shoulder*3+2]);
+		elbow.set(_upperArm);
+		elbow.normalize();
+		elbow.mult(UPPER_ARM_LENGTH);
+		elbow.add(shoulder);
+		set(_elbow,elbow.x,elbow.y,elbow.z);
+		shoulder.set(_lowerArm);
+		shoulder.normalize();
+		shoulder.mult(LOWER_ARM_LENGTH);
+		set(_hand,elbow.x+shoulder.x,elbow.y+shoulder.y,elbow.z+shoulder.z);
+	}
+	private void set (short _joint, float _x, float _y, float _z) {
+		position[_joint*3] = _x;
+		position[_joint*3+1] = _y;
+		position[_joint*3+2] = _z;
+	}
+}
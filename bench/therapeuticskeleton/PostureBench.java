@@ -0,0 +1,334 @@
+package therapeuticskeleton;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import processing.core.*;
+
+/** Compares the table-driven SkeletonPosture with the hand-written evaluator it replaced, kept here as PreviousPosture.
+ *  Random arm poses, many of them close to the postures, are evaluated by both at random tolerances. Then the recorded sessions bench/data/postures.tskl and
+ *  bench/data/repetitions.tskl are replayed at tolerances 0 to 1, so the noisy transitions of real movements through the thresholds are covered.
+ *  Both must recognize the same posture, except for M_SHAPE and W_SHAPE, which the previous evaluator did not implement.
+ *  The ideal postures of the recording, with perfectly straight limbs and arms parallel to the body axes, must be recognized with finite angle features
+ *  at every tolerance. The previous evaluator clamps its angles like SkeletonFeatures, without that it got NaN for parallel vectors.
+ *  The match scores must agree with the evaluation: the recognized posture scores 1 and is the best scoring posture, no other posture scores 1,
+ *  and all scores are within 0..1. Evaluation plus scores must not take longer than the previous evaluator.
+ *  Prints the time per evaluation of both for the random poses. Fails with exit status 1. <br>
+ *  bench/run.sh PostureBench [poses], default 400000 poses. Times are measured over the second half.
+ *  bench/run.sh PostureBench record writes bench/data/postures.tskl again. */
+public class PostureBench {
+
+	// arm directions the random poses are built from, x of the left arm mirrored
+	private static final PVector[] DIRECTIONS = {
+		new PVector(0f,1f,0f), new PVector(0f,-1f,0f), new PVector(1f,0f,0f), new PVector(1f,1f,0f), new PVector(1f,-1f,0f),
+		new PVector(0f,0f,-1f), new PVector(0f,-1f,-1f), new PVector(-1f,1f,0f), new PVector(-1f,-1f,0f)
+	};
+	private static final float DIRECTION_NOISE = 0.12f;
+
+	private static final String[] SESSIONS = {"bench/data/postures.tskl","bench/data/repetitions.tskl"};
+	private static final float[] SESSION_TOLERANCES = {0f,0.25f,0.5f,0.75f,1f};
+	// the recorded movement: from hanging arms into each posture and back, 8 mm sensor noise. directions of left upper, left lower, right upper, right lower arm
+	private static final PVector[] HANGING = {new PVector(-0.3f,-1f,0f),new PVector(-0.3f,-1f,0f),new PVector(0.3f,-1f,0f),new PVector(0.3f,-1f,0f)};
+	private static final PVector[][] RECORDED_POSTURES = {
+		{new PVector(-1f,1f,0f),new PVector(-1f,1f,0f),new PVector(1f,1f,0f),new PVector(1f,1f,0f)},		// V_SHAPE
+		{new PVector(-1f,-1f,0f),new PVector(-1f,-1f,0f),new PVector(1f,-1f,0f),new PVector(1f,-1f,0f)},	// A_SHAPE
+		{new PVector(-1f,0f,0f),new PVector(0f,1f,0f),new PVector(1f,0f,0f),new PVector(0f,1f,0f)},			// U_SHAPE
+		{new PVector(-1f,0f,0f),new PVector(0f,-1f,0f),new PVector(1f,0f,0f),new PVector(0f,-1f,0f)},		// N_SHAPE
+		{new PVector(0f,1f,0f),new PVector(0f,1f,0f),new PVector(0f,1f,0f),new PVector(0f,1f,0f)},			// I_SHAPE
+		{new PVector(0f,-1f,-1f),new PVector(0f,-1f,-1f),new PVector(0f,-1f,-1f),new PVector(0f,-1f,-1f)}	// HANDS_FORWARD_DOWN_POSE
+	};
+	private static final short[] RECORDED_POSTURE_CONSTANTS = {SkeletonPosture.V_SHAPE,SkeletonPosture.A_SHAPE,SkeletonPosture.U_SHAPE,SkeletonPosture.N_SHAPE,
+		SkeletonPosture.I_SHAPE,SkeletonPosture.HANDS_FORWARD_DOWN_POSE};
+	private static final int TRANSITION_FRAMES = 60;
+	private static final int HOLD_FRAMES = 30;
+	private static final float SENSOR_NOISE = 8f;
+
+	private static Random random = new Random(3);
+	private static int[] recognized = new int[SkeletonPosture.NUMBER_OF_POSES];
+	private static int mismatches = 0;
+	private static int idealFailures = 0;
+	private static int scoreFailures = 0;
+	private static float[] scores = new float[SkeletonPosture.NUMBER_OF_POSES];
+	private static int newShapes = 0;
+
+	public static void main (String[] _args) throws Exception {
+		if (_args.length > 0 && _args[0].equals("record")) {
+			record();
+			return;
+		}
+		int numberOfPoses = _args.length > 0 ? Integer.parseInt(_args[0]) : 400000;
+		PoseJointSource source = new PoseJointSource();
+		Skeleton skeleton = new Skeleton(source,1,false);
+		skeleton.setEvaluateStatistics(false,null);
+		SkeletonPosture posture = new SkeletonPosture(skeleton);
+		PreviousPosture previous = new PreviousPosture(skeleton);
+		long nanos = 0, scoreNanos = 0, previousNanos = 0;
+		PVector rightUpperArm = new PVector(), rightLowerArm = new PVector();
+		for (int f=0; f<numberOfPoses; f++) {
+			float tolerance = f%4 == 0 ? random.nextFloat() : 0.5f;
+			posture.setPostureTolerance(tolerance);
+			previous.setPostureTolerance(tolerance);
+			PVector leftUpperArm = direction(true), leftLowerArm = direction(true);
+			if (random.nextBoolean()) {
+				// nearly symmetric arms, like most postures
+				rightUpperArm.set(-leftUpperArm.x+(float)random.nextGaussian()*0.05f,leftUpperArm.y,leftUpperArm.z);
+				rightLowerArm.set(-leftLowerArm.x,leftLowerArm.y+(float)random.nextGaussian()*0.05f,leftLowerArm.z);
+			} else {
+				rightUpperArm.set(direction(false));
+				rightLowerArm.set(direction(false));
+			}
+			source.setArms(leftUpperArm,leftLowerArm,rightUpperArm,rightLowerArm);
+			skeleton.update(f,30f);
+			// arm vectors and LCS joints are shared by both evaluators, calculate them before timing
+			skeleton.getLeftUpperArmLCS();
+			skeleton.getJointLCS(Skeleton.LEFT_HAND);
+
+			long start = System.nanoTime();
+			posture.evaluate();
+			short current = posture.getCurrentUpperBodyPosture();
+			long evaluated = System.nanoTime();
+			posture.copyPostureScores(scores);
+			long middle = System.nanoTime();
+			short expected = previous.evaluate();
+			long end = System.nanoTime();
+			if (f >= numberOfPoses/2) {
+				nanos += evaluated-start;
+				scoreNanos += middle-evaluated;
+				previousNanos += end-middle;
+			}
+			compare(current,expected,tolerance,"random pose");
+			checkScores(posture,"random pose");
+		}
+		System.out.println(numberOfPoses+" random poses, recognized per posture "+Arrays.toString(recognized)+", "+newShapes+" M or W shapes not known before");
+		System.out.println(String.format("table: %.0f ns per evaluation, %.0f ns for the scores, previous: %.0f ns per evaluation",
+				nanos/(numberOfPoses/2.0),scoreNanos/(numberOfPoses/2.0),previousNanos/(numberOfPoses/2.0)));
+		boolean scoresTooSlow = nanos+scoreNanos > previousNanos;
+
+		checkIdealPostures();
+
+		for (int s=0; s<SESSIONS.length; s++) {
+			Arrays.fill(recognized,0);
+			newShapes = 0;
+			SkeletonReplayer replayer = new SkeletonReplayer(SESSIONS[s]);
+			Skeleton replayed = new Skeleton(replayer,1,false);
+			replayed.setEvaluateStatistics(false,null);
+			SkeletonPosture replayedPosture = new SkeletonPosture(replayed);
+			PreviousPosture replayedPrevious = new PreviousPosture(replayed);
+			int frames = 0;
+			for (int t=0; t<SESSION_TOLERANCES.length; t++) {
+				replayedPosture.setPostureTolerance(SESSION_TOLERANCES[t]);
+				replayedPrevious.setPostureTolerance(SESSION_TOLERANCES[t]);
+				replayer.rewind();
+				while (replayer.nextFrame()) {
+					replayed.update(replayer.getFrameCount(),replayer.getFrameRate());
+					replayedPosture.evaluate();
+					compare(replayedPosture.getCurrentUpperBodyPosture(),replayedPrevious.evaluate(),SESSION_TOLERANCES[t],SESSIONS[s]+" frame "+replayer.getFrameCount());
+					checkScores(replayedPosture,SESSIONS[s]+" frame "+replayer.getFrameCount());
+					frames++;
+				}
+			}
+			System.out.println(SESSIONS[s]+": "+frames+" frames at "+SESSION_TOLERANCES.length+" tolerances, recognized per posture "+Arrays.toString(recognized)+", "+newShapes+" M or W shapes not known before");
+		}
+		if (mismatches > 0) System.out.println("FAILED: "+mismatches+" poses recognized differently");
+		if (idealFailures > 0) System.out.println("FAILED: "+idealFailures+" ideal postures not recognized or with NaN angles");
+		if (scoreFailures > 0) System.out.println("FAILED: "+scoreFailures+" poses with scores that do not agree with the recognized posture");
+		if (scoresTooSlow) System.out.println("FAILED: evaluation plus scores slower than the previous evaluator");
+		if (mismatches > 0 || idealFailures > 0 || scoreFailures > 0 || scoresTooSlow) System.exit(1);
+		System.out.println("passed");
+	}
+
+	private static void compare (short _current, short _expected, float _tolerance, String _pose) {
+		recognized[_current]++;
+		if (_current == _expected) return;
+		if ((_current == SkeletonPosture.M_SHAPE || _current == SkeletonPosture.W_SHAPE) && _expected == SkeletonPosture.NO_POSE) {
+			newShapes++;
+		} else {
+			mismatches++;
+			if (mismatches <= 10) System.out.println("mismatch: "+_current+" instead of "+_expected+" at tolerance "+_tolerance+", "+_pose);
+		}
+	}
+
+	private static void checkScores (SkeletonPosture _posture, String _pose) {
+		short current = _posture.getCurrentUpperBodyPosture();
+		_posture.copyPostureScores(scores);
+		String failure = null;
+		for (short p=0; p<SkeletonPosture.NUMBER_OF_POSES; p++) {
+			if (!(scores[p] >= 0f && scores[p] <= 1f) || scores[p] != _posture.getPostureScore(p)) failure = "score "+scores[p]+" of posture "+p;
+			else if (p != SkeletonPosture.NO_POSE && p != current && scores[p] == 1f) failure = "posture "+p+" scores 1 but is not recognized";
+		}
+		if (current != SkeletonPosture.NO_POSE) {
+			if (scores[current] != 1f) failure = "recognized posture "+current+" scores "+scores[current];
+			else if (_posture.getBestScoringPosture() != current) failure = "best scoring posture "+_posture.getBestScoringPosture()+" instead of "+current;
+		}
+		if (failure == null) return;
+		scoreFailures++;
+		if (scoreFailures <= 10) System.out.println(failure+", "+_pose);
+	}
+
+	// exactly parallel vectors, e.g. the upper and lower arm of a straight arm, must give angles of 0 or 180 degrees, not NaN
+	private static void checkIdealPostures () {
+		PoseJointSource source = new PoseJointSource();
+		Skeleton skeleton = new Skeleton(source,1,false);
+		skeleton.setEvaluateStatistics(false,null);
+		SkeletonPosture posture = new SkeletonPosture(skeleton);
+		int frame = 0;
+		for (int t=0; t<SESSION_TOLERANCES.length; t++) {
+			posture.setPostureTolerance(SESSION_TOLERANCES[t]);
+			for (int p=0; p<RECORDED_POSTURES.length; p++) {
+				// the same pose in several frames, the rounding of the LCS transformation differs with the frame
+				for (int f=0; f<HOLD_FRAMES; f++) {
+					PVector[] arms = RECORDED_POSTURES[p];
+					source.setArms(arms[0],arms[1],arms[2],arms[3]);
+					skeleton.update(frame++,30f);
+					posture.evaluate();
+					short current = posture.getCurrentUpperBodyPosture();
+					checkScores(posture,"ideal posture "+RECORDED_POSTURE_CONSTANTS[p]);
+					// the sum of opposite upper arms has no direction
+					boolean opposite = PVector.add(arms[0],arms[2]).mag() == 0f;
+					short nan = -1;
+					for (short feature=0; feature<SkeletonFeatures.NUMBER_OF_FEATURES; feature++) {
+						if (Float.isNaN(skeleton.getFeature(feature)) && !(opposite && feature == SkeletonFeatures.ANGLE_UPPER_ARMS_TO_Y)) nan = feature;
+					}
+					if (current == RECORDED_POSTURE_CONSTANTS[p] && nan < 0) continue;
+					idealFailures++;
+					if (idealFailures <= 10) System.out.println("ideal posture "+RECORDED_POSTURE_CONSTANTS[p]+" recognized as "+current+" at tolerance "+SESSION_TOLERANCES[t]+(nan >= 0 ? ", feature "+nan+" is NaN" : ""));
+				}
+			}
+		}
+		System.out.println(RECORDED_POSTURES.length+" ideal postures with straight limbs in "+frame+" frames, "+idealFailures+" not recognized");
+	}
+
+	private static void record () throws Exception {
+		PoseJointSource source = new PoseJointSource();
+		Skeleton skeleton = new Skeleton(new NoisyJointSource(source,SENSOR_NOISE,5),1,false);
+		SkeletonRecorder recorder = new SkeletonRecorder(SESSIONS[0]);
+		skeleton.startRecording(recorder);
+		PVector[] arms = {new PVector(),new PVector(),new PVector(),new PVector()};
+		int frame = 0;
+		for (int p=0; p<RECORDED_POSTURES.length; p++) {
+			int frames = 2*TRANSITION_FRAMES+HOLD_FRAMES;
+			for (int f=0; f<frames; f++) {
+				// smooth in and out, like a patient moving into the posture, holding it and relaxing again
+				float t = f < TRANSITION_FRAMES ? (float)f/TRANSITION_FRAMES : f < TRANSITION_FRAMES+HOLD_FRAMES ? 1f : (float)(frames-f)/TRANSITION_FRAMES;
+				t = 0.5f-0.5f*PApplet.cos(PApplet.PI*t);
+				for (int a=0; a<arms.length; a++) {
+					PVector to = RECORDED_POSTURES[p][a];
+					arms[a].set(PApplet.lerp(HANGING[a].x,to.x,t),PApplet.lerp(HANGING[a].y,to.y,t),PApplet.lerp(HANGING[a].z,to.z,t));
+				}
+				source.setArms(arms[0],arms[1],arms[2],arms[3]);
+				skeleton.update(frame++,30f);
+			}
+		}
+		recorder.close();
+		System.out.println("recorded "+recorder.getNumberOfFrames()+" frames to "+SESSIONS[0]);
+	}
+
+	private static PVector direction (boolean _mirror) {
+		PVector direction = DIRECTIONS[random.nextInt(DIRECTIONS.length)].get();
+		if (_mirror) direction.x = -direction.x;
+		direction.normalize();
+		direction.add((float)random.nextGaussian()*DIRECTION_NOISE,(float)random.nextGaussian()*DIRECTION_NOISE,(float)random.nextGaussian()*DIRECTION_NOISE);
+		direction.normalize();
+		return direction;
+	}
+
+	// the posture evaluation before the condition table, one method per posture
+	private static class PreviousPosture {
+		private Skeleton skeleton;
+		private float postureTolerance = 0.5f;
+		private float postureAngleTolerance = PApplet.radians(20)*postureTolerance;
+
+		private PreviousPosture (Skeleton _skeleton) {
+			skeleton = _skeleton;
+		}
+		private void setPostureTolerance (float _postureTolerance) {
+			postureTolerance = _postureTolerance >= 0f && _postureTolerance <= 1f ? _postureTolerance : 0.5f;
+			postureAngleTolerance = PApplet.radians(20)*postureTolerance;
+		}
+		private short evaluate () {
+			if (evaluateVShape()) return SkeletonPosture.V_SHAPE;
+			else if (evaluateAShape()) return SkeletonPosture.A_SHAPE;
+			else if (evaluateUShape()) return SkeletonPosture.U_SHAPE;
+			else if (evaluateNShape()) return SkeletonPosture.N_SHAPE;
+			else if (evaluateOShape()) return SkeletonPosture.O_SHAPE;
+			else if (evaluateIShape()) return SkeletonPosture.I_SHAPE;
+			else if (evaluateHandsForwardDownPose()) return SkeletonPosture.HANDS_FORWARD_DOWN_POSE;
+			return SkeletonPosture.NO_POSE;
+		}
+
+		// angles are clamped as in SkeletonFeatures, PVector.angleBetween returns NaN for parallel vectors
+		private static float angleBetween (PVector _a, PVector _b) {
+			double dot = _a.x*_b.x+_a.y*_b.y+_a.z*_b.z;
+			double cos = dot/(Math.sqrt(_a.x*_a.x+_a.y*_a.y+_a.z*_a.z)*Math.sqrt(_b.x*_b.x+_b.y*_b.y+_b.z*_b.z));
+			return (float)Math.acos(Math.max(-1.0,Math.min(1.0,cos)));
+		}
+		private boolean evaluateIShape () {
+			float angleLArm = angleBetween(skeleton.getLeftUpperArmLCS(),skeleton.getLeftLowerArmLCS());
+			float angleRArm = angleBetween(skeleton.getRightUpperArmLCS(),skeleton.getRightLowerArmLCS());
+			float angleIShape = angleBetween(skeleton.getLeftUpperArmLCS(),skeleton.getRightUpperArmLCS());
+			float angleToBodyY = angleBetween(skeleton.getLeftUpperArmLCS(),skeleton.getOrientationY());
+			return SkeletonMath.isValueBetween(angleLArm,0,PApplet.radians(10)+postureAngleTolerance) && SkeletonMath.isValueBetween(angleRArm,0,PApplet.radians(10)+postureAngleTolerance)
+					&& SkeletonMath.isValueBetween(angleIShape,0,PApplet.radians(15)+postureAngleTolerance)
+					&& (SkeletonMath.isValueBetween(angleToBodyY,0,PApplet.radians(15)+postureAngleTolerance) || SkeletonMath.isValueBetween(angleToBodyY,PApplet.radians(165)-postureAngleTolerance,PApplet.radians(180)));
+		}
+		private boolean evaluateOShape () {
+			PVector rHandlHand = PVector.sub(skeleton.getJointLCS(Skeleton.RIGHT_HAND),skeleton.getJointLCS(Skeleton.LEFT_HAND));
+			if (!SkeletonMath.isValueBetween(rHandlHand.mag(),0,100+(100*postureTolerance))) return false;
+			float angleLUpper = angleBetween(skeleton.getLeftUpperArmLCS(),skeleton.getOrientationY());
+			float angleRUpper = angleBetween(skeleton.getRightUpperArmLCS(),skeleton.getOrientationY());
+			float angleLLower = angleBetween(skeleton.getLeftLowerArmLCS(),skeleton.getLeftUpperArmLCS());
+			float angleRLower = angleBetween(skeleton.getRightLowerArmLCS(),skeleton.getRightUpperArmLCS());
+			float angleToBody = angleBetween(PVector.add(skeleton.getLeftUpperArmLCS(),skeleton.getRightUpperArmLCS()),skeleton.getOrientationY());
+			return SkeletonMath.isValueBetween(angleLUpper,PApplet.radians(40)-postureAngleTolerance,PApplet.radians(50)+postureAngleTolerance) && SkeletonMath.isValueBetween(angleRUpper,PApplet.radians(40)-postureAngleTolerance,PApplet.radians(50)+postureAngleTolerance)
+					&& SkeletonMath.isValueBetween(angleLLower,PApplet.radians(95)-postureAngleTolerance,PApplet.radians(105)+postureAngleTolerance) && SkeletonMath.isValueBetween(angleRLower,PApplet.radians(95)-postureAngleTolerance,PApplet.radians(105)+postureAngleTolerance)
+					&& SkeletonMath.isValueBetween(angleToBody,0,PApplet.radians(15)+postureAngleTolerance);
+		}
+		private boolean evaluateNShape () {
+			float angleL = angleBetween(skeleton.getLeftUpperArmLCS(),skeleton.getLeftLowerArmLCS());
+			float angleR = angleBetween(skeleton.getRightUpperArmLCS(),skeleton.getRightLowerArmLCS());
+			float angleNShape = angleBetween(skeleton.getLeftUpperArmLCS(),skeleton.getRightUpperArmLCS());
+			float angleToBodyY = angleBetween(skeleton.getLeftLowerArmLCS(),skeleton.getOrientationY());
+			return SkeletonMath.isValueBetween(angleL,PApplet.radians(85)-postureAngleTolerance,PApplet.radians(95)+postureAngleTolerance) && SkeletonMath.isValueBetween(angleR,PApplet.radians(85)-postureAngleTolerance,PApplet.radians(95)+postureAngleTolerance)
+					&& SkeletonMath.isValueBetween(angleNShape,PApplet.radians(170)-postureAngleTolerance,PApplet.radians(180))
+					&& SkeletonMath.isValueBetween(angleToBodyY,PApplet.radians(165)-postureAngleTolerance,PApplet.radians(180));
+		}
+		private boolean evaluateUShape () {
+			float angleL = angleBetween(skeleton.getLeftUpperArmLCS(),skeleton.getLeftLowerArmLCS());
+			float angleR = angleBetween(skeleton.getRightUpperArmLCS(),skeleton.getRightLowerArmLCS());
+			float angleUShape = angleBetween(skeleton.getLeftUpperArmLCS(),skeleton.getRightUpperArmLCS());
+			float angleToBodyY = angleBetween(skeleton.getLeftLowerArmLCS(),skeleton.getOrientationY());
+			return SkeletonMath.isValueBetween(angleL,PApplet.radians(85)-postureAngleTolerance,PApplet.radians(95)+postureAngleTolerance) && SkeletonMath.isValueBetween(angleR,PApplet.radians(85)-postureAngleTolerance,PApplet.radians(95)+postureAngleTolerance)
+					&& SkeletonMath.isValueBetween(angleUShape,PApplet.radians(170)-postureAngleTolerance,PApplet.radians(180))
+					&& SkeletonMath.isValueBetween(angleToBodyY,0,PApplet.radians(15)+postureAngleTolerance);
+		}
+		private boolean evaluateAShape () {
+			float angleL = angleBetween(skeleton.getLeftUpperArmLCS(),skeleton.getLeftLowerArmLCS());
+			float angleR = angleBetween(skeleton.getRightUpperArmLCS(),skeleton.getRightLowerArmLCS());
+			float angleAShape = angleBetween(skeleton.getLeftUpperArmLCS(),skeleton.getRightUpperArmLCS());
+			float angleToBody = angleBetween(PVector.add(skeleton.getLeftUpperArmLCS(),skeleton.getRightUpperArmLCS()),skeleton.getOrientationY());
+			return SkeletonMath.isValueBetween(angleL,0,PApplet.radians(10)+postureAngleTolerance) && SkeletonMath.isValueBetween(angleR,0,PApplet.radians(10)+postureAngleTolerance)
+					&& SkeletonMath.isValueBetween(angleAShape,PApplet.radians(85)-postureAngleTolerance,PApplet.radians(95)+postureAngleTolerance)
+					&& SkeletonMath.isValueBetween(angleToBody,PApplet.radians(165)-postureAngleTolerance,PApplet.radians(180));
+		}
+		private boolean evaluateVShape () {
+			float angleL = angleBetween(skeleton.getLeftUpperArmLCS(),skeleton.getLeftLowerArmLCS());
+			float angleR = angleBetween(skeleton.getRightUpperArmLCS(),skeleton.getRightLowerArmLCS());
+			float angleVShape = angleBetween(skeleton.getLeftUpperArmLCS(),skeleton.getRightUpperArmLCS());
+			float angleToBody = angleBetween(PVector.add(skeleton.getLeftUpperArmLCS(),skeleton.getRightUpperArmLCS()),skeleton.getOrientationY());
+			return SkeletonMath.isValueBetween(angleL,0,PApplet.radians(10)+postureAngleTolerance) && SkeletonMath.isValueBetween(angleR,0,PApplet.radians(10)+postureAngleTolerance)
+					&& SkeletonMath.isValueBetween(angleVShape,PApplet.radians(85)-postureAngleTolerance,PApplet.radians(95)+postureAngleTolerance)
+					&& SkeletonMath.isValueBetween(angleToBody,0,PApplet.radians(15)+postureAngleTolerance);
+		}
+		private boolean evaluateHandsForwardDownPose () {
+			float angleL = angleBetween(skeleton.getLeftUpperArmLCS(),skeleton.getLeftLowerArmLCS());
+			float angleR = angleBetween(skeleton.getRightUpperArmLCS(),skeleton.getRightLowerArmLCS());
+			float angleUpperArms = angleBetween(skeleton.getLeftUpperArmLCS(),skeleton.getRightUpperArmLCS());
+			float angleDownward = angleBetween(skeleton.getLeftUpperArmLCS(),skeleton.getOrientationY());
+			float angleForward = angleBetween(skeleton.getLeftUpperArmLCS(),skeleton.getOrientationZ());
+			return SkeletonMath.isValueBetween(angleL,0,PApplet.radians(10)+postureAngleTolerance) && SkeletonMath.isValueBetween(angleR,0,PApplet.radians(10)+postureAngleTolerance)
+					&& SkeletonMath.isValueBetween(angleUpperArms,0,PApplet.radians(15)+postureAngleTolerance)
+					&& SkeletonMath.isValueBetween(angleDownward,PApplet.radians(130)-postureAngleTolerance,PApplet.radians(140)+postureAngleTolerance)
+					&& SkeletonMath.isValueBetween(angleForward,PApplet.radians(90),PApplet.radians(180));
+		}
+	}
+}
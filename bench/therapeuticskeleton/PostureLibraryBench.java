@@ -0,0 +1,207 @@
+package therapeuticskeleton;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.util.Random;
+
+/** Compares the interval index of PostureLibrary with a brute-force evaluator, which checks the constraints of all postures one by one in file order with acos and sqrt.
+ *  Libraries of 9 and 200 random postures are written to files and loaded. Each posture has 2 to 5 angle and distance constraints on a shared pool of features,
+ *  centered on a random prototype pose. Half of the random frames are noisy prototypes, so postures are recognized, the other half are random joints.
+ *  At tolerances 0, 0.5 and 1 both must recognize the same posture. Frames with a feature closer to a bound than float precision resolves are skipped.
+ *  The second half of the frames measures the time per classification of the index and of the brute-force evaluator. Fails with exit status 1. <br>
+ *  bench/run.sh PostureLibraryBench [frames], default 100000 frames per case. */
+public class PostureLibraryBench {
+
+	private static final int[] NUMBERS_OF_POSTURES = {9,200};
+	private static final float[] TOLERANCES = {0f,0.5f,1f};
+	private static final String[] JOINT_NAMES = {"HEAD","NECK","LEFT_SHOULDER","LEFT_ELBOW","LEFT_HAND","RIGHT_SHOULDER","RIGHT_ELBOW","RIGHT_HAND",
+		"TORSO","LEFT_HIP","LEFT_KNEE","LEFT_FOOT","RIGHT_HIP","RIGHT_KNEE","RIGHT_FOOT"};
+	private static final String[] AXIS_NAMES = {"X","Y","Z"};
+	private static final int ANGLE_LIMBS = 0;
+	private static final int ANGLE_AXIS = 1;
+	private static final int DISTANCE = 2;
+	private static final int FEATURE_POOL = 16;
+	private static final int PROTOTYPES = 12;
+	// coordinates of random joints in mm, noise of the prototypes in mm per coordinate
+	private static final float JOINT_RANGE = 600f;
+	private static final float PROTOTYPE_NOISE = 40f;
+	// features closer to a bound are resolved differently by acos and the negative cosine of the index
+	private static final double ANGLE_EPSILON = 2e-3;
+	private static final double DISTANCE_EPSILON = 1e-2;
+
+	private static Random random = new Random(11);
+	private static boolean failed = false;
+
+	public static void main (String[] _args) throws Exception {
+		int frames = _args.length > 0 ? Integer.parseInt(_args[0]) : 100000;
+		// features as {type, joint, joint, joint or axis, joint}
+		int[][] pool = new int[FEATURE_POOL][];
+		for (int f=0; f<FEATURE_POOL; f++) pool[f] = randomFeature(f%3);
+		float[][] prototypes = new float[PROTOTYPES][];
+		for (int p=0; p<PROTOTYPES; p++) prototypes[p] = randomJoints();
+		float[][] testFrames = new float[2*frames][];
+		for (int i=0; i<testFrames.length; i++) {
+			testFrames[i] = random.nextBoolean() ? noisy(prototypes[random.nextInt(PROTOTYPES)]) : randomJoints();
+		}
+
+		for (int n : NUMBERS_OF_POSTURES) {
+			File file = File.createTempFile("postures",".txt");
+			file.deleteOnExit();
+			float[][] constraints = writeLibrary(file,n,pool,prototypes);
+			PostureLibrary library = new PostureLibrary(file.getPath());
+			for (float tolerance : TOLERANCES) {
+				library.setTolerance(tolerance);
+				PostureLibrary.Index index = library.index();
+				int[] intervals = new int[index.getNumberOfFeatures()];
+				int mismatches = 0, skipped = 0, recognized = 0;
+				long indexNanos = 0, bruteForceNanos = 0;
+				for (int i=0; i<testFrames.length; i++) {
+					long start = System.nanoTime();
+					int posture = index.classify(testFrames[i],intervals);
+					long middle = System.nanoTime();
+					int expected = bruteForce(constraints,pool,n,tolerance,testFrames[i]);
+					long end = System.nanoTime();
+					if (i >= frames) {
+						indexNanos += middle-start;
+						bruteForceNanos += end-middle;
+					}
+					if (posture != PostureLibrary.NO_POSTURE) recognized++;
+					if (posture == expected) continue;
+					if (nearBound(constraints,pool,tolerance,testFrames[i])) {
+						skipped++;
+						continue;
+					}
+					mismatches++;
+					if (mismatches <= 10) System.out.println("mismatch: posture "+posture+" instead of "+expected+" with "+n+" postures at tolerance "+tolerance);
+				}
+				System.out.println(String.format("%d postures, %d features, tolerance %.1f: %d of %d frames recognized, %d near a bound skipped, index %.0f ns, brute force %.0f ns per frame",
+						n,library.getNumberOfFeatures(),tolerance,recognized,testFrames.length,skipped,indexNanos/(double)frames,bruteForceNanos/(double)frames));
+				check(mismatches == 0,mismatches+" frames recognized differently with "+n+" postures at tolerance "+tolerance);
+			}
+		}
+		if (failed) System.exit(1);
+		System.out.println("passed");
+	}
+
+	// writes the postures to the file and returns their constraints as {posture, feature in pool, min, max, exact}, min and max in degree or mm
+	private static float[][] writeLibrary (File _file, int _numberOfPostures, int[][] _pool, float[][] _prototypes) throws Exception {
+		float[][] constraints = new float[_numberOfPostures*5][];
+		int c = 0;
+		PrintWriter writer = new PrintWriter(_file);
+		for (int p=0; p<_numberOfPostures; p++) {
+			writer.println("posture POSTURE_"+p);
+			float[] prototype = _prototypes[random.nextInt(_prototypes.length)];
+			int numberOfConstraints = 2+random.nextInt(4);
+			for (int k=0; k<numberOfConstraints; k++) {
+				int f = random.nextInt(_pool.length);
+				int[] feature = _pool[f];
+				double value = feature[0] == DISTANCE ? value(feature,prototype) : Math.toDegrees(value(feature,prototype));
+				double width = feature[0] == DISTANCE ? 20+random.nextInt(150) : 5+random.nextInt(40);
+				float min = (float)Math.floor(value-width*random.nextDouble());
+				float max = (float)Math.ceil(value+width*random.nextDouble());
+				boolean exact = random.nextInt(4) == 0;
+				constraints[c++] = new float[] {p,f,min,max,exact ? 1 : 0};
+				String operands = feature[0] == DISTANCE ? "distance "+JOINT_NAMES[feature[1]]+" "+JOINT_NAMES[feature[2]]
+						: "angle "+JOINT_NAMES[feature[1]]+"-"+JOINT_NAMES[feature[2]]+" "+(feature[0] == ANGLE_AXIS ? AXIS_NAMES[feature[3]] : JOINT_NAMES[feature[3]]+"-"+JOINT_NAMES[feature[4]]);
+				writer.println(operands+" "+(int)min+" "+(int)max+(exact ? " exact" : ""));
+			}
+		}
+		writer.close();
+		float[][] result = new float[c][];
+		System.arraycopy(constraints,0,result,0,c);
+		return result;
+	}
+
+	// the first posture in file order whose constraints all hold
+	private static int bruteForce (float[][] _constraints, int[][] _pool, int _numberOfPostures, float _tolerance, float[] _joints) {
+		int c = 0;
+		for (int p=0; p<_numberOfPostures; p++) {
+			boolean holds = true;
+			for (; c<_constraints.length && (int)_constraints[c][0] == p; c++) {
+				if (!holds) continue;
+				double[] range = range(_constraints[c],_pool,_tolerance);
+				double value = value(_pool[(int)_constraints[c][1]],_joints);
+				if (!(value >= range[0] && value <= range[1])) holds = false;
+			}
+			if (holds) return p;
+		}
+		return PostureLibrary.NO_POSTURE;
+	}
+	// min and max of a constraint widened by the tolerance, in radians or mm
+	private static double[] range (float[] _constraint, int[][] _pool, float _tolerance) {
+		boolean distance = _pool[(int)_constraint[1]][0] == DISTANCE;
+		double min = distance ? _constraint[2] : Math.toRadians(_constraint[2]);
+		double max = distance ? _constraint[3] : Math.toRadians(_constraint[3]);
+		if (_constraint[4] == 0) {
+			double tolerance = distance ? 100.0*_tolerance : Math.toRadians(20)*_tolerance;
+			min -= tolerance;
+			max += tolerance;
+		}
+		return new double[] {min,max};
+	}
+	private static boolean nearBound (float[][] _constraints, int[][] _pool, float _tolerance, float[] _joints) {
+		for (float[] constraint : _constraints) {
+			int[] feature = _pool[(int)constraint[1]];
+			double epsilon = feature[0] == DISTANCE ? DISTANCE_EPSILON : ANGLE_EPSILON;
+			double[] range = range(constraint,_pool,_tolerance);
+			double value = value(feature,_joints);
+			if (Math.abs(value-range[0]) < epsilon || Math.abs(value-range[1]) < epsilon) return true;
+		}
+		return false;
+	}
+	// the feature in mm or radians
+	private static double value (int[] _feature, float[] _joints) {
+		double ax = _joints[_feature[2]*3]-_joints[_feature[1]*3];
+		double ay = _joints[_feature[2]*3+1]-_joints[_feature[1]*3+1];
+		double az = _joints[_feature[2]*3+2]-_joints[_feature[1]*3+2];
+		double lengthA = Math.sqrt(ax*ax+ay*ay+az*az);
+		if (_feature[0] == DISTANCE) return lengthA;
+		double bx, by, bz;
+		if (_feature[0] == ANGLE_AXIS) {
+			bx = _feature[3] == 0 ? 1 : 0;
+			by = _feature[3] == 1 ? 1 : 0;
+			bz = _feature[3] == 2 ? 1 : 0;
+		} else {
+			bx = _joints[_feature[4]*3]-_joints[_feature[3]*3];
+			by = _joints[_feature[4]*3+1]-_joints[_feature[3]*3+1];
+			bz = _joints[_feature[4]*3+2]-_joints[_feature[3]*3+2];
+		}
+		double cos = (ax*bx+ay*by+az*bz)/(lengthA*Math.sqrt(bx*bx+by*by+bz*bz));
+		return Math.acos(Math.max(-1.0,Math.min(1.0,cos)));
+	}
+
+	private static int[] randomFeature (int _type) {
+		int[] joints = distinctJoints(4);
+		if (_type == ANGLE_AXIS) return new int[] {ANGLE_AXIS,joints[0],joints[1],random.nextInt(3),0};
+		if (_type == DISTANCE) return new int[] {DISTANCE,joints[0],joints[1],0,0};
+		return new int[] {ANGLE_LIMBS,joints[0],joints[1],joints[2],joints[3]};
+	}
+	private static int[] distinctJoints (int _number) {
+		int[] joints = new int[_number];
+		for (int i=0; i<_number; i++) {
+			boolean distinct;
+			do {
+				joints[i] = random.nextInt(Skeleton.NUMBER_OF_JOINTS);
+				distinct = true;
+				for (int j=0; j<i; j++) distinct &= joints[j] != joints[i];
+			} while (!distinct);
+		}
+		return joints;
+	}
+	private static float[] randomJoints () {
+		float[] joints = new float[Skeleton.NUMBER_OF_JOINTS*3];
+		for (int i=0; i<joints.length; i++) joints[i] = (random.nextFloat()*2f-1f)*JOINT_RANGE;
+		return joints;
+	}
+	private static float[] noisy (float[] _joints) {
+		float[] joints = new float[_joints.length];
+		for (int i=0; i<joints.length; i++) joints[i] = _joints[i]+(float)random.nextGaussian()*PROTOTYPE_NOISE;
+		return joints;
+	}
+
+	private static void check (boolean _condition, String _message) {
+		if (_condition) return;
+		System.out.println("FAILED: "+_message);
+		failed = true;
+	}
+}
@@ -0,0 +1,63 @@
+package therapeuticskeleton;
+
+/** Measures JointPredictor on a SyntheticJointSource at 30 frames per second, with horizons of a fixed latency of 1 to 5 frames.
+ *  The predictor compares each prediction with the position measured when the horizon has passed, so the movement the sensor delivered late is the reference.
+ *  For each latency the average prediction error of the clean joints must be below the average error without prediction. Joints with 5 mm gaussian noise smoothed
+ *  by a One Euro filter are measured as well but not checked, the predictor amplifies the remaining jitter. Prints both errors, the maximum prediction error
+ *  and the time per frame of the predictor. Fails with exit status 1. <br>
+ *  bench/run.sh PredictorBench [frames], default 20000 frames, the first 100 are not measured. */
+public class PredictorBench {
+
+	private static final float FRAME_RATE = 30f;
+	private static final int[] LATENCY_FRAMES = {1,2,3,5};
+	private static final float NOISE = 5f;
+	private static final int SETTLE_FRAMES = 100;
+
+	private static boolean failed = false;
+
+	public static void main (String[] _args) {
+		int frames = _args.length > 0 ? Integer.parseInt(_args[0]) : 20000;
+		for (int latency : LATENCY_FRAMES) {
+			measure(latency,false,frames);
+			measure(latency,true,frames);
+		}
+		if (failed) System.exit(1);
+		System.out.println("passed");
+	}
+
+	private static void measure (int _latencyFrames, boolean _noisy, int _frames) {
+		float latency = _latencyFrames/FRAME_RATE;
+		SyntheticJointSource source = new SyntheticJointSource(FRAME_RATE);
+		Skeleton skeleton = new Skeleton(_noisy ? new NoisyJointSource(source,NOISE,1) : source,1,true);
+		skeleton.setEvaluateStatistics(false,null);
+		if (_noisy) skeleton.setJointFilter(new JointFilter(JointFilter.ONE_EURO));
+		JointPredictor predictor = new JointPredictor(latency);
+		skeleton.setJointPredictor(predictor);
+		for (int f=0; f<_frames; f++) {
+			source.nextFrame();
+			skeleton.update(f,FRAME_RATE);
+			if (f == SETTLE_FRAMES) predictor.resetMeasurement();
+		}
+
+		// the predictor alone, on the positions of the last frame
+		float[] joints = new float[Skeleton.NUMBER_OF_JOINTS*3];
+		float[] predicted = new float[Skeleton.NUMBER_OF_JOINTS*3];
+		skeleton.copyJoints(joints,0);
+		JointPredictor timed = new JointPredictor(latency);
+		long start = System.nanoTime();
+		for (int f=0; f<_frames; f++) timed.predict(joints,predicted,Skeleton.JOINT_MASK_ALL,1f/FRAME_RATE);
+		float micros = (System.nanoTime()-start)/1000f/_frames;
+
+		String name = String.format("latency %.0f ms, %s",latency*1000f,_noisy ? "noisy, One Euro filter" : "clean");
+		System.out.println(String.format("%-35s prediction error %6.2f mm, without prediction %6.2f mm, max prediction error %6.2f mm, %.2f us per frame, %d predictions evaluated",
+				name,predictor.getAveragePredictionError(),predictor.getAverageUncompensatedError(),predictor.getMaxPredictionError(),micros,predictor.getErrorCount()));
+		check(predictor.getErrorCount() > 0,name+": no prediction evaluated");
+		if (!_noisy) check(predictor.getAveragePredictionError() < predictor.getAverageUncompensatedError(),name+": prediction does not reduce the error");
+	}
+
+	private static void check (boolean _condition, String _message) {
+		if (_condition) return;
+		System.out.println("FAILED: "+_message);
+		failed = true;
+	}
+}
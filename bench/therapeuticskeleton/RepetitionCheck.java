@@ -0,0 +1,110 @@
+package therapeuticskeleton;
+
+import java.lang.management.ManagementFactory;
+
+import processing.core.*;
+
+/** Validates RepetitionCounter on the recorded session bench/data/repetitions.tskl: one minute of a SyntheticJointSource user abducting both arms with a period of 4 seconds,
+ *  with 8 mm sensor noise and 20% dropped frames. The left arm moves 0..170 degrees, the right one 0..127.5 degrees.
+ *  The session is replayed with a OneEuro filter, counts, ranges of motion and durations are compared with the generated movement.
+ *  Replaying twice must give the same results, and the counter must not allocate. Fails with exit status 1. <br>
+ *  bench/run.sh RepetitionCheck record writes the session file again. */
+public class RepetitionCheck {
+
+	private static final String SESSION = "bench/data/repetitions.tskl";
+	private static final float SESSION_SECONDS = 60f;
+	private static final float PERIOD = 4f;
+	private static final short[] ANGLES = {RepetitionCounter.ABDUCTION_LEFT_SHOULDER,RepetitionCounter.ABDUCTION_RIGHT_SHOULDER,RepetitionCounter.ANGLE_LEFT_UPPER_ARM};
+	private static final String[] NAMES = {"left shoulder abduction","right shoulder abduction","left upper arm"};
+	// range of motion of the generated movement in degrees
+	private static final float[] RANGE_OF_MOTION = {170f,127.5f,170f};
+	// the last repetition ends with the session and is not confirmed
+	private static final int REPETITIONS = (int)(SESSION_SECONDS/PERIOD)-1;
+	private static final float RANGE_OF_MOTION_TOLERANCE = 5f;
+	private static final float DURATION_TOLERANCE = 0.2f;
+
+	private static boolean failed = false;
+
+	public static void main (String[] _args) throws Exception {
+		if (_args.length > 0 && _args[0].equals("record")) {
+			record();
+			return;
+		}
+		SkeletonReplayer replayer = new SkeletonReplayer(SESSION);
+		RepetitionCounter counter = replay(replayer);
+		for (int e=0; e<ANGLES.length; e++) {
+			float rangeOfMotion = PApplet.degrees(counter.getMeanRangeOfMotion(e));
+			float duration = counter.getMeanDuration(e);
+			System.out.println(String.format("%s: %d repetitions, range of motion %.1f deg, duration %.2f s, last peak velocity %.0f deg/s",
+					NAMES[e],counter.getRepetitionCount(e),rangeOfMotion,duration,PApplet.degrees(counter.getLastPeakVelocity(e))));
+			check(counter.getRepetitionCount(e) == REPETITIONS,NAMES[e]+": "+REPETITIONS+" repetitions expected");
+			check(Math.abs(rangeOfMotion-RANGE_OF_MOTION[e]) <= RANGE_OF_MOTION_TOLERANCE,NAMES[e]+": range of motion "+RANGE_OF_MOTION[e]+" deg expected");
+			check(Math.abs(duration-PERIOD) <= DURATION_TOLERANCE,NAMES[e]+": duration "+PERIOD+" s expected");
+		}
+
+		// a second replay gives the same results
+		replayer.rewind();
+		RepetitionCounter again = replay(replayer);
+		for (int e=0; e<ANGLES.length; e++) {
+			check(again.getRepetitionCount(e) == counter.getRepetitionCount(e) && again.getMeanRangeOfMotion(e) == counter.getMeanRangeOfMotion(e)
+					&& again.getMeanDuration(e) == counter.getMeanDuration(e),NAMES[e]+": replay is not reproducible");
+		}
+
+		// the counter alone does not allocate
+		replayer.rewind();
+		Skeleton skeleton = new Skeleton(replayer,1,true);
+		RepetitionCounter measured = counter();
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+		long thread = Thread.currentThread().getId();
+		long allocated = 0;
+		int updates = 0;
+		while (replayer.nextFrame()) {
+			skeleton.update(replayer.getFrameCount(),replayer.getFrameRate());
+			long before = threads.getThreadAllocatedBytes(thread);
+			measured.update(skeleton,updates++);
+			allocated += threads.getThreadAllocatedBytes(thread)-before;
+		}
+		System.out.println("counter allocated "+allocated+" bytes in "+updates+" updates");
+		check(allocated == 0,"RepetitionCounter.update allocates");
+
+		if (failed) System.exit(1);
+		System.out.println("passed");
+	}
+
+	private static RepetitionCounter counter () {
+		RepetitionCounter counter = new RepetitionCounter();
+		for (int e=0; e<ANGLES.length; e++) counter.addExercise(ANGLES[e],PApplet.radians(15));
+		return counter;
+	}
+
+	private static RepetitionCounter replay (SkeletonReplayer _replayer) {
+		Skeleton skeleton = new Skeleton(_replayer,1,true);
+		skeleton.setJointFilter(new JointFilter(JointFilter.ONE_EURO));
+		RepetitionCounter counter = counter();
+		skeleton.setRepetitionCounter(counter);
+		while (_replayer.nextFrame()) skeleton.update(_replayer.getFrameCount(),_replayer.getFrameRate());
+		return counter;
+	}
+
+	private static void record () throws Exception {
+		SyntheticJointSource source = new SyntheticJointSource(30f);
+		Skeleton skeleton = new Skeleton(new NoisyJointSource(source,8f,7),1,true);
+		SkeletonRecorder recorder = new SkeletonRecorder(SESSION);
+		skeleton.startRecording(recorder);
+		java.util.Random drop = new java.util.Random(9);
+		int frame = 0;
+		while (source.getFrameCount() < SESSION_SECONDS*source.getFrameRate()) {
+			source.nextFrame();
+			if (drop.nextInt(5) == 0) continue;
+			skeleton.update(frame++,source.getFrameRate());
+		}
+		recorder.close();
+		System.out.println("recorded "+recorder.getNumberOfFrames()+" frames to "+SESSION);
+	}
+
+	private static void check (boolean _condition, String _message) {
+		if (_condition) return;
+		System.out.println("FAILED: "+_message);
+		failed = true;
+	}
+}
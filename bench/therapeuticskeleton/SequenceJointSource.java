@@ -0,0 +1,65 @@
+package therapeuticskeleton;
+
+import processing.core.*;
+
+/** JointSource for one user whose joints are stamped with the sequence number of the frame: every joint position and the translation of every orientation
+ *  are derived from it, so a frame mixing joints of different frames is detected with matches. Frames are 1/30 second apart.
+ *  The sequence number may be set on another thread than the one fetching the joints. */
+public class SequenceJointSource implements JointSource {
+
+	private static final long FRAME_NANOS = 1000000000L/30;
+
+	private volatile int sequence = 0;
+
+	/** Starts a new frame.
+	 *  @param _sequence the sequence number of the frame, below 2^23 so the joints are exact in float */
+	public void setSequence (int _sequence) {
+		sequence = _sequence;
+	}
+
+	public boolean fetchJoints (int _userId, int _jointMask, float[] _position, float[] _positionConfidence, PMatrix3D[] _orientation, float[] _orientationConfidence) {
+		int s = sequence;
+		for (int i=0; i<Skeleton.NUMBER_OF_JOINTS; i++) {
+			if ((_jointMask & (1<<i)) == 0) continue;
+			for (int k=0; k<3; k++) _position[i*3+k] = value(s,i*3+k);
+			_positionConfidence[i] = 1f;
+			_orientation[i].reset();
+			_orientation[i].m03 = s;
+			_orientationConfidence[i] = 1f;
+		}
+		return true;
+	}
+
+	public long getTimestamp (int _userId) {
+		return sequence*FRAME_NANOS;
+	}
+
+	public int getTrackedUsers (int[] _userIds) {
+		if (_userIds.length == 0) return 0;
+		_userIds[0] = 1;
+		return 1;
+	}
+
+	public void convertRealWorldToProjective (PVector _realWorld, PVector _projective) {
+		_projective.set(_realWorld);
+	}
+
+	/** Checks that all joints belong to one frame.
+	 *  @param _sequence the sequence number of the frame
+	 *  @param _position joint positions, 3*Skeleton.NUMBER_OF_JOINTS floats, xyz interleaved
+	 *  @param _orientation orientations of the joints, null to check the positions only
+	 *  @return true if all joints carry the sequence number */
+	public static boolean matches (int _sequence, float[] _position, PMatrix3D[] _orientation) {
+		for (int i=0; i<Skeleton.NUMBER_OF_JOINTS; i++) {
+			for (int k=0; k<3; k++) {
+				if (_position[i*3+k] != value(_sequence,i*3+k)) return false;
+			}
+			if (_orientation != null && _orientation[i].m03 != _sequence) return false;
+		}
+		return true;
+	}
+
+	private static float value (int _sequence, int _index) {
+		return _sequence+_index*10f;
+	}
+}
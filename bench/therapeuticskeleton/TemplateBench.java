@@ -0,0 +1,130 @@
+package therapeuticskeleton;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/** Compares the k-d tree of PostureTemplates with a brute-force search. For 10 to 10000 templates, k nearest templates are searched for random queries,
+ *  once with random arm poses and once with templates and queries clustered like recordings of a few postures.
+ *  The distances found in the first half of the queries must be those of the brute-force search. The second half measures the time per query of the tree
+ *  and of a linear scan with early abandoning. Fails with exit status 1. <br>
+ *  bench/run.sh TemplateBench [queries], default 20000 queries per case. */
+public class TemplateBench {
+
+	// arm directions the random poses are built from
+	private static final float[][] DIRECTIONS = {{0f,1f,0f}, {0f,-1f,0f}, {1f,0f,0f}, {1f,1f,0f}, {1f,-1f,0f}, {0f,0f,-1f}, {0f,-1f,-1f}, {-1f,1f,0f}, {-1f,-1f,0f}};
+	private static final float DIRECTION_DEVIATION = 0.12f;
+
+	private static final int[] NUMBERS_OF_TEMPLATES = {10,100,1000,10000};
+	private static final int K = 5;
+	private static final int DIMENSIONS = PostureTemplates.TEMPLATE_DIMENSIONS;
+	// deviation of clustered templates and queries from the center of their cluster, per coordinate of a unit direction
+	private static final float TEMPLATE_DEVIATION = 0.03f;
+	private static final float QUERY_DEVIATION = 0.05f;
+	private static final float TOLERANCE = 1e-4f;
+
+	private static Random random = new Random(7);
+
+	public static void main (String[] _args) {
+		int queries = _args.length > 0 ? Integer.parseInt(_args[0]) : 20000;
+		int[] ids = new int[K];
+		float[] distances = new float[K];
+		int[] scanIds = new int[K];
+		float[] scanDistances = new float[K];
+		float[] query = new float[DIMENSIONS];
+		boolean failed = false;
+		for (int c=0; c<2; c++) {
+			boolean clustered = c == 1;
+			for (int n : NUMBERS_OF_TEMPLATES) {
+				PostureTemplates templates = new PostureTemplates();
+				float[] vectors = new float[n*DIMENSIONS];
+				float[][] centers = new float[Math.max(1,Math.min(50,n/10))][DIMENSIONS];
+				for (float[] center : centers) randomVector(center);
+				float[] vector = new float[DIMENSIONS];
+				for (int i=0; i<n; i++) {
+					if (clustered) near(centers[i%centers.length],TEMPLATE_DEVIATION,vector);
+					else randomVector(vector);
+					System.arraycopy(vector,0,vectors,i*DIMENSIONS,DIMENSIONS);
+					templates.addTemplate("posture"+(i%centers.length),vector);
+				}
+				double[] bruteForce = new double[n];
+				int mismatches = 0;
+				long treeNanos = 0, scanNanos = 0;
+				for (int q=0; q<2*queries; q++) {
+					if (clustered && random.nextInt(5) > 0) near(centers[random.nextInt(centers.length)],QUERY_DEVIATION,query);
+					else randomVector(query);
+					if (q >= queries) {
+						long start = System.nanoTime();
+						templates.classify(query,K,ids,distances);
+						long middle = System.nanoTime();
+						linearScan(vectors,n,query,scanIds,scanDistances);
+						treeNanos += middle-start;
+						scanNanos += System.nanoTime()-middle;
+						continue;
+					}
+					int found = templates.classify(query,K,ids,distances);
+					for (int i=0; i<n; i++) {
+						double distance = 0;
+						for (int d=0; d<DIMENSIONS; d++) distance += (query[d]-vectors[i*DIMENSIONS+d])*(double)(query[d]-vectors[i*DIMENSIONS+d]);
+						bruteForce[i] = distance;
+					}
+					Arrays.sort(bruteForce);
+					boolean match = found == Math.min(K,n);
+					for (int i=0; i<found && match; i++) match = Math.abs(distances[i]-Math.sqrt(bruteForce[i])) <= TOLERANCE;
+					if (!match) mismatches++;
+				}
+				System.out.println(String.format("%s %5d templates: %d mismatches in %d queries, k-d tree %.2f us per query, linear scan %.2f us per query",
+						clustered ? "clustered" : "random   ",n,mismatches,queries,treeNanos/1000.0/queries,scanNanos/1000.0/queries));
+				if (mismatches > 0) failed = true;
+			}
+		}
+		if (failed) {
+			System.out.println("FAILED: the k-d tree did not find the nearest templates");
+			System.exit(1);
+		}
+		System.out.println("passed");
+	}
+
+	// unit directions of upper and lower arms, the layout of PostureTemplates
+	private static void randomVector (float[] _vector) {
+		for (int l=0; l<DIMENSIONS/3; l++) {
+			float[] direction = DIRECTIONS[random.nextInt(DIRECTIONS.length)];
+			float length = (float)Math.sqrt(direction[0]*direction[0]+direction[1]*direction[1]+direction[2]*direction[2]);
+			// the left arm mirrored
+			_vector[l*3] = (l < 2 ? -direction[0] : direction[0])/length;
+			_vector[l*3+1] = direction[1]/length;
+			_vector[l*3+2] = direction[2]/length;
+		}
+		near(_vector,DIRECTION_DEVIATION,_vector);
+	}
+	private static void near (float[] _center, float _deviation, float[] _vector) {
+		for (int l=0; l<DIMENSIONS/3; l++) {
+			float x = _center[l*3]+(float)random.nextGaussian()*_deviation;
+			float y = _center[l*3+1]+(float)random.nextGaussian()*_deviation;
+			float z = _center[l*3+2]+(float)random.nextGaussian()*_deviation;
+			float length = (float)Math.sqrt(x*x+y*y+z*z);
+			_vector[l*3] = x/length;
+			_vector[l*3+1] = y/length;
+			_vector[l*3+2] = z/length;
+		}
+	}
+	// k nearest by scanning all templates, the sum of a template is abandoned when it exceeds the k-th best squared distance
+	private static void linearScan (float[] _vectors, int _n, float[] _query, int[] _ids, float[] _distances) {
+		Arrays.fill(_distances,Float.POSITIVE_INFINITY);
+		for (int i=0; i<_n; i++) {
+			float worst = _distances[K-1], distance = 0f;
+			for (int d=0, p=i*DIMENSIONS; d<DIMENSIONS && distance < worst; d++, p++) {
+				float x = _query[d]-_vectors[p];
+				distance += x*x;
+			}
+			if (distance >= worst) continue;
+			int j = K-1;
+			while (j > 0 && _distances[j-1] > distance) {
+				_distances[j] = _distances[j-1];
+				_ids[j] = _ids[j-1];
+				j--;
+			}
+			_distances[j] = distance;
+			_ids[j] = i;
+		}
+	}
+}
@@ -0,0 +1,292 @@
+package therapeuticskeleton;
+
+import java.util.Arrays;
+
+/** GestureRecognizer finds recorded gestures in the live movement of a skeleton, see GestureTemplate and Skeleton.setGestureRecognizer. Use one recognizer per skeleton. <p>
+ *  Every update cycle, each template is matched against the trajectory with subsequence dynamic time warping, so the gesture may start at any time and be performed faster or slower.
+ *  The matching is incremental: per template one column of accumulated costs of the length of the template is updated, memory does not grow with time.
+ *  Warping is limited to a band around the template's own speed (Sakoe-Chiba band), and paths whose cost already exceeds the threshold are abandoned,
+ *  which skips most of the distance calculations. A gesture is reported once, at the end of the best matching subsequence, when no overlapping subsequence can match better. <p>
+ *  The cost of a frame is the mean over the template's joints of the squared distance between live and template position, in shoulder widths.
+ *  A gesture matches if the accumulated cost divided by the template length is at most the threshold of the template. */
+public class GestureRecognizer {
+
+	/** Returned if no gesture is recognized */
+	public static final int NO_GESTURE = -1;
+	private static final float INFINITY = Float.POSITIVE_INFINITY;
+	private static final short[] ALL_JOINTS = new short[Skeleton.NUMBER_OF_JOINTS];
+	static {
+		for (short j=0; j<Skeleton.NUMBER_OF_JOINTS; j++) ALL_JOINTS[j] = j;
+	}
+
+	private Matcher[] matchers = new Matcher[0];
+	private float warpingWindow = 0.25f;
+	// normalized LCS joints of the current frame, all joints, written once per update and read by all templates
+	private float[] frame = new float[Skeleton.NUMBER_OF_JOINTS*3];
+	private int requiredJointMask = 0;
+	// number of updates, the time axis of the matching
+	private int time = 0;
+	// results of the current update cycle and of the last recognized gesture
+	private int currentGesture = NO_GESTURE;
+	private int lastGesture = NO_GESTURE;
+	private int lastGestureStartFrame = 0;
+	private int lastGestureEndFrame = 0;
+	private float lastGestureCost = 0f;
+	// measurement of the matching effort
+	private long updateCount = 0;
+	private long cellCount = 0;
+	private long computedCellCount = 0;
+
+	/** Adds a gesture template. The template is copied, later changes of the template are not seen.
+	 *  @param _template the recorded gesture
+	 *  @param _threshold the highest mean cost per frame that matches, in squared shoulder widths. e.g. 0.05f
+	 *  @return the id of the template */
+	public int addTemplate (GestureTemplate _template, float _threshold) {
+		Matcher[] extended = Arrays.copyOf(matchers,matchers.length+1);
+		extended[matchers.length] = new Matcher(_template,_threshold,warpingWindow);
+		matchers = extended;
+		requiredJointMask |= _template.getJointMask();
+		return matchers.length-1;
+	}
+	/** Removes all templates. */
+	public void clear () {
+		matchers = new Matcher[0];
+		requiredJointMask = 0;
+		reset();
+	}
+	/** Forgets the trajectory, e.g. when the user was lost. Skeleton calls it when the user is not tracked. */
+	public void reset () {
+		for (int m=0; m<matchers.length; m++) matchers[m].reset();
+		currentGesture = NO_GESTURE;
+	}
+	/** Setter for the warping window, the Sakoe-Chiba band. A subsequence of n frames may be matched to the first i frames of the template only if |n-i| is within the window.
+	 *  Applies to all templates.
+	 *  @param _warpingWindow the window as fraction of the template length, 0..1f. If out of range, default window 0.25f will be set */
+	public void setWarpingWindow (float _warpingWindow) {
+		warpingWindow = _warpingWindow >= 0f && _warpingWindow <= 1f ? _warpingWindow : 0.25f;
+		for (int m=0; m<matchers.length; m++) matchers[m].setWindow(warpingWindow);
+	}
+	/** Getter for the warping window
+	 *  @return the window as fraction of the template length */
+	public float getWarpingWindow () {
+		return warpingWindow;
+	}
+	/** Setter for the threshold of a template.
+	 *  @param _template the id of the template
+	 *  @param _threshold the highest mean cost per frame that matches */
+	public void setThreshold (int _template, float _threshold) {
+		if (_template >= 0 && _template < matchers.length) matchers[_template].threshold = _threshold;
+	}
+	/** Getter for the number of templates
+	 *  @return number of templates */
+	public int getNumberOfTemplates () {
+		return matchers.length;
+	}
+	/** Returns the name of a template
+	 *  @param _template the id of the template
+	 *  @return the name of the gesture. If _template out of range: null */
+	public String getTemplateName (int _template) {
+		if (_template >= 0 && _template < matchers.length)
+			return matchers[_template].name;
+		else
+			return null;
+	}
+	/** Returns the joints the templates read. Skeleton evaluates them automatically
+	 *  @return joint mask of the required joints */
+	public int getRequiredJointMask () {
+		return requiredJointMask;
+	}
+	/** Returns the gesture recognized in the current update cycle. If several templates match, the one with the lowest mean cost
+	 *  @return the id of the template, NO_GESTURE if none was recognized */
+	public int getCurrentGesture () {
+		return currentGesture;
+	}
+	/** Returns the last recognized gesture
+	 *  @return the id of the template, NO_GESTURE if none was recognized yet */
+	public int getLastGesture () {
+		return lastGesture;
+	}
+	/** Returns the update cycle in which the last recognized gesture started
+	 *  @return the frame count */
+	public int getLastGestureStartFrame () {
+		return lastGestureStartFrame;
+	}
+	/** Returns the update cycle in which the last recognized gesture ended. The gesture is reported when no overlapping subsequence can match better, usually a few update cycles later
+	 *  @return the frame count */
+	public int getLastGestureEndFrame () {
+		return lastGestureEndFrame;
+	}
+	/** Returns the mean cost per frame of the last recognized gesture. 0 for a perfect match
+	 *  @return mean cost in squared shoulder widths */
+	public float getLastGestureCost () {
+		return lastGestureCost;
+	}
+	/** Returns the fraction of cells of the cost columns whose frame distance was calculated, i.e. not skipped by the band or by early abandoning, since the last reset of measurement
+	 *  @return fraction 0..1f, 0 if nothing was measured */
+	public float getComputedCellRatio () {
+		return cellCount > 0 ? (float)computedCellCount/cellCount : 0f;
+	}
+	/** Getter for the number of updates since the last reset of measurement
+	 *  @return number of updates */
+	public long getUpdateCount () {
+		return updateCount;
+	}
+	/** Resets the measurement of the matching effort. */
+	public void resetMeasurement () {
+		updateCount = 0;
+		cellCount = 0;
+		computedCellCount = 0;
+	}
+
+	/** Matches the current frame of a skeleton against all templates. Skeleton calls it in every update cycle if the recognizer is set. Does not allocate.
+	 *  @param _skeleton the skeleton, updated in the current frame
+	 *  @param _frameCount the current update cycle */
+	public void update (Skeleton _skeleton, int _frameCount) {
+		GestureTemplate.copyFrame(_skeleton.jointsLCS(),ALL_JOINTS,frame,0);
+		time++;
+		updateCount++;
+		currentGesture = NO_GESTURE;
+		float currentCost = INFINITY;
+		for (int m=0; m<matchers.length; m++) {
+			Matcher matcher = matchers[m];
+			if (matcher.update(frame,time)) {
+				float cost = matcher.matchCost/matcher.length;
+				if (cost < currentCost) {
+					currentCost = cost;
+					currentGesture = m;
+					lastGestureStartFrame = _frameCount-(time-matcher.matchStart);
+					lastGestureEndFrame = _frameCount-(time-matcher.matchEnd);
+				}
+			}
+			cellCount += matcher.length;
+			computedCellCount += matcher.computedCells;
+		}
+		if (currentGesture != NO_GESTURE) {
+			lastGesture = currentGesture;
+			lastGestureCost = currentCost;
+		}
+	}
+
+	// streaming subsequence DTW of one template, after the SPRING algorithm: cost[i] is the cost of the best path ending with template frame i at the current time, start[i] its start time
+	private static class Matcher {
+		private final String name;
+		private final int length;
+		private final int dimensions;
+		private final short[] joints;
+		private final float[] frames;
+		private float threshold;
+		private int window;
+		private float[] cost;
+		private float[] lastCost;
+		private int[] start;
+		private int[] lastStart;
+		// the best match found that may still be improved by an overlapping path
+		private float candidateCost = INFINITY;
+		private int candidateStart = 0;
+		private int candidateEnd = 0;
+		// the match reported in the current update
+		private float matchCost = 0f;
+		private int matchStart = 0;
+		private int matchEnd = 0;
+		private int computedCells = 0;
+
+		private Matcher (GestureTemplate _template, float _threshold, float _warpingWindow) {
+			name = _template.getName();
+			length = _template.getLength();
+			dimensions = _template.getDimensions();
+			joints = _template.joints().clone();
+			frames = Arrays.copyOf(_template.frames(),length*dimensions);
+			threshold = _threshold;
+			cost = new float[length+1];
+			lastCost = new float[length+1];
+			start = new int[length+1];
+			lastStart = new int[length+1];
+			setWindow(_warpingWindow);
+			reset();
+		}
+		private void setWindow (float _warpingWindow) {
+			window = Math.max(1,Math.round(_warpingWindow*length));
+		}
+		private void reset () {
+			Arrays.fill(lastCost,INFINITY);
+			lastCost[0] = 0f;
+			candidateCost = INFINITY;
+		}
+
+		// returns true if a match is reported in this update
+		private boolean update (float[] _frame, int _time) {
+			computedCells = 0;
+			if (length == 0) return false;
+			float limit = threshold*length;
+			float inverseJoints = 1f/joints.length;
+			// a path may start at every time
+			cost[0] = 0f;
+			start[0] = _time;
+			for (int i=1; i<=length; i++) {
+				// predecessors: template frame i-1 at this time, template frame i and i-1 at the last time
+				float best = cost[i-1];
+				int bestStart = start[i-1];
+				if (lastCost[i] < best) {
+					best = lastCost[i];
+					bestStart = lastStart[i];
+				}
+				if (lastCost[i-1] <= best) {
+					best = lastCost[i-1];
+					bestStart = i == 1 ? _time : lastStart[i-1];
+				}
+				// Sakoe-Chiba band: the path's length in time may differ from the template frames matched by at most the window
+				int pathLength = _time-bestStart+1;
+				if (best == INFINITY || pathLength-i > window || i-pathLength > window) {
+					cost[i] = INFINITY;
+					continue;
+				}
+				// early abandoning: costs only grow along a path, the distance is summed only while the path can still match
+				float remaining = (limit-best)*joints.length;
+				float distance = 0f;
+				int p = (i-1)*dimensions;
+				for (int j=0; j<joints.length && distance <= remaining; j++) {
+					int source = joints[j]*3;
+					float dx = _frame[source]-frames[p], dy = _frame[source+1]-frames[p+1], dz = _frame[source+2]-frames[p+2];
+					distance += dx*dx+dy*dy+dz*dz;
+					p += 3;
+				}
+				computedCells++;
+				float total = best+distance*inverseJoints;
+				cost[i] = total <= limit ? total : INFINITY;
+				start[i] = bestStart;
+			}
+			boolean reported = false;
+			// report the candidate when no path overlapping it can become better
+			if (candidateCost <= limit) {
+				boolean isFinal = true;
+				for (int i=1; i<=length && isFinal; i++) {
+					if (cost[i] < candidateCost && start[i] <= candidateEnd) isFinal = false;
+				}
+				if (isFinal) {
+					matchCost = candidateCost;
+					matchStart = candidateStart;
+					matchEnd = candidateEnd;
+					reported = true;
+					candidateCost = INFINITY;
+					// paths overlapping the reported match must not report it again
+					for (int i=1; i<=length; i++) {
+						if (start[i] <= matchEnd) cost[i] = INFINITY;
+					}
+				}
+			}
+			if (cost[length] <= limit && cost[length] < candidateCost) {
+				candidateCost = cost[length];
+				candidateStart = start[length];
+				candidateEnd = _time;
+			}
+			// the current column becomes the last column
+			float[] swapCost = lastCost;
+			lastCost = cost;
+			cost = swapCost;
+			int[] swapStart = lastStart;
+			lastStart = start;
+			start = swapStart;
+			return reported;
+		}
+	}
+}
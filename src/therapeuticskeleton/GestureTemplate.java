@@ -0,0 +1,166 @@
+package therapeuticskeleton;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Arrays;
+
+import processing.core.*;
+
+/** GestureTemplate is a recorded example of a gesture: the trajectory of some joints over a number of update cycles. GestureRecognizer finds it in the live movement. <br>
+ *  A frame of the trajectory holds the LCS positions of the joints in the joint mask, ascending by joint constant, divided by the shoulder width.
+ *  So templates do not depend on the position of the user and little on body size. Record a template by calling addFrame in every update cycle while the gesture is performed. */
+public class GestureTemplate {
+
+	private String name;
+	private int jointMask;
+	private short[] joints;
+	private float[] frames = new float[0];
+	private int length = 0;
+
+	/** Constructor for an empty template, to be recorded with addFrame.
+	 *  @param _name the name of the gesture, without whitespace
+	 *  @param _jointMask the joints of the trajectory, bit i set for the joint with constant i. See Skeleton.jointMask. If 0, the arms are used
+	 *  @throws IllegalArgumentException if _jointMask selects no joint of the skeleton */
+	public GestureTemplate (String _name, int _jointMask) {
+		name = _name;
+		if (!setJointMask(_jointMask != 0 ? _jointMask : Skeleton.JOINT_MASK_ARMS & ~Skeleton.JOINT_MASK_LCS))
+			throw new IllegalArgumentException("joint mask "+_jointMask+" selects no joint");
+	}
+	/** Constructor for a template saved with save.
+	 *  @param _fileName path to the template file
+	 *  @throws IOException if the file can't be read or is invalid */
+	public GestureTemplate (String _fileName) throws IOException {
+		BufferedReader reader = new BufferedReader(new FileReader(_fileName));
+		try {
+			String line = reader.readLine();
+			String[] token = line != null ? line.trim().split("\\s+") : new String[0];
+			if (token.length != 2) throw new IOException("first line needs name and joint mask in "+_fileName);
+			name = token[0];
+			try {
+				if (!setJointMask(Integer.parseInt(token[1]))) throw new IOException("joint mask selects no joint in "+_fileName);
+				float[] frame = new float[getDimensions()];
+				int lineNumber = 1;
+				while ((line = reader.readLine()) != null) {
+					lineNumber++;
+					line = line.trim();
+					if (line.length() == 0) continue;
+					token = line.split("\\s+");
+					if (token.length != frame.length) throw new IOException("frame needs "+frame.length+" floats in line "+lineNumber+" of "+_fileName);
+					for (int d=0; d<frame.length; d++) frame[d] = Float.parseFloat(token[d]);
+					addFrame(frame);
+				}
+			} catch (NumberFormatException e) {
+				throw new IOException("joint mask and frames must be numbers in "+_fileName);
+			}
+		} finally {
+			reader.close();
+		}
+	}
+
+	/** Appends the current pose of a skeleton to the trajectory.
+	 *  @param _skeleton the skeleton, updated in the current frame. The joints of the joint mask must be evaluated, see Skeleton.setJointMask */
+	public void addFrame (Skeleton _skeleton) {
+		ensureCapacity(length+1);
+		copyFrame(_skeleton.jointsLCS(),joints,frames,length*joints.length*3);
+		length++;
+	}
+	/** Appends a frame to the trajectory.
+	 *  @param _frame getDimensions floats, see class description */
+	public void addFrame (float[] _frame) {
+		ensureCapacity(length+1);
+		System.arraycopy(_frame,0,frames,length*joints.length*3,joints.length*3);
+		length++;
+	}
+	/** Removes all frames. */
+	public void clear () {
+		length = 0;
+	}
+	/** Saves the template to a text file: name and joint mask, then one frame per line. Load it with the constructor.
+	 *  @param _fileName path to the template file
+	 *  @return true if the template was saved */
+	public boolean save (String _fileName) {
+		try {
+			BufferedWriter writer = new BufferedWriter(new FileWriter(_fileName));
+			try {
+				writer.write(name+" "+jointMask);
+				writer.newLine();
+				int dimensions = getDimensions();
+				for (int f=0; f<length; f++) {
+					for (int d=0; d<dimensions; d++) {
+						if (d > 0) writer.write(" ");
+						writer.write(Float.toString(frames[f*dimensions+d]));
+					}
+					writer.newLine();
+				}
+			} finally {
+				writer.close();
+			}
+			return true;
+		} catch (IOException e) {
+			PApplet.println("couldn't save gesture template, io exception");
+			return false;
+		}
+	}
+	/** Getter for the name of the gesture
+	 *  @return the name */
+	public String getName () {
+		return name;
+	}
+	/** Getter for the joints of the trajectory
+	 *  @return joint mask, bit i set for the joint with constant i */
+	public int getJointMask () {
+		return jointMask;
+	}
+	/** Getter for the number of floats of a frame: 3 per joint of the joint mask
+	 *  @return number of floats of a frame */
+	public int getDimensions () {
+		return joints.length*3;
+	}
+	/** Getter for the length of the trajectory
+	 *  @return number of frames */
+	public int getLength () {
+		return length;
+	}
+
+	// joints of the mask, ascending
+	short[] joints () {
+		return joints;
+	}
+	// the trajectory, getDimensions floats per frame. must not be changed
+	float[] frames () {
+		return frames;
+	}
+	// writes the LCS positions of _joints divided by the shoulder width to _frame at _offset
+	static void copyFrame (float[] _jointsLCS, short[] _joints, float[] _frame, int _offset) {
+		int l = Skeleton.LEFT_SHOULDER*3, r = Skeleton.RIGHT_SHOULDER*3;
+		float dx = _jointsLCS[r]-_jointsLCS[l], dy = _jointsLCS[r+1]-_jointsLCS[l+1], dz = _jointsLCS[r+2]-_jointsLCS[l+2];
+		float shoulderWidth = (float)Math.sqrt(dx*dx+dy*dy+dz*dz);
+		float scale = shoulderWidth > 0f ? 1f/shoulderWidth : 1f;
+		for (int j=0; j<_joints.length; j++) {
+			int source = _joints[j]*3;
+			_frame[_offset+j*3] = _jointsLCS[source]*scale;
+			_frame[_offset+j*3+1] = _jointsLCS[source+1]*scale;
+			_frame[_offset+j*3+2] = _jointsLCS[source+2]*scale;
+		}
+	}
+
+	// -----------------------------------------------------------------
+	// PRIVATE HELPER METHODS
+	// returns false if the mask selects no joint, a trajectory without dimensions can't be compared
+	private boolean setJointMask (int _jointMask) {
+		jointMask = _jointMask & Skeleton.JOINT_MASK_ALL;
+		joints = new short[Integer.bitCount(jointMask)];
+		int j = 0;
+		for (short i=0; i<Skeleton.NUMBER_OF_JOINTS; i++) {
+			if ((jointMask & (1<<i)) != 0) joints[j++] = i;
+		}
+		return joints.length > 0;
+	}
+	private void ensureCapacity (int _length) {
+		int needed = _length*joints.length*3;
+		if (frames.length < needed) frames = Arrays.copyOf(frames,Math.max(needed,frames.length*2));
+	}
+}
@@ -0,0 +1,207 @@
+package therapeuticskeleton;
+
+import processing.core.*;
+
+/** JointFilter smoothes the jitter of raw joint positions before a Skeleton evaluates them, so joint deltas, velocities and distances are not inflated by sensor noise.
+ *  Every joint can be filtered with its own filter type and parameters: <br>
+ *  ONE_EURO: One Euro filter, an adaptive low pass filter. Slow movements are smoothed strongly, fast movements follow with little lag. <br>
+ *  KALMAN: Kalman filter with a constant velocity model. <br>
+ *  The filter keeps its state in flat float arrays and does not allocate. A filter keeps the history of one user, set one filter per skeleton with Skeleton.setJointFilter.
+ *  Positions are expected in mm, time in seconds. */
+public class JointFilter {
+
+	/** The joint is not filtered */
+	public static final short NONE = 0;
+	/** The joint is filtered with a One Euro filter */
+	public static final short ONE_EURO = 1;
+	/** The joint is filtered with a constant velocity Kalman filter */
+	public static final short KALMAN = 2;
+
+	// default parameters of One Euro filter: cutoff frequencies in Hz, beta in 1/mm
+	private static final float DEFAULT_MIN_CUTOFF = 1.0f;
+	private static final float DEFAULT_BETA = 0.007f;
+	private static final float DEFAULT_DERIVATIVE_CUTOFF = 1.0f;
+	// default parameters of Kalman filter: variance of acceleration in (mm/s^2)^2, variance of measurement in mm^2
+	private static final float DEFAULT_PROCESS_NOISE = 1000000f;
+	private static final float DEFAULT_MEASUREMENT_NOISE = 100f;
+	// variance of the velocity of a joint without history in (mm/s)^2
+	private static final float INITIAL_VELOCITY_VARIANCE = 1000000f;
+
+	// filter setup per joint
+	private short[] filterType = new short[Skeleton.NUMBER_OF_JOINTS];
+	private float[] minCutoff = new float[Skeleton.NUMBER_OF_JOINTS];
+	private float[] beta = new float[Skeleton.NUMBER_OF_JOINTS];
+	private float[] derivativeCutoff = new float[Skeleton.NUMBER_OF_JOINTS];
+	private float[] processNoise = new float[Skeleton.NUMBER_OF_JOINTS];
+	private float[] measurementNoise = new float[Skeleton.NUMBER_OF_JOINTS];
+
+	// filter state. bit i of initialized is set, if joint i has a history
+	private int initialized = 0;
+	// filtered position and velocity, xyz interleaved. velocity is the smoothed derivative for One Euro, the estimated velocity for Kalman
+	private float[] position = new float[Skeleton.NUMBER_OF_JOINTS*3];
+	private float[] velocity = new float[Skeleton.NUMBER_OF_JOINTS*3];
+	// covariance of the Kalman filter per joint, equal for all axes since they share the model: [p00 p01; p01 p11]
+	private float[] p00 = new float[Skeleton.NUMBER_OF_JOINTS];
+	private float[] p01 = new float[Skeleton.NUMBER_OF_JOINTS];
+	private float[] p11 = new float[Skeleton.NUMBER_OF_JOINTS];
+
+	// measurement
+	private long filterCount = 0;
+	private long filterNanos = 0;
+	private long lastFilterNanos = 0;
+
+	/** Constructor for the JointFilter. All joints are filtered with the same filter type and default parameters.
+	 *  @param _filterType NONE, ONE_EURO or KALMAN */
+	public JointFilter (short _filterType) {
+		for (short i=0; i<Skeleton.NUMBER_OF_JOINTS; i++) {
+			setFilterType(i,_filterType);
+			setOneEuroParameters(i,DEFAULT_MIN_CUTOFF,DEFAULT_BETA,DEFAULT_DERIVATIVE_CUTOFF);
+			setKalmanParameters(i,DEFAULT_PROCESS_NOISE,DEFAULT_MEASUREMENT_NOISE);
+		}
+	}
+
+	/** Filters the joint positions in place. Joints not in the joint mask lose their history and start over when they are filtered again.
+	 *  @param _position joint positions, 3*Skeleton.NUMBER_OF_JOINTS floats, xyz interleaved
+	 *  @param _jointMask the joints to filter, see Skeleton.jointMask
+	 *  @param _dt the time since the last call in seconds */
+	public void filter (float[] _position, int _jointMask, float _dt) {
+		long start = System.nanoTime();
+		initialized &= _jointMask;
+		for (int j=0; j<Skeleton.NUMBER_OF_JOINTS; j++) {
+			if ((_jointMask & (1<<j)) == 0 || filterType[j] == NONE) continue;
+			int i = j*3;
+			if ((initialized & (1<<j)) == 0 || _dt <= 0f) {
+				// first position of the joint: no history to filter with
+				position[i] = _position[i];
+				position[i+1] = _position[i+1];
+				position[i+2] = _position[i+2];
+				velocity[i] = velocity[i+1] = velocity[i+2] = 0f;
+				p00[j] = measurementNoise[j];
+				p01[j] = 0f;
+				p11[j] = INITIAL_VELOCITY_VARIANCE;
+				initialized |= 1<<j;
+				continue;
+			}
+			if (filterType[j] == ONE_EURO) {
+				filterOneEuro(_position,j,_dt);
+			} else {
+				filterKalman(_position,j,_dt);
+			}
+		}
+		lastFilterNanos = System.nanoTime()-start;
+		filterNanos += lastFilterNanos;
+		filterCount++;
+	}
+	/** Clears the history of all joints, e.g. when the user was lost. */
+	public void reset () {
+		initialized = 0;
+	}
+
+	// -----------------------------------------------------------------
+	// GETTERS AND SETTERS
+	/** Setter for the filter type of a joint. The history of the joint is cleared.
+	 *  @param _jointType short corresponding to Skeleton constants
+	 *  @param _filterType NONE, ONE_EURO or KALMAN. If out of range, the joint is not filtered */
+	public void setFilterType (short _jointType, short _filterType) {
+		if (_jointType < 0 || _jointType >= Skeleton.NUMBER_OF_JOINTS) return;
+		filterType[_jointType] = (_filterType == ONE_EURO || _filterType == KALMAN) ? _filterType : NONE;
+		initialized &= ~(1<<_jointType);
+	}
+	/** Getter for the filter type of a joint.
+	 *  @param _jointType short corresponding to Skeleton constants
+	 *  @return NONE, ONE_EURO or KALMAN. NONE if _jointType is out of range */
+	public short getFilterType (short _jointType) {
+		if (_jointType >= 0 && _jointType < Skeleton.NUMBER_OF_JOINTS)
+			return filterType[_jointType];
+		else
+			return NONE;
+	}
+	/** Setter for the parameters of the One Euro filter of a joint.
+	 *  @param _jointType short corresponding to Skeleton constants
+	 *  @param _minCutoff the cutoff frequency in Hz at rest. Lower values smooth more, but add lag to slow movements
+	 *  @param _beta the increase of the cutoff frequency per mm/s of speed. Higher values reduce lag of fast movements
+	 *  @param _derivativeCutoff the cutoff frequency in Hz for smoothing the speed */
+	public void setOneEuroParameters (short _jointType, float _minCutoff, float _beta, float _derivativeCutoff) {
+		if (_jointType < 0 || _jointType >= Skeleton.NUMBER_OF_JOINTS) return;
+		minCutoff[_jointType] = _minCutoff;
+		beta[_jointType] = _beta;
+		derivativeCutoff[_jointType] = _derivativeCutoff;
+	}
+	/** Setter for the parameters of the Kalman filter of a joint.
+	 *  @param _jointType short corresponding to Skeleton constants
+	 *  @param _processNoise the variance of the acceleration of the joint in (mm/s^2)^2. Higher values follow fast movements better
+	 *  @param _measurementNoise the variance of the measured position in mm^2. Higher values smooth more */
+	public void setKalmanParameters (short _jointType, float _processNoise, float _measurementNoise) {
+		if (_jointType < 0 || _jointType >= Skeleton.NUMBER_OF_JOINTS) return;
+		processNoise[_jointType] = _processNoise;
+		measurementNoise[_jointType] = _measurementNoise;
+	}
+	/** Getter for the number of frames filtered since creation or last reset of the measurement.
+	 *  @return the number of calls to filter */
+	public long getFilterCount () {
+		return filterCount;
+	}
+	/** Getter for the average time spent filtering one frame of all joints.
+	 *  @return the average duration of filter in nanoseconds, 0f if nothing was filtered yet */
+	public float getAverageFilterNanos () {
+		return filterCount > 0 ? (float)filterNanos/filterCount : 0f;
+	}
+	/** Getter for the time spent filtering the last frame.
+	 *  @return the duration of the last call to filter in nanoseconds */
+	public long getLastFilterNanos () {
+		return lastFilterNanos;
+	}
+	/** Resets the measurement of the filter. */
+	public void resetMeasurement () {
+		filterCount = 0;
+		filterNanos = 0;
+		lastFilterNanos = 0;
+	}
+
+	// -----------------------------------------------------------------
+	// PRIVATE HELPER METHODS
+	private void filterOneEuro (float[] _position, int _joint, float _dt) {
+		int i = _joint*3;
+		// smoothed derivative of the raw positions
+		float alphaDerivative = alpha(derivativeCutoff[_joint],_dt);
+		float speed = 0f;
+		for (int k=i; k<i+3; k++) {
+			float derivative = (_position[k]-position[k])/_dt;
+			velocity[k] += alphaDerivative*(derivative-velocity[k]);
+			speed += velocity[k]*velocity[k];
+		}
+		// the faster the joint moves, the higher the cutoff frequency
+		float alpha = alpha(minCutoff[_joint]+beta[_joint]*PApplet.sqrt(speed),_dt);
+		for (int k=i; k<i+3; k++) {
+			position[k] += alpha*(_position[k]-position[k]);
+			_position[k] = position[k];
+		}
+	}
+	private float alpha (float _cutoff, float _dt) {
+		float tau = 1f/(PConstants.TWO_PI*_cutoff);
+		return 1f/(1f+tau/_dt);
+	}
+	private void filterKalman (float[] _position, int _joint, float _dt) {
+		int i = _joint*3;
+		// predict covariance: P = F*P*F'+Q with F = [1 dt; 0 1], Q of white noise acceleration
+		float dt2 = _dt*_dt;
+		float q = processNoise[_joint];
+		float a00 = p00[_joint]+2f*_dt*p01[_joint]+dt2*p11[_joint]+q*dt2*dt2/4f;
+		float a01 = p01[_joint]+_dt*p11[_joint]+q*dt2*_dt/2f;
+		float a11 = p11[_joint]+q*dt2;
+		// gain of the update with the measured position
+		float s = a00+measurementNoise[_joint];
+		float k0 = a00/s;
+		float k1 = a01/s;
+		for (int k=i; k<i+3; k++) {
+			float predicted = position[k]+_dt*velocity[k];
+			float innovation = _position[k]-predicted;
+			position[k] = predicted+k0*innovation;
+			velocity[k] += k1*innovation;
+			_position[k] = position[k];
+		}
+		p00[_joint] = (1f-k0)*a00;
+		p01[_joint] = (1f-k0)*a01;
+		p11[_joint] = a11-k1*a01;
+	}
+}
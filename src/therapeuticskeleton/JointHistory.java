@@ -0,0 +1,189 @@
+package therapeuticskeleton;
+
+import processing.core.*;
+
+/** JointHistory keeps the trail of a joint, e.g. to draw where the hand moved. See SkeletonStatistics.getHistoryLeftHand. <p>
+ *  Positions are stored in levels of fixed capacity. Level 0 keeps the latest positions of every update cycle. When a level is full, its two oldest positions
+ *  are merged to their mean and moved to the next level, so level n holds positions of 2^n update cycles each and older parts of the trail get coarser.
+ *  Positions older than the last level are dropped, and a position waiting for its partner to be merged is not returned. So the history covers capacity*(2^levels-1) update cycles and memory does not grow with the length of the session. <p>
+ *  Positions are indexed from the oldest, 0, to the newest, getSize()-1. Reading does not allocate if a PVector or buffer is passed. */
+public class JointHistory {
+
+	private int capacity;
+	private int levels;
+	// per level a ring of capacity positions, xyz interleaved, and their capture times. the oldest position of level l is at first[l]
+	private float[][] position;
+	private long[][] timestamp;
+	private int[] first;
+	private int[] size;
+	// the position waiting for its partner to be merged into the level
+	private float[] pending;
+	private long[] pendingTimestamp;
+	private boolean[] hasPending;
+
+	/** Constructor for an empty history.
+	 *  @param _capacity the number of positions per level. If lower than 1, default capacity 300 will be used
+	 *  @param _levels the number of levels. 1 keeps the last _capacity positions only. If lower than 1, default 4 levels will be used */
+	public JointHistory (int _capacity, int _levels) {
+		capacity = _capacity >= 1 ? _capacity : 300;
+		levels = _levels >= 1 ? _levels : 4;
+		position = new float[levels][capacity*3];
+		timestamp = new long[levels][capacity];
+		first = new int[levels];
+		size = new int[levels];
+		pending = new float[levels*3];
+		pendingTimestamp = new long[levels];
+		hasPending = new boolean[levels];
+	}
+	/** Constructor that provides a deep copy of a JointHistory.
+	 *  @param _history the history to copy */
+	public JointHistory (JointHistory _history) {
+		capacity = _history.capacity;
+		levels = _history.levels;
+		position = new float[levels][];
+		timestamp = new long[levels][];
+		for (int l=0; l<levels; l++) {
+			position[l] = _history.position[l].clone();
+			timestamp[l] = _history.timestamp[l].clone();
+		}
+		first = _history.first.clone();
+		size = _history.size.clone();
+		pending = _history.pending.clone();
+		pendingTimestamp = _history.pendingTimestamp.clone();
+		hasPending = _history.hasPending.clone();
+	}
+
+	/** Appends a position.
+	 *  @param _x x value of the position
+	 *  @param _y y value of the position
+	 *  @param _z z value of the position
+	 *  @param _timestamp the capture time, see Skeleton.getTimestamp */
+	public void add (float _x, float _y, float _z, long _timestamp) {
+		int l = 0;
+		float x = _x, y = _y, z = _z;
+		long time = _timestamp;
+		while (l < levels) {
+			if (size[l] < capacity) {
+				store(l,(first[l]+size[l]++)%capacity,x,y,z,time);
+				return;
+			}
+			// the level is full: the oldest position leaves it, the new one takes its place
+			int s = first[l];
+			float oldX = position[l][s*3], oldY = position[l][s*3+1], oldZ = position[l][s*3+2];
+			long oldTime = timestamp[l][s];
+			store(l,s,x,y,z,time);
+			first[l] = (s+1)%capacity;
+			if (l+1 == levels) return;
+			// two positions leaving a level are merged to one of the next level
+			if (!hasPending[l]) {
+				pending[l*3] = oldX;
+				pending[l*3+1] = oldY;
+				pending[l*3+2] = oldZ;
+				pendingTimestamp[l] = oldTime;
+				hasPending[l] = true;
+				return;
+			}
+			hasPending[l] = false;
+			x = (pending[l*3]+oldX)*0.5f;
+			y = (pending[l*3+1]+oldY)*0.5f;
+			z = (pending[l*3+2]+oldZ)*0.5f;
+			time = pendingTimestamp[l]+(oldTime-pendingTimestamp[l])/2;
+			l++;
+		}
+	}
+	/** Removes all positions. */
+	public void clear () {
+		for (int l=0; l<levels; l++) {
+			first[l] = 0;
+			size[l] = 0;
+			hasPending[l] = false;
+		}
+	}
+	/** Getter for the number of positions
+	 *  @return number of positions, at most capacity*levels */
+	public int getSize () {
+		int n = 0;
+		for (int l=0; l<levels; l++) n += size[l];
+		return n;
+	}
+	/** Getter for the capacity of a level
+	 *  @return number of positions per level */
+	public int getCapacity () {
+		return capacity;
+	}
+	/** Getter for the number of levels
+	 *  @return number of levels */
+	public int getNumberOfLevels () {
+		return levels;
+	}
+	/** Returns the number of update cycles the full history covers
+	 *  @return capacity*(2^levels-1) */
+	public long getHorizon () {
+		return (long)capacity*((1L<<levels)-1);
+	}
+	/** Returns a position of the history
+	 *  @param _index the index of the position, 0 for the oldest, getSize()-1 for the newest
+	 *  @param _dst the PVector to fill, if null a new PVector is created
+	 *  @return _dst or the new PVector. If _index out of range the vector is not changed */
+	public PVector get (int _index, PVector _dst) {
+		PVector dst = _dst != null ? _dst : new PVector();
+		int l = level(_index);
+		if (l < 0) return dst;
+		int s = slot(l,_index);
+		dst.set(position[l][s*3],position[l][s*3+1],position[l][s*3+2]);
+		return dst;
+	}
+	/** Returns the capture time of a position. Merged positions have the mean capture time
+	 *  @param _index the index of the position, 0 for the oldest
+	 *  @return the capture time in nanoseconds. If _index out of range: 0 */
+	public long getTimestamp (int _index) {
+		int l = level(_index);
+		return l >= 0 ? timestamp[l][slot(l,_index)] : 0L;
+	}
+	/** Returns the number of update cycles a position stands for, 2^level
+	 *  @param _index the index of the position, 0 for the oldest
+	 *  @return number of update cycles. If _index out of range: 0 */
+	public int getFrames (int _index) {
+		int l = level(_index);
+		return l >= 0 ? 1<<l : 0;
+	}
+	/** Copies the positions to a caller-owned buffer without allocating, oldest first. Use it to draw the trail with one loop
+	 *  @param _dst the buffer to fill. 3*getSize() floats are written, xyz interleaved. If _dst is too short, as many positions as fit are written
+	 *  @param _offset the index in _dst at which the first x value is written
+	 *  @return number of positions written */
+	public int copyPositions (float[] _dst, int _offset) {
+		int n = 0;
+		for (int l=levels-1; l>=0; l--) {
+			for (int i=0; i<size[l] && _offset+n*3+3 <= _dst.length; i++) {
+				int s = ((first[l]+i)%capacity)*3;
+				_dst[_offset+n*3] = position[l][s];
+				_dst[_offset+n*3+1] = position[l][s+1];
+				_dst[_offset+n*3+2] = position[l][s+2];
+				n++;
+			}
+		}
+		return n;
+	}
+
+	// -----------------------------------------------------------------
+	// PRIVATE HELPER METHODS
+	private void store (int _level, int _slot, float _x, float _y, float _z, long _timestamp) {
+		position[_level][_slot*3] = _x;
+		position[_level][_slot*3+1] = _y;
+		position[_level][_slot*3+2] = _z;
+		timestamp[_level][_slot] = _timestamp;
+	}
+	// the level of a position, the oldest positions are in the last level. -1 if out of range
+	private int level (int _index) {
+		if (_index < 0) return -1;
+		for (int l=levels-1; l>=0; l--) {
+			if (_index < size[l]) return l;
+			_index -= size[l];
+		}
+		return -1;
+	}
+	private int slot (int _level, int _index) {
+		for (int l=levels-1; l>_level; l--) _index -= size[l];
+		return (first[_level]+_index)%capacity;
+	}
+}
@@ -0,0 +1,211 @@
+package therapeuticskeleton;
+
+import processing.core.*;
+
+/** JointPredictor compensates the latency of sensor and processing by extrapolating joint positions forward in time.
+ *  It is meant for mirror therapy, where the patient watches the mirrored limb: the joints are predicted before they are mirrored, so the mirrored limb does not lag behind.
+ *  Skeleton only displays the predicted joints, postures, gestures and statistics are evaluated on the measured joints. See Skeleton.setJointPredictor <br>
+ *  Positions are extrapolated by the horizon with the velocity and acceleration of the last frames. Overshoot is bounded: the acceleration term never exceeds the velocity term
+ *  and the predicted displacement never exceeds the maximum displacement. <p>
+ *  Every prediction is compared to the measured position when the horizon has passed. The average error is reported together with the error without prediction,
+ *  so the horizon can be tuned per installation. Prediction amplifies jitter, use it together with a JointFilter.
+ *  A predictor keeps the history of one user, set one predictor per skeleton with Skeleton.setJointPredictor. Positions are expected in mm, time in seconds. */
+public class JointPredictor {
+
+	// number of predictions that can wait for their horizon to pass. at 30 frames per second, horizons up to 2 seconds are evaluated
+	private static final int PENDING_PREDICTIONS = 64;
+
+	private float horizon;
+	private float maxDisplacement = 150f;
+
+	// history of the measured positions. bit i set in hasPosition/hasVelocity: joint i has a last position/velocity
+	private int hasPosition = 0;
+	private int hasVelocity = 0;
+	private float[] lastPosition = new float[Skeleton.NUMBER_OF_JOINTS*3];
+	private float[] lastVelocity = new float[Skeleton.NUMBER_OF_JOINTS*3];
+	private double time = 0.0;
+
+	// predictions waiting for their horizon to pass, ring of PENDING_PREDICTIONS entries
+	private float[] pendingPredicted = new float[PENDING_PREDICTIONS*Skeleton.NUMBER_OF_JOINTS*3];
+	private float[] pendingMeasured = new float[PENDING_PREDICTIONS*Skeleton.NUMBER_OF_JOINTS*3];
+	private double[] pendingTime = new double[PENDING_PREDICTIONS];
+	private int[] pendingMask = new int[PENDING_PREDICTIONS];
+	private int pendingHead = 0;
+	private int numberOfPending = 0;
+
+	// measurement of the prediction error
+	private long errorCount = 0;
+	private double predictionErrorSum = 0.0;
+	private double uncompensatedErrorSum = 0.0;
+	private float maxPredictionError = 0f;
+
+	/** Constructor for the JointPredictor.
+	 *  @param _horizon the time in seconds the joints are extrapolated forward, e.g. the latency of sensor and processing */
+	public JointPredictor (float _horizon) {
+		setHorizon(_horizon);
+	}
+
+	/** Extrapolates the measured joint positions by the horizon.
+	 *  @param _measured the measured joint positions, 3*Skeleton.NUMBER_OF_JOINTS floats, xyz interleaved. Not changed
+	 *  @param _predicted the buffer the predicted positions are written to, only joints in _jointMask are written. May be the same array as _measured
+	 *  @param _jointMask the joints to predict, see Skeleton.jointMask
+	 *  @param _dt the time since the last call in seconds */
+	public void predict (float[] _measured, float[] _predicted, int _jointMask, float _dt) {
+		hasPosition &= _jointMask;
+		hasVelocity &= _jointMask;
+		if (_dt > 0f) time += _dt;
+		evaluatePendingPredictions(_measured,_jointMask,_dt);
+
+		int slot = addPendingPrediction(_jointMask);
+		int pendingOffset = slot*Skeleton.NUMBER_OF_JOINTS*3;
+		System.arraycopy(_measured,0,pendingMeasured,pendingOffset,Skeleton.NUMBER_OF_JOINTS*3);
+		float h2 = horizon*horizon/2f;
+		for (int j=0; j<Skeleton.NUMBER_OF_JOINTS; j++) {
+			if ((_jointMask & (1<<j)) == 0) continue;
+			int i = j*3;
+			float x = _measured[i], y = _measured[i+1], z = _measured[i+2];
+			float vx = 0f, vy = 0f, vz = 0f;
+			float ax = 0f, ay = 0f, az = 0f;
+			if ((hasPosition & (1<<j)) != 0 && _dt > 0f) {
+				vx = (x-lastPosition[i])/_dt;
+				vy = (y-lastPosition[i+1])/_dt;
+				vz = (z-lastPosition[i+2])/_dt;
+				if ((hasVelocity & (1<<j)) != 0) {
+					ax = (vx-lastVelocity[i])/_dt;
+					ay = (vy-lastVelocity[i+1])/_dt;
+					az = (vz-lastVelocity[i+2])/_dt;
+				}
+				lastVelocity[i] = vx;
+				lastVelocity[i+1] = vy;
+				lastVelocity[i+2] = vz;
+				hasVelocity |= 1<<j;
+			}
+			lastPosition[i] = x;
+			lastPosition[i+1] = y;
+			lastPosition[i+2] = z;
+			hasPosition |= 1<<j;
+
+			// displacement by velocity and acceleration, the acceleration term is bounded by the velocity term
+			float dvx = vx*horizon, dvy = vy*horizon, dvz = vz*horizon;
+			float dax = ax*h2, day = ay*h2, daz = az*h2;
+			float velocityTerm = PApplet.sqrt(dvx*dvx+dvy*dvy+dvz*dvz);
+			float accelerationTerm = PApplet.sqrt(dax*dax+day*day+daz*daz);
+			if (accelerationTerm > velocityTerm) {
+				float scale = velocityTerm/accelerationTerm;
+				dax *= scale;
+				day *= scale;
+				daz *= scale;
+			}
+			float dx = dvx+dax, dy = dvy+day, dz = dvz+daz;
+			float displacement = PApplet.sqrt(dx*dx+dy*dy+dz*dz);
+			if (displacement > maxDisplacement) {
+				float scale = maxDisplacement/displacement;
+				dx *= scale;
+				dy *= scale;
+				dz *= scale;
+			}
+			_predicted[i] = x+dx;
+			_predicted[i+1] = y+dy;
+			_predicted[i+2] = z+dz;
+			pendingPredicted[pendingOffset+i] = _predicted[i];
+			pendingPredicted[pendingOffset+i+1] = _predicted[i+1];
+			pendingPredicted[pendingOffset+i+2] = _predicted[i+2];
+		}
+	}
+	/** Clears the history of all joints and the pending predictions, e.g. when the user was lost. The measurement of the prediction error is kept. */
+	public void reset () {
+		hasPosition = 0;
+		hasVelocity = 0;
+		numberOfPending = 0;
+	}
+
+	// -----------------------------------------------------------------
+	// GETTERS AND SETTERS
+	/** Setter for the prediction horizon.
+	 *  @param _horizon the time in seconds the joints are extrapolated forward. Lower than 0 is treated as 0 */
+	public void setHorizon (float _horizon) {
+		horizon = PApplet.max(0f,_horizon);
+	}
+	/** Getter for the prediction horizon.
+	 *  @return the horizon in seconds */
+	public float getHorizon () {
+		return horizon;
+	}
+	/** Setter for the maximum displacement of a predicted joint from its measured position. Bounds the overshoot at sudden stops and tracking glitches.
+	 *  @param _maxDisplacement the maximum displacement in mm. Lower than 0 is treated as 0. default is 150mm */
+	public void setMaxDisplacement (float _maxDisplacement) {
+		maxDisplacement = PApplet.max(0f,_maxDisplacement);
+	}
+	/** Getter for the maximum displacement of a predicted joint from its measured position.
+	 *  @return the maximum displacement in mm */
+	public float getMaxDisplacement () {
+		return maxDisplacement;
+	}
+	/** Getter for the number of predicted joint positions that were compared to the measured position after the horizon passed.
+	 *  @return the number of evaluated joint predictions */
+	public long getErrorCount () {
+		return errorCount;
+	}
+	/** Getter for the average distance between predicted joint positions and the positions measured when the horizon passed.
+	 *  @return the average prediction error in mm, 0f if no prediction was evaluated yet */
+	public float getAveragePredictionError () {
+		return errorCount > 0 ? (float)(predictionErrorSum/errorCount) : 0f;
+	}
+	/** Getter for the average distance between measured joint positions and the positions measured when the horizon passed, i.e. the error without prediction.
+	 *  Prediction pays off, if the average prediction error is lower.
+	 *  @return the average error without prediction in mm, 0f if no prediction was evaluated yet */
+	public float getAverageUncompensatedError () {
+		return errorCount > 0 ? (float)(uncompensatedErrorSum/errorCount) : 0f;
+	}
+	/** Getter for the highest distance between a predicted joint position and the position measured when the horizon passed.
+	 *  @return the maximum prediction error in mm */
+	public float getMaxPredictionError () {
+		return maxPredictionError;
+	}
+	/** Resets the measurement of the prediction error. */
+	public void resetMeasurement () {
+		errorCount = 0;
+		predictionErrorSum = 0.0;
+		uncompensatedErrorSum = 0.0;
+		maxPredictionError = 0f;
+	}
+
+	// -----------------------------------------------------------------
+	// PRIVATE HELPER METHODS
+	private int addPendingPrediction (int _jointMask) {
+		if (numberOfPending == PENDING_PREDICTIONS) {
+			// the horizon is too long to be evaluated, drop the oldest prediction
+			pendingHead = (pendingHead+1)%PENDING_PREDICTIONS;
+			numberOfPending--;
+		}
+		int slot = (pendingHead+numberOfPending)%PENDING_PREDICTIONS;
+		pendingTime[slot] = time+horizon;
+		pendingMask[slot] = _jointMask;
+		numberOfPending++;
+		return slot;
+	}
+	// compares the predictions whose horizon passed with the measured positions. the frame closest to the end of the horizon is used
+	private void evaluatePendingPredictions (float[] _measured, int _jointMask, float _dt) {
+		while (numberOfPending > 0 && pendingTime[pendingHead] <= time+_dt/2f) {
+			int offset = pendingHead*Skeleton.NUMBER_OF_JOINTS*3;
+			int jointMask = pendingMask[pendingHead] & _jointMask;
+			for (int j=0; j<Skeleton.NUMBER_OF_JOINTS; j++) {
+				if ((jointMask & (1<<j)) == 0) continue;
+				int i = j*3;
+				float predictionError = distance(pendingPredicted,offset+i,_measured,i);
+				predictionErrorSum += predictionError;
+				uncompensatedErrorSum += distance(pendingMeasured,offset+i,_measured,i);
+				if (predictionError > maxPredictionError) maxPredictionError = predictionError;
+				errorCount++;
+			}
+			pendingHead = (pendingHead+1)%PENDING_PREDICTIONS;
+			numberOfPending--;
+		}
+	}
+	private float distance (float[] _a, int _indexA, float[] _b, int _indexB) {
+		float dx = _a[_indexA]-_b[_indexB];
+		float dy = _a[_indexA+1]-_b[_indexB+1];
+		float dz = _a[_indexA+2]-_b[_indexB+2];
+		return PApplet.sqrt(dx*dx+dy*dy+dz*dz);
+	}
+}
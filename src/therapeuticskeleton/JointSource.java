@@ -0,0 +1,38 @@
+package therapeuticskeleton;
+
+import processing.core.*;
+
+/** JointSource delivers the raw joint information of a tracked user to a Skeleton.
+ *  Skeleton pulls one whole frame per update cycle from its JointSource in a single call to fetchJoints.
+ *  SimpleOpenNIJointSource talks to a live Kinect, SyntheticJointSource generates joints without hardware for testing and benchmarking. */
+public interface JointSource {
+
+	/** Fetches the joint information of one user for the current frame.
+	 *  Positions are written with anatomically correct left/right labels, i.e. in the order of the Skeleton joint constants.
+	 *  Joints that are not fetched (joints not in _jointMask) are left untouched in the buffers.
+	 *  @param _userId the user ID of the skeleton
+	 *  @param _jointMask the joints to fetch, bit i set for the joint with Skeleton constant i. See Skeleton.jointMask
+	 *  @param _position buffer for the joint positions in the global coordinate system, 3*Skeleton.NUMBER_OF_JOINTS floats, xyz interleaved
+	 *  @param _positionConfidence buffer for the confidence values of the joint positions, Skeleton.NUMBER_OF_JOINTS floats
+	 *  @param _orientation preallocated orientation matrices of the joints, Skeleton.NUMBER_OF_JOINTS entries
+	 *  @param _orientationConfidence buffer for the confidence values of the joint orientations, Skeleton.NUMBER_OF_JOINTS floats
+	 *  @return true if the user is tracked and the buffers were filled, false if the buffers were not changed */
+	public boolean fetchJoints (int _userId, int _jointMask, float[] _position, float[] _positionConfidence, PMatrix3D[] _orientation, float[] _orientationConfidence);
+
+	/** Returns the capture time of the current frame of a user. Skeleton calls it right after fetchJoints and measures the time between frames with it,
+	 *  so timing stays right when the frame rate fluctuates, frames are dropped or frames are not delivered in real time.
+	 *  Sources capturing all users at once return the same time for all users of a frame. It must not change between calls for the same frame.
+	 *  @param _userId the user ID of the skeleton
+	 *  @return the capture time in nanoseconds on the time scale of System.nanoTime. Only differences are meaningful */
+	public long getTimestamp (int _userId);
+
+	/** Writes the IDs of all users whose skeletons are currently tracked to a caller-owned buffer.
+	 *  @param _userIds the buffer the user IDs are written to. If there are more tracked users than the buffer can hold, only the first ones are written
+	 *  @return the number of user IDs written to _userIds */
+	public int getTrackedUsers (int[] _userIds);
+
+	/** Converts a position in the global coordinate system to the projective plane of the sensor.
+	 *  @param _realWorld the position in the global coordinate system
+	 *  @param _projective the vector the projected position is written to */
+	public void convertRealWorldToProjective (PVector _realWorld, PVector _projective);
+}
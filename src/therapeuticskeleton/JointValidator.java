@@ -0,0 +1,301 @@
+package therapeuticskeleton;
+
+import processing.core.*;
+
+/** JointValidator checks the joint positions fetched from the joint source for plausibility before a Skeleton evaluates them, so a single tracking glitch does not end up in joint deltas, posture and statistics.
+ *  A joint is invalid if its confidence is too low, if it moved faster than a human joint can move, or if the length of the limb it ends changed too much.
+ *  Invalid joints are handled by the policy of the joint: <br>
+ *  HOLD: the joint keeps its last valid position. <br>
+ *  INTERPOLATE: the joint continues with the velocity of its last valid positions. <br>
+ *  REJECT: the joint keeps its last valid position and the frame is marked as rejected, so consumers can skip it. <br>
+ *  A joint is synthesized for at most the maximum number of gap frames. An invalid joint that can't be synthesized, because it has no valid history or its gap is too long,
+ *  keeps the position it had in the last frame regardless of the policy, is tagged as rejected and starts over with its next valid position.
+ *  Only a joint without a position in the last frame passes an invalid measurement. Every frame is tagged with the synthesized and rejected joints.
+ *  The validator does not allocate. A validator keeps the history of one user, set one validator per skeleton with Skeleton.setJointValidator. Positions are expected in mm, time in seconds. */
+public class JointValidator {
+
+	/** Invalid joints keep their last valid position */
+	public static final short HOLD = 0;
+	/** Invalid joints continue with the velocity of their last valid positions */
+	public static final short INTERPOLATE = 1;
+	/** Invalid joints keep their last valid position, the frame is marked as rejected */
+	public static final short REJECT = 2;
+
+	// order of validation, proximal joints first, so the limb length of a joint is checked against its validated parent
+	private static final short[] VALIDATION_ORDER = {
+		Skeleton.NECK, Skeleton.TORSO, Skeleton.LEFT_SHOULDER, Skeleton.RIGHT_SHOULDER, Skeleton.LEFT_HIP, Skeleton.RIGHT_HIP, Skeleton.HEAD,
+		Skeleton.LEFT_ELBOW, Skeleton.LEFT_HAND, Skeleton.RIGHT_ELBOW, Skeleton.RIGHT_HAND,
+		Skeleton.LEFT_KNEE, Skeleton.LEFT_FOOT, Skeleton.RIGHT_KNEE, Skeleton.RIGHT_FOOT
+	};
+	// parent joint of each joint, the limb from parent to joint is checked for its length. -1: no limb is checked
+	private static final short[] PARENT = {
+		Skeleton.NECK, -1, -1, Skeleton.LEFT_SHOULDER, Skeleton.LEFT_ELBOW, -1, Skeleton.RIGHT_SHOULDER, Skeleton.RIGHT_ELBOW,
+		-1, -1, Skeleton.LEFT_HIP, Skeleton.LEFT_KNEE, -1, Skeleton.RIGHT_HIP, Skeleton.RIGHT_KNEE
+	};
+	// weight of a valid limb length in the running reference length
+	private static final float LIMB_LENGTH_ADAPTION = 0.05f;
+
+	// setup
+	private short[] policy = new short[Skeleton.NUMBER_OF_JOINTS];
+	private float minConfidence = 0.5f;
+	private float maxSpeed = 5000f;
+	private float limbLengthTolerance = 0.3f;
+	private int maxGapFrames = 15;
+
+	// state. bit i of hasHistory is set, if joint i has a last valid position
+	private int hasHistory = 0;
+	private float[] lastValid = new float[Skeleton.NUMBER_OF_JOINTS*3];
+	private float[] velocity = new float[Skeleton.NUMBER_OF_JOINTS*3];
+	private int[] gapFrames = new int[Skeleton.NUMBER_OF_JOINTS];
+	// position of joint i passed in the last frame, valid or synthesized. bit i of hasPublished is set, if joint i was passed
+	private int hasPublished = 0;
+	private float[] lastPublished = new float[Skeleton.NUMBER_OF_JOINTS*3];
+	// reference length of the limb ending in joint i. bit i of hasReference is set, if the length is known
+	private int hasReference = 0;
+	private float[] referenceLength = new float[Skeleton.NUMBER_OF_JOINTS];
+	// tags of the last frame
+	private int synthesizedJointMask = 0;
+	private int rejectedJointMask = 0;
+
+	// measurement
+	private long validateCount = 0;
+	private long jointCount = 0;
+	private long lowConfidenceCount = 0;
+	private long displacementCount = 0;
+	private long limbLengthCount = 0;
+	private long synthesizedCount = 0;
+	private long rejectedFrameCount = 0;
+
+	/** Constructor for the JointValidator. All joints are handled with the same policy.
+	 *  @param _policy HOLD, INTERPOLATE or REJECT */
+	public JointValidator (short _policy) {
+		for (short i=0; i<Skeleton.NUMBER_OF_JOINTS; i++) {
+			setPolicy(i,_policy);
+		}
+	}
+
+	/** Validates the joint positions in place. Invalid joints are replaced according to their policy. Joints not in the joint mask lose their history.
+	 *  @param _position joint positions, 3*Skeleton.NUMBER_OF_JOINTS floats, xyz interleaved
+	 *  @param _confidence confidence values of the joints between 0f and 1f, Skeleton.NUMBER_OF_JOINTS floats
+	 *  @param _jointMask the joints to validate, see Skeleton.jointMask
+	 *  @param _dt the time since the last call in seconds. If 0, displacement is not checked
+	 *  @return the joints synthesized in this frame, see getSynthesizedJointMask */
+	public int validate (float[] _position, float[] _confidence, int _jointMask, float _dt) {
+		hasHistory &= _jointMask;
+		hasPublished &= _jointMask;
+		synthesizedJointMask = 0;
+		rejectedJointMask = 0;
+		int validJointMask = 0;
+		for (int k=0; k<VALIDATION_ORDER.length; k++) {
+			int j = VALIDATION_ORDER[k];
+			if ((_jointMask & (1<<j)) == 0) continue;
+			jointCount++;
+			int i = j*3;
+			int parent = PARENT[j];
+			boolean hasParent = parent >= 0 && (_jointMask & (1<<parent)) != 0;
+			float limbLength = hasParent ? distance(_position,i,_position,parent*3) : 0f;
+			boolean valid = true;
+			if (_confidence[j] < minConfidence) {
+				lowConfidenceCount++;
+				valid = false;
+			} else if ((hasHistory & (1<<j)) != 0 && _dt > 0f && distance(_position,i,lastValid,i) > maxSpeed*_dt*(gapFrames[j]+1)) {
+				displacementCount++;
+				valid = false;
+			} else if (hasParent && (hasReference & (1<<j)) != 0 && PApplet.abs(limbLength-referenceLength[j]) > limbLengthTolerance*referenceLength[j]) {
+				limbLengthCount++;
+				valid = false;
+			}
+
+			if (valid) {
+				acceptPosition(_position,j,_dt);
+				validJointMask |= 1<<j;
+				// the reference length only learns from limbs measured and valid at both ends
+				if (hasParent && (validJointMask & (1<<parent)) != 0) {
+					if ((hasReference & (1<<j)) != 0) {
+						referenceLength[j] += LIMB_LENGTH_ADAPTION*(limbLength-referenceLength[j]);
+					} else {
+						referenceLength[j] = limbLength;
+						hasReference |= 1<<j;
+					}
+				}
+			} else if ((hasHistory & (1<<j)) == 0 || gapFrames[j] >= maxGapFrames) {
+				// nothing to synthesize from, or the gap is too long: the joint starts over with the next valid position and limb length.
+				// until then it holds its last position, so the outlier does not reach filter and evaluation
+				hasHistory &= ~(1<<j);
+				hasReference &= ~(1<<j);
+				rejectedJointMask |= 1<<j;
+				if ((hasPublished & (1<<j)) != 0) {
+					_position[i] = lastPublished[i];
+					_position[i+1] = lastPublished[i+1];
+					_position[i+2] = lastPublished[i+2];
+					synthesizedJointMask |= 1<<j;
+					synthesizedCount++;
+				}
+			} else {
+				gapFrames[j]++;
+				float elapsed = policy[j] == INTERPOLATE ? _dt*gapFrames[j] : 0f;
+				_position[i] = lastValid[i]+velocity[i]*elapsed;
+				_position[i+1] = lastValid[i+1]+velocity[i+1]*elapsed;
+				_position[i+2] = lastValid[i+2]+velocity[i+2]*elapsed;
+				synthesizedJointMask |= 1<<j;
+				synthesizedCount++;
+				if (policy[j] == REJECT) rejectedJointMask |= 1<<j;
+			}
+			lastPublished[i] = _position[i];
+			lastPublished[i+1] = _position[i+1];
+			lastPublished[i+2] = _position[i+2];
+			hasPublished |= 1<<j;
+		}
+		validateCount++;
+		if (rejectedJointMask != 0) rejectedFrameCount++;
+		return synthesizedJointMask;
+	}
+	/** Clears the history and the limb lengths of all joints, e.g. when the user was lost. */
+	public void reset () {
+		hasHistory = 0;
+		hasPublished = 0;
+		hasReference = 0;
+		synthesizedJointMask = 0;
+		rejectedJointMask = 0;
+	}
+
+	// -----------------------------------------------------------------
+	// GETTERS AND SETTERS
+	/** Setter for the policy of a joint.
+	 *  @param _jointType short corresponding to Skeleton constants
+	 *  @param _policy HOLD, INTERPOLATE or REJECT. If out of range, HOLD is used */
+	public void setPolicy (short _jointType, short _policy) {
+		if (_jointType < 0 || _jointType >= Skeleton.NUMBER_OF_JOINTS) return;
+		policy[_jointType] = (_policy == INTERPOLATE || _policy == REJECT) ? _policy : HOLD;
+	}
+	/** Getter for the policy of a joint.
+	 *  @param _jointType short corresponding to Skeleton constants
+	 *  @return HOLD, INTERPOLATE or REJECT. HOLD if _jointType is out of range */
+	public short getPolicy (short _jointType) {
+		if (_jointType >= 0 && _jointType < Skeleton.NUMBER_OF_JOINTS)
+			return policy[_jointType];
+		else
+			return HOLD;
+	}
+	/** Setter for the minimum confidence of a valid joint. OpenNI delivers 0f for lost, 0.5f for inferred and 1f for tracked joints.
+	 *  @param _minConfidence the minimum confidence between 0f and 1f. default is 0.5f */
+	public void setMinConfidence (float _minConfidence) {
+		minConfidence = _minConfidence;
+	}
+	/** Getter for the minimum confidence of a valid joint.
+	 *  @return the minimum confidence */
+	public float getMinConfidence () {
+		return minConfidence;
+	}
+	/** Setter for the maximum speed of a valid joint. Joints moving faster from their last valid position are invalid.
+	 *  @param _maxSpeed the maximum speed in mm per second. default is 5000mm/s */
+	public void setMaxSpeed (float _maxSpeed) {
+		maxSpeed = _maxSpeed;
+	}
+	/** Getter for the maximum speed of a valid joint.
+	 *  @return the maximum speed in mm per second */
+	public float getMaxSpeed () {
+		return maxSpeed;
+	}
+	/** Setter for the tolerance of limb lengths. A joint is invalid, if the limb it ends deviates more from its usual length. The usual length is learned from valid frames.
+	 *  @param _limbLengthTolerance the tolerated deviation relative to the usual length, e.g. 0.3f for 30%. default is 0.3f */
+	public void setLimbLengthTolerance (float _limbLengthTolerance) {
+		limbLengthTolerance = _limbLengthTolerance;
+	}
+	/** Getter for the tolerance of limb lengths.
+	 *  @return the tolerated deviation relative to the usual length */
+	public float getLimbLengthTolerance () {
+		return limbLengthTolerance;
+	}
+	/** Setter for the maximum number of consecutive frames a joint is synthesized. Afterwards the joint holds its last position until it is valid again and starts over.
+	 *  @param _maxGapFrames the maximum number of frames. default is 15 */
+	public void setMaxGapFrames (int _maxGapFrames) {
+		maxGapFrames = PApplet.max(0,_maxGapFrames);
+	}
+	/** Getter for the maximum number of consecutive frames a joint is synthesized.
+	 *  @return the maximum number of frames */
+	public int getMaxGapFrames () {
+		return maxGapFrames;
+	}
+	/** Getter for the joints synthesized in the last frame, i.e. held or interpolated instead of measured. Includes rejected joints holding their last position.
+	 *  @return the joint mask of the synthesized joints, see Skeleton.jointMask */
+	public int getSynthesizedJointMask () {
+		return synthesizedJointMask;
+	}
+	/** Getter for the joints that were invalid in the last frame and rejected, either by policy REJECT or because they could not be synthesized.
+	 *  @return the joint mask of the rejected joints, 0 if the frame is not rejected */
+	public int getRejectedJointMask () {
+		return rejectedJointMask;
+	}
+	/** Getter for the number of frames validated since creation or last reset of the measurement.
+	 *  @return the number of calls to validate */
+	public long getValidateCount () {
+		return validateCount;
+	}
+	/** Getter for the number of joints validated since creation or last reset of the measurement.
+	 *  @return the number of validated joints */
+	public long getJointCount () {
+		return jointCount;
+	}
+	/** Getter for the number of joints invalid due to low confidence.
+	 *  @return the number of joints with low confidence */
+	public long getLowConfidenceCount () {
+		return lowConfidenceCount;
+	}
+	/** Getter for the number of joints invalid due to implausible displacement.
+	 *  @return the number of joints moving faster than the maximum speed */
+	public long getDisplacementCount () {
+		return displacementCount;
+	}
+	/** Getter for the number of joints invalid due to implausible limb length.
+	 *  @return the number of joints ending limbs out of tolerance */
+	public long getLimbLengthCount () {
+		return limbLengthCount;
+	}
+	/** Getter for the number of joints synthesized since creation or last reset of the measurement.
+	 *  @return the number of held or interpolated joints */
+	public long getSynthesizedCount () {
+		return synthesizedCount;
+	}
+	/** Getter for the number of frames with rejected joints since creation or last reset of the measurement.
+	 *  @return the number of rejected frames */
+	public long getRejectedFrameCount () {
+		return rejectedFrameCount;
+	}
+	/** Resets the measurement of the validator. */
+	public void resetMeasurement () {
+		validateCount = 0;
+		jointCount = 0;
+		lowConfidenceCount = 0;
+		displacementCount = 0;
+		limbLengthCount = 0;
+		synthesizedCount = 0;
+		rejectedFrameCount = 0;
+	}
+
+	// -----------------------------------------------------------------
+	// PRIVATE HELPER METHODS
+	private void acceptPosition (float[] _position, int _joint, float _dt) {
+		int i = _joint*3;
+		if ((hasHistory & (1<<_joint)) != 0 && _dt > 0f) {
+			// velocity over the whole gap, so interpolation continues smoothly after synthesized frames
+			float elapsed = _dt*(gapFrames[_joint]+1);
+			velocity[i] = (_position[i]-lastValid[i])/elapsed;
+			velocity[i+1] = (_position[i+1]-lastValid[i+1])/elapsed;
+			velocity[i+2] = (_position[i+2]-lastValid[i+2])/elapsed;
+		} else {
+			velocity[i] = velocity[i+1] = velocity[i+2] = 0f;
+		}
+		lastValid[i] = _position[i];
+		lastValid[i+1] = _position[i+1];
+		lastValid[i+2] = _position[i+2];
+		gapFrames[_joint] = 0;
+		hasHistory |= 1<<_joint;
+	}
+	private float distance (float[] _a, int _indexA, float[] _b, int _indexB) {
+		float dx = _a[_indexA]-_b[_indexB];
+		float dy = _a[_indexA+1]-_b[_indexB+1];
+		float dz = _a[_indexA+2]-_b[_indexB+2];
+		return PApplet.sqrt(dx*dx+dy*dy+dz*dz);
+	}
+}
@@ -0,0 +1,423 @@
+package therapeuticskeleton;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import processing.core.*;
+
+/** PostureLibrary holds custom postures defined in a text file, so new exercises need no changes in the code.
+ *  Postures are evaluated additionally to the postures of SkeletonPosture, see Skeleton.setPostureLibrary. One library can be shared by all skeletons. <p>
+ *  The file defines one posture per posture line, followed by its constraints. Empty lines and lines starting with # are ignored: <br>
+ *  posture NAME <br>
+ *  angle LIMB LIMB min max [exact] -- angle between two limbs in degree <br>
+ *  angle LIMB X|Y|Z min max [exact] -- angle between a limb and an axis of the local coordinate system in degree <br>
+ *  distance JOINT JOINT min max [exact] -- distance between two joints in mm <p>
+ *  JOINT is the name of a Skeleton joint constant, e.g. LEFT_HAND. LIMB is one of LEFT_UPPER_ARM, LEFT_LOWER_ARM, RIGHT_UPPER_ARM, RIGHT_LOWER_ARM,
+ *  LEFT_UPPER_LEG, LEFT_LOWER_LEG, RIGHT_UPPER_LEG, RIGHT_LOWER_LEG, SHOULDERS, HIPS, SPINE, NECK or the vector between two joints, e.g. LEFT_SHOULDER-LEFT_HAND.
+ *  Limbs point away from the torso, shoulders and hips from left to right. The tolerance widens min and max of all constraints not marked exact. <p>
+ *  All constraints of a posture must hold. If several postures match, the first one in the file is recognized.
+ *  At load time the constraints are compiled to an interval index: per feature the bounds divide its range into intervals, and each interval stores the set of postures it satisfies.
+ *  Classification looks up one interval per feature and intersects the sets, so its cost grows with the number of distinct features, not with the number of postures. <p>
+ *  The library can be reloaded while the sketch runs, see reloadIfModified. If the changed file is invalid, the last valid postures are kept.
+ *  Posture ids may change on reload, identify postures by name. */
+public class PostureLibrary {
+
+	/** Returned if no posture of the library is recognized */
+	public static final int NO_POSTURE = -1;
+	/** The file is checked for changes at most once per interval, in milliseconds */
+	public static final long RELOAD_INTERVAL = 1000;
+
+	private static final String[] JOINT_NAMES = {"HEAD","NECK","LEFT_SHOULDER","LEFT_ELBOW","LEFT_HAND","RIGHT_SHOULDER","RIGHT_ELBOW","RIGHT_HAND",
+		"TORSO","LEFT_HIP","LEFT_KNEE","LEFT_FOOT","RIGHT_HIP","RIGHT_KNEE","RIGHT_FOOT"};
+	private static final String[] LIMB_NAMES = {"LEFT_UPPER_ARM","LEFT_LOWER_ARM","RIGHT_UPPER_ARM","RIGHT_LOWER_ARM",
+		"LEFT_UPPER_LEG","LEFT_LOWER_LEG","RIGHT_UPPER_LEG","RIGHT_LOWER_LEG","SHOULDERS","HIPS","SPINE","NECK"};
+	// joints the named limbs point from and to
+	private static final short[][] LIMB_JOINTS = {
+		{Skeleton.LEFT_SHOULDER,Skeleton.LEFT_ELBOW},{Skeleton.LEFT_ELBOW,Skeleton.LEFT_HAND},
+		{Skeleton.RIGHT_SHOULDER,Skeleton.RIGHT_ELBOW},{Skeleton.RIGHT_ELBOW,Skeleton.RIGHT_HAND},
+		{Skeleton.LEFT_HIP,Skeleton.LEFT_KNEE},{Skeleton.LEFT_KNEE,Skeleton.LEFT_FOOT},
+		{Skeleton.RIGHT_HIP,Skeleton.RIGHT_KNEE},{Skeleton.RIGHT_KNEE,Skeleton.RIGHT_FOOT},
+		{Skeleton.LEFT_SHOULDER,Skeleton.RIGHT_SHOULDER},{Skeleton.LEFT_HIP,Skeleton.RIGHT_HIP},
+		{Skeleton.TORSO,Skeleton.NECK},{Skeleton.NECK,Skeleton.HEAD}};
+	private static final String[] AXIS_NAMES = {"X","Y","Z"};
+	// feature types. a feature is stored as {type, from, to, from, to} for angles between limbs, {type, from, to, axis, 0} for angles to an axis and {type, joint, joint, 0, 0} for distances
+	private static final int ANGLE_LIMBS = 0;
+	private static final int ANGLE_AXIS = 1;
+	private static final int DISTANCE = 2;
+	// tolerance of angles in radians and of distances in mm at tolerance 1, as in SkeletonPosture
+	private static final float ANGLE_TOLERANCE = PApplet.radians(20);
+	private static final float DISTANCE_TOLERANCE = 100f;
+
+	private String fileName;
+	private File file;
+	private long fileModified = 0;
+	private long fileLength = 0;
+	private volatile long lastCheck = 0;
+	// written under the monitor, read without it by skeletons updated on other threads
+	private volatile int loadCount = 0;
+	private volatile float tolerance = 0.5f;
+	// the current postures, compiled for the current tolerance. replaced as a whole on reload, so skeletons updated on other threads always see a complete index
+	private volatile Index index;
+
+	/** Constructor for the posture library. Loads and compiles the postures of the file.
+	 *  @param _fileName path to the posture file
+	 *  @throws IOException if the file can't be read or is invalid. The message names the invalid line */
+	public PostureLibrary (String _fileName) throws IOException {
+		fileName = _fileName;
+		file = new File(fileName);
+		index = new Index(parse(),tolerance);
+		loadCount++;
+	}
+
+	/** Loads the posture file again. If the file can't be read or is invalid, the last valid postures are kept.
+	 *  @return true if the postures were reloaded */
+	public synchronized boolean reload () {
+		try {
+			index = new Index(parse(),tolerance);
+			loadCount++;
+			return true;
+		} catch (IOException e) {
+			PApplet.println("couldn't reload posture library, "+e.getMessage());
+			return false;
+		}
+	}
+	/** Reloads the posture file if it was changed since it was loaded. The file is checked at most once per RELOAD_INTERVAL, so this can be called every frame.
+	 *  Skeleton calls it in its update method while it evaluates posture and gesture. Between checks it returns without locking, so skeletons sharing the library do not wait for each other.
+	 *  @return true if the postures were reloaded */
+	public boolean reloadIfModified () {
+		long now = System.currentTimeMillis();
+		if (now-lastCheck < RELOAD_INTERVAL) return false;
+		synchronized (this) {
+			// another skeleton may have checked meanwhile
+			if (now-lastCheck < RELOAD_INTERVAL) return false;
+			lastCheck = now;
+			if (file.lastModified() == fileModified && file.length() == fileLength) return false;
+			// an invalid file is reported once, not on every check
+			fileModified = file.lastModified();
+			fileLength = file.length();
+			return reload();
+		}
+	}
+	/** Setter for the tolerance with which the postures of the library will be detected. 0..1f. Recompiles the postures.
+	 *  @param _tolerance the tolerance between 0..1f. when higher than 1 or lower than 0, default tolerance 0.5f will be set */
+	public synchronized void setTolerance (float _tolerance) {
+		if (_tolerance >= 0f && _tolerance <= 1f) {
+			tolerance = _tolerance;
+		} else {
+			tolerance = 0.5f;
+		}
+		index = new Index(index.postures,tolerance);
+	}
+	/** Getter for the tolerance
+	 *  @return the tolerance */
+	public float getTolerance () {
+		return tolerance;
+	}
+	/** Getter for the posture file
+	 *  @return the path to the posture file */
+	public String getFileName () {
+		return fileName;
+	}
+	/** Returns how often the postures were loaded successfully, the initial load included. Changes when the postures are reloaded
+	 *  @return number of successful loads */
+	public int getLoadCount () {
+		return loadCount;
+	}
+	/** Getter for the number of postures
+	 *  @return the number of postures in the library */
+	public int getNumberOfPostures () {
+		return index.postures.names.length;
+	}
+	/** Returns the name of a posture
+	 *  @param _posture the id of the posture, its position in the file starting with 0
+	 *  @return the name of the posture. If _posture out of range: null */
+	public String getPostureName (int _posture) {
+		return index.getPostureName(_posture);
+	}
+	/** Returns the id of a posture, its position in the file starting with 0
+	 *  @param _name the name of the posture
+	 *  @return the id of the posture or NO_POSTURE if there is no posture of the name */
+	public int getPostureId (String _name) {
+		String[] names = index.postures.names;
+		for (int p=0; p<names.length; p++) {
+			if (names[p].equals(_name)) return p;
+		}
+		return NO_POSTURE;
+	}
+	/** Getter for the number of distinct features the constraints of all postures are built from. Classification costs grow with this number
+	 *  @return number of features */
+	public int getNumberOfFeatures () {
+		return index.postures.features.length;
+	}
+	/** Returns the joints the postures of the library read. Skeleton evaluates them automatically
+	 *  @return joint mask of the required joints, see Skeleton.jointMask */
+	public int getRequiredJointMask () {
+		return index.postures.requiredJointMask;
+	}
+
+	// the current index. classify with the returned object, so the result and the posture names refer to the same load
+	Index index () {
+		return index;
+	}
+
+	// -----------------------------------------------------------------
+	// PRIVATE HELPER METHODS
+	private Postures parse () throws IOException {
+		long modified = file.lastModified();
+		long length = file.length();
+		ArrayList<String> names = new ArrayList<String>();
+		ArrayList<int[]> features = new ArrayList<int[]>();
+		// constraints as {posture, feature, min, max, exact}
+		ArrayList<float[]> constraints = new ArrayList<float[]>();
+		BufferedReader reader = new BufferedReader(new FileReader(file));
+		try {
+			String line;
+			int lineNumber = 0;
+			// every posture needs a constraint, a posture without constraints would match every frame
+			int constrainedPostures = 0;
+			while ((line = reader.readLine()) != null) {
+				lineNumber++;
+				line = line.trim();
+				if (line.length() == 0 || line.startsWith("#")) continue;
+				String[] token = line.split("\\s+");
+				String keyword = token[0].toLowerCase();
+				if (keyword.equals("posture")) {
+					if (token.length != 2) throw new IOException("posture needs a name in line "+lineNumber+" of "+fileName);
+					if (names.contains(token[1])) throw new IOException("posture "+token[1]+" is defined twice in line "+lineNumber+" of "+fileName);
+					if (!names.isEmpty() && constrainedPostures < names.size()) throw new IOException("posture "+names.get(names.size()-1)+" has no constraints in "+fileName);
+					names.add(token[1]);
+				} else if (keyword.equals("angle") || keyword.equals("distance")) {
+					if (names.isEmpty()) throw new IOException("constraint before the first posture in line "+lineNumber+" of "+fileName);
+					if (token.length < 5 || token.length > 6 || (token.length == 6 && !token[5].equalsIgnoreCase("exact"))) {
+						throw new IOException("constraint needs two operands, min, max and optionally exact in line "+lineNumber+" of "+fileName);
+					}
+					int[] feature = keyword.equals("angle") ? parseAngle(token[1],token[2]) : parseDistance(token[1],token[2]);
+					if (feature == null) throw new IOException("unknown joint, limb or axis in line "+lineNumber+" of "+fileName);
+					float min, max;
+					try {
+						min = Float.parseFloat(token[3]);
+						max = Float.parseFloat(token[4]);
+					} catch (NumberFormatException e) {
+						throw new IOException("min and max must be numbers in line "+lineNumber+" of "+fileName);
+					}
+					if (min > max) throw new IOException("min is greater than max in line "+lineNumber+" of "+fileName);
+					if (feature[0] != DISTANCE) {
+						min = PApplet.radians(min);
+						max = PApplet.radians(max);
+					}
+					constraints.add(new float[] {names.size()-1,featureIndex(features,feature),min,max,token.length == 6 ? 1 : 0});
+					constrainedPostures = names.size();
+				} else {
+					throw new IOException("unknown keyword "+token[0]+" in line "+lineNumber+" of "+fileName);
+				}
+			}
+			if (constrainedPostures < names.size()) throw new IOException("posture "+names.get(names.size()-1)+" has no constraints in "+fileName);
+		} finally {
+			reader.close();
+		}
+		fileModified = modified;
+		fileLength = length;
+		return new Postures(names.toArray(new String[names.size()]),features.toArray(new int[features.size()][]),constraints);
+	}
+	private static int[] parseAngle (String _limb, String _other) {
+		short[] limb = parseLimb(_limb);
+		if (limb == null) return null;
+		for (int a=0; a<AXIS_NAMES.length; a++) {
+			if (AXIS_NAMES[a].equalsIgnoreCase(_other)) return new int[] {ANGLE_AXIS,limb[0],limb[1],a,0};
+		}
+		short[] other = parseLimb(_other);
+		if (other == null) return null;
+		return new int[] {ANGLE_LIMBS,limb[0],limb[1],other[0],other[1]};
+	}
+	private static int[] parseDistance (String _joint, String _other) {
+		int joint = parseJoint(_joint);
+		int other = parseJoint(_other);
+		if (joint < 0 || other < 0) return null;
+		return new int[] {DISTANCE,joint,other,0,0};
+	}
+	private static short[] parseLimb (String _limb) {
+		for (int l=0; l<LIMB_NAMES.length; l++) {
+			if (LIMB_NAMES[l].equalsIgnoreCase(_limb)) return LIMB_JOINTS[l];
+		}
+		int separator = _limb.indexOf('-');
+		if (separator < 0) return null;
+		int from = parseJoint(_limb.substring(0,separator));
+		int to = parseJoint(_limb.substring(separator+1));
+		if (from < 0 || to < 0 || from == to) return null;
+		return new short[] {(short)from,(short)to};
+	}
+	private static int parseJoint (String _joint) {
+		for (int j=0; j<JOINT_NAMES.length; j++) {
+			if (JOINT_NAMES[j].equalsIgnoreCase(_joint)) return j;
+		}
+		return -1;
+	}
+	// index of the feature in the list, the feature is added if it is new. postures reading the same feature share it
+	private static int featureIndex (ArrayList<int[]> _features, int[] _feature) {
+		for (int f=0; f<_features.size(); f++) {
+			if (Arrays.equals(_features.get(f),_feature)) return f;
+		}
+		_features.add(_feature);
+		return _features.size()-1;
+	}
+
+	// the parsed postures. immutable
+	private static class Postures {
+		private final String[] names;
+		private final int[][] features;
+		// constraints as {posture, feature, min, max, exact}, angles in radians
+		private final float[][] constraints;
+		private final int requiredJointMask;
+
+		private Postures (String[] _names, int[][] _features, ArrayList<float[]> _constraints) {
+			names = _names;
+			features = _features;
+			constraints = _constraints.toArray(new float[_constraints.size()][]);
+			int mask = 0;
+			for (int f=0; f<features.length; f++) {
+				mask |= 1<<features[f][1] | 1<<features[f][2];
+				if (features[f][0] == ANGLE_LIMBS) mask |= 1<<features[f][3] | 1<<features[f][4];
+			}
+			requiredJointMask = mask;
+		}
+	}
+
+	// interval index of the postures for one tolerance. immutable, shared by all skeletons
+	static class Index {
+		private final Postures postures;
+		// words of a posture set, bit p of the set stands for posture p
+		private final int words;
+		// per feature: the sorted distinct bounds. with k bounds there are 2k+2 intervals:
+		// 2i is between bounds i-1 and i, 2i+1 is bound i itself, 2k is above the last bound and 2k+1 is taken by undefined features (NaN)
+		private final float[][] bounds;
+		// per feature: the posture sets of its intervals, words longs per interval
+		private final long[][] sets;
+
+		private Index (Postures _postures, float _tolerance) {
+			postures = _postures;
+			int numberOfPostures = postures.names.length;
+			int numberOfFeatures = postures.features.length;
+			words = (numberOfPostures+63)/64;
+			bounds = new float[numberOfFeatures][];
+			sets = new long[numberOfFeatures][];
+			float[] lower = new float[numberOfPostures];
+			float[] upper = new float[numberOfPostures];
+			boolean[] constrained = new boolean[numberOfPostures];
+			for (int f=0; f<numberOfFeatures; f++) {
+				boolean distance = postures.features[f][0] == DISTANCE;
+				float tolerance = distance ? DISTANCE_TOLERANCE*_tolerance : ANGLE_TOLERANCE*_tolerance;
+				// bounds of each posture on the feature. several constraints of a posture on the same feature are intersected after widening
+				Arrays.fill(constrained,false);
+				for (float[] constraint : postures.constraints) {
+					if ((int)constraint[1] != f) continue;
+					int p = (int)constraint[0];
+					float min = constraint[4] != 0 ? constraint[2] : constraint[2]-tolerance;
+					float max = constraint[4] != 0 ? constraint[3] : constraint[3]+tolerance;
+					if (!distance) {
+						min = angleBound(min);
+						max = angleBound(max);
+					}
+					lower[p] = constrained[p] ? Math.max(lower[p],min) : min;
+					upper[p] = constrained[p] ? Math.min(upper[p],max) : max;
+					constrained[p] = true;
+				}
+				float[] distinct = new float[2*numberOfPostures];
+				int k = 0;
+				for (int p=0; p<numberOfPostures; p++) {
+					if (!constrained[p] || lower[p] > upper[p]) continue;
+					distinct[k++] = lower[p];
+					distinct[k++] = upper[p];
+				}
+				Arrays.sort(distinct,0,k);
+				int n = 0;
+				for (int i=0; i<k; i++) {
+					if (n == 0 || distinct[i] != distinct[n-1]) distinct[n++] = distinct[i];
+				}
+				bounds[f] = Arrays.copyOf(distinct,n);
+				int numberOfIntervals = 2*n+2;
+				long[] set = new long[numberOfIntervals*words];
+				for (int p=0; p<numberOfPostures; p++) {
+					int word = p>>6;
+					long bit = 1L<<(p&63);
+					if (!constrained[p]) {
+						// postures not reading the feature are in all intervals
+						for (int i=0; i<numberOfIntervals; i++) set[i*words+word] |= bit;
+					} else if (lower[p] <= upper[p]) {
+						int from = 2*Arrays.binarySearch(bounds[f],lower[p])+1;
+						int to = 2*Arrays.binarySearch(bounds[f],upper[p])+1;
+						for (int i=from; i<=to; i++) set[i*words+word] |= bit;
+					}
+				}
+				sets[f] = set;
+			}
+		}
+
+		// returns the first posture whose constraints all hold for the joints, NO_POSTURE if none. _intervals is scratch of at least getNumberOfFeatures ints
+		int classify (float[] _jointsLCS, int[] _intervals) {
+			int numberOfFeatures = bounds.length;
+			if (words == 0) return NO_POSTURE;
+			for (int f=0; f<numberOfFeatures; f++) {
+				_intervals[f] = interval(bounds[f],feature(postures.features[f],_jointsLCS));
+			}
+			for (int w=0; w<words; w++) {
+				long match = -1L;
+				for (int f=0; f<numberOfFeatures && match != 0; f++) {
+					match &= sets[f][_intervals[f]*words+w];
+				}
+				if (match != 0) return w*64+Long.numberOfTrailingZeros(match);
+			}
+			return NO_POSTURE;
+		}
+		int getNumberOfFeatures () {
+			return bounds.length;
+		}
+		String getPostureName (int _posture) {
+			if (_posture >= 0 && _posture < postures.names.length)
+				return postures.names[_posture];
+			else
+				return null;
+		}
+
+		// the interval of the value, see bounds
+		private static int interval (float[] _bounds, float _value) {
+			if (_value != _value) return 2*_bounds.length+1;
+			int low = 0, high = _bounds.length;
+			// number of bounds lower than the value
+			while (low < high) {
+				int middle = (low+high)>>>1;
+				if (_bounds[middle] < _value) low = middle+1;
+				else high = middle;
+			}
+			return low < _bounds.length && _bounds[low] == _value ? 2*low+1 : 2*low;
+		}
+		// the value of a feature. distances in mm, angles as negative cosine, which grows with the angle like the angle itself but needs no acos. NaN for limbs of length 0
+		private static float feature (int[] _feature, float[] _jointsLCS) {
+			int a = _feature[1]*3, b = _feature[2]*3;
+			float ax = _jointsLCS[b]-_jointsLCS[a], ay = _jointsLCS[b+1]-_jointsLCS[a+1], az = _jointsLCS[b+2]-_jointsLCS[a+2];
+			float squaredLengthA = ax*ax+ay*ay+az*az;
+			if (_feature[0] == DISTANCE) return (float)Math.sqrt(squaredLengthA);
+			float dot, squaredLengthB;
+			if (_feature[0] == ANGLE_AXIS) {
+				// the axes of the local coordinate system are the unit vectors of the LCS joints
+				dot = _feature[3] == 0 ? ax : _feature[3] == 1 ? ay : az;
+				squaredLengthB = 1f;
+			} else {
+				int c = _feature[3]*3, d = _feature[4]*3;
+				float bx = _jointsLCS[d]-_jointsLCS[c], by = _jointsLCS[d+1]-_jointsLCS[c+1], bz = _jointsLCS[d+2]-_jointsLCS[c+2];
+				dot = ax*bx+ay*by+az*bz;
+				squaredLengthB = bx*bx+by*by+bz*bz;
+			}
+			float squaredLength = squaredLengthA*squaredLengthB;
+			if (squaredLength == 0f) return Float.NaN;
+			return -dot/(float)Math.sqrt(squaredLength);
+		}
+		// bound of an angle in radians as negative cosine. bounds outside 0..PI include the whole range on their side
+		private static float angleBound (float _angle) {
+			return -(float)Math.cos(_angle < 0f ? 0f : _angle > PConstants.PI ? PConstants.PI : _angle);
+		}
+	}
+}
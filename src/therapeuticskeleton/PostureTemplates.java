@@ -0,0 +1,291 @@
+package therapeuticskeleton;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Arrays;
+
+import processing.core.*;
+
+/** PostureTemplates classifies postures by comparison with recorded example poses, so postures of patients with limited range of motion can be recognized.
+ *  A template is the template vector of a pose together with the name of its posture, several templates may share a name.
+ *  The template vector consists of the directions of upper and lower arms in the local coordinate system, normalized to length 1, so it does not depend on body size or position. <p>
+ *  Templates are kept in a k-d tree, which is rebuilt on the first classification after templates were added. A classification finds the k nearest templates
+ *  without looking at most of them, so it takes microseconds even with thousands of templates. Classification may be called from several threads, e.g. by skeletons of SkeletonManager. */
+public class PostureTemplates {
+
+	/** Number of floats of a template vector: x, y and z of the directions of left upper, left lower, right upper and right lower arm */
+	public static final int TEMPLATE_DIMENSIONS = 12;
+	/** The joints the template vector is calculated from */
+	public static final int REQUIRED_JOINTS = Skeleton.JOINT_MASK_ARMS;
+	// limbs of the template vector, from and to joint
+	private static final short[][] LIMBS = {{Skeleton.LEFT_SHOULDER,Skeleton.LEFT_ELBOW},{Skeleton.LEFT_ELBOW,Skeleton.LEFT_HAND},
+		{Skeleton.RIGHT_SHOULDER,Skeleton.RIGHT_ELBOW},{Skeleton.RIGHT_ELBOW,Skeleton.RIGHT_HAND}};
+	// ranges of at most this number of templates are not split further
+	private static final int LEAF_SIZE = 16;
+	// per dimension offsets of the query to the searched cell, one buffer per classifying thread
+	private static final ThreadLocal<float[]> OFFSETS = new ThreadLocal<float[]>() {
+		protected float[] initialValue () {
+			return new float[TEMPLATE_DIMENSIONS];
+		}
+	};
+
+	// templates in the order of adding, TEMPLATE_DIMENSIONS floats per template
+	private String[] names = new String[16];
+	private float[] vectors = new float[16*TEMPLATE_DIMENSIONS];
+	private int numberOfTemplates = 0;
+	// the tree of the current templates, null if templates were added since it was built. replaced as a whole, so classifying threads always see a complete tree
+	private volatile Tree tree = null;
+
+	/** Constructor for an empty set of templates. */
+	public PostureTemplates () {
+	}
+	/** Constructor for templates saved with save.
+	 *  @param _fileName path to the template file
+	 *  @throws IOException if the file can't be read or is invalid */
+	public PostureTemplates (String _fileName) throws IOException {
+		BufferedReader reader = new BufferedReader(new FileReader(_fileName));
+		try {
+			String line;
+			int lineNumber = 0;
+			float[] vector = new float[TEMPLATE_DIMENSIONS];
+			while ((line = reader.readLine()) != null) {
+				lineNumber++;
+				line = line.trim();
+				if (line.length() == 0 || line.startsWith("#")) continue;
+				String[] token = line.split("\\s+");
+				if (token.length != TEMPLATE_DIMENSIONS+1) throw new IOException("template needs a name and "+TEMPLATE_DIMENSIONS+" floats in line "+lineNumber+" of "+_fileName);
+				try {
+					for (int d=0; d<TEMPLATE_DIMENSIONS; d++) vector[d] = Float.parseFloat(token[d+1]);
+				} catch (NumberFormatException e) {
+					throw new IOException("template vector must be numbers in line "+lineNumber+" of "+_fileName);
+				}
+				addTemplate(token[0],vector);
+			}
+		} finally {
+			reader.close();
+		}
+	}
+
+	/** Adds the current pose of a skeleton as template. Call it while the patient holds the pose the therapist wants to recognize.
+	 *  @param _name the name of the posture, without whitespace
+	 *  @param _skeleton the skeleton, updated in the current frame
+	 *  @return the id of the template */
+	public int addTemplate (String _name, Skeleton _skeleton) {
+		float[] vector = new float[TEMPLATE_DIMENSIONS];
+		copyTemplateVector(_skeleton,vector);
+		return addTemplate(_name,vector);
+	}
+	/** Adds a template vector as template.
+	 *  @param _name the name of the posture, without whitespace
+	 *  @param _vector TEMPLATE_DIMENSIONS floats, see copyTemplateVector
+	 *  @return the id of the template */
+	public synchronized int addTemplate (String _name, float[] _vector) {
+		if (numberOfTemplates == names.length) {
+			names = Arrays.copyOf(names,names.length*2);
+			vectors = Arrays.copyOf(vectors,vectors.length*2);
+		}
+		names[numberOfTemplates] = _name;
+		System.arraycopy(_vector,0,vectors,numberOfTemplates*TEMPLATE_DIMENSIONS,TEMPLATE_DIMENSIONS);
+		tree = null;
+		return numberOfTemplates++;
+	}
+	/** Removes all templates. */
+	public synchronized void clear () {
+		numberOfTemplates = 0;
+		tree = null;
+	}
+	/** Saves the templates to a text file, one template per line. Load them with the constructor.
+	 *  @param _fileName path to the template file
+	 *  @return true if the templates were saved */
+	public synchronized boolean save (String _fileName) {
+		try {
+			BufferedWriter writer = new BufferedWriter(new FileWriter(_fileName));
+			try {
+				for (int t=0; t<numberOfTemplates; t++) {
+					writer.write(names[t]);
+					for (int d=0; d<TEMPLATE_DIMENSIONS; d++) {
+						writer.write(" "+vectors[t*TEMPLATE_DIMENSIONS+d]);
+					}
+					writer.newLine();
+				}
+			} finally {
+				writer.close();
+			}
+			return true;
+		} catch (IOException e) {
+			PApplet.println("couldn't save posture templates, io exception");
+			return false;
+		}
+	}
+	/** Getter for the number of templates
+	 *  @return the number of templates */
+	public synchronized int getNumberOfTemplates () {
+		return numberOfTemplates;
+	}
+	/** Returns the name of the posture of a template
+	 *  @param _template the id of the template
+	 *  @return the name of the posture. If _template out of range: null */
+	public synchronized String getTemplateName (int _template) {
+		if (_template >= 0 && _template < numberOfTemplates)
+			return names[_template];
+		else
+			return null;
+	}
+
+	/** Calculates the template vector of a skeleton without allocating. The vector is calculated from the LCS joints, mirrored if mirror therapy is on.
+	 *  @param _skeleton the skeleton, updated in the current frame
+	 *  @param _vector the buffer to fill, TEMPLATE_DIMENSIONS floats. Limbs of length 0 get direction 0,0,0 */
+	public static void copyTemplateVector (Skeleton _skeleton, float[] _vector) {
+		float[] joints = _skeleton.jointsLCS();
+		for (int l=0; l<LIMBS.length; l++) {
+			int a = LIMBS[l][0]*3, b = LIMBS[l][1]*3;
+			float x = joints[b]-joints[a], y = joints[b+1]-joints[a+1], z = joints[b+2]-joints[a+2];
+			float length = (float)Math.sqrt(x*x+y*y+z*z);
+			float scale = length > 0f ? 1f/length : 0f;
+			_vector[l*3] = x*scale;
+			_vector[l*3+1] = y*scale;
+			_vector[l*3+2] = z*scale;
+		}
+	}
+	/** Finds the templates nearest to a template vector. Does not allocate, except for rebuilding the tree after templates were added.
+	 *  @param _vector the template vector to classify, see copyTemplateVector
+	 *  @param _k the number of templates to find
+	 *  @param _templates buffer for the ids of the nearest templates, at least _k ints. The nearest template first
+	 *  @param _distances buffer for the euclidean distances of the nearest templates to _vector, at least _k floats. 0 for equal vectors, at most 4
+	 *  @return the number of templates found, less than _k only if there are less templates */
+	public int classify (float[] _vector, int _k, int[] _templates, float[] _distances) {
+		Tree current = tree;
+		if (current == null) current = buildTree();
+		int found = current.search(_vector,_k,_templates,_distances);
+		for (int i=0; i<found; i++) {
+			_distances[i] = (float)Math.sqrt(_distances[i]);
+		}
+		return found;
+	}
+
+	// -----------------------------------------------------------------
+	// PRIVATE HELPER METHODS
+	private synchronized Tree buildTree () {
+		if (tree == null) tree = new Tree(vectors,numberOfTemplates);
+		return tree;
+	}
+
+	// k-d tree over a copy of the templates. the range lo..hi-1 is split at its middle position m:
+	// the template at m has the median value in dimension splitDimension[m], the templates before have lower and the templates after have higher values. immutable
+	private static class Tree {
+		// template ids and template vectors in tree order
+		private final int[] order;
+		private final float[] points;
+		private final byte[] splitDimension;
+
+		private Tree (float[] _vectors, int _numberOfTemplates) {
+			order = new int[_numberOfTemplates];
+			for (int t=0; t<_numberOfTemplates; t++) order[t] = t;
+			splitDimension = new byte[_numberOfTemplates];
+			build(_vectors,0,_numberOfTemplates);
+			points = new float[_numberOfTemplates*TEMPLATE_DIMENSIONS];
+			for (int i=0; i<_numberOfTemplates; i++) {
+				System.arraycopy(_vectors,order[i]*TEMPLATE_DIMENSIONS,points,i*TEMPLATE_DIMENSIONS,TEMPLATE_DIMENSIONS);
+			}
+		}
+
+		// returns the number of templates found. _distances receives squared distances, sorted ascending
+		private int search (float[] _vector, int _k, int[] _templates, float[] _distances) {
+			int k = Math.min(_k,order.length);
+			if (k <= 0) return 0;
+			Arrays.fill(_distances,0,k,Float.POSITIVE_INFINITY);
+			float[] offsets = OFFSETS.get();
+			Arrays.fill(offsets,0f);
+			search(_vector,0,order.length,k,_templates,_distances,0f,offsets);
+			return k;
+		}
+		// _cellDistance is the squared distance of _vector to the cell of the range, _offsets its components per dimension
+		private void search (float[] _vector, int _lo, int _hi, int _k, int[] _templates, float[] _distances, float _cellDistance, float[] _offsets) {
+			if (_hi-_lo <= LEAF_SIZE) {
+				for (int i=_lo; i<_hi; i++) visit(_vector,i,_k,_templates,_distances);
+				return;
+			}
+			int m = (_lo+_hi)>>>1;
+			int d = splitDimension[m];
+			float difference = _vector[d]-points[m*TEMPLATE_DIMENSIONS+d];
+			visit(_vector,m,_k,_templates,_distances);
+			// the side of the query first. the other side only if its cell is nearer than the k-th template
+			if (difference < 0f) search(_vector,_lo,m,_k,_templates,_distances,_cellDistance,_offsets);
+			else search(_vector,m+1,_hi,_k,_templates,_distances,_cellDistance,_offsets);
+			float offset = _offsets[d];
+			float farDistance = _cellDistance-offset*offset+difference*difference;
+			if (farDistance < _distances[_k-1]) {
+				_offsets[d] = difference;
+				if (difference < 0f) search(_vector,m+1,_hi,_k,_templates,_distances,farDistance,_offsets);
+				else search(_vector,_lo,m,_k,_templates,_distances,farDistance,_offsets);
+				_offsets[d] = offset;
+			}
+		}
+		// inserts the template at tree position _i into the sorted result, if it is nearer than the k-th template
+		private void visit (float[] _vector, int _i, int _k, int[] _templates, float[] _distances) {
+			float worst = _distances[_k-1];
+			float distance = 0f;
+			int p = _i*TEMPLATE_DIMENSIONS;
+			for (int d=0; d<TEMPLATE_DIMENSIONS && distance < worst; d++) {
+				float difference = _vector[d]-points[p+d];
+				distance += difference*difference;
+			}
+			if (distance >= worst) return;
+			int j = _k-1;
+			while (j > 0 && _distances[j-1] > distance) {
+				_distances[j] = _distances[j-1];
+				_templates[j] = _templates[j-1];
+				j--;
+			}
+			_distances[j] = distance;
+			_templates[j] = order[_i];
+		}
+		// orders the range so that its middle position splits it in the dimension of the largest spread, then orders both halves
+		private void build (float[] _vectors, int _lo, int _hi) {
+			if (_hi-_lo <= LEAF_SIZE) return;
+			int dimension = 0;
+			float largestSpread = -1f;
+			for (int d=0; d<TEMPLATE_DIMENSIONS; d++) {
+				float min = Float.POSITIVE_INFINITY, max = Float.NEGATIVE_INFINITY;
+				for (int i=_lo; i<_hi; i++) {
+					float value = _vectors[order[i]*TEMPLATE_DIMENSIONS+d];
+					if (value < min) min = value;
+					if (value > max) max = value;
+				}
+				if (max-min > largestSpread) {
+					largestSpread = max-min;
+					dimension = d;
+				}
+			}
+			int m = (_lo+_hi)>>>1;
+			select(_vectors,_lo,_hi-1,m,dimension);
+			splitDimension[m] = (byte)dimension;
+			build(_vectors,_lo,m);
+			build(_vectors,m+1,_hi);
+		}
+		// quickselect: moves the template with the _n-th smallest value in _dimension to position _n, lower values before and higher values after it
+		private void select (float[] _vectors, int _lo, int _hi, int _n, int _dimension) {
+			while (_lo < _hi) {
+				float pivot = _vectors[order[(_lo+_hi)>>>1]*TEMPLATE_DIMENSIONS+_dimension];
+				int i = _lo, j = _hi;
+				while (i <= j) {
+					while (_vectors[order[i]*TEMPLATE_DIMENSIONS+_dimension] < pivot) i++;
+					while (_vectors[order[j]*TEMPLATE_DIMENSIONS+_dimension] > pivot) j--;
+					if (i <= j) {
+						int swap = order[i];
+						order[i] = order[j];
+						order[j] = swap;
+						i++;
+						j--;
+					}
+				}
+				if (_n <= j) _hi = j;
+				else if (_n >= i) _lo = i;
+				else return;
+			}
+		}
+	}
+}
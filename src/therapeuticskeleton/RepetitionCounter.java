@@ -0,0 +1,368 @@
+package therapeuticskeleton;
+
+import java.util.Arrays;
+
+import processing.core.*;
+
+/** RepetitionCounter counts the repetitions of exercises and measures every repetition, see Skeleton.setRepetitionCounter. Use one counter per skeleton. <p>
+ *  An exercise is the movement of one joint angle, e.g. the abduction of the left shoulder. A repetition leaves the rest position, reaches a turning point and returns.
+ *  Turning points are detected incrementally: a maximum is confirmed when the angle fell by the hysteresis since the maximum, a minimum when it rose by the hysteresis.
+ *  So jitter smaller than the hysteresis is not counted and a repetition is reported when the angle moved back by the hysteresis after returning, usually a few update cycles late.
+ *  The rest position is the turning point confirmed first: the user should start the exercise from the rest position. <p>
+ *  For every repetition the range of motion, the duration between the rest positions and the peak angular velocity are measured.
+ *  The angular velocity is smoothed with a time constant, so jitter of single frames does not count as peak. Use a JointFilter to reduce the jitter of the angles themselves.
+ *  Angles are calculated from the measured, unmirrored joints like SkeletonStatistics. Time and memory per update cycle are constant, updates do not allocate. */
+public class RepetitionCounter {
+
+	/** Angle between the left lower and upper arm, see Skeleton.getAngleLeftLowerArm */
+	public static final short ANGLE_LEFT_ELBOW = 0;
+	/** Angle between the right lower and upper arm, see Skeleton.getAngleRightLowerArm */
+	public static final short ANGLE_RIGHT_ELBOW = 1;
+	/** Angle between the left upper arm and the body axis, see Skeleton.getAngleLeftUpperArm */
+	public static final short ANGLE_LEFT_UPPER_ARM = 2;
+	/** Angle between the right upper arm and the body axis, see Skeleton.getAngleRightUpperArm */
+	public static final short ANGLE_RIGHT_UPPER_ARM = 3;
+	/** Abduction of the left shoulder, see Skeleton.getAbduction */
+	public static final short ABDUCTION_LEFT_SHOULDER = 4;
+	/** Abduction of the right shoulder, see Skeleton.getAbduction */
+	public static final short ABDUCTION_RIGHT_SHOULDER = 5;
+	/** Anteversion of the left shoulder, see Skeleton.getAnteversion */
+	public static final short ANTEVERSION_LEFT_SHOULDER = 6;
+	/** Anteversion of the right shoulder, see Skeleton.getAnteversion */
+	public static final short ANTEVERSION_RIGHT_SHOULDER = 7;
+	/** Abduction of the left hip, see Skeleton.getAbduction */
+	public static final short ABDUCTION_LEFT_HIP = 8;
+	/** Abduction of the right hip, see Skeleton.getAbduction */
+	public static final short ABDUCTION_RIGHT_HIP = 9;
+	/** Anteversion of the left hip, see Skeleton.getAnteversion */
+	public static final short ANTEVERSION_LEFT_HIP = 10;
+	/** Anteversion of the right hip, see Skeleton.getAnteversion */
+	public static final short ANTEVERSION_RIGHT_HIP = 11;
+	/** Stores the number of angles */
+	public static final short NUMBER_OF_ANGLES = 12;
+
+	// angle table, one angle per line: kind (0 arm angle, 1 abduction, 2 anteversion), joint the limb vector points to, joint the limb vector origins in, lateral direction of abduction on the x axis
+	private static final short[][] ANGLE_TABLE = {
+		{0, Skeleton.LEFT_HAND, Skeleton.LEFT_ELBOW, 0},
+		{0, Skeleton.RIGHT_HAND, Skeleton.RIGHT_ELBOW, 0},
+		{0, Skeleton.LEFT_ELBOW, Skeleton.LEFT_SHOULDER, 0},
+		{0, Skeleton.RIGHT_ELBOW, Skeleton.RIGHT_SHOULDER, 0},
+		{1, Skeleton.LEFT_ELBOW, Skeleton.LEFT_SHOULDER, -1},
+		{1, Skeleton.RIGHT_ELBOW, Skeleton.RIGHT_SHOULDER, 1},
+		{2, Skeleton.LEFT_ELBOW, Skeleton.LEFT_SHOULDER, 0},
+		{2, Skeleton.RIGHT_ELBOW, Skeleton.RIGHT_SHOULDER, 0},
+		{1, Skeleton.LEFT_KNEE, Skeleton.LEFT_HIP, -1},
+		{1, Skeleton.RIGHT_KNEE, Skeleton.RIGHT_HIP, 1},
+		{2, Skeleton.LEFT_KNEE, Skeleton.LEFT_HIP, 0},
+		{2, Skeleton.RIGHT_KNEE, Skeleton.RIGHT_HIP, 0}
+	};
+
+	private static final float DEFAULT_HYSTERESIS = PApplet.radians(15);
+
+	private Exercise[] exercises = new Exercise[0];
+	private int requiredJointMask = 0;
+	private float velocitySmoothing = 0.1f;
+
+	/** Adds an exercise.
+	 *  @param _angle short corresponding to the angle constants of this class
+	 *  @param _hysteresis the angle in radians the movement has to turn back to confirm a turning point. Smaller movements are not counted. If not greater than 0, default hysteresis PApplet.radians(15) will be used
+	 *  @return the id of the exercise, -1 if _angle is out of range */
+	public int addExercise (short _angle, float _hysteresis) {
+		if (_angle < 0 || _angle >= NUMBER_OF_ANGLES) return -1;
+		Exercise[] extended = Arrays.copyOf(exercises,exercises.length+1);
+		extended[exercises.length] = new Exercise(_angle,_hysteresis > 0f ? _hysteresis : DEFAULT_HYSTERESIS);
+		exercises = extended;
+		requiredJointMask |= ANGLE_TABLE[_angle][0] == 0 ? Skeleton.JOINT_MASK_ARMS : Skeleton.jointMask(ANGLE_TABLE[_angle][1],ANGLE_TABLE[_angle][2]);
+		return exercises.length-1;
+	}
+	/** Removes all exercises. */
+	public void clear () {
+		exercises = new Exercise[0];
+		requiredJointMask = 0;
+	}
+	/** Forgets the current movement, e.g. when the user was lost. The repetition in progress is not counted, counts and measures of completed repetitions are kept.
+	 *  Skeleton calls it when the user is not tracked. */
+	public void reset () {
+		for (int e=0; e<exercises.length; e++) exercises[e].reset();
+	}
+	/** Resets counts and measures of all exercises, e.g. for a new set. */
+	public void resetCounts () {
+		for (int e=0; e<exercises.length; e++) {
+			exercises[e].reset();
+			exercises[e].resetCounts();
+		}
+	}
+	/** Setter for the hysteresis of an exercise.
+	 *  @param _exercise the id of the exercise
+	 *  @param _hysteresis the angle in radians the movement has to turn back to confirm a turning point. If not greater than 0, default hysteresis PApplet.radians(15) will be set */
+	public void setHysteresis (int _exercise, float _hysteresis) {
+		if (_exercise >= 0 && _exercise < exercises.length) exercises[_exercise].hysteresis = _hysteresis > 0f ? _hysteresis : DEFAULT_HYSTERESIS;
+	}
+	/** Getter for the hysteresis of an exercise
+	 *  @param _exercise the id of the exercise
+	 *  @return the hysteresis in radians. If _exercise out of range: 0 */
+	public float getHysteresis (int _exercise) {
+		return _exercise >= 0 && _exercise < exercises.length ? exercises[_exercise].hysteresis : 0f;
+	}
+	/** Setter for the smoothing of the angular velocity. Applies to all exercises.
+	 *  @param _velocitySmoothing the time constant of the exponential smoothing in seconds, 0 for no smoothing. If lower than 0, default time constant 0.1f will be set */
+	public void setVelocitySmoothing (float _velocitySmoothing) {
+		velocitySmoothing = _velocitySmoothing >= 0f ? _velocitySmoothing : 0.1f;
+	}
+	/** Getter for the smoothing of the angular velocity
+	 *  @return the time constant in seconds */
+	public float getVelocitySmoothing () {
+		return velocitySmoothing;
+	}
+	/** Getter for the number of exercises
+	 *  @return number of exercises */
+	public int getNumberOfExercises () {
+		return exercises.length;
+	}
+	/** Returns the angle of an exercise
+	 *  @param _exercise the id of the exercise
+	 *  @return short corresponding to the angle constants of this class. If _exercise out of range: -1 */
+	public short getAngle (int _exercise) {
+		return _exercise >= 0 && _exercise < exercises.length ? exercises[_exercise].angle : -1;
+	}
+	/** Returns the joints the exercises read. Skeleton evaluates them automatically
+	 *  @return joint mask of the required joints */
+	public int getRequiredJointMask () {
+		return requiredJointMask;
+	}
+	/** Returns whether a repetition of an exercise was completed in the current update cycle
+	 *  @param _exercise the id of the exercise
+	 *  @return true if a repetition was completed */
+	public boolean isRepetitionCompleted (int _exercise) {
+		return _exercise >= 0 && _exercise < exercises.length && exercises[_exercise].completed;
+	}
+	/** Returns the number of completed repetitions of an exercise
+	 *  @param _exercise the id of the exercise
+	 *  @return number of repetitions */
+	public int getRepetitionCount (int _exercise) {
+		return _exercise >= 0 && _exercise < exercises.length ? exercises[_exercise].count : 0;
+	}
+	/** Returns the update cycle in which the last repetition of an exercise was completed
+	 *  @param _exercise the id of the exercise
+	 *  @return the frame count, -1 if no repetition was completed */
+	public int getLastRepetitionFrame (int _exercise) {
+		return _exercise >= 0 && _exercise < exercises.length ? exercises[_exercise].lastFrame : -1;
+	}
+	/** Returns the range of motion of the last repetition of an exercise: the difference between the turning point and the farther rest position
+	 *  @param _exercise the id of the exercise
+	 *  @return the range of motion in radians, 0 if no repetition was completed */
+	public float getLastRangeOfMotion (int _exercise) {
+		return _exercise >= 0 && _exercise < exercises.length ? exercises[_exercise].lastRangeOfMotion : 0f;
+	}
+	/** Returns the duration of the last repetition of an exercise: the time between leaving and reaching the rest position, measured with the capture times of the frames
+	 *  @param _exercise the id of the exercise
+	 *  @return the duration in seconds, 0 if no repetition was completed */
+	public float getLastDuration (int _exercise) {
+		return _exercise >= 0 && _exercise < exercises.length ? exercises[_exercise].lastDuration : 0f;
+	}
+	/** Returns the highest smoothed angular velocity during the last repetition of an exercise, see setVelocitySmoothing
+	 *  @param _exercise the id of the exercise
+	 *  @return the peak velocity in radians per second, 0 if no repetition was completed */
+	public float getLastPeakVelocity (int _exercise) {
+		return _exercise >= 0 && _exercise < exercises.length ? exercises[_exercise].lastPeakVelocity : 0f;
+	}
+	/** Returns the mean range of motion of the repetitions of an exercise
+	 *  @param _exercise the id of the exercise
+	 *  @return the mean range of motion in radians, 0 if no repetition was completed */
+	public float getMeanRangeOfMotion (int _exercise) {
+		if (_exercise < 0 || _exercise >= exercises.length || exercises[_exercise].count == 0) return 0f;
+		return (float)(exercises[_exercise].sumRangeOfMotion/exercises[_exercise].count);
+	}
+	/** Returns the mean duration of the repetitions of an exercise
+	 *  @param _exercise the id of the exercise
+	 *  @return the mean duration in seconds, 0 if no repetition was completed */
+	public float getMeanDuration (int _exercise) {
+		if (_exercise < 0 || _exercise >= exercises.length || exercises[_exercise].count == 0) return 0f;
+		return (float)(exercises[_exercise].sumDuration/exercises[_exercise].count);
+	}
+	/** Returns the current angle of an exercise, as calculated in the last update cycle
+	 *  @param _exercise the id of the exercise
+	 *  @return the angle in radians. If _exercise out of range: 0 */
+	public float getCurrentAngle (int _exercise) {
+		return _exercise >= 0 && _exercise < exercises.length ? exercises[_exercise].lastAngle : 0f;
+	}
+
+	/** Measures the current frame of a skeleton for all exercises. Skeleton calls it in every update cycle while the user is tracked if the counter is set. Does not allocate.
+	 *  @param _skeleton the skeleton, updated in the current frame
+	 *  @param _frameCount the current update cycle */
+	public void update (Skeleton _skeleton, int _frameCount) {
+		long timestamp = _skeleton.getTimestamp();
+		float dt = _skeleton.getFrameDuration();
+		float smoothing = dt > 0f ? dt/(velocitySmoothing+dt) : 0f;
+		for (int e=0; e<exercises.length; e++) {
+			Exercise exercise = exercises[e];
+			exercise.update(calculateAngle(_skeleton,exercise.angle),timestamp,dt,smoothing,_frameCount);
+		}
+	}
+
+	// -----------------------------------------------------------------
+	// PRIVATE HELPER METHODS
+	private static float calculateAngle (Skeleton _skeleton, short _angle) {
+		switch (_angle) {
+			case ANGLE_LEFT_ELBOW: return _skeleton.getAngleLeftLowerArmUnmirrored();
+			case ANGLE_RIGHT_ELBOW: return _skeleton.getAngleRightLowerArmUnmirrored();
+			case ANGLE_LEFT_UPPER_ARM: return _skeleton.getAngleLeftUpperArmUnmirrored();
+			case ANGLE_RIGHT_UPPER_ARM: return _skeleton.getAngleRightUpperArmUnmirrored();
+		}
+		// abduction and anteversion like Skeleton.getAbduction and getAnteversion: angle of the limb in the frontal or sagittal plane to the negative y axis, without allocating
+		short[] row = ANGLE_TABLE[_angle];
+		float[] joints = _skeleton.jointsLCSUnmirrored();
+		int to = row[1]*3, from = row[2]*3;
+		float dx = joints[to]-joints[from], dy = joints[to+1]-joints[from+1], dz = joints[to+2]-joints[from+2];
+		if (row[0] == 1) {
+			// positive when the limb points lateral, away from the body axis
+			return (float)Math.atan2(row[3]*dx,-dy);
+		} else {
+			// positive when the limb points anterior
+			return (float)Math.atan2(dz,-dy);
+		}
+	}
+
+	// turning point detection of one exercise. the angle is multiplied by the direction, so the rest position is always a minimum: a repetition is minimum, maximum, minimum
+	private static class Exercise {
+		private static final int SEARCHING_REST = 0;
+		private static final int SEARCHING_MAXIMUM = 1;
+		private static final int SEARCHING_MINIMUM = 2;
+		private final short angle;
+		private float hysteresis;
+		private int state = SEARCHING_REST;
+		private float direction = 1f;
+		// extremes since the last turning point, and the capture time of the extreme searched
+		private float minimum = 0f;
+		private float maximum = 0f;
+		private long extremeTime = 0L;
+		// while the rest position is searched: capture times of both extremes and the peak velocities since them
+		private long minimumTime = 0L;
+		private long maximumTime = 0L;
+		private float minimumVelocity = 0f;
+		private float maximumVelocity = 0f;
+		// the repetition in progress: rest position it started in, its turning point
+		private float restAngle = 0f;
+		private long restTime = 0L;
+		private float turnAngle = 0f;
+		// peak velocity of the repetition up to the current extreme, and since the current extreme
+		private float repetitionVelocity = 0f;
+		private float pendingVelocity = 0f;
+		private float velocity = 0f;
+		private float lastAngle = 0f;
+		private boolean hasLastAngle = false;
+		// results
+		private boolean completed = false;
+		private int count = 0;
+		private int lastFrame = -1;
+		private float lastRangeOfMotion = 0f;
+		private float lastDuration = 0f;
+		private float lastPeakVelocity = 0f;
+		private double sumRangeOfMotion = 0.0;
+		private double sumDuration = 0.0;
+
+		private Exercise (short _angle, float _hysteresis) {
+			angle = _angle;
+			hysteresis = _hysteresis;
+		}
+		private void reset () {
+			state = SEARCHING_REST;
+			hasLastAngle = false;
+			completed = false;
+		}
+		private void resetCounts () {
+			count = 0;
+			lastFrame = -1;
+			lastRangeOfMotion = 0f;
+			lastDuration = 0f;
+			lastPeakVelocity = 0f;
+			sumRangeOfMotion = 0.0;
+			sumDuration = 0.0;
+		}
+
+		private void update (float _angle, long _timestamp, float _dt, float _smoothing, int _frameCount) {
+			completed = false;
+			// an undefined angle, e.g. of joints at the same position, is skipped
+			if (_angle != _angle) return;
+			if (hasLastAngle && _dt > 0f) {
+				velocity += _smoothing*((_angle-lastAngle)/_dt-velocity);
+			} else if (!hasLastAngle) {
+				velocity = 0f;
+			}
+			float speed = Math.abs(velocity);
+			lastAngle = _angle;
+			if (state == SEARCHING_REST) {
+				// the first turning point is the rest position, minimum or maximum
+				if (!hasLastAngle || _angle < minimum) {
+					minimum = _angle;
+					minimumTime = _timestamp;
+					minimumVelocity = 0f;
+				} else {
+					minimumVelocity = Math.max(minimumVelocity,speed);
+				}
+				if (!hasLastAngle || _angle > maximum) {
+					maximum = _angle;
+					maximumTime = _timestamp;
+					maximumVelocity = 0f;
+				} else {
+					maximumVelocity = Math.max(maximumVelocity,speed);
+				}
+				hasLastAngle = true;
+				if (_angle-minimum >= hysteresis) {
+					direction = 1f;
+					pendingVelocity = minimumVelocity;
+					startRepetition(minimum,minimumTime,_angle,_timestamp);
+				} else if (maximum-_angle >= hysteresis) {
+					direction = -1f;
+					pendingVelocity = maximumVelocity;
+					startRepetition(-maximum,maximumTime,-_angle,_timestamp);
+				}
+				return;
+			}
+			pendingVelocity = Math.max(pendingVelocity,speed);
+			float x = _angle*direction;
+			if (state == SEARCHING_MAXIMUM) {
+				if (x > maximum) {
+					maximum = x;
+					setExtreme(_timestamp);
+				} else if (maximum-x >= hysteresis) {
+					turnAngle = maximum;
+					state = SEARCHING_MINIMUM;
+					minimum = x;
+					setExtreme(_timestamp);
+				}
+			} else {
+				if (x < minimum) {
+					minimum = x;
+					setExtreme(_timestamp);
+				} else if (x-minimum >= hysteresis) {
+					// back in the rest position: the repetition ends at the minimum, the next one starts there
+					count++;
+					completed = true;
+					lastFrame = _frameCount;
+					lastRangeOfMotion = turnAngle-Math.min(restAngle,minimum);
+					lastDuration = (float)((extremeTime-restTime)*1e-9);
+					lastPeakVelocity = repetitionVelocity;
+					sumRangeOfMotion += lastRangeOfMotion;
+					sumDuration += lastDuration;
+					startRepetition(minimum,extremeTime,x,_timestamp);
+				}
+			}
+		}
+		// the rest position was left, the turning point is searched from the current angle
+		private void startRepetition (float _restAngle, long _restTime, float _angle, long _timestamp) {
+			restAngle = _restAngle;
+			restTime = _restTime;
+			repetitionVelocity = 0f;
+			state = SEARCHING_MAXIMUM;
+			maximum = _angle;
+			setExtreme(_timestamp);
+		}
+		// the velocities up to a new extreme belong to the repetition, the ones after it may belong to the next
+		private void setExtreme (long _timestamp) {
+			repetitionVelocity = Math.max(repetitionVelocity,pendingVelocity);
+			pendingVelocity = 0f;
+			extremeTime = _timestamp;
+		}
+	}
+}
@@ -0,0 +1,133 @@
+package therapeuticskeleton;
+
+import SimpleOpenNI.SimpleOpenNI;
+import processing.core.*;
+
+/** JointSource backed by a live Kinect through the SimpleOpenNI library.
+ *  All joints of a user in the requested joint mask are fetched in one pass per frame. If the user's skeleton is not tracked, a single native call is made
+ *  and the per-joint calls are skipped. Number and duration of the native calls are measured and can be read via the getters. */
+public class SimpleOpenNIJointSource implements JointSource {
+
+	// OpenNI sets labels for left/right from the camera viewpoint. Here the anatomically correct labels are set.
+	// Index is the Skeleton joint constant, value the SimpleOpenNI joint constant.
+	private static final int[] POSITION_JOINTS = {
+		SimpleOpenNI.SKEL_HEAD, SimpleOpenNI.SKEL_NECK,
+		SimpleOpenNI.SKEL_RIGHT_SHOULDER, SimpleOpenNI.SKEL_RIGHT_ELBOW, SimpleOpenNI.SKEL_RIGHT_HAND,
+		SimpleOpenNI.SKEL_LEFT_SHOULDER, SimpleOpenNI.SKEL_LEFT_ELBOW, SimpleOpenNI.SKEL_LEFT_HAND,
+		SimpleOpenNI.SKEL_TORSO,
+		SimpleOpenNI.SKEL_RIGHT_HIP, SimpleOpenNI.SKEL_RIGHT_KNEE, SimpleOpenNI.SKEL_RIGHT_FOOT,
+		SimpleOpenNI.SKEL_LEFT_HIP, SimpleOpenNI.SKEL_LEFT_KNEE, SimpleOpenNI.SKEL_LEFT_FOOT
+	};
+	// orientations keep the labels of OpenNI, as the Skeleton always did
+	private static final int[] ORIENTATION_JOINTS = {
+		SimpleOpenNI.SKEL_HEAD, SimpleOpenNI.SKEL_NECK,
+		SimpleOpenNI.SKEL_LEFT_SHOULDER, SimpleOpenNI.SKEL_LEFT_ELBOW, SimpleOpenNI.SKEL_LEFT_HAND,
+		SimpleOpenNI.SKEL_RIGHT_SHOULDER, SimpleOpenNI.SKEL_RIGHT_ELBOW, SimpleOpenNI.SKEL_RIGHT_HAND,
+		SimpleOpenNI.SKEL_TORSO,
+		SimpleOpenNI.SKEL_LEFT_HIP, SimpleOpenNI.SKEL_LEFT_KNEE, SimpleOpenNI.SKEL_LEFT_FOOT,
+		SimpleOpenNI.SKEL_RIGHT_HIP, SimpleOpenNI.SKEL_RIGHT_KNEE, SimpleOpenNI.SKEL_RIGHT_FOOT
+	};
+
+	// The interface to talk to kinect
+	private SimpleOpenNI kinect;
+	// scratch vector for reading joints from SimpleOpenNI, reused every fetch to avoid allocations
+	private PVector tempJoint = new PVector();
+	// the device timestamp of the last frame and the time it was first seen
+	private long lastDeviceTimestamp = 0L;
+	private long frameTimestamp = 0L;
+
+	// measurement of the native calls
+	private long fetchCount = 0;
+	private long nativeCallCount = 0;
+	private long nativeNanos = 0;
+	private long lastFetchNanos = 0;
+
+	/** Constructor for the SimpleOpenNIJointSource.
+	 *  @param _kinect Handle to the SimpleOpenNI object. */
+	public SimpleOpenNIJointSource (SimpleOpenNI _kinect) {
+		kinect = _kinect;
+	}
+
+	/** Fetches all joints of a user in one pass. SimpleOpenNI is not thread safe, calls are serialized on this source. */
+	public synchronized boolean fetchJoints (int _userId, int _jointMask, float[] _position, float[] _positionConfidence, PMatrix3D[] _orientation, float[] _orientationConfidence) {
+		long start = System.nanoTime();
+		int calls = 1;
+		boolean tracked = kinect.isTrackingSkeleton(_userId);
+		if (tracked) {
+			for (int i=0; i<Skeleton.NUMBER_OF_JOINTS; i++) {
+				if ((_jointMask & (1<<i)) == 0) continue;
+				_positionConfidence[i] = kinect.getJointPositionSkeleton(_userId,POSITION_JOINTS[i],tempJoint);
+				_position[i*3] = tempJoint.x;
+				_position[i*3+1] = tempJoint.y;
+				_position[i*3+2] = tempJoint.z;
+				_orientationConfidence[i] = kinect.getJointOrientationSkeleton(_userId,ORIENTATION_JOINTS[i],_orientation[i]);
+			}
+			calls += Integer.bitCount(_jointMask & Skeleton.JOINT_MASK_ALL)*2;
+		}
+		lastFetchNanos = System.nanoTime()-start;
+		nativeNanos += lastFetchNanos;
+		nativeCallCount += calls;
+		fetchCount++;
+		return tracked;
+	}
+
+	/** The time of the first call after SimpleOpenNI.update delivered a new frame. The device timestamp of the user generator tells when a new frame arrived,
+	 *  its unit is not used. All users of a frame get the same time, also when their skeletons are updated one after the other.
+	 *  If the device delivers no timestamps, the time does not increase and Skeleton takes the time between frames from the frame rate. */
+	public synchronized long getTimestamp (int _userId) {
+		long deviceTimestamp = kinect.userTimeStamp();
+		if (deviceTimestamp != lastDeviceTimestamp || frameTimestamp == 0L) {
+			lastDeviceTimestamp = deviceTimestamp;
+			frameTimestamp = System.nanoTime();
+		}
+		return frameTimestamp;
+	}
+
+	public synchronized int getTrackedUsers (int[] _userIds) {
+		int[] users = kinect.getUsers();
+		int numberOfUsers = 0;
+		for (int i=0; i<users.length && numberOfUsers<_userIds.length; i++) {
+			if (kinect.isTrackingSkeleton(users[i])) {
+				_userIds[numberOfUsers++] = users[i];
+			}
+		}
+		return numberOfUsers;
+	}
+
+	public synchronized void convertRealWorldToProjective (PVector _realWorld, PVector _projective) {
+		kinect.convertRealWorldToProjective(_realWorld,_projective);
+	}
+
+	/** Getter for the SimpleOpenNI object this source talks to.
+	 *  @return the SimpleOpenNI object */
+	public SimpleOpenNI getKinect () {
+		return kinect;
+	}
+	/** Getter for the number of frames fetched since creation or last reset of the measurement.
+	 *  @return the number of calls to fetchJoints */
+	public long getFetchCount () {
+		return fetchCount;
+	}
+	/** Getter for the average number of native calls per fetched frame.
+	 *  @return native calls per frame, 0f if nothing was fetched yet */
+	public float getNativeCallsPerFetch () {
+		return fetchCount > 0 ? (float)nativeCallCount/fetchCount : 0f;
+	}
+	/** Getter for the average time spent in native code per fetched frame.
+	 *  @return the average duration of fetchJoints in nanoseconds, 0f if nothing was fetched yet */
+	public float getAverageFetchNanos () {
+		return fetchCount > 0 ? (float)nativeNanos/fetchCount : 0f;
+	}
+	/** Getter for the time spent in native code during the last fetch.
+	 *  @return the duration of the last call to fetchJoints in nanoseconds */
+	public long getLastFetchNanos () {
+		return lastFetchNanos;
+	}
+	/** Resets the measurement of the native calls. */
+	public synchronized void resetMeasurement () {
+		fetchCount = 0;
+		nativeCallCount = 0;
+		nativeNanos = 0;
+		lastFetchNanos = 0;
+	}
+}
@@ -46,6 +46,10 @@ public class Skeleton {
 	public static final short MIRROR_THERAPY_OFF = 0; 
 	public static final short MIRROR_THERAPY_LEFT = 1;
 	public static final short MIRROR_THERAPY_RIGHT = 2;
+	// limbs mirrored in mirror therapy
+	public static final short MIRRORED_ARMS = 1;
+	public static final short MIRRORED_LEGS = 2;
+	public static final short MIRRORED_ARMS_AND_LEGS = 3;
 	
 	// available skeleton joints
 	public static final short HEAD = 0; 
@@ -63,6 +67,18 @@ public class Skeleton {
 	public static final short RIGHT_HIP = 12;
 	public static final short RIGHT_KNEE = 13;
 	public static final short RIGHT_FOOT = 14;
+	/** Stores the number of available joints. Bulk joint arrays hold 3*NUMBER_OF_JOINTS floats, xyz interleaved */
+	public static final short NUMBER_OF_JOINTS = 15;
+	
+	// joint masks. bit i of a joint mask stands for the joint with constant i, see jointMask
+	/** Joint mask of all joints */
+	public static final int JOINT_MASK_ALL = (1<<NUMBER_OF_JOINTS)-1;
+	/** Joint mask of the upper body joints HEAD..TORSO */
+	public static final int JOINT_MASK_UPPER_BODY = (1<<(TORSO+1))-1;
+	/** Joint mask of the joints the local coordinate system is calculated from. These joints are always evaluated */
+	public static final int JOINT_MASK_LCS = (1<<LEFT_SHOULDER)|(1<<RIGHT_SHOULDER)|(1<<TORSO);
+	/** Joint mask of shoulders, elbows, hands and torso, i.e. the joints of upper limb therapy */
+	public static final int JOINT_MASK_ARMS = JOINT_MASK_LCS|(1<<LEFT_ELBOW)|(1<<LEFT_HAND)|(1<<RIGHT_ELBOW)|(1<<RIGHT_HAND);
 	
 	// clinical directions
 	public static final short NEUTRAL = 0;
@@ -73,17 +89,45 @@ public class Skeleton {
 	public static final short LEFT_LATERAL = 5;
 	public static final short RIGHT_LATERAL = 6;
 	
-	// The interface to talk to kinect
-	private SimpleOpenNI kinect;
+	// derived quantities, calculated lazily on first access after each update. see getComputationCount
+	public static final short DERIVED_LOCAL_COORD_SYS = 0;
+	public static final short DERIVED_JOINTS_LCS = 1;
+	public static final short DERIVED_ARM_VECTORS = 2;
+	public static final short DERIVED_ARM_VECTORS_LCS = 3;
+	public static final short DERIVED_ORIENTATIONS = 4;
+	public static final short DERIVED_ARM_ANGLES = 5;
+	public static final short DERIVED_JOINTS_PROJECTIVE = 6;
+	public static final short DERIVED_FEATURES = 7;
+	/** Stores the number of derived quantities */
+	public static final short NUMBER_OF_DERIVED_QUANTITIES = 8;
+	// joints of the body sides, mirrored onto each other pairwise in mirror therapy
+	private static final short[] LEFT_SIDE = {LEFT_SHOULDER,LEFT_ELBOW,LEFT_HAND,LEFT_HIP,LEFT_KNEE,LEFT_FOOT};
+	private static final short[] RIGHT_SIDE = {RIGHT_SHOULDER,RIGHT_ELBOW,RIGHT_HAND,RIGHT_HIP,RIGHT_KNEE,RIGHT_FOOT};
+	private static final int LEFT_SIDE_MASK = jointMask(LEFT_SIDE);
+	private static final int RIGHT_SIDE_MASK = jointMask(RIGHT_SIDE);
+	// joints mirrored per limb. shoulders and hips keep their positions, they belong to the trunk. their orientations are mirrored with the limb
+	private static final int MIRRORED_POSITIONS_ARMS = (1<<LEFT_ELBOW)|(1<<LEFT_HAND)|(1<<RIGHT_ELBOW)|(1<<RIGHT_HAND);
+	private static final int MIRRORED_POSITIONS_LEGS = (1<<LEFT_KNEE)|(1<<LEFT_FOOT)|(1<<RIGHT_KNEE)|(1<<RIGHT_FOOT);
+	private static final int MIRRORED_ORIENTATIONS_ARMS = MIRRORED_POSITIONS_ARMS|(1<<LEFT_SHOULDER)|(1<<RIGHT_SHOULDER);
+	private static final int MIRRORED_ORIENTATIONS_LEGS = MIRRORED_POSITIONS_LEGS|(1<<LEFT_HIP)|(1<<RIGHT_HIP);
+	// bits of the derived quantities that are tracked as a whole, projective joints are tracked per joint
+	private static final int DERIVED_PER_FRAME = ((1<<NUMBER_OF_DERIVED_QUANTITIES)-1) & ~(1<<DERIVED_JOINTS_PROJECTIVE);
+	
+	// The source delivering joint information, i.e. the interface to talk to kinect
+	private JointSource jointSource;
 	
-	// stores skeleton Points in 3d Space, global coordsys
-	private PVector[] joint = new PVector[15]; 
-	private PVector[] jointUnmirrored = new PVector[15];
+	// stores skeleton Points in 3d Space, global coordsys. xyz of joint i are stored at i*3..i*3+2
+	private float[] joint = new float[NUMBER_OF_JOINTS*3]; 
+	// predicted joints, mirrored like joint. only displayed, derived quantities are calculated from the measured joints
+	private float[] jointPredicted = new float[NUMBER_OF_JOINTS*3];
+	// the joints returned by getJoint, getJointProjective and copyJoints: jointPredicted with a predictor, joint otherwise
+	private float[] jointDisplayed = joint;
+	private float[] jointUnmirrored = new float[NUMBER_OF_JOINTS*3];
 	private float[] jointConfidence = new float[15];
 	private float[] jointConfidenceUnmirrored = new float[15];
-	// stores skeleton Points in 3d Space, local coordsys (neck is origin)
-	private PVector[] jointLCS = new PVector[15];
-	private PVector[] jointLCSUnmirrored = new PVector[15];
+	// stores skeleton Points in 3d Space, local coordsys (torso is origin). xyz interleaved as above
+	private float[] jointLCS = new float[NUMBER_OF_JOINTS*3];
+	private float[] jointLCSUnmirrored = new float[NUMBER_OF_JOINTS*3];
 	// stores joint orientation
 	private PMatrix3D[] jointOrientation = new PMatrix3D[15];
 	private PMatrix3D[] jointOrientationUnmirrored = new PMatrix3D[15];
@@ -92,6 +136,8 @@ public class Skeleton {
 	// stores distance of joints to last position of joints
 	private float[] jointDelta = new float[15];
 	private float[] jointDeltaUnmirrored = new float[15];
+	// joint positions as delivered by the joint source, before deltas are calculated
+	private float[] jointFetched = new float[NUMBER_OF_JOINTS*3];
 	
 	// for convenience store vectors of upper arms and lower arms
 	private PVector lUpperArm = new PVector();
@@ -110,16 +156,42 @@ public class Skeleton {
 	private PVector lLowerArmLCSUnmirrored = new PVector();
 	private PVector rUpperArmLCSUnmirrored = new PVector();
 	private PVector rLowerArmLCSUnmirrored = new PVector();
+	// angles of the arms: left upper, left lower, right upper, right lower, then the same unmirrored
+	private float[] armAngle = new float[8];
+	// joint positions on the projective plane of the sensor, xyz interleaved
+	private float[] jointProjective = new float[NUMBER_OF_JOINTS*3];
+	private PVector tempRealWorld = new PVector();
+	private PVector tempProjective = new PVector();
+	// feature vector of the upper body posture
+	private SkeletonFeatures features = new SkeletonFeatures();
 	
 	// setup variables
-	private boolean fullBodyTracking = true;
+	private int jointMask = JOINT_MASK_ALL;
 	private short mirrorTherapy = MIRROR_THERAPY_OFF;
+	private short mirroredLimbs = MIRRORED_ARMS;
 	private boolean evaluatePostureAndGesture = true;
 	private boolean evaluateStatistics = true;
+	private boolean lazyEvaluation = true;
 	// control state of skeleton
 	private boolean isUpdated = false;
+	// bit i set: derived quantity i is not yet calculated for the current frame
+	private int dirtyQuantities = 0;
+	// joints evaluated in the current and in the last update cycle: joints requested by the application and by the enabled evaluators
+	private int evaluatedJointMask = 0;
+	private int lastEvaluatedJointMask = 0;
+	// joints synthesized or rejected by the validator in the current update cycle
+	private int synthesizedJointMask = 0;
+	private int rejectedJointMask = 0;
+	// bit i set: projective position of joint i is calculated for the current frame
+	private int projectiveJoints = 0;
+	private long[] computationCount = new long[NUMBER_OF_DERIVED_QUANTITIES];
+	private long[] avoidedComputationCount = new long[NUMBER_OF_DERIVED_QUANTITIES];
 	private int currentFrameCount = 0;
 	private float currentFrameRate = 0;
+	// capture time of the current frame from the joint source and the time since the last frame in seconds
+	private long currentTimestamp = 0;
+	private boolean hasTimestamp = false;
+	private float frameDuration = 0f;
 	// skeleton of user
 	private int userId;
 
@@ -128,8 +200,20 @@ public class Skeleton {
 	private boolean gestureEvaluated = false;
 	private SkeletonPosture posture = null;
 	private boolean postureEvaluated = false;
+	private PostureLibrary postureLibrary = null;
+	private SkeletonEvents events = new SkeletonEvents();
+	private GestureRecognizer gestureRecognizer = null;
+	private RepetitionCounter repetitionCounter = null;
 	private SkeletonMath math = null;
 	private SkeletonStatistics statistics = null;
+	private SkeletonRecorder recorder = null;
+	private JointValidator validator = null;
+	private JointFilter filter = null;
+	private JointPredictor predictor = null;
+	// frame publishing: the latest frame is handed to readers on other threads through a volatile reference, frames are recycled from the pool
+	private boolean publishFrames = false;
+	private volatile SkeletonFrame publishedFrame = null;
+	private SkeletonFrame[] framePool = new SkeletonFrame[0];
 	
 	// -----------------------------------------------------------------
 	// CONSTRUCTORS AND STATECONTROL
@@ -138,56 +222,127 @@ public class Skeleton {
 	 *  @param _userId the user ID of the skeleton
 	 *  @param _fullBodyTracking switches full body tracking on/off. If switched off, only upper body joints will be evaluated */
 	public Skeleton (SimpleOpenNI _kinect, int _userId, boolean _fullBodyTracking) {
-		kinect = _kinect;
+		this(new SimpleOpenNIJointSource(_kinect),_userId,_fullBodyTracking);
+	}
+	/** Constructor for the Skeleton.
+	 *  @param _jointSource the source of joint information. Skeleton will fetch one whole frame from the source in the update method.
+	 *  @param _userId the user ID of the skeleton
+	 *  @param _fullBodyTracking switches full body tracking on/off. If switched off, only upper body joints will be evaluated */
+	public Skeleton (JointSource _jointSource, int _userId, boolean _fullBodyTracking) {
+		this(_jointSource,_userId,_fullBodyTracking ? JOINT_MASK_ALL : JOINT_MASK_UPPER_BODY);
+	}
+	/** Constructor for the Skeleton.
+	 *  @param _jointSource the source of joint information. Skeleton will fetch one whole frame from the source in the update method.
+	 *  @param _userId the user ID of the skeleton
+	 *  @param _jointMask the joints the application reads, bit i set for the joint with constant i. See setJointMask */
+	public Skeleton (JointSource _jointSource, int _userId, int _jointMask) {
+		jointSource = _jointSource;
 		userId = _userId;
-		fullBodyTracking = _fullBodyTracking;
+		setJointMask(_jointMask);
 		for (int i=0; i<15; i++){
-			joint[i] = new PVector();
-			jointLCS[i] = new PVector();
 			jointOrientation[i] = new PMatrix3D();
 			jointDelta[i] = 0f;
-			jointUnmirrored[i] = new PVector();
-			jointLCSUnmirrored[i] = new PVector();
 			jointOrientationUnmirrored[i] = new PMatrix3D();
 			jointDeltaUnmirrored[i] = 0f;
 		}
 		math = new SkeletonMath(this);
 	}
 
-	/** Update method. Call it to update status of skeleton. Skeleton will talk to SimpleOpenNI directly and will do all the necessary math for updating its status according to set up 
+	/** Update method. Call it to update status of skeleton. Skeleton will fetch the current frame from its joint source and will do all the necessary math for updating its status according to set up.
+	 *  Derived quantities (local coordinate system, LCS joints, arm vectors, arm angles, orientations, projective joints) are calculated on first access, unless lazy evaluation is switched off.
+	 *  Time based evaluation (filter, validator, predictor, gestures, statistics) uses the capture time of the frames, see JointSource.getTimestamp
 	 *  @param _frameCount the current frame of PApplet, used for statistics
-	 *  @param _frameRate the current frame rate of PApplet, used for statistics */
+	 *  @param _frameRate the current frame rate of PApplet. Used as time between frames only if the joint source delivers no increasing timestamps */
 	public void update (int _frameCount, float _frameRate) {
 		isUpdated = false;
 		gestureEvaluated = false;
 		postureEvaluated = false;
 		currentFrameCount = _frameCount;
 		currentFrameRate = _frameRate;
+		countAvoidedComputations();
+		lastEvaluatedJointMask = evaluatedJointMask;
+		evaluatedJointMask = calculateEvaluatedJointMask();
 		
-		// Update all internal information
+		// Update all internal information. orientations and confidences are fetched to the unmirrored buffers, mirroring works on copies
+		boolean tracked = jointSource.fetchJoints(userId,evaluatedJointMask,jointFetched,jointConfidenceUnmirrored,jointOrientationUnmirrored,jointOrientationConfidenceUnmirrored);
+		updateTimestamp(jointSource.getTimestamp(userId));
+		if (recorder != null) {
+			recorder.recordFrame(currentTimestamp,currentFrameCount,currentFrameRate,userId,tracked,evaluatedJointMask,jointFetched,jointConfidenceUnmirrored,jointOrientationUnmirrored,jointOrientationConfidenceUnmirrored);
+		}
+		float dt = frameDuration;
+		synthesizedJointMask = 0;
+		rejectedJointMask = 0;
+		if (validator != null) {
+			// validated before filtering, so glitches neither reach the filter history nor the deltas
+			if (tracked) {
+				synthesizedJointMask = validator.validate(jointFetched,jointConfidenceUnmirrored,evaluatedJointMask,dt);
+				rejectedJointMask = validator.getRejectedJointMask();
+			} else {
+				validator.reset();
+			}
+		}
+		if (filter != null) {
+			// filtered before deltas are calculated, so deltas are not inflated by jitter
+			if (tracked) {
+				filter.filter(jointFetched,evaluatedJointMask,dt);
+			} else {
+				filter.reset();
+			}
+		}
 		updateJointPositions();
-		updateJointOrientations();
-
-		// the order is important since body planes use information of local coordinate system
-		math.calculateLocalCoordSys();
-		math.calculateBodyPlanes();
+		
+		// derived quantities of the last frame are outdated
+		dirtyQuantities = DERIVED_PER_FRAME;
+		projectiveJoints = 0;
 		if (mirrorTherapy != MIRROR_THERAPY_OFF) {
 			updateMirroredJointPositions();
-			updateMirroredJointOrientations();
 		}
-		
-		// transform updated skeleton to local coordinate system
-		transformToLCS();
+		if (predictor != null) {
+			// the predicted copy is mirrored like the measured joints, so the mirrored limb does not lag
+			if (tracked) {
+				predictor.predict(jointUnmirrored,jointPredicted,evaluatedJointMask,dt);
+				if (mirrorTherapy != MIRROR_THERAPY_OFF) mirrorJoints(jointPredicted);
+			} else {
+				predictor.reset();
+				System.arraycopy(joint,0,jointPredicted,0,NUMBER_OF_JOINTS*3);
+			}
+		}
+		if (!lazyEvaluation) {
+			ensureArmVectors();
+			ensureArmAngles();
+			ensureOrientations();
+			ensureFeatures();
+		}
 		
 		if (evaluatePostureAndGesture && posture != null && gesture != null) {
+			if (postureLibrary != null) postureLibrary.reloadIfModified();
 			posture.evaluate();
 			postureEvaluated = true;
 			gesture.evaluate(currentFrameCount);
 			gestureEvaluated = true;
+			events.update(this,posture,gesture,currentFrameCount,currentFrameRate);
+		}
+		if (gestureRecognizer != null) {
+			// a lost user breaks the trajectory
+			if (tracked) {
+				gestureRecognizer.update(this,currentFrameCount);
+			} else {
+				gestureRecognizer.reset();
+			}
+		}
+		if (repetitionCounter != null) {
+			if (tracked) {
+				repetitionCounter.update(this,currentFrameCount);
+			} else {
+				repetitionCounter.reset();
+			}
 		}
 		if (evaluateStatistics && statistics != null) {
 			statistics.update(currentFrameCount,currentFrameRate);
 		}
+		if (publishFrames) {
+			publishFrame();
+		}
 		isUpdated = true;
 	}
 	
@@ -207,15 +362,56 @@ public class Skeleton {
 	public short getMirrorTherapy () {
 		return mirrorTherapy;
 	}
-	/** Setter for fullBodyTracking. If full body tracking is switched off, only upper body joints will be evaluated.
+	/** Setter for the limbs mirrored in mirror therapy. Positions of elbows and hands (arms) or knees and feet (legs) are mirrored, 
+	 *  orientations additionally of shoulders or hips. Mirroring legs needs their source joints, they are evaluated automatically.
+	 *  @param _mirroredLimbs MIRRORED_ARMS, MIRRORED_LEGS or MIRRORED_ARMS_AND_LEGS. If out of range, arms are mirrored */
+	public void setMirroredLimbs (short _mirroredLimbs) {
+		if (_mirroredLimbs >= MIRRORED_ARMS && _mirroredLimbs <= MIRRORED_ARMS_AND_LEGS)
+			mirroredLimbs = _mirroredLimbs;
+		else
+			mirroredLimbs = MIRRORED_ARMS;
+	}
+	/** Getter for the limbs mirrored in mirror therapy.
+	 *  @return MIRRORED_ARMS, MIRRORED_LEGS or MIRRORED_ARMS_AND_LEGS */
+	public short getMirroredLimbs () {
+		return mirroredLimbs;
+	}
+	/** Setter for fullBodyTracking. If full body tracking is switched off, only upper body joints will be evaluated. Sets the joint mask to all or upper body joints.
 	 *  @param _fullBodyTracking switch full body tracking on/off */
 	public void setFullBodyTracking (boolean _fullBodyTracking) {
-		fullBodyTracking = _fullBodyTracking;
+		setJointMask(_fullBodyTracking ? JOINT_MASK_ALL : JOINT_MASK_UPPER_BODY);
 	}
 	/** Getter for full body tracking. 
-	 *  @return true if full body tracking is switched on */
+	 *  @return true if leg joints are in the joint mask */
 	public boolean getFullBodyTracking () {
-		return fullBodyTracking;
+		return (jointMask & ~JOINT_MASK_UPPER_BODY) != 0;
+	}
+	/** Setter for the joint mask. Only joints in the mask are fetched, transformed to the local coordinate system and mirrored. 
+	 *  Joints required by the enabled evaluators (see SkeletonPosture, SkeletonGesture and SkeletonStatistics REQUIRED_JOINTS) and the joints of the local coordinate system are added automatically,
+	 *  so a mask of 0 evaluates only what posture, gesture and statistics need. Information of joints that are not evaluated is not updated.
+	 *  @param _jointMask the joints the application reads, bit i set for the joint with constant i. See jointMask */
+	public void setJointMask (int _jointMask) {
+		jointMask = _jointMask & JOINT_MASK_ALL;
+	}
+	/** Getter for the joint mask. 
+	 *  @return the joints requested by the application */
+	public int getJointMask () {
+		return jointMask;
+	}
+	/** Getter for the joints evaluated in the last update cycle, including the joints required by the enabled evaluators.
+	 *  @return the joint mask of the evaluated joints */
+	public int getEvaluatedJointMask () {
+		return evaluatedJointMask;
+	}
+	/** Builds a joint mask from joint constants.
+	 *  @param _joints the joints, shorts corresponding to Skeleton constants. Joints out of range are ignored
+	 *  @return the joint mask, bit i set for the joint with constant i */
+	public static int jointMask (short... _joints) {
+		int mask = 0;
+		for (int i=0; i<_joints.length; i++) {
+			if (_joints[i] >= 0 && _joints[i] < NUMBER_OF_JOINTS) mask |= 1<<_joints[i];
+		}
+		return mask;
 	}
 	/** Setter for evaluating statistics for the skeleton. If switched on, statistics will be updated
 	 *  If was switched on before, new statistics object will be generated! Old statistics will be lost.
@@ -235,6 +431,102 @@ public class Skeleton {
 			}
 		}
 	}
+	/** Starts recording every frame fetched from the joint source to a session file. The session can be replayed with SkeletonReplayer.
+	 *  @param _recorder the recorder the frames are written to. Several skeletons may share one recorder */
+	public void startRecording (SkeletonRecorder _recorder) {
+		recorder = _recorder;
+	}
+	/** Stops recording frames. The recorder is not closed, since it may be shared with other skeletons. Call SkeletonRecorder.close when done. */
+	public void stopRecording () {
+		recorder = null;
+	}
+	/** Setter for the validator that checks the joint positions fetched from the joint source for plausibility. Invalid joints are held, interpolated or rejected before filtering,
+	 *  joint deltas, mirroring and local coordinate system are calculated. See getSynthesizedJointMask and getRejectedJointMask.
+	 *  @param _validator the validator, null to switch validation off. A validator keeps the history of one user, do not share it between skeletons */
+	public void setJointValidator (JointValidator _validator) {
+		validator = _validator;
+		if (validator != null) validator.reset();
+	}
+	/** Getter for the validator that checks the joint positions.
+	 *  @return the validator, null if validation is switched off */
+	public JointValidator getJointValidator () {
+		return validator;
+	}
+	/** Getter for the joints synthesized by the validator in the last update cycle, i.e. held or interpolated instead of measured. 
+	 *  The mask refers to the unmirrored joints, mirrored joints are synthesized if their counterpart is.
+	 *  @return the joint mask of the synthesized joints, 0 if validation is switched off */
+	public int getSynthesizedJointMask () {
+		return synthesizedJointMask;
+	}
+	/** Getter for the joints rejected by the validator in the last update cycle. Consumers that need measured joints can skip frames with rejected joints they depend on.
+	 *  @return the joint mask of the rejected joints, 0 if validation is switched off or the frame is valid */
+	public int getRejectedJointMask () {
+		return rejectedJointMask;
+	}
+	/** Setter for the filter that smoothes the joint positions fetched from the joint source. Positions are filtered before joint deltas, mirroring and local coordinate system are calculated.
+	 *  The time between frames is taken from the capture times of the frames, see getFrameDuration. If the joint source delivers no increasing capture times, 1/frame rate passed to update is used.
+	 *  @param _filter the filter, null to switch filtering off. A filter keeps the history of one user, do not share it between skeletons */
+	public void setJointFilter (JointFilter _filter) {
+		filter = _filter;
+		if (filter != null) filter.reset();
+	}
+	/** Getter for the filter that smoothes the joint positions.
+	 *  @return the filter, null if filtering is switched off */
+	public JointFilter getJointFilter () {
+		return filter;
+	}
+	/** Setter for the predictor that extrapolates the joint positions to compensate latency, e.g. in mirror therapy. 
+	 *  Only the displayed joint positions are predicted: getJoint, getJointProjective, copyJoints and the joints of published frames. They are mirrored if mirror therapy is on. 
+	 *  All other quantities are calculated from the measured positions, i.e. LCS joints, arm vectors, angles, features, posture, gestures and statistics.
+	 *  @param _predictor the predictor, null to switch prediction off. A predictor keeps the history of one user, do not share it between skeletons */
+	public void setJointPredictor (JointPredictor _predictor) {
+		predictor = _predictor;
+		if (predictor != null) {
+			predictor.reset();
+			// until the next update, the measured joints are displayed
+			System.arraycopy(joint,0,jointPredicted,0,NUMBER_OF_JOINTS*3);
+			jointDisplayed = jointPredicted;
+		} else {
+			jointDisplayed = joint;
+		}
+		projectiveJoints = 0;
+	}
+	/** Getter for the predictor that extrapolates the joint positions.
+	 *  @return the predictor, null if prediction is switched off */
+	public JointPredictor getJointPredictor () {
+		return predictor;
+	}
+	/** Setter for publishing frames. If switched on, every update cycle publishes an immutable SkeletonFrame that other threads can read with acquireFrame.
+	 *  Publishing calculates all derived quantities in every update cycle. Frames are recycled, publishing does not allocate once the pool is large enough for the readers.
+	 *  @param _publishFrames switch frame publishing on/off. If switched off, the last published frame is released */
+	public void setPublishFrames (boolean _publishFrames) {
+		publishFrames = _publishFrames;
+		if (!publishFrames) {
+			SkeletonFrame frame = publishedFrame;
+			publishedFrame = null;
+			if (frame != null) frame.release();
+		}
+	}
+	/** Getter for publishing frames.
+	 *  @return true if a SkeletonFrame is published in every update cycle */
+	public boolean getPublishFrames () {
+		return publishFrames;
+	}
+	/** Acquires the latest published frame. Safe to call from any thread. The frame is not changed or recycled until it is released, call SkeletonFrame.release when done.
+	 *  @return the latest frame, null if frame publishing is switched off or no frame was published yet */
+	public SkeletonFrame acquireFrame () {
+		while (true) {
+			SkeletonFrame frame = publishedFrame;
+			if (frame == null) return null;
+			if (frame.retain()) return frame;
+			// the frame was recycled after it was read, a newer frame is published already
+		}
+	}
+	/** Getter for the number of pooled frames. The pool grows if readers hold more frames than it can spare.
+	 *  @return the number of frames in the pool */
+	public int getFramePoolSize () {
+		return framePool.length;
+	}
 	/** Getter for evaluating statistics for the skeleton.
 	 *  @return boolean of evaluateStatistics-switch */
 	public boolean getEvaluateStatistics () {
@@ -246,10 +538,12 @@ public class Skeleton {
 		evaluatePostureAndGesture = _evaluatePostureAndGesture;
 		if (evaluatePostureAndGesture) {
 			posture = new SkeletonPosture(this);
+			posture.setPostureLibrary(postureLibrary);
 			gesture = new SkeletonGesture(this);
 		} else {
 			posture = null;
 			gesture = null;
+			events.reset();
 		}
 	}
 	/** Getter for evaluating posture and gesture for the skeleton.
@@ -257,16 +551,69 @@ public class Skeleton {
 	public boolean getEvaluatePostureAndGesture () {
 		return evaluatePostureAndGesture;
 	}
+	/** Setter for lazy evaluation. If switched on, derived quantities are calculated on first access after each update and cached until the next update. 
+	 *  Quantities that are never read are never calculated. If switched off, all derived quantities but the projective joints are calculated in update.
+	 *  Switch it off if the skeleton is read from several threads at the same time.
+	 *  @param _lazyEvaluation switch lazy evaluation on/off. default is on */
+	public void setLazyEvaluation (boolean _lazyEvaluation) {
+		lazyEvaluation = _lazyEvaluation;
+	}
+	/** Getter for lazy evaluation.
+	 *  @return true if derived quantities are calculated on first access */
+	public boolean getLazyEvaluation () {
+		return lazyEvaluation;
+	}
+	/** Getter for the number of calculations of a derived quantity since creation or last reset of the counters. For projective joints every joint is counted.
+	 *  @param _quantity short corresponding to Skeleton DERIVED constants
+	 *  @return the number of calculations, 0 if _quantity is out of range */
+	public long getComputationCount (short _quantity) {
+		if (_quantity >= 0 && _quantity < NUMBER_OF_DERIVED_QUANTITIES) 
+			return computationCount[_quantity];
+		else
+			return 0;
+	}
+	/** Getter for the number of calculations of a derived quantity that were avoided by lazy evaluation, i.e. update cycles in which the quantity was not read. 
+	 *  For projective joints every evaluated joint that was not read is counted.
+	 *  @param _quantity short corresponding to Skeleton DERIVED constants
+	 *  @return the number of avoided calculations, 0 if _quantity is out of range */
+	public long getAvoidedComputationCount (short _quantity) {
+		if (_quantity >= 0 && _quantity < NUMBER_OF_DERIVED_QUANTITIES) 
+			return avoidedComputationCount[_quantity];
+		else
+			return 0;
+	}
+	/** Resets the counters of calculated and avoided derived quantities. */
+	public void resetComputationCounters () {
+		for (int i=0; i<NUMBER_OF_DERIVED_QUANTITIES; i++) {
+			computationCount[i] = 0;
+			avoidedComputationCount[i] = 0;
+		}
+	}
 	/** Getter for status of the skeleton. Is used as a lock, methods of skeleton will return unsafe values, as long update function is not done.
 	 *  @return true if the status of the skeleton is fully updated */
 	public boolean isUpdated() {
 		return isUpdated;
 	}
+	/** Getter for the source of joint information of the skeleton.
+	 *  @return the joint source the skeleton fetches its joints from */
+	public JointSource getJointSource() {
+		return jointSource;
+	}
 	/** Getter for user ID of the skeleton.
 	 *  @return the user ID of the skeleton */
 	public int getUserId() {
 		return userId;
 	}
+	/** Getter for the capture time of the current frame, see JointSource.getTimestamp
+	 *  @return the capture time in nanoseconds on the time scale of System.nanoTime */
+	public long getTimestamp () {
+		return currentTimestamp;
+	}
+	/** Getter for the time between the last and the current frame, measured with the capture times. Velocities and time windows are based on it
+	 *  @return the time in seconds. 1/frame rate for the first frame or if the capture time did not increase, 0f if the frame rate is 0 too */
+	public float getFrameDuration () {
+		return frameDuration;
+	}
 	/** Setter for the tolerance with which gesture will be detected. 0..1f.
 	 *  @param _gestureTolerance the tolerance between 0..1f. when higher than 1 or lower than 0, default tolerance 0.5f will be set */
 	public void setGestureTolerance (float _gestureTolerance) {
@@ -299,6 +646,77 @@ public class Skeleton {
 			return -1f;
 		}
 	}
+	/** Setter for the hysteresis of posture detection. A held posture is left only when it is not detected with tolerance plus hysteresis anymore. See SkeletonEvents
+	 *  @param _postureHysteresis the additional tolerance, 0..1f. when higher than 1 or lower than 0, default hysteresis 0.2f will be set */
+	public void setPostureHysteresis (float _postureHysteresis) {
+		if (posture != null){
+			posture.setPostureHysteresis(_postureHysteresis);
+		}
+	}
+	/** Getter for posture hysteresis
+	 *  @return the posture hysteresis or -1f if posture evaluation is not activated */
+	public float getPostureHysteresis () {
+		if (posture != null) {
+			return posture.getPostureHysteresis();
+		} else {
+			return -1f;
+		}
+	}
+	/** Returns the posture and gesture events of the skeleton. Add listeners and set up dwell time, hold interval and delivery there. 
+	 *  Events are delivered if posture and gesture are evaluated
+	 *  @return the events of the skeleton */
+	public SkeletonEvents getEvents () {
+		return events;
+	}
+	/** Returns the history of posture and gesture events of the skeleton, e.g. to count gestures of the last minutes. See SkeletonEventHistory
+	 *  @return the event history */
+	public SkeletonEventHistory getEventHistory () {
+		return events.getHistory();
+	}
+	/** Adds a listener for posture and gesture events. See SkeletonEvents
+	 *  @param _listener the listener */
+	public void addEventListener (SkeletonEventListener _listener) {
+		events.addEventListener(_listener);
+	}
+	/** Removes a listener for posture and gesture events.
+	 *  @param _listener the listener */
+	public void removeEventListener (SkeletonEventListener _listener) {
+		events.removeEventListener(_listener);
+	}
+	/** Setter for the library of custom postures, evaluated with posture and gesture. The joints the custom postures read are evaluated automatically.
+	 *  The update method reloads the library when its file changes, see PostureLibrary.reloadIfModified
+	 *  @param _postureLibrary the posture library, may be shared by several skeletons. null to evaluate no custom postures */
+	public void setPostureLibrary (PostureLibrary _postureLibrary) {
+		postureLibrary = _postureLibrary;
+		if (posture != null) {
+			posture.setPostureLibrary(postureLibrary);
+		}
+	}
+	/** Getter for the library of custom postures
+	 *  @return the posture library or null */
+	public PostureLibrary getPostureLibrary () {
+		return postureLibrary;
+	}
+	/** Setter for the recognizer of recorded gestures, updated in every update cycle while the user is tracked. The joints its templates read are evaluated automatically. See GestureRecognizer
+	 *  @param _gestureRecognizer the gesture recognizer, not shared with other skeletons. null to recognize no recorded gestures */
+	public void setGestureRecognizer (GestureRecognizer _gestureRecognizer) {
+		gestureRecognizer = _gestureRecognizer;
+	}
+	/** Getter for the recognizer of recorded gestures
+	 *  @return the gesture recognizer or null */
+	public GestureRecognizer getGestureRecognizer () {
+		return gestureRecognizer;
+	}
+	/** Setter for the counter of exercise repetitions, updated in every update cycle while the user is tracked. The joints of its exercises are evaluated automatically. See RepetitionCounter
+	 *  @param _repetitionCounter the repetition counter, not shared with other skeletons. null to count no repetitions */
+	public void setRepetitionCounter (RepetitionCounter _repetitionCounter) {
+		repetitionCounter = _repetitionCounter;
+	}
+	/** Getter for the counter of exercise repetitions
+	 *  @return the repetition counter or null */
+	public RepetitionCounter getRepetitionCounter () {
+		return repetitionCounter;
+	}
 
 	// -----------------------------------------------------------------
 	// GETTERS FOR STATISTICS OF SKELETON
@@ -321,12 +739,12 @@ public class Skeleton {
 	
 	// -----------------------------------------------------------------
 	// ACCESS TO JOINTS AND JOINT INFORMATION
-	/** This method returns the joint position of a certain joint in the global coordinate system
+	/** This method returns the joint position of a certain joint in the global coordinate system. The position is predicted if a joint predictor is set, see setJointPredictor
 	 *  @param jointType The joint for which confidence value should be returned. Should be a short value corresponding to Skeleton constants.
 	 *  @return The position of a certain joint in the global coordinate system as vector. If jointType out of range: 0-vector */
 	public PVector getJoint (short jointType) {
 		PVector returnValue = new PVector();
-		if (jointType >= 0 && jointType <= 14) returnValue.set(joint[jointType]);
+		if (jointType >= 0 && jointType <= 14) returnValue.set(jointDisplayed[jointType*3],jointDisplayed[jointType*3+1],jointDisplayed[jointType*3+2]);
 		return returnValue;
 	}
 	/** This method returns the joint position of a certain joint in the global coordinate system. This method returns the unmirrored information, regardless of mirror therapy mode.
@@ -334,15 +752,27 @@ public class Skeleton {
 	 *  @return The position of a certain joint in the global coordinate system as vector. If jointType out of range: 0-vector */
 	public PVector getJointUnmirrored (short jointType) {
 		PVector returnValue = new PVector();
-		if (jointType >= 0 && jointType <= 14) returnValue.set(jointUnmirrored[jointType]);
+		if (jointType >= 0 && jointType <= 14) returnValue.set(jointUnmirrored[jointType*3],jointUnmirrored[jointType*3+1],jointUnmirrored[jointType*3+2]);
 		return returnValue;
 	}
-	/** This method returns the joint position of a certain joint on the kinect's projective plane. Z-value will be 0
+	/** This method returns the joint position of a certain joint on the kinect's projective plane. Z-value will be 0. The position is predicted if a joint predictor is set
 	 *  @param jointType The joint for which confidence value should be returned. Should be a short value corresponding to Skeleton constants.
 	 *  @return The position of a certain joint as vector on the projective plane of the kinect. If jointType out of range: 0-vector */
 	public PVector getJointProjective (short jointType) {
 		PVector projective = new PVector();
-		if (jointType >= 0 && jointType <= 14) kinect.convertRealWorldToProjective(joint[jointType], projective);
+		if (jointType >= 0 && jointType <= 14) {
+			int i = jointType*3;
+			if ((projectiveJoints & (1<<jointType)) == 0) {
+				tempRealWorld.set(jointDisplayed[i],jointDisplayed[i+1],jointDisplayed[i+2]);
+				jointSource.convertRealWorldToProjective(tempRealWorld,tempProjective);
+				jointProjective[i] = tempProjective.x;
+				jointProjective[i+1] = tempProjective.y;
+				jointProjective[i+2] = tempProjective.z;
+				projectiveJoints |= 1<<jointType;
+				computationCount[DERIVED_JOINTS_PROJECTIVE]++;
+			}
+			projective.set(jointProjective[i],jointProjective[i+1],jointProjective[i+2]);
+		}
 		return projective;
 	}
 	/** The positions of the joints are transformed to the local coordinate system of the skeleton if calculateLocalCoordSys was set.
@@ -350,8 +780,9 @@ public class Skeleton {
 	 *  @param jointType The joint for which confidence value should be returned. Should be a short value corresponding to Skeleton constants.
 	 *  @return The position of a certain joint in the local coordinate system as vector. If jointType out of range or if localCoordSys was not calculated: 0-vector */
 	public PVector getJointLCS (short jointType) {
+		ensureJointsLCS();
 		PVector returnValue = new PVector();
-		if (jointType >= 0 && jointType <= 14) returnValue.set(jointLCS[jointType]);
+		if (jointType >= 0 && jointType <= 14) returnValue.set(jointLCS[jointType*3],jointLCS[jointType*3+1],jointLCS[jointType*3+2]);
 		return returnValue;
 	}
 	/** The positions of the joints are transformed to the local coordinate system of the skeleton if calculateLocalCoordSys was set. This method returns the unmirrored information, regardless of mirror therapy mode.
@@ -359,8 +790,9 @@ public class Skeleton {
 	 *  @param jointType The joint for which confidence value should be returned. Should be a short value corresponding to Skeleton constants.
 	 *  @return The position of a certain joint in the local coordinate system as vector. If jointType out of range or if localCoordSys was not calculated: 0-vector */
 	public PVector getJointLCSUnmirrored (short jointType) {
+		ensureJointsLCS();
 		PVector returnValue = new PVector();
-		if (jointType >= 0 && jointType <= 14) returnValue.set(jointLCSUnmirrored[jointType]);
+		if (jointType >= 0 && jointType <= 14) returnValue.set(jointLCSUnmirrored[jointType*3],jointLCSUnmirrored[jointType*3+1],jointLCSUnmirrored[jointType*3+2]);
 		return returnValue;
 	}
 	/** The positions of the joints are evaluated with a certain confidence value. This method returns the confidence value for a certain joint
@@ -385,6 +817,7 @@ public class Skeleton {
 	 *  @param jointType The joint for which confidence value should be returned. Should be a short value corresponding to Skeleton constants.
 	 *  @return The orientation matrix of a certain joint. PMatrix3D. If jointType out of range: 0-Matrix */
 	public PMatrix3D getJointOrientation (short jointType) {
+		ensureOrientations();
 		PMatrix3D returnValue = new PMatrix3D();
 		if (jointType >= 0 && jointType <= 14) returnValue.set(jointOrientation[jointType]);
 		return returnValue;
@@ -401,6 +834,7 @@ public class Skeleton {
 	 *  @param jointType The joint for which confidence value should be returned. Should be a short value corresponding to Skeleton constants.
 	 *  @return The confidence value for the evaluated orientation of a certain joint. Between 0f and 1f. If jointType out of range: 0f */
 	public float getJointOrientationConfidence (short jointType) {
+		ensureOrientations();
 		if (jointType >= 0 && jointType <= 14) 
 			return jointOrientationConfidence[jointType];
 		else
@@ -436,15 +870,120 @@ public class Skeleton {
 	/** returns the distance of the skeletons torso joint to the kinect
 	 *  @return the distance in mm, magnitude of skeletons torso vector */
 	public float distanceToKinect () {
-		return joint[TORSO].mag();
+		return PApplet.sqrt(joint[TORSO*3]*joint[TORSO*3]+joint[TORSO*3+1]*joint[TORSO*3+1]+joint[TORSO*3+2]*joint[TORSO*3+2]);
 	}
 
 	
+	// -----------------------------------------------------------------
+	// BULK ACCESS TO JOINTS AND JOINT INFORMATION
+	/** Copies the positions of all joints in the global coordinate system to a caller-owned buffer without allocating. The positions are predicted if a joint predictor is set
+	 *  @param _dst the buffer to fill. 3*NUMBER_OF_JOINTS floats are written, xyz interleaved in the order of the Skeleton joint constants
+	 *  @param _offset the index in _dst at which the first joint's x value is written */
+	public void copyJoints (float[] _dst, int _offset) {
+		System.arraycopy(jointDisplayed,0,_dst,_offset,NUMBER_OF_JOINTS*3);
+	}
+	/** Copies the positions of all joints in the global coordinate system to a caller-owned buffer without allocating. This method returns the unmirrored information, regardless of mirror therapy mode.
+	 *  @param _dst the buffer to fill. 3*NUMBER_OF_JOINTS floats are written, xyz interleaved in the order of the Skeleton joint constants
+	 *  @param _offset the index in _dst at which the first joint's x value is written */
+	public void copyJointsUnmirrored (float[] _dst, int _offset) {
+		System.arraycopy(jointUnmirrored,0,_dst,_offset,NUMBER_OF_JOINTS*3);
+	}
+	/** Copies the positions of all joints in the local coordinate system to a caller-owned buffer without allocating. 
+	 *  @param _dst the buffer to fill. 3*NUMBER_OF_JOINTS floats are written, xyz interleaved in the order of the Skeleton joint constants
+	 *  @param _offset the index in _dst at which the first joint's x value is written */
+	public void copyJointsLCS (float[] _dst, int _offset) {
+		ensureJointsLCS();
+		System.arraycopy(jointLCS,0,_dst,_offset,NUMBER_OF_JOINTS*3);
+	}
+	/** Copies the positions of all joints in the local coordinate system to a caller-owned buffer without allocating. This method returns the unmirrored information, regardless of mirror therapy mode.
+	 *  @param _dst the buffer to fill. 3*NUMBER_OF_JOINTS floats are written, xyz interleaved in the order of the Skeleton joint constants
+	 *  @param _offset the index in _dst at which the first joint's x value is written */
+	public void copyJointsLCSUnmirrored (float[] _dst, int _offset) {
+		ensureJointsLCS();
+		System.arraycopy(jointLCSUnmirrored,0,_dst,_offset,NUMBER_OF_JOINTS*3);
+	}
+	/** Copies the confidence values of all joints to a caller-owned buffer without allocating. 
+	 *  @param _dst the buffer to fill. NUMBER_OF_JOINTS floats are written, starting at index 0 */
+	public void copyConfidences (float[] _dst) {
+		copyConfidences(_dst,0);
+	}
+	/** Copies the confidence values of all joints to a caller-owned buffer without allocating. 
+	 *  @param _dst the buffer to fill. NUMBER_OF_JOINTS floats are written in the order of the Skeleton joint constants
+	 *  @param _offset the index in _dst at which the first joint's confidence is written */
+	public void copyConfidences (float[] _dst, int _offset) {
+		System.arraycopy(jointConfidence,0,_dst,_offset,NUMBER_OF_JOINTS);
+	}
+	/** Copies the confidence values of all joints to a caller-owned buffer without allocating. This method returns the unmirrored information, regardless of mirror therapy mode.
+	 *  @param _dst the buffer to fill. NUMBER_OF_JOINTS floats are written in the order of the Skeleton joint constants
+	 *  @param _offset the index in _dst at which the first joint's confidence is written */
+	public void copyConfidencesUnmirrored (float[] _dst, int _offset) {
+		System.arraycopy(jointConfidenceUnmirrored,0,_dst,_offset,NUMBER_OF_JOINTS);
+	}
+	/** Copies the joint deltas of all joints, i.e. the distances the joints moved during the last frame, to a caller-owned buffer without allocating. 
+	 *  @param _dst the buffer to fill. NUMBER_OF_JOINTS floats are written in the order of the Skeleton joint constants
+	 *  @param _offset the index in _dst at which the first joint's delta is written */
+	public void copyJointDeltas (float[] _dst, int _offset) {
+		System.arraycopy(jointDelta,0,_dst,_offset,NUMBER_OF_JOINTS);
+	}
+	/** Copies the joint deltas of all joints to a caller-owned buffer without allocating. This method returns the unmirrored information, regardless of mirror therapy mode.
+	 *  @param _dst the buffer to fill. NUMBER_OF_JOINTS floats are written in the order of the Skeleton joint constants
+	 *  @param _offset the index in _dst at which the first joint's delta is written */
+	public void copyJointDeltasUnmirrored (float[] _dst, int _offset) {
+		System.arraycopy(jointDeltaUnmirrored,0,_dst,_offset,NUMBER_OF_JOINTS);
+	}
+	/** Copies the orientation matrices of all joints to a caller-owned buffer without allocating. 
+	 *  @param _dst the buffer to fill. 16*NUMBER_OF_JOINTS floats are written, each matrix row by row (m00, m01, .. m33) in the order of the Skeleton joint constants
+	 *  @param _offset the index in _dst at which the first joint's m00 is written */
+	public void copyJointOrientations (float[] _dst, int _offset) {
+		ensureOrientations();
+		for (int i=0; i<NUMBER_OF_JOINTS; i++) {
+			copyMatrix(jointOrientation[i],_dst,_offset+i*16);
+		}
+	}
+	/** Copies the confidence values of the orientations of all joints to a caller-owned buffer without allocating. 
+	 *  @param _dst the buffer to fill. NUMBER_OF_JOINTS floats are written in the order of the Skeleton joint constants
+	 *  @param _offset the index in _dst at which the first joint's confidence is written */
+	public void copyJointOrientationConfidences (float[] _dst, int _offset) {
+		ensureOrientations();
+		System.arraycopy(jointOrientationConfidence,0,_dst,_offset,NUMBER_OF_JOINTS);
+	}
+	/** Returns one feature of the upper body, calculated once per update cycle. See SkeletonFeatures
+	 *  @param _feature short corresponding to SkeletonFeatures constants
+	 *  @return the feature, angles in radians, distances in mm. If _feature out of range: 0f */
+	public float getFeature (short _feature) {
+		if (_feature >= 0 && _feature < SkeletonFeatures.NUMBER_OF_FEATURES) 
+			return features()[_feature];
+		else
+			return 0f;
+	}
+	/** Copies the feature vector of the upper body to a caller-owned buffer without allocating. See SkeletonFeatures
+	 *  @param _dst the buffer to fill. SkeletonFeatures.NUMBER_OF_FEATURES floats are written in the order of the SkeletonFeatures constants
+	 *  @param _offset the index in _dst at which the first feature is written */
+	public void copyFeatures (float[] _dst, int _offset) {
+		System.arraycopy(features(),0,_dst,_offset,SkeletonFeatures.NUMBER_OF_FEATURES);
+	}
+	// the LCS joints of the current update cycle, shared with the evaluators of this package. must not be changed
+	float[] jointsLCS () {
+		ensureJointsLCS();
+		return jointLCS;
+	}
+	// the unmirrored LCS joints of the current update cycle, shared with the evaluators of this package. must not be changed
+	float[] jointsLCSUnmirrored () {
+		ensureJointsLCS();
+		return jointLCSUnmirrored;
+	}
+	// the feature vector of the current update cycle, shared with the evaluators of this package. must not be changed
+	float[] features () {
+		ensureFeatures();
+		return features.values();
+	}	
+	
 	// -----------------------------------------------------------------
 	// ACCESS TO ARM VECTORS
 	/** The vectors for lower and upper arms are calculated for convenience. 
 	 *  @return The vector for the left upper arm */
 	public PVector getLeftUpperArm() {
+		ensureArmVectors();
 		PVector returnValue = new PVector();
 		returnValue.set(lUpperArm);
 		return returnValue;
@@ -452,6 +991,7 @@ public class Skeleton {
 	/** The vectors for lower and upper arms are calculated for convenience. 
 	 *  @return The vector for the left lower arm */
 	public PVector getLeftLowerArm() {
+		ensureArmVectors();
 		PVector returnValue = new PVector();
 		returnValue.set(lLowerArm);
 		return returnValue;
@@ -459,6 +999,7 @@ public class Skeleton {
 	/** The vectors for lower and upper arms are calculated for convenience. 
 	 *  @return The vector for the right upper arm */
 	public PVector getRightUpperArm() {
+		ensureArmVectors();
 		PVector returnValue = new PVector();
 		returnValue.set(rUpperArm);
 		return returnValue;
@@ -466,6 +1007,7 @@ public class Skeleton {
 	/** The vectors for lower and upper arms are calculated for convenience. 
 	 *  @return The vector for the right lower arm */
 	public PVector getRightLowerArm() {
+		ensureArmVectors();
 		PVector returnValue = new PVector();
 		returnValue.set(rLowerArm);
 		return returnValue;
@@ -473,6 +1015,7 @@ public class Skeleton {
 	/** The vectors for the lower and upper arms are calculated for convenience.
 	 *  @return The vector for the left upper arm in the local coordinate system.*/
 	public PVector getLeftUpperArmLCS() {
+		ensureArmVectorsLCS();
 		PVector returnValue = new PVector();
 		returnValue.set(lUpperArmLCS);
 		return returnValue;
@@ -480,6 +1023,7 @@ public class Skeleton {
 	/** The vectors for the lower and upper arms are calculated for convenience. 
 	 *  @return The vector for the left lower arm in the local coordinate system.  */
 	public PVector getRightUpperArmLCS() {
+		ensureArmVectorsLCS();
 		PVector returnValue = new PVector();
 		returnValue.set(rUpperArmLCS);
 		return returnValue;
@@ -487,6 +1031,7 @@ public class Skeleton {
 	/** The vectors for the lower and upper arms are calculated for convenience. 
 	 *  @return The vector for the right upper arm in the local coordinate system.  */
 	public PVector getLeftLowerArmLCS() {
+		ensureArmVectorsLCS();
 		PVector returnValue = new PVector();
 		returnValue.set(lLowerArmLCS);
 		return returnValue;
@@ -494,6 +1039,7 @@ public class Skeleton {
 	/** The vectors for the lower and upper arms are calculated for convenience. 
 	 *  @return The vector for the right lower arm in the local coordinate system.  */
 	public PVector getRightLowerArmLCS() {
+		ensureArmVectorsLCS();
 		PVector returnValue = new PVector();
 		returnValue.set(rLowerArmLCS);
 		return returnValue;
@@ -501,6 +1047,7 @@ public class Skeleton {
 	/** The vectors for lower and upper arms are calculated for convenience. This method returns the unmirrored arm vectors.
 	 *  @return The vector for the left upper arm */
 	public PVector getLeftUpperArmUnmirrored() {
+		ensureArmVectors();
 		PVector returnValue = new PVector();
 		returnValue.set(lUpperArmUnmirrored);
 		return returnValue;
@@ -508,6 +1055,7 @@ public class Skeleton {
 	/** The vectors for lower and upper arms are calculated for convenience.  This method returns the unmirrored arm vectors.
 	 *  @return The vector for the left lower arm */
 	public PVector getLeftLowerArmUnmirrored() {
+		ensureArmVectors();
 		PVector returnValue = new PVector();
 		returnValue.set(lLowerArmUnmirrored);
 		return returnValue;
@@ -515,6 +1063,7 @@ public class Skeleton {
 	/** The vectors for lower and upper arms are calculated for convenience.  This method returns the unmirrored arm vectors.
 	 *  @return The vector for the right upper arm */
 	public PVector getRightUpperArmUnmirrored() {
+		ensureArmVectors();
 		PVector returnValue = new PVector();
 		returnValue.set(rUpperArmUnmirrored);
 		return returnValue;
@@ -522,6 +1071,7 @@ public class Skeleton {
 	/** The vectors for lower and upper arms are calculated for convenience.  This method returns the unmirrored arm vectors.
 	 *  @return The vector for the right lower arm */
 	public PVector getRightLowerArmUnmirrored() {
+		ensureArmVectors();
 		PVector returnValue = new PVector();
 		returnValue.set(rLowerArmUnmirrored);
 		return returnValue;
@@ -529,6 +1079,7 @@ public class Skeleton {
 	/** The vectors for the lower and upper arms are calculated for convenience. This method returns the unmirrored arm vectors.
 	 *  @return The vector for the left upper arm in the local coordinate system.*/
 	public PVector getLeftUpperArmLCSUnmirrored() {
+		ensureArmVectorsLCS();
 		PVector returnValue = new PVector();
 		returnValue.set(lUpperArmLCSUnmirrored);
 		return returnValue;
@@ -536,6 +1087,7 @@ public class Skeleton {
 	/** The vectors for the lower and upper arms are calculated for convenience.  This method returns the unmirrored arm vectors.
 	 *  @return The vector for the left lower arm in the local coordinate system.  */
 	public PVector getRightUpperArmLCSUnmirrored() {
+		ensureArmVectorsLCS();
 		PVector returnValue = new PVector();
 		returnValue.set(rUpperArmLCSUnmirrored);
 		return returnValue;
@@ -543,6 +1095,7 @@ public class Skeleton {
 	/** The vectors for the lower and upper arms are calculated for convenience.  This method returns the unmirrored arm vectors.
 	 *  @return The vector for the right upper arm in the local coordinate system.  */
 	public PVector getLeftLowerArmLCSUnmirrored() {
+		ensureArmVectorsLCS();
 		PVector returnValue = new PVector();
 		returnValue.set(lLowerArmLCSUnmirrored);
 		return returnValue;
@@ -550,6 +1103,7 @@ public class Skeleton {
 	/** The vectors for the lower and upper arms are calculated for convenience.  This method returns the unmirrored arm vectors.
 	 *  @return The vector for the right lower arm in the local coordinate system.  */
 	public PVector getRightLowerArmLCSUnmirrored() {
+		ensureArmVectorsLCS();
 		PVector returnValue = new PVector();
 		returnValue.set(rLowerArmLCSUnmirrored);
 		return returnValue;
@@ -565,8 +1119,8 @@ public class Skeleton {
 	 *  @param joint22 the joint the limb-vector2 origins in
 	 *  @return the angle, float between 0 and PI */
 	public float angleBetween (short joint11, short joint12, short joint21, short joint22) {
-		PVector axis1 = PVector.sub(joint[joint11],joint[joint12]);
-		PVector axis2 = PVector.sub(joint[joint21],joint[joint22]);
+		PVector axis1 = limbVector(joint,joint11,joint12);
+		PVector axis2 = limbVector(joint,joint21,joint22);
 		return PVector.angleBetween(axis1,axis2);
 	}
 	/** returns the angle between the limb-vector and local X axis (shoulder_l-shoulder_r)
@@ -574,7 +1128,8 @@ public class Skeleton {
 	 *  @param joint12 the joint the limb-vector origins in
 	 *  @return the angle, float between 0 and PI.*/
 	public float angleToLocalXAxis (short joint11, short joint12) {
-		PVector axis1 = PVector.sub(jointLCS[joint11],jointLCS[joint12]);
+		ensureJointsLCS();
+		PVector axis1 = limbVector(jointLCS,joint11,joint12);
 		return PVector.angleBetween(axis1,getOrientationX());
 	}
 	/** returns the angle between the limb-vector and local Y axis (neck-torso)
@@ -582,7 +1137,8 @@ public class Skeleton {
 	 *  @param joint12 the joint the limb-vector origins in
 	 *  @return the angle, float between 0 and PI.*/
 	public float angleToLocalYAxis (short joint11, short joint12) {
-		PVector axis1 = PVector.sub(jointLCS[joint11],jointLCS[joint12]);
+		ensureJointsLCS();
+		PVector axis1 = limbVector(jointLCS,joint11,joint12);
 		return PVector.angleBetween(axis1,getOrientationY()); 
 	}
 	/** returns the angle between the limb-vector and local Z axis (orthogonal on local x/y-plane)
@@ -590,7 +1146,8 @@ public class Skeleton {
 	 *  @param joint12 the joint the limb-vector origins in
 	 *  @return the angle, float between 0 and PI. */
 	public float angleToLocalZAxis (short joint11, short joint12) {
-		PVector axis1 = PVector.sub(jointLCS[joint11],jointLCS[joint12]);
+		ensureJointsLCS();
+		PVector axis1 = limbVector(jointLCS,joint11,joint12);
 		return PVector.angleBetween(axis1,getOrientationZ());
 	}
 	/** returns the angle between the limb-vector and the global X axis
@@ -598,7 +1155,7 @@ public class Skeleton {
 	 *  @param joint12 the joint the limb-vector origins in
 	 *  @return the angle, float between 0 and PI */
 	public float angleToGlobalXAxis (short joint11, short joint12) {
-		PVector axis1 = PVector.sub(joint[joint11],joint[joint12]);
+		PVector axis1 = limbVector(joint,joint11,joint12);
 		return PVector.angleBetween(axis1,new PVector(1,0,0));
 	}
 	/** returns the angle between the limb-vector and the global Y axis
@@ -606,7 +1163,7 @@ public class Skeleton {
 	 *  @param joint12 the joint the limb-vector origins in
 	 *  @return the angle, float between 0 and PI */
 	public float angleToGlobalYAxis (short joint11, short joint12) {
-		PVector axis1 = PVector.sub(joint[joint11],joint[joint12]);
+		PVector axis1 = limbVector(joint,joint11,joint12);
 		return PVector.angleBetween(axis1,new PVector(0,1,0));
 	}
 	/** returns the angle between the limb-vector and the global Z axis
@@ -614,7 +1171,7 @@ public class Skeleton {
 	 *  @param joint12 the joint the limb-vector origins in
 	 *  @return the angle, float between 0 and PI */
 	public float angleToGlobalZAxis (short joint11, short joint12) {
-		PVector axis1 = PVector.sub(joint[joint11],joint[joint12]);
+		PVector axis1 = limbVector(joint,joint11,joint12);
 		return PVector.angleBetween(axis1,new PVector(0,0,1));
 	}
 	/** returns the angle between the limb-vector and the normal vector of the sagittal body plane
@@ -622,7 +1179,8 @@ public class Skeleton {
 	 *  @param joint12 the joint the limb-vector origins in
 	 *  @return the angle, float between 0 and PI */
 	public float angleToSagittalPlaneN0 (short joint11, short joint12) {
-		PVector axis1 = PVector.sub(joint[joint11],joint[joint12]);
+		ensureLocalCoordSys();
+		PVector axis1 = limbVector(joint,joint11,joint12);
 		return PVector.angleBetween(axis1,math.getSagittalPlane().n0);
 	}
 	/** returns the angle between the limb-vector and the normal vector of the frontal body plane
@@ -630,7 +1188,8 @@ public class Skeleton {
 	 *  @param joint12 the joint the limb-vector origins in
 	 *  @return the angle, float between 0 and PI */
 	public float angleToFrontalPlaneN0 (short joint11, short joint12) {
-		PVector axis1 = PVector.sub(joint[joint11],joint[joint12]);
+		ensureLocalCoordSys();
+		PVector axis1 = limbVector(joint,joint11,joint12);
 		return PVector.angleBetween(axis1,math.getFrontalPlane().n0);
 	}
 	/** returns the angle between the limb-vector and the normal vector of the transversal body plane
@@ -638,48 +1197,57 @@ public class Skeleton {
 	 *  @param joint12 the joint the limb-vector origins in
 	 *  @return the angle, float between 0 and PI */
 	public float angleToTransversalPlaneN0 (short joint11, short joint12) {
-		PVector axis1 = PVector.sub(joint[joint11],joint[joint12]);
+		ensureLocalCoordSys();
+		PVector axis1 = limbVector(joint,joint11,joint12);
 		return PVector.angleBetween(axis1,math.getTransversalPlane().n0);
 	}
 	/** The angle between the left upper Arm and the body axis. Is calculated in the local coordinate system!
 	 *  @return The angle between the left upper Arm and the body axis.*/
 	public float getAngleLeftUpperArm() {
-		return PVector.angleBetween(lUpperArmLCS,getOrientationY());
+		ensureArmAngles();
+		return armAngle[0];
 	}
 	/** The angle between the left lower Arm and the left upper arm.  Is calculated in the local coordinate system!
 	 *  @return The angle between the left lower Arm and the left upper arm.*/
 	public float getAngleLeftLowerArm() {
-		return PVector.angleBetween(lLowerArmLCS,lUpperArmLCS);
+		ensureArmAngles();
+		return armAngle[1];
 	}
 	/** The angle between the right upper Arm and the body axis.  Is calculated in the local coordinate system!
 	 *  @return The angle between the right upper Arm and the body axis. */
 	public float getAngleRightUpperArm() {
-		return PVector.angleBetween(rUpperArmLCS,getOrientationY());
+		ensureArmAngles();
+		return armAngle[2];
 	}
 	/** The angle between the right lower Arm and the right upper arm.  Is calculated in the local coordinate system!
 	 *  @return The angle between the right lower Arm and the right upper arm. */
 	public float getAngleRightLowerArm() {
-		return PVector.angleBetween(rLowerArmLCS,rUpperArmLCS);
+		ensureArmAngles();
+		return armAngle[3];
 	}
 	/** The angle between the left upper Arm and the body axis. Is calculated in the local coordinate system! This method uses the unmirrored arm vectors.
 	 *  @return The angle between the left upper Arm and the body axis.*/
 	public float getAngleLeftUpperArmUnmirrored() {
-		return PVector.angleBetween(lUpperArmLCSUnmirrored,getOrientationY());
+		ensureArmAngles();
+		return armAngle[4];
 	}
 	/** The angle between the left lower Arm and the left upper arm.  Is calculated in the local coordinate system! This method uses the unmirrored arm vectors.
 	 *  @return The angle between the left lower Arm and the left upper arm.*/
 	public float getAngleLeftLowerArmUnmirrored() {
-		return PVector.angleBetween(lLowerArmLCSUnmirrored,lUpperArmLCSUnmirrored);
+		ensureArmAngles();
+		return armAngle[5];
 	}
 	/** The angle between the right upper Arm and the body axis.  Is calculated in the local coordinate system! This method uses the unmirrored arm vectors.
 	 *  @return The angle between the right upper Arm and the body axis. */
 	public float getAngleRightUpperArmUnmirrored() {
-		return PVector.angleBetween(rUpperArmLCSUnmirrored,getOrientationY());
+		ensureArmAngles();
+		return armAngle[6];
 	}
 	/** The angle between the right lower Arm and the right upper arm.  Is calculated in the local coordinate system! This method uses the unmirrored arm vectors.
 	 *  @return The angle between the right lower Arm and the right upper arm. */
 	public float getAngleRightLowerArmUnmirrored() {
-		return PVector.angleBetween(rLowerArmLCSUnmirrored,rUpperArmLCSUnmirrored);
+		ensureArmAngles();
+		return armAngle[7];
 	}
 	
 	// -----------------------------------------------------------------
@@ -689,10 +1257,11 @@ public class Skeleton {
 	 *  @param joint12 the joint the limb-vector origins in
 	 *  @return the orientation, short constant of skeleton (left_lateral, right_lateral, neutral) */
 	public short getOrientationInFrontalPlane (short joint11, short joint12) {
+		ensureJointsLCS();
 		// +X-axis from torso->right
-		if (jointLCS[joint11].x < jointLCS[joint12].x) {
+		if (jointLCS[joint11*3+0] < jointLCS[joint12*3+0]) {
 			return LEFT_LATERAL;
-		} else if (jointLCS[joint11].x > jointLCS[joint12].x) {
+		} else if (jointLCS[joint11*3+0] > jointLCS[joint12*3+0]) {
 			return RIGHT_LATERAL;
 		} else {
 			return NEUTRAL;
@@ -703,10 +1272,11 @@ public class Skeleton {
 	 *  @param joint12 the joint the limb-vector origins in
 	 *  @return the orientation, short constant of skeleton (posterior, anterior, neutral) */
 	public short getOrientationInSagittalPlane (short joint11, short joint12) {
+		ensureJointsLCS();
 		// +Z-axis from torso->front
-		if (jointLCS[joint11].z < jointLCS[joint12].z) {
+		if (jointLCS[joint11*3+2] < jointLCS[joint12*3+2]) {
 			return POSTERIOR;
-		} else if (jointLCS[joint11].z > jointLCS[joint12].z) {
+		} else if (jointLCS[joint11*3+2] > jointLCS[joint12*3+2]) {
 			return ANTERIOR;
 		} else {
 			return NEUTRAL;
@@ -717,10 +1287,11 @@ public class Skeleton {
 	 *  @param joint12 the joint the limb-vector origins in
 	 *  @return the orientation, short constant of skeleton (inferior, superior, neutral) */
 	public short getOrientationInTransversalPlane (short joint11, short joint12) {
+		ensureJointsLCS();
 		// +Y-axis from torso->head
-		if (jointLCS[joint11].y < jointLCS[joint12].y) {
+		if (jointLCS[joint11*3+1] < jointLCS[joint12*3+1]) {
 			return INFERIOR;
-		} else if (jointLCS[joint11].y > jointLCS[joint12].y) {
+		} else if (jointLCS[joint11*3+1] > jointLCS[joint12*3+1]) {
 			return SUPERIOR;
 		} else {
 			return NEUTRAL;
@@ -732,6 +1303,7 @@ public class Skeleton {
 	 *  @param joint12 the joint the limb-vector origins in
 	 *  @return the angle of the limb's abduction */
 	public float getAbduction (short joint11, short joint12) {
+		ensureJointsLCS();
 		float abductionModifier = 1f;
 		// Abduction is angle of the axis-components in frontal plane to negative body axis
 		if ((joint11 == LEFT_ELBOW && joint12 == LEFT_SHOULDER) || 
@@ -748,7 +1320,7 @@ public class Skeleton {
 			return 0f;
 		}
 		
-		PVector axis1 = PVector.sub(jointLCS[joint11],jointLCS[joint12]);
+		PVector axis1 = limbVector(jointLCS,joint11,joint12);
 		axis1.z = 0f; // use component vector of axis1 in frontal plane
 		float angle = PVector.angleBetween(axis1,new PVector(0f,-1f,0f));
 		return angle*=abductionModifier;
@@ -759,6 +1331,7 @@ public class Skeleton {
 	 *  @param joint12 the joint the limb-vector origins in
 	 *  @return the angle of the limb's adduction */
 	public float getAdduction (short joint11, short joint12) {
+		ensureJointsLCS();
 		float adductionModifier = 1f;
 		// Adduction is angle of the axis-components in frontal plane to negative body axis
 		if ((joint11 == LEFT_ELBOW && joint12 == LEFT_SHOULDER) || 
@@ -775,7 +1348,7 @@ public class Skeleton {
 			return 0f;
 		}
 		
-		PVector axis1 = PVector.sub(jointLCS[joint11],jointLCS[joint12]);
+		PVector axis1 = limbVector(jointLCS,joint11,joint12);
 		axis1.z = 0f; // use only components of axis1 in frontal plane
 		float angle = PVector.angleBetween(axis1,new PVector(0f,-1f,0f));
 		
@@ -787,6 +1360,7 @@ public class Skeleton {
 	 *  @param joint12 the joint the limb-vector origins in
 	 *  @return the angle of the limb's Anteversion */
 	public float getAnteversion (short joint11, short joint12) {
+		ensureJointsLCS();
 		float anteversionModifier = 1f;
 		// Anteversion is angle of the axis-components in sagittal plane to negative body axis
 		if ((joint11 == LEFT_ELBOW && joint12 == LEFT_SHOULDER) || 
@@ -800,7 +1374,7 @@ public class Skeleton {
 			return 0f;
 		}
 		
-		PVector axis1 = PVector.sub(jointLCS[joint11],jointLCS[joint12]);
+		PVector axis1 = limbVector(jointLCS,joint11,joint12);
 		axis1.x = 0f; // use component vector of axis1 in sagittal plane
 		float angle = PVector.angleBetween(axis1,new PVector(0f,-1f,0f));
 		
@@ -812,6 +1386,7 @@ public class Skeleton {
 	 *  @param joint12 the joint the limb-vector origins in
 	 *  @return the angle of the limb's Retroversion */
 	public float getRetroversion (short joint11, short joint12) {
+		ensureJointsLCS();
 		float retroversionModifier = 1f;
 		// Retroversion is angle of the axis-components in sagittal plane to negative body axis
 		if ((joint11 == LEFT_ELBOW && joint12 == LEFT_SHOULDER) || 
@@ -825,7 +1400,7 @@ public class Skeleton {
 			return 0f;
 		}
 		
-		PVector axis1 = PVector.sub(jointLCS[joint11],jointLCS[joint12]);
+		PVector axis1 = limbVector(jointLCS,joint11,joint12);
 		axis1.x = 0f; // use component vector of axis1 in sagittal plane
 		float angle = PVector.angleBetween(axis1,new PVector(0f,-1f,0f));
 		
@@ -836,6 +1411,7 @@ public class Skeleton {
 	/** All planes are defined in HNF: r*n0-d = 0. Sagittal Plane is mirror plane!
 	 *  @return the r vector of the sagittal body plane. */
 	public PVector getRVectorSagittalPlane () {
+		ensureLocalCoordSys();
 		PVector returnValue = new PVector();
 		returnValue.set(math.getSagittalPlane().r);
 		return returnValue;
@@ -843,6 +1419,7 @@ public class Skeleton {
 	/** All planes are defined in HNF: r*n0-d = 0. Sagittal Plane is mirror plane!
 	 *  @return the n0 vector of the sagittal body plane. */
 	public PVector getN0VectorSagittalPlane () {
+		ensureLocalCoordSys();
 		PVector returnValue = new PVector();
 		returnValue.set(math.getSagittalPlane().n0);
 		return returnValue;
@@ -850,11 +1427,13 @@ public class Skeleton {
 	/** All planes are defined in HNF: r*n0-d = 0. Sagittal Plane is mirror plane!
 	 *  @return the d value of the sagittal body plane. */
 	public float getDValueSagittalPlane () {
+		ensureLocalCoordSys();
 		return math.getSagittalPlane().d;
 	}
 	/** All planes are defined in HNF: r*n0-d = 0.
 	 *  @return the r vector of the frontal body plane. */
 	public PVector getRVectorFrontalPlane () {
+		ensureLocalCoordSys();
 		PVector returnValue = new PVector();
 		returnValue.set(math.getFrontalPlane().r);
 		return returnValue;
@@ -862,6 +1441,7 @@ public class Skeleton {
 	/** All planes are defined in HNF: r*n0-d = 0.
 	 *  @return the n0 vector of the frontal body plane. */
 	public PVector getN0VectorFrontalPlane () {
+		ensureLocalCoordSys();
 		PVector returnValue = new PVector();
 		returnValue.set(math.getFrontalPlane().n0);
 		return returnValue;
@@ -869,11 +1449,13 @@ public class Skeleton {
 	/** All planes are defined in HNF: r*n0-d = 0.
 	 *  @return the d value of the frontal body plane. */
 	public float getDValueFrontalPlane () {
+		ensureLocalCoordSys();
 		return math.getFrontalPlane().d;
 	}
 	/** All planes are defined in HNF: r*n0-d = 0.
 	 *  @return the r vector of the transversal body plane. */
 	public PVector getRVectorTransversalPlane () {
+		ensureLocalCoordSys();
 		PVector returnValue = new PVector();
 		returnValue.set(math.getTransversalPlane().r);
 		return returnValue;
@@ -881,6 +1463,7 @@ public class Skeleton {
 	/** All planes are defined in HNF: r*n0-d = 0.
 	 *  @return the n0 vector of the transversal body plane. */
 	public PVector getN0VectorTransversalPlane () {
+		ensureLocalCoordSys();
 		PVector returnValue = new PVector();
 		returnValue.set(math.getTransversalPlane().n0);
 		return returnValue;
@@ -888,11 +1471,13 @@ public class Skeleton {
 	/** All planes are defined in HNF: r*n0-d = 0.
 	 *  @return the d value of the transversal body plane. */
 	public float getDValueTransversalPlane () {
+		ensureLocalCoordSys();
 		return math.getTransversalPlane().d;
 	}
 	/** returns the origin of the local coordsys. Equals Torso Vector.
 	 *  @return the origin of the skeletons local coordinate system. */
 	public PVector getOrigin () {
+		ensureLocalCoordSys();
 		PVector returnValue = new PVector();
 		returnValue.set(math.getOrigin());
 		return returnValue;
@@ -900,6 +1485,7 @@ public class Skeleton {
 	/** returns the local x coordinate vector.
 	 *  @return the local x vector.*/
 	public PVector getOrientationX () {
+		ensureLocalCoordSys();
 		PVector returnValue = new PVector();
 		returnValue.set(math.getOrientationX());
 		return returnValue;
@@ -908,7 +1494,7 @@ public class Skeleton {
 	 *  @return the local vector projected to the kinects projection plane. */
 	public PVector getOrientationXRealWorldProjective () {
 		PVector projective = new PVector();
-		kinect.convertRealWorldToProjective(this.getOrientationX(),projective);
+		jointSource.convertRealWorldToProjective(this.getOrientationX(),projective);
 		return projective;
 	}
 	/** returns the angle between the local x vector and the global x vector.
@@ -919,6 +1505,7 @@ public class Skeleton {
 	/** returns the local y coordinate vector.
 	 *  @return the local y vector. */
 	public PVector getOrientationY () {
+		ensureLocalCoordSys();
 		PVector returnValue = new PVector();
 		returnValue.set(math.getOrientationY());
 		return returnValue;
@@ -927,7 +1514,7 @@ public class Skeleton {
 	 *  @return the local vector projected to the kinects projection plane. */
 	public PVector getOrientationYRealWorldProjective () {
 		PVector projective = new PVector();
-		kinect.convertRealWorldToProjective(getOrientationY(),projective);
+		jointSource.convertRealWorldToProjective(getOrientationY(),projective);
 		return projective;
 	}
 	/** returns the angle between the local y vector and the global y vector. 
@@ -938,6 +1525,7 @@ public class Skeleton {
 	/** returns the local z coordinate vector.
 	 *  @return the local z vector.*/
 	public PVector getOrientationZ () {
+		ensureLocalCoordSys();
 		PVector returnValue = new PVector();
 		returnValue.set(math.getOrientationZ());
 		return returnValue;
@@ -946,7 +1534,7 @@ public class Skeleton {
 	 *  @return the local vector projected to the kinects projection plane.*/
 	public PVector getOrientationZRealWorldProjective () {
 		PVector projective = new PVector();
-		kinect.convertRealWorldToProjective(getOrientationZ(),projective); 
+		jointSource.convertRealWorldToProjective(getOrientationZ(),projective); 
 		return projective;
 	}
 	/** returns the angle between the local z vector and the global z vector. 
@@ -966,262 +1554,315 @@ public class Skeleton {
 		else
 			return SkeletonPosture.NO_POSE;
 	}
+	/** Copies the match scores of all postures to a caller-owned buffer without allocating, if calculation is activated and posture was evaluated in last update cycle. 
+	 *  Use the scores to show how close the patient is to a posture. See SkeletonPosture.copyPostureScores
+	 *  @param _scores the buffer to fill. SkeletonPosture.NUMBER_OF_POSES floats 0..1f are written in the order of the posture constants. If posture is not calculated, all scores are 0 */
+	public void copyPostureScores (float[] _scores) {
+		if (posture != null && postureEvaluated) {
+			posture.copyPostureScores(_scores);
+		} else {
+			for (int p=0; p<SkeletonPosture.NUMBER_OF_POSES; p++) _scores[p] = 0f;
+		}
+	}
+	/** Returns the match score of one posture, if calculation is activated and posture was evaluated in last update cycle. See SkeletonPosture.copyPostureScores
+	 *  @param _posture short corresponding to SkeletonPosture constants
+	 *  @return the score 0..1f, 0f if posture is not calculated */
+	public float getPostureScore (short _posture) {
+		if (posture != null && postureEvaluated)
+			return posture.getPostureScore(_posture);
+		else
+			return 0f;
+	}
+	/** Returns the posture with the highest match score, if calculation is activated and posture was evaluated in last update cycle.
+	 *  @return short corresponding to SkeletonPosture constants, NO_POSE if all postures score 0 or posture is not calculated */
+	public short getBestScoringPosture () {
+		if (posture != null && postureEvaluated)
+			return posture.getBestScoringPosture();
+		else
+			return SkeletonPosture.NO_POSE;
+	}
+	/** Returns the custom posture of the skeleton, if calculation is activated and posture was evaluated in last update cycle. See setPostureLibrary
+	 *  @return the id of the posture in the posture library, PostureLibrary.NO_POSTURE if no custom posture is recognized or calculated */
+	public int getCurrentLibraryPosture () {
+		if (posture != null && postureEvaluated)
+			return posture.getCurrentLibraryPosture();
+		else
+			return PostureLibrary.NO_POSTURE;
+	}
+	/** Returns the name of the custom posture of the skeleton, if calculation is activated and posture was evaluated in last update cycle. See setPostureLibrary
+	 *  @return the name of the posture in the posture library, null if no custom posture is recognized or calculated */
+	public String getCurrentLibraryPostureName () {
+		if (posture != null && postureEvaluated)
+			return posture.getCurrentLibraryPostureName();
+		else
+			return null;
+	}
+	/** Returns the last gesture recognized within _maxAgeMillis before the capture time of the current frame, if calculation is activated and gesture was evaluated in last update cycle.
+	 *  See getTimestamp and SkeletonGestures class for details
+	 *  @param _maxAgeMillis the maximum time in milliseconds before the current frame the gesture should have been recognized. 0 for the current frame only
+	 *  @return current upper body gesture. short, constants of SkeletonGestures class, NO_GESTURE if no gesture was recognized within the given time or gesture evaluation is switched off */
+	public short getLastUpperBodyGestureWithin (long _maxAgeMillis) {
+		if (gesture != null && gestureEvaluated)
+			return gesture.getLastUpperBodyGestureWithin(_maxAgeMillis);
+		else
+			return SkeletonGesture.NO_GESTURE;
+	}
 	/** Returns the last gesture evaluated within _lookAtPastFrames, if calculation is activated and gesture was evaluated in last update cycle. See SkeletonGestures class for details
 	 *  @param _lookAtPastFrames the number of past update cycles during which the gesture should have been recognized.
-	 *  @return current upper body gesture. short, constants of SkeletonGestures class, NO_GESTURE if no gesture was recognized in the given past update cycles or gesture evaluation is switched off */
+	 *  @return current upper body gesture. short, constants of SkeletonGestures class, NO_GESTURE if no gesture was recognized in the given past update cycles or gesture evaluation is switched off
+	 *  @deprecated update cycles depend on the frame rate of the sketch, use getLastUpperBodyGestureWithin with capture times */
+	@Deprecated
 	public short getLastUpperBodyGesture (int _lookAtPastFrames) {
 		if (gesture != null && gestureEvaluated)
 			return gesture.getLastUpperBodyGesture(currentFrameCount-_lookAtPastFrames);
 		else
 			return SkeletonGesture.NO_GESTURE;
 	}
+	// the gesture recognized in the current update cycle, independent of the capture times. read by SkeletonFrame
+	short recognizedUpperBodyGesture () {
+		if (gesture != null && gestureEvaluated)
+			return gesture.recognizedUpperBodyGesture();
+		else
+			return SkeletonGesture.NO_GESTURE;
+	}
+	/** Returns whether a gesture was recognized in the current update cycle, if calculation is activated. Several gestures may be recognized at once. See SkeletonGesture class for details
+	 *  @param _gesture short corresponding to SkeletonGesture constants
+	 *  @return true if the gesture was recognized */
+	public boolean isGestureRecognized (short _gesture) {
+		return gesture != null && gestureEvaluated && gesture.isGestureRecognized(_gesture);
+	}
 
 	
 	// -----------------------------------------------------------------
 	// PRIVATE HELPER METHODS
+	private PVector limbVector (float[] _joints, short _jointTo, short _jointFrom) {
+		PVector limb = new PVector();
+		setLimbVector(_joints,_jointTo,_jointFrom,limb);
+		return limb;
+	}
+	private void copyMatrix (PMatrix3D _m, float[] _dst, int _offset) {
+		_dst[_offset] = _m.m00; _dst[_offset+1] = _m.m01; _dst[_offset+2] = _m.m02; _dst[_offset+3] = _m.m03;
+		_dst[_offset+4] = _m.m10; _dst[_offset+5] = _m.m11; _dst[_offset+6] = _m.m12; _dst[_offset+7] = _m.m13;
+		_dst[_offset+8] = _m.m20; _dst[_offset+9] = _m.m21; _dst[_offset+10] = _m.m22; _dst[_offset+11] = _m.m23;
+		_dst[_offset+12] = _m.m30; _dst[_offset+13] = _m.m31; _dst[_offset+14] = _m.m32; _dst[_offset+15] = _m.m33;
+	}
+	private void setLimbVector (float[] _joints, short _jointTo, short _jointFrom, PVector _limb) {
+		_limb.set(_joints[_jointTo*3]-_joints[_jointFrom*3],
+				  _joints[_jointTo*3+1]-_joints[_jointFrom*3+1],
+				  _joints[_jointTo*3+2]-_joints[_jointFrom*3+2]);
+	}
 	private void updateJointPositions () {
-		PVector tempJoint = new PVector();
-		
-		jointConfidence[HEAD] = kinect.getJointPositionSkeleton(userId,SimpleOpenNI.SKEL_HEAD,tempJoint);
-		jointDelta[HEAD] = (PVector.sub(joint[HEAD],tempJoint)).mag();
-		joint[HEAD].set(tempJoint);
-		jointConfidence[NECK] = kinect.getJointPositionSkeleton(userId,SimpleOpenNI.SKEL_NECK,tempJoint);
-		jointDelta[NECK] = (PVector.sub(joint[NECK],tempJoint)).mag();
-		joint[NECK].set(tempJoint);
-		
-		// OpenNI sets labels for left/right from the camera viewpoint. Here the anatomically correct labels are set.
-		boolean setAnatomicallyCorrectLabels = true;
-		if (setAnatomicallyCorrectLabels) {
-			jointConfidence[LEFT_SHOULDER] = kinect.getJointPositionSkeleton(userId,SimpleOpenNI.SKEL_RIGHT_SHOULDER,tempJoint);
-			jointDelta[LEFT_SHOULDER] = (PVector.sub(joint[LEFT_SHOULDER],tempJoint)).mag();
-			joint[LEFT_SHOULDER].set(tempJoint);
-			jointConfidence[RIGHT_SHOULDER] = kinect.getJointPositionSkeleton(userId,SimpleOpenNI.SKEL_LEFT_SHOULDER,tempJoint);
-			jointDelta[RIGHT_SHOULDER] = (PVector.sub(joint[RIGHT_SHOULDER],tempJoint)).mag();
-			joint[RIGHT_SHOULDER].set(tempJoint);
-			jointConfidence[LEFT_ELBOW] = kinect.getJointPositionSkeleton(userId,SimpleOpenNI.SKEL_RIGHT_ELBOW,tempJoint);
-			jointDelta[LEFT_ELBOW] = (PVector.sub(joint[LEFT_ELBOW],tempJoint)).mag();
-			joint[LEFT_ELBOW].set(tempJoint);
-			jointConfidence[LEFT_HAND] = kinect.getJointPositionSkeleton(userId,SimpleOpenNI.SKEL_RIGHT_HAND,tempJoint);
-			jointDelta[LEFT_HAND] = (PVector.sub(joint[LEFT_HAND],tempJoint)).mag();
-			joint[LEFT_HAND].set(tempJoint);
-			jointConfidence[RIGHT_ELBOW] = kinect.getJointPositionSkeleton(userId,SimpleOpenNI.SKEL_LEFT_ELBOW,tempJoint);
-			jointDelta[RIGHT_ELBOW] = (PVector.sub(joint[RIGHT_ELBOW],tempJoint)).mag();
-			joint[RIGHT_ELBOW].set(tempJoint);
-			jointConfidence[RIGHT_HAND] = kinect.getJointPositionSkeleton(userId,SimpleOpenNI.SKEL_LEFT_HAND,tempJoint);
-			jointDelta[RIGHT_HAND] = (PVector.sub(joint[RIGHT_HAND],tempJoint)).mag();
-			joint[RIGHT_HAND].set(tempJoint);
-		} else {
-			jointConfidence[LEFT_SHOULDER] = kinect.getJointPositionSkeleton(userId,SimpleOpenNI.SKEL_LEFT_SHOULDER,tempJoint);
-			jointDelta[LEFT_SHOULDER] = (PVector.sub(joint[LEFT_SHOULDER],tempJoint)).mag();
-			joint[LEFT_SHOULDER].set(tempJoint);
-			jointConfidence[RIGHT_SHOULDER] = kinect.getJointPositionSkeleton(userId,SimpleOpenNI.SKEL_RIGHT_SHOULDER,tempJoint);
-			jointDelta[RIGHT_SHOULDER] = (PVector.sub(joint[RIGHT_SHOULDER],tempJoint)).mag();
-			joint[RIGHT_SHOULDER].set(tempJoint);
-			jointConfidence[LEFT_ELBOW] = kinect.getJointPositionSkeleton(userId,SimpleOpenNI.SKEL_LEFT_ELBOW,tempJoint);
-			jointDelta[LEFT_ELBOW] = (PVector.sub(joint[LEFT_ELBOW],tempJoint)).mag();
-			joint[LEFT_ELBOW].set(tempJoint);
-			jointConfidence[LEFT_HAND] = kinect.getJointPositionSkeleton(userId,SimpleOpenNI.SKEL_LEFT_HAND,tempJoint);
-			jointDelta[LEFT_HAND] = (PVector.sub(joint[LEFT_HAND],tempJoint)).mag();
-			joint[LEFT_HAND].set(tempJoint);
-			jointConfidence[RIGHT_ELBOW] = kinect.getJointPositionSkeleton(userId,SimpleOpenNI.SKEL_RIGHT_ELBOW,tempJoint);
-			jointDelta[RIGHT_ELBOW] = (PVector.sub(joint[RIGHT_ELBOW],tempJoint)).mag();
-			joint[RIGHT_ELBOW].set(tempJoint);
-			jointConfidence[RIGHT_HAND] = kinect.getJointPositionSkeleton(userId,SimpleOpenNI.SKEL_RIGHT_HAND,tempJoint);
-			jointDelta[RIGHT_HAND] = (PVector.sub(joint[RIGHT_HAND],tempJoint)).mag();
-			joint[RIGHT_HAND].set(tempJoint);
-			
-		}
-		
-		jointConfidence[TORSO] = kinect.getJointPositionSkeleton(userId,SimpleOpenNI.SKEL_TORSO,tempJoint);
-		jointDelta[TORSO] = (PVector.sub(joint[TORSO],tempJoint)).mag();
-		joint[TORSO].set(tempJoint);
-		
-		
-		if (fullBodyTracking) {
-			if (setAnatomicallyCorrectLabels) {
-				jointConfidence[LEFT_HIP] = kinect.getJointPositionSkeleton(userId,SimpleOpenNI.SKEL_RIGHT_HIP,tempJoint);
-				jointDelta[LEFT_HIP] = (PVector.sub(joint[LEFT_HIP],tempJoint)).mag();
-				joint[LEFT_HIP].set(tempJoint);
-				jointConfidence[LEFT_KNEE] = kinect.getJointPositionSkeleton(userId,SimpleOpenNI.SKEL_RIGHT_KNEE,tempJoint);
-				jointDelta[LEFT_KNEE] = (PVector.sub(joint[LEFT_KNEE],tempJoint)).mag();
-				joint[LEFT_KNEE].set(tempJoint);
-				jointConfidence[LEFT_FOOT] = kinect.getJointPositionSkeleton(userId,SimpleOpenNI.SKEL_RIGHT_FOOT,tempJoint);
-				jointDelta[LEFT_FOOT] = (PVector.sub(joint[LEFT_FOOT],tempJoint)).mag();
-				joint[LEFT_FOOT].set(tempJoint);
-				jointConfidence[RIGHT_HIP] = kinect.getJointPositionSkeleton(userId,SimpleOpenNI.SKEL_LEFT_HIP,tempJoint);
-				jointDelta[RIGHT_HIP] = (PVector.sub(joint[RIGHT_HIP],tempJoint)).mag();
-				joint[RIGHT_HIP].set(tempJoint);
-				jointConfidence[RIGHT_KNEE] = kinect.getJointPositionSkeleton(userId,SimpleOpenNI.SKEL_LEFT_KNEE,tempJoint);
-				jointDelta[RIGHT_KNEE] = (PVector.sub(joint[RIGHT_KNEE],tempJoint)).mag();
-				joint[RIGHT_KNEE].set(tempJoint);
-				jointConfidence[RIGHT_FOOT] = kinect.getJointPositionSkeleton(userId,SimpleOpenNI.SKEL_LEFT_FOOT,tempJoint);
-				jointDelta[RIGHT_FOOT] = (PVector.sub(joint[RIGHT_FOOT],tempJoint)).mag();
-				joint[RIGHT_FOOT].set(tempJoint);
+		// deltas refer to the unmirrored joints of the last frame, since joint may contain mirrored positions
+		// joints that were not evaluated in the last frame have no valid last position
+		for (int j=0; j<NUMBER_OF_JOINTS; j++) {
+			if ((evaluatedJointMask & (1<<j)) == 0) continue;
+			int i = j*3;
+			if ((lastEvaluatedJointMask & (1<<j)) != 0) {
+				float dx = jointFetched[i]-jointUnmirrored[i];
+				float dy = jointFetched[i+1]-jointUnmirrored[i+1];
+				float dz = jointFetched[i+2]-jointUnmirrored[i+2];
+				jointDeltaUnmirrored[j] = PApplet.sqrt(dx*dx+dy*dy+dz*dz);
 			} else {
-				jointConfidence[LEFT_HIP] = kinect.getJointPositionSkeleton(userId,SimpleOpenNI.SKEL_LEFT_HIP,tempJoint);
-				jointDelta[LEFT_HIP] = (PVector.sub(joint[LEFT_HIP],tempJoint)).mag();
-				joint[LEFT_HIP].set(tempJoint);
-				jointConfidence[LEFT_KNEE] = kinect.getJointPositionSkeleton(userId,SimpleOpenNI.SKEL_LEFT_KNEE,tempJoint);
-				jointDelta[LEFT_KNEE] = (PVector.sub(joint[LEFT_KNEE],tempJoint)).mag();
-				joint[LEFT_KNEE].set(tempJoint);
-				jointConfidence[LEFT_FOOT] = kinect.getJointPositionSkeleton(userId,SimpleOpenNI.SKEL_LEFT_FOOT,tempJoint);
-				jointDelta[LEFT_FOOT] = (PVector.sub(joint[LEFT_FOOT],tempJoint)).mag();
-				joint[LEFT_FOOT].set(tempJoint);
-				jointConfidence[RIGHT_HIP] = kinect.getJointPositionSkeleton(userId,SimpleOpenNI.SKEL_RIGHT_HIP,tempJoint);
-				jointDelta[RIGHT_HIP] = (PVector.sub(joint[RIGHT_HIP],tempJoint)).mag();
-				joint[RIGHT_HIP].set(tempJoint);
-				jointConfidence[RIGHT_KNEE] = kinect.getJointPositionSkeleton(userId,SimpleOpenNI.SKEL_RIGHT_KNEE,tempJoint);
-				jointDelta[RIGHT_KNEE] = (PVector.sub(joint[RIGHT_KNEE],tempJoint)).mag();
-				joint[RIGHT_KNEE].set(tempJoint);
-				jointConfidence[RIGHT_FOOT] = kinect.getJointPositionSkeleton(userId,SimpleOpenNI.SKEL_RIGHT_FOOT,tempJoint);
-				jointDelta[RIGHT_FOOT] = (PVector.sub(joint[RIGHT_FOOT],tempJoint)).mag();
-				joint[RIGHT_FOOT].set(tempJoint);
+				jointDeltaUnmirrored[j] = 0f;
 			}
+			jointUnmirrored[i] = jointFetched[i];
+			jointUnmirrored[i+1] = jointFetched[i+1];
+			jointUnmirrored[i+2] = jointFetched[i+2];
 		}
-		lUpperArm = PVector.sub(joint[LEFT_ELBOW],joint[LEFT_SHOULDER]);
-		rUpperArm = PVector.sub(joint[RIGHT_ELBOW],joint[RIGHT_SHOULDER]);
-		lLowerArm = PVector.sub(joint[LEFT_HAND],joint[LEFT_ELBOW]);
-		rLowerArm = PVector.sub(joint[RIGHT_HAND],joint[RIGHT_ELBOW]);
 		
-		// store original joint information before mirroring takes place on data storage.
-		for (int i=0; i<15; i++) {
-			jointUnmirrored[i] = joint[i];
-			jointDeltaUnmirrored[i] = jointDelta[i];
-			jointConfidenceUnmirrored[i] = jointConfidence[i];
+		// mirroring takes place on copies of the original joint information.
+		// values are copied, mirroring must not write through to the unmirrored joints
+		System.arraycopy(jointUnmirrored,0,joint,0,NUMBER_OF_JOINTS*3);
+		System.arraycopy(jointDeltaUnmirrored,0,jointDelta,0,NUMBER_OF_JOINTS);
+		System.arraycopy(jointConfidenceUnmirrored,0,jointConfidence,0,NUMBER_OF_JOINTS);
+	}
+	
+	private void publishFrame () {
+		SkeletonFrame frame = null;
+		for (int i=0; i<framePool.length && frame == null; i++) {
+			if (framePool[i].claim()) frame = framePool[i];
 		}
-		lUpperArmUnmirrored = lUpperArm;
-		rUpperArmUnmirrored = rUpperArm;
-		lLowerArmUnmirrored = lLowerArm;
-		rLowerArmUnmirrored = rLowerArm;
-		
+		if (frame == null) {
+			// all frames are held by readers
+			SkeletonFrame[] pool = new SkeletonFrame[framePool.length+1];
+			System.arraycopy(framePool,0,pool,0,framePool.length);
+			frame = new SkeletonFrame();
+			frame.claim();
+			pool[framePool.length] = frame;
+			framePool = pool;
+		}
+		frame.set(this,currentFrameCount,currentFrameRate);
+		frame.publish();
+		// the new frame is visible before the old one is released, so readers failing to retain the old frame find the new one
+		SkeletonFrame oldFrame = publishedFrame;
+		publishedFrame = frame;
+		if (oldFrame != null) oldFrame.release();
+	}
+	// the time between frames is measured with the capture times. the frame rate is the fallback, e.g. for the first frame or when a replay is rewound
+	private void updateTimestamp (long _timestamp) {
+		if (hasTimestamp && _timestamp > currentTimestamp) {
+			frameDuration = (float)((_timestamp-currentTimestamp)*1e-9);
+		} else {
+			frameDuration = currentFrameRate > 0f ? 1f/currentFrameRate : 0f;
+		}
+		currentTimestamp = _timestamp;
+		hasTimestamp = true;
 	}
-	private void updateJointOrientations () {
-		jointOrientationConfidence[HEAD] = kinect.getJointOrientationSkeleton(userId,SimpleOpenNI.SKEL_HEAD,jointOrientation[HEAD]);
-		jointOrientationConfidence[NECK] = kinect.getJointOrientationSkeleton(userId,SimpleOpenNI.SKEL_NECK,jointOrientation[NECK]);
-		jointOrientationConfidence[LEFT_SHOULDER] = kinect.getJointOrientationSkeleton(userId,SimpleOpenNI.SKEL_LEFT_SHOULDER,jointOrientation[LEFT_SHOULDER]);
-		jointOrientationConfidence[RIGHT_SHOULDER] = kinect.getJointOrientationSkeleton(userId,SimpleOpenNI.SKEL_RIGHT_SHOULDER,jointOrientation[RIGHT_SHOULDER]);
-		jointOrientationConfidence[TORSO] = kinect.getJointOrientationSkeleton(userId,SimpleOpenNI.SKEL_TORSO,jointOrientation[TORSO]);
-		jointOrientationConfidence[LEFT_ELBOW] = kinect.getJointOrientationSkeleton(userId,SimpleOpenNI.SKEL_LEFT_ELBOW,jointOrientation[LEFT_ELBOW]);
-		jointOrientationConfidence[LEFT_HAND] = kinect.getJointOrientationSkeleton(userId,SimpleOpenNI.SKEL_LEFT_HAND,jointOrientation[LEFT_HAND]);
-		jointOrientationConfidence[RIGHT_ELBOW] = kinect.getJointOrientationSkeleton(userId,SimpleOpenNI.SKEL_RIGHT_ELBOW,jointOrientation[RIGHT_ELBOW]);
-		jointOrientationConfidence[RIGHT_HAND] = kinect.getJointOrientationSkeleton(userId,SimpleOpenNI.SKEL_RIGHT_HAND,jointOrientation[RIGHT_HAND]);
-		if (fullBodyTracking) {
-			jointOrientationConfidence[LEFT_HIP] = kinect.getJointOrientationSkeleton(userId,SimpleOpenNI.SKEL_LEFT_HIP,jointOrientation[LEFT_HIP]);
-			jointOrientationConfidence[LEFT_KNEE] = kinect.getJointOrientationSkeleton(userId,SimpleOpenNI.SKEL_LEFT_KNEE,jointOrientation[LEFT_KNEE]);
-			jointOrientationConfidence[LEFT_FOOT] = kinect.getJointOrientationSkeleton(userId,SimpleOpenNI.SKEL_LEFT_FOOT,jointOrientation[LEFT_FOOT]);
-			jointOrientationConfidence[RIGHT_HIP] = kinect.getJointOrientationSkeleton(userId,SimpleOpenNI.SKEL_RIGHT_HIP,jointOrientation[RIGHT_HIP]);
-			jointOrientationConfidence[RIGHT_KNEE] = kinect.getJointOrientationSkeleton(userId,SimpleOpenNI.SKEL_RIGHT_KNEE,jointOrientation[RIGHT_KNEE]);
-			jointOrientationConfidence[RIGHT_FOOT] = kinect.getJointOrientationSkeleton(userId,SimpleOpenNI.SKEL_RIGHT_FOOT,jointOrientation[RIGHT_FOOT]);
+	private int calculateEvaluatedJointMask () {
+		int mask = jointMask | JOINT_MASK_LCS;
+		if (evaluatePostureAndGesture && posture != null && gesture != null) {
+			mask |= posture.getRequiredJointMask() | SkeletonGesture.REQUIRED_JOINTS;
 		}
-		
-		// store original joint information before mirroring takes place on data storage.
-		for (int i=0; i<15; i++) {
-			jointOrientationUnmirrored[i] = jointOrientation[i];
-			jointOrientationConfidenceUnmirrored[i] = jointOrientationConfidence[i];
+		if (evaluateStatistics && statistics != null) {
+			mask |= SkeletonStatistics.REQUIRED_JOINTS;
+		}
+		if (gestureRecognizer != null) {
+			mask |= gestureRecognizer.getRequiredJointMask();
 		}
+		if (repetitionCounter != null) {
+			mask |= repetitionCounter.getRequiredJointMask();
+		}
+		// the mirrored body side is calculated from the other side, the original joints of both sides are kept unmirrored
+		if (mirrorTherapy != MIRROR_THERAPY_OFF) {
+			int mirrored = mirroredJointMask(true);
+			mask |= mirrored | mirrorSourceMask(mirrored);
+		}
+		return mask;
 	}
-	
 	private void updateMirroredJointPositions () {
-		switch (mirrorTherapy) {
-			case MIRROR_THERAPY_LEFT:
-				// mirror left elbow to right elbow
-				joint[RIGHT_ELBOW].set(math.mirrorJointVector(joint[LEFT_ELBOW]));
-				jointDelta[RIGHT_ELBOW] = jointDelta[LEFT_ELBOW];
-				jointConfidence[RIGHT_ELBOW] = jointConfidence[LEFT_ELBOW];
-				// mirror left hand to right hand
-				joint[RIGHT_HAND].set(math.mirrorJointVector(joint[LEFT_HAND]));
-				jointDelta[RIGHT_HAND] = jointDelta[LEFT_HAND];
-				jointConfidence[RIGHT_HAND] = jointConfidence[LEFT_HAND];
-				// update arm vectors
-				rUpperArm = PVector.sub(joint[RIGHT_ELBOW],joint[RIGHT_SHOULDER]);
-				rLowerArm = PVector.sub(joint[RIGHT_HAND],joint[RIGHT_ELBOW]);
-				break;
-			case MIRROR_THERAPY_RIGHT:
-				// mirror right elbow to left elbow
-				joint[LEFT_ELBOW].set(math.mirrorJointVector(joint[RIGHT_ELBOW]));
-				jointDelta[LEFT_ELBOW] = jointDelta[RIGHT_ELBOW];
-				jointConfidence[LEFT_ELBOW] = jointConfidence[RIGHT_ELBOW];
-				// mirror right hand to left hand
-				joint[LEFT_HAND].set(math.mirrorJointVector(joint[RIGHT_HAND]));
-				jointDelta[LEFT_HAND] = jointDelta[RIGHT_HAND];
-				jointConfidence[LEFT_HAND] = jointConfidence[RIGHT_HAND];
-				// update arm vectors
-				lUpperArm = PVector.sub(joint[LEFT_ELBOW],joint[LEFT_SHOULDER]);
-				lLowerArm = PVector.sub(joint[LEFT_HAND],joint[LEFT_ELBOW]);
-				break;
+		short[] from = mirrorTherapy == MIRROR_THERAPY_LEFT ? LEFT_SIDE : RIGHT_SIDE;
+		short[] to = mirrorTherapy == MIRROR_THERAPY_LEFT ? RIGHT_SIDE : LEFT_SIDE;
+		int mirrored = mirroredJointMask(false);
+		mirrorJoints(joint);
+		for (int k=0; k<to.length; k++) {
+			if ((mirrored & (1<<to[k])) == 0) continue;
+			jointDelta[to[k]] = jointDelta[from[k]];
+			jointConfidence[to[k]] = jointConfidence[from[k]];
 		}
 	}
+	private void mirrorJoints (float[] _joints) {
+		// the sagittal plane is the mirror plane, the reflection is built with the local coordinate system
+		ensureLocalCoordSys();
+		short[] from = mirrorTherapy == MIRROR_THERAPY_LEFT ? LEFT_SIDE : RIGHT_SIDE;
+		short[] to = mirrorTherapy == MIRROR_THERAPY_LEFT ? RIGHT_SIDE : LEFT_SIDE;
+		math.mirrorJoints(_joints,from,to,mirroredJointMask(false));
+	}
 	private void updateMirroredJointOrientations () {
+		short[] from = mirrorTherapy == MIRROR_THERAPY_LEFT ? LEFT_SIDE : RIGHT_SIDE;
+		short[] to = mirrorTherapy == MIRROR_THERAPY_LEFT ? RIGHT_SIDE : LEFT_SIDE;
+		int mirrored = mirroredJointMask(true);
+		math.mirrorOrientations(jointOrientation,from,to,mirrored);
+		for (int k=0; k<to.length; k++) {
+			if ((mirrored & (1<<to[k])) != 0) jointOrientationConfidence[to[k]] = jointOrientationConfidence[from[k]];
+		}
+	}
+	// joints replaced by their mirrored counterpart in the current mirror therapy mode
+	private int mirroredJointMask (boolean _orientations) {
+		int mask = 0;
+		if ((mirroredLimbs & MIRRORED_ARMS) != 0) mask |= _orientations ? MIRRORED_ORIENTATIONS_ARMS : MIRRORED_POSITIONS_ARMS;
+		if ((mirroredLimbs & MIRRORED_LEGS) != 0) mask |= _orientations ? MIRRORED_ORIENTATIONS_LEGS : MIRRORED_POSITIONS_LEGS;
 		switch (mirrorTherapy) {
-			case MIRROR_THERAPY_LEFT:
-				// mirror orientation of left shoulder to right shoulder
-				jointOrientation[RIGHT_SHOULDER].set(math.mirrorOrientationMatrix(jointOrientation[LEFT_SHOULDER]));
-				jointOrientationConfidence[RIGHT_SHOULDER] = jointOrientationConfidence[LEFT_SHOULDER];
-				// mirror orientation of left elbow to right elbow
-				jointOrientation[RIGHT_ELBOW].set(math.mirrorOrientationMatrix(jointOrientation[LEFT_ELBOW]));
-				jointOrientationConfidence[RIGHT_ELBOW] = jointOrientationConfidence[LEFT_ELBOW];
-				// mirror orientation of left hand to right hand
-				jointOrientation[RIGHT_HAND].set(math.mirrorOrientationMatrix(jointOrientation[LEFT_HAND]));
-				jointOrientationConfidence[RIGHT_HAND] = jointOrientationConfidence[LEFT_HAND];
-				break;
-			case MIRROR_THERAPY_RIGHT:
-				// mirror orientation of right  shoulder to left shoulder
-				jointOrientation[LEFT_SHOULDER].set(math.mirrorOrientationMatrix(jointOrientation[RIGHT_SHOULDER]));
-				jointOrientationConfidence[LEFT_SHOULDER] = jointOrientationConfidence[RIGHT_SHOULDER];
-				// mirror orientation of right  elbow to left elbow
-				jointOrientation[LEFT_ELBOW].set(math.mirrorOrientationMatrix(jointOrientation[RIGHT_ELBOW]));
-				jointOrientationConfidence[LEFT_ELBOW] = jointOrientationConfidence[RIGHT_ELBOW];
-				// mirror orientation of right  hand to left hand
-				jointOrientation[LEFT_HAND].set(math.mirrorOrientationMatrix(jointOrientation[RIGHT_HAND]));
-				jointOrientationConfidence[LEFT_HAND] = jointOrientationConfidence[RIGHT_HAND];
-				break;
-		}	
-	}
-	private void transformToLCS () {
-		jointLCS[HEAD] = math.getJointLCS(joint[HEAD]);
-		jointLCS[NECK] = math.getJointLCS(joint[NECK]);
-		jointLCS[TORSO] = math.getJointLCS(joint[TORSO]);
-		jointLCS[LEFT_SHOULDER] = math.getJointLCS(joint[LEFT_SHOULDER]);
-		jointLCS[RIGHT_SHOULDER] = math.getJointLCS(joint[RIGHT_SHOULDER]);
-		jointLCS[LEFT_ELBOW] = math.getJointLCS(joint[LEFT_ELBOW]);
-		jointLCS[RIGHT_ELBOW] = math.getJointLCS(joint[RIGHT_ELBOW]);
-		jointLCS[LEFT_HAND] = math.getJointLCS(joint[LEFT_HAND]);
-		jointLCS[RIGHT_HAND] = math.getJointLCS(joint[RIGHT_HAND]);
-		if (fullBodyTracking) {
-			jointLCS[LEFT_HIP] = math.getJointLCS(joint[LEFT_HIP]);
-			jointLCS[LEFT_KNEE] = math.getJointLCS(joint[LEFT_KNEE]);
-			jointLCS[LEFT_FOOT] = math.getJointLCS(joint[LEFT_FOOT]);
-			jointLCS[RIGHT_HIP] = math.getJointLCS(joint[RIGHT_HIP]);
-			jointLCS[RIGHT_KNEE] = math.getJointLCS(joint[RIGHT_KNEE]);
-			jointLCS[RIGHT_FOOT] = math.getJointLCS(joint[RIGHT_FOOT]);
+			case MIRROR_THERAPY_LEFT: return mask & RIGHT_SIDE_MASK;
+			case MIRROR_THERAPY_RIGHT: return mask & LEFT_SIDE_MASK;
+			default: return 0;
 		}
-		lUpperArmLCS = PVector.sub(jointLCS[LEFT_ELBOW],jointLCS[LEFT_SHOULDER]);
-		rUpperArmLCS = PVector.sub(jointLCS[RIGHT_ELBOW],jointLCS[RIGHT_SHOULDER]);
-		lLowerArmLCS = PVector.sub(jointLCS[LEFT_HAND],jointLCS[LEFT_ELBOW]);
-		rLowerArmLCS = PVector.sub(jointLCS[RIGHT_HAND],jointLCS[RIGHT_ELBOW]);
-
-		lUpperArmLCSUnmirrored = lUpperArmLCS;
-		rUpperArmLCSUnmirrored = rUpperArmLCS;
-		lLowerArmLCSUnmirrored = lLowerArmLCS;
-		rLowerArmLCSUnmirrored = rLowerArmLCS;
-		
-		// calculate lcs for original joints
-		for (int i=0; i<15; i++) {
-			if (mirrorTherapy == MIRROR_THERAPY_LEFT && (i == RIGHT_ELBOW || i == RIGHT_HAND)) {
-				jointLCSUnmirrored[i] = math.getJointLCS(jointUnmirrored[i]);
-			} else if (mirrorTherapy == MIRROR_THERAPY_RIGHT && (i == LEFT_ELBOW || i == LEFT_HAND)) {
-				jointLCSUnmirrored[i] = math.getJointLCS(jointUnmirrored[i]);
-			} else {
-				jointLCSUnmirrored[i] = jointLCS[i];
-			}
+	}
+	// the counterparts of the joints in _mirroredMask
+	private int mirrorSourceMask (int _mirroredMask) {
+		int mask = 0;
+		for (int k=0; k<LEFT_SIDE.length; k++) {
+			if ((_mirroredMask & (1<<LEFT_SIDE[k])) != 0) mask |= 1<<RIGHT_SIDE[k];
+			if ((_mirroredMask & (1<<RIGHT_SIDE[k])) != 0) mask |= 1<<LEFT_SIDE[k];
+		}
+		return mask;
+	}
+	
+	// LAZY EVALUATION OF DERIVED QUANTITIES
+	// every ensure method calculates its quantity at most once per update cycle
+	private boolean isDirty (short _quantity) {
+		return (dirtyQuantities & (1<<_quantity)) != 0;
+	}
+	private void setCalculated (short _quantity) {
+		dirtyQuantities &= ~(1<<_quantity);
+		computationCount[_quantity]++;
+	}
+	private void countAvoidedComputations () {
+		for (short i=0; i<NUMBER_OF_DERIVED_QUANTITIES; i++) {
+			if (i != DERIVED_JOINTS_PROJECTIVE && isDirty(i)) avoidedComputationCount[i]++;
 		}
-		if (mirrorTherapy == MIRROR_THERAPY_RIGHT) {
-			lUpperArmLCSUnmirrored = PVector.sub(jointLCSUnmirrored[LEFT_ELBOW],jointLCSUnmirrored[LEFT_SHOULDER]);
-			lLowerArmLCSUnmirrored = PVector.sub(jointLCSUnmirrored[LEFT_HAND],jointLCSUnmirrored[LEFT_ELBOW]);
-		} else if (mirrorTherapy == MIRROR_THERAPY_LEFT) {
-			rUpperArmLCSUnmirrored = PVector.sub(jointLCSUnmirrored[RIGHT_ELBOW],jointLCSUnmirrored[RIGHT_SHOULDER]);
-			rLowerArmLCSUnmirrored = PVector.sub(jointLCSUnmirrored[RIGHT_HAND],jointLCSUnmirrored[RIGHT_ELBOW]);
+		avoidedComputationCount[DERIVED_JOINTS_PROJECTIVE] += Integer.bitCount(evaluatedJointMask & ~projectiveJoints);
+	}
+	private void ensureLocalCoordSys () {
+		if (!isDirty(DERIVED_LOCAL_COORD_SYS)) return;
+		// the order is important since body planes use information of local coordinate system
+		math.calculateLocalCoordSys(jointUnmirrored);
+		math.calculateBodyPlanes();
+		setCalculated(DERIVED_LOCAL_COORD_SYS);
+	}
+	private void ensureJointsLCS () {
+		if (!isDirty(DERIVED_JOINTS_LCS)) return;
+		ensureLocalCoordSys();
+		// transform updated skeleton to local coordinate system
+		math.getJointsLCS(joint,jointLCS,evaluatedJointMask);
+		// calculate lcs for original joints. only the mirrored joints differ from the original joints
+		System.arraycopy(jointLCS,0,jointLCSUnmirrored,0,NUMBER_OF_JOINTS*3);
+		math.getJointsLCS(jointUnmirrored,jointLCSUnmirrored,mirroredJointMask(false));
+		setCalculated(DERIVED_JOINTS_LCS);
+	}
+	private void ensureArmVectors () {
+		if (!isDirty(DERIVED_ARM_VECTORS)) return;
+		setLimbVector(joint,LEFT_ELBOW,LEFT_SHOULDER,lUpperArm);
+		setLimbVector(joint,RIGHT_ELBOW,RIGHT_SHOULDER,rUpperArm);
+		setLimbVector(joint,LEFT_HAND,LEFT_ELBOW,lLowerArm);
+		setLimbVector(joint,RIGHT_HAND,RIGHT_ELBOW,rLowerArm);
+		setLimbVector(jointUnmirrored,LEFT_ELBOW,LEFT_SHOULDER,lUpperArmUnmirrored);
+		setLimbVector(jointUnmirrored,RIGHT_ELBOW,RIGHT_SHOULDER,rUpperArmUnmirrored);
+		setLimbVector(jointUnmirrored,LEFT_HAND,LEFT_ELBOW,lLowerArmUnmirrored);
+		setLimbVector(jointUnmirrored,RIGHT_HAND,RIGHT_ELBOW,rLowerArmUnmirrored);
+		setCalculated(DERIVED_ARM_VECTORS);
+	}
+	private void ensureArmVectorsLCS () {
+		if (!isDirty(DERIVED_ARM_VECTORS_LCS)) return;
+		ensureJointsLCS();
+		setLimbVector(jointLCS,LEFT_ELBOW,LEFT_SHOULDER,lUpperArmLCS);
+		setLimbVector(jointLCS,RIGHT_ELBOW,RIGHT_SHOULDER,rUpperArmLCS);
+		setLimbVector(jointLCS,LEFT_HAND,LEFT_ELBOW,lLowerArmLCS);
+		setLimbVector(jointLCS,RIGHT_HAND,RIGHT_ELBOW,rLowerArmLCS);
+		setLimbVector(jointLCSUnmirrored,LEFT_ELBOW,LEFT_SHOULDER,lUpperArmLCSUnmirrored);
+		setLimbVector(jointLCSUnmirrored,RIGHT_ELBOW,RIGHT_SHOULDER,rUpperArmLCSUnmirrored);
+		setLimbVector(jointLCSUnmirrored,LEFT_HAND,LEFT_ELBOW,lLowerArmLCSUnmirrored);
+		setLimbVector(jointLCSUnmirrored,RIGHT_HAND,RIGHT_ELBOW,rLowerArmLCSUnmirrored);
+		setCalculated(DERIVED_ARM_VECTORS_LCS);
+	}
+	private void ensureArmAngles () {
+		if (!isDirty(DERIVED_ARM_ANGLES)) return;
+		ensureArmVectorsLCS();
+		armAngle[0] = PVector.angleBetween(lUpperArmLCS,math.getOrientationY());
+		armAngle[1] = PVector.angleBetween(lLowerArmLCS,lUpperArmLCS);
+		armAngle[2] = PVector.angleBetween(rUpperArmLCS,math.getOrientationY());
+		armAngle[3] = PVector.angleBetween(rLowerArmLCS,rUpperArmLCS);
+		armAngle[4] = PVector.angleBetween(lUpperArmLCSUnmirrored,math.getOrientationY());
+		armAngle[5] = PVector.angleBetween(lLowerArmLCSUnmirrored,lUpperArmLCSUnmirrored);
+		armAngle[6] = PVector.angleBetween(rUpperArmLCSUnmirrored,math.getOrientationY());
+		armAngle[7] = PVector.angleBetween(rLowerArmLCSUnmirrored,rUpperArmLCSUnmirrored);
+		setCalculated(DERIVED_ARM_ANGLES);
+	}
+	private void ensureFeatures () {
+		if (!isDirty(DERIVED_FEATURES)) return;
+		ensureArmVectorsLCS();
+		features.calculate(lUpperArmLCS,lLowerArmLCS,rUpperArmLCS,rLowerArmLCS,math.getOrientationY(),math.getOrientationZ(),jointLCS);
+		setCalculated(DERIVED_FEATURES);
+	}
+	private void ensureOrientations () {
+		if (!isDirty(DERIVED_ORIENTATIONS)) return;
+		for (int i=0; i<NUMBER_OF_JOINTS; i++) {
+			jointOrientation[i].set(jointOrientationUnmirrored[i]);
+			jointOrientationConfidence[i] = jointOrientationConfidenceUnmirrored[i];
+		}
+		if (mirrorTherapy != MIRROR_THERAPY_OFF) {
+			ensureLocalCoordSys();
+			updateMirroredJointOrientations();
 		}
+		setCalculated(DERIVED_ORIENTATIONS);
 	}
 }
-	
\ No newline at end of file
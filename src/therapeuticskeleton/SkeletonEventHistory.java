@@ -0,0 +1,207 @@
+package therapeuticskeleton;
+
+/** SkeletonEventHistory keeps the last posture and gesture events of a skeleton with their capture times, see Skeleton.getTimestamp. Access it with Skeleton.getEventHistory. <p>
+ *  The history is a ring buffer of fixed capacity: when it is full, the oldest event is overwritten. Events are recorded whether listeners are added or not.
+ *  Events of a time range are found by binary search, and the number of events of a posture or gesture in a time range is calculated from running counts stored with every event,
+ *  so queries take logarithmic time, do not scan the events and do not allocate. Counts and posture times since the last clear are kept for all events, also the overwritten ones. <p>
+ *  Capture times are expected to increase. If a frame has an earlier capture time than the last event, e.g. after a replay was rewound, its events get the time of the last event.
+ *  Read the history on the thread updating the skeleton. */
+public class SkeletonEventHistory {
+
+	/** Event type: the skeleton entered a posture */
+	public static final short POSTURE_ENTERED = 0;
+	/** Event type: the skeleton left a posture. The duration of the event is the time the posture was held */
+	public static final short POSTURE_EXITED = 1;
+	/** Event type: the skeleton performed a gesture */
+	public static final short GESTURE_RECOGNIZED = 2;
+	// counted codes: postures 0..NUMBER_OF_POSES-1, then gestures
+	private static final int NUMBER_OF_CODES = SkeletonPosture.NUMBER_OF_POSES+SkeletonGesture.NUMBER_OF_GESTURES;
+
+	private int capacity;
+	// events, index of the oldest event is first
+	private long[] timestamp;
+	private long[] duration;
+	private short[] type;
+	private short[] code;
+	// running counts of posture entries and gestures up to and including the event, NUMBER_OF_CODES per event
+	private int[] counts;
+	private int first = 0;
+	private int size = 0;
+	// totals since the last clear
+	private int[] totalCounts = new int[NUMBER_OF_CODES];
+	private long[] totalPostureTime = new long[SkeletonPosture.NUMBER_OF_POSES];
+	private short activePosture = SkeletonPosture.NO_POSE;
+	private long activeSince = 0L;
+	private long lastTimestamp = Long.MIN_VALUE;
+	private long currentTimestamp = 0L;
+
+	/** Constructor for an empty history.
+	 *  @param _capacity the number of events kept. If lower than 1, default capacity 1024 will be used */
+	public SkeletonEventHistory (int _capacity) {
+		capacity = _capacity >= 1 ? _capacity : 1024;
+		timestamp = new long[capacity];
+		duration = new long[capacity];
+		type = new short[capacity];
+		code = new short[capacity];
+		counts = new int[capacity*NUMBER_OF_CODES];
+	}
+
+	/** Removes all events and resets counts and posture times. */
+	public void clear () {
+		first = 0;
+		size = 0;
+		for (int c=0; c<NUMBER_OF_CODES; c++) totalCounts[c] = 0;
+		for (int p=0; p<SkeletonPosture.NUMBER_OF_POSES; p++) totalPostureTime[p] = 0L;
+		activeSince = currentTimestamp;
+		lastTimestamp = Long.MIN_VALUE;
+	}
+	/** Getter for the capacity
+	 *  @return the number of events kept */
+	public int getCapacity () {
+		return capacity;
+	}
+	/** Getter for the number of events in the history
+	 *  @return number of events, at most the capacity */
+	public int getSize () {
+		return size;
+	}
+	/** Returns the type of an event
+	 *  @param _index the index of the event, 0 for the oldest, getSize()-1 for the newest
+	 *  @return POSTURE_ENTERED, POSTURE_EXITED or GESTURE_RECOGNIZED. If _index out of range: -1 */
+	public short getType (int _index) {
+		return _index >= 0 && _index < size ? type[slot(_index)] : -1;
+	}
+	/** Returns the posture or gesture of an event
+	 *  @param _index the index of the event, 0 for the oldest
+	 *  @return short corresponding to SkeletonPosture constants for posture events, to SkeletonGesture constants for gesture events. If _index out of range: -1 */
+	public short getCode (int _index) {
+		return _index >= 0 && _index < size ? code[slot(_index)] : -1;
+	}
+	/** Returns the capture time of an event
+	 *  @param _index the index of the event, 0 for the oldest
+	 *  @return the capture time in nanoseconds, see Skeleton.getTimestamp. If _index out of range: 0 */
+	public long getTimestamp (int _index) {
+		return _index >= 0 && _index < size ? timestamp[slot(_index)] : 0L;
+	}
+	/** Returns the duration of an event: the time the posture was held for POSTURE_EXITED, 0 for the others
+	 *  @param _index the index of the event, 0 for the oldest
+	 *  @return the duration in nanoseconds. If _index out of range: 0 */
+	public long getDuration (int _index) {
+		return _index >= 0 && _index < size ? duration[slot(_index)] : 0L;
+	}
+	/** Returns the first event at or after a capture time. Binary search
+	 *  @param _timestamp the capture time in nanoseconds
+	 *  @return the index of the event, getSize() if all events are earlier */
+	public int indexOf (long _timestamp) {
+		int low = 0, high = size;
+		while (low < high) {
+			int middle = (low+high)>>>1;
+			if (timestamp[slot(middle)] < _timestamp) {
+				low = middle+1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+	/** Returns how often a posture was entered in a time range. Only events still in the history are counted
+	 *  @param _posture short corresponding to SkeletonPosture constants
+	 *  @param _from the first capture time of the range in nanoseconds
+	 *  @param _to the capture time after the range in nanoseconds, e.g. Skeleton.getTimestamp()+1 to include the current update cycle
+	 *  @return number of POSTURE_ENTERED events of the posture */
+	public int countPostures (short _posture, long _from, long _to) {
+		if (_posture <= SkeletonPosture.NO_POSE || _posture >= SkeletonPosture.NUMBER_OF_POSES) return 0;
+		return countEvents(_posture,_from,_to);
+	}
+	/** Returns how often a gesture was performed in a time range, e.g. the push gestures of the last 2 minutes. Only events still in the history are counted
+	 *  @param _gesture short corresponding to SkeletonGesture constants
+	 *  @param _from the first capture time of the range in nanoseconds
+	 *  @param _to the capture time after the range in nanoseconds
+	 *  @return number of GESTURE_RECOGNIZED events of the gesture */
+	public int countGestures (short _gesture, long _from, long _to) {
+		if (_gesture <= SkeletonGesture.NO_GESTURE || _gesture >= SkeletonGesture.NUMBER_OF_GESTURES) return 0;
+		return countEvents(SkeletonPosture.NUMBER_OF_POSES+_gesture,_from,_to);
+	}
+	/** Returns how often a posture was entered since the last clear, including events no longer in the history
+	 *  @param _posture short corresponding to SkeletonPosture constants
+	 *  @return number of POSTURE_ENTERED events of the posture */
+	public int getPostureCount (short _posture) {
+		if (_posture <= SkeletonPosture.NO_POSE || _posture >= SkeletonPosture.NUMBER_OF_POSES) return 0;
+		return totalCounts[_posture];
+	}
+	/** Returns how often a gesture was performed since the last clear, including events no longer in the history
+	 *  @param _gesture short corresponding to SkeletonGesture constants
+	 *  @return number of GESTURE_RECOGNIZED events of the gesture */
+	public int getGestureCount (short _gesture) {
+		if (_gesture <= SkeletonGesture.NO_GESTURE || _gesture >= SkeletonGesture.NUMBER_OF_GESTURES) return 0;
+		return totalCounts[SkeletonPosture.NUMBER_OF_POSES+_gesture];
+	}
+	/** Returns the time a posture was held since the last clear, e.g. the time spent in V_SHAPE this session. A posture held right now counts up to the current update cycle
+	 *  @param _posture short corresponding to SkeletonPosture constants
+	 *  @return the time in nanoseconds */
+	public long getPostureTime (short _posture) {
+		if (_posture <= SkeletonPosture.NO_POSE || _posture >= SkeletonPosture.NUMBER_OF_POSES) return 0L;
+		long time = totalPostureTime[_posture];
+		if (_posture == activePosture && currentTimestamp > activeSince) time += currentTimestamp-activeSince;
+		return time;
+	}
+
+	// called by SkeletonEvents in every update cycle before the events of the cycle are added
+	void update (long _timestamp) {
+		currentTimestamp = _timestamp;
+	}
+	// records an event of the current update cycle
+	void add (short _type, short _code) {
+		long time = Math.max(currentTimestamp,lastTimestamp);
+		long held = 0L;
+		if (_type == POSTURE_ENTERED) {
+			activePosture = _code;
+			activeSince = time;
+		} else if (_type == POSTURE_EXITED) {
+			held = time-activeSince;
+			endPosture(time);
+		}
+		int counted = _type == GESTURE_RECOGNIZED ? SkeletonPosture.NUMBER_OF_POSES+_code : _type == POSTURE_ENTERED ? _code : -1;
+		if (counted >= 0) totalCounts[counted]++;
+		int s;
+		if (size < capacity) {
+			s = slot(size++);
+		} else {
+			s = first;
+			first = (first+1)%capacity;
+		}
+		timestamp[s] = time;
+		duration[s] = held;
+		type[s] = _type;
+		code[s] = _code;
+		System.arraycopy(totalCounts,0,counts,s*NUMBER_OF_CODES,NUMBER_OF_CODES);
+		lastTimestamp = time;
+	}
+	// ends the posture without event, e.g. when posture evaluation is switched off
+	void reset () {
+		endPosture(Math.max(currentTimestamp,activeSince));
+	}
+
+	// -----------------------------------------------------------------
+	// PRIVATE HELPER METHODS
+	private int slot (int _index) {
+		return (first+_index)%capacity;
+	}
+	private void endPosture (long _timestamp) {
+		if (activePosture != SkeletonPosture.NO_POSE) totalPostureTime[activePosture] += _timestamp-activeSince;
+		activePosture = SkeletonPosture.NO_POSE;
+	}
+	// events of a code in [_from,_to): difference of the running counts of the last event in the range and the event before the range
+	private int countEvents (int _code, long _from, long _to) {
+		int low = indexOf(_from);
+		int high = indexOf(_to);
+		if (high <= low) return 0;
+		int s = slot(low);
+		int before = counts[s*NUMBER_OF_CODES+_code]-(countedCode(s) == _code ? 1 : 0);
+		return counts[slot(high-1)*NUMBER_OF_CODES+_code]-before;
+	}
+	private int countedCode (int _slot) {
+		if (type[_slot] == GESTURE_RECOGNIZED) return SkeletonPosture.NUMBER_OF_POSES+code[_slot];
+		return type[_slot] == POSTURE_ENTERED ? code[_slot] : -1;
+	}
+}
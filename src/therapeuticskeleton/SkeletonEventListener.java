@@ -0,0 +1,34 @@
+package therapeuticskeleton;
+
+/** Receives posture and gesture events of a Skeleton, so applications need not poll and compare postures every frame. See Skeleton.addEventListener.
+ *  The events of one update cycle are delivered together after the update, on the thread updating the skeleton or on the executor set with SkeletonEvents.setEventExecutor, see Skeleton.getEvents.
+ *  Postures are debounced: see SkeletonEvents for hysteresis, dwell time and hold interval. <br>
+ *  Listeners get a SkeletonFrame of the update cycle of the events instead of the skeleton, so they can read it on any thread. The frame is only valid during the callback and cannot be retained. */
+public interface SkeletonEventListener {
+
+	/** The skeleton entered a posture and held it for the dwell time.
+	 *  @param _frame the skeleton in the update cycle of the event
+	 *  @param _posture short corresponding to SkeletonPosture constants
+	 *  @param _frameCount the update cycle the posture was entered */
+	public void postureEntered (SkeletonFrame _frame, short _posture, int _frameCount);
+
+	/** The skeleton still holds a posture. Delivered every hold interval after the posture was entered.
+	 *  @param _frame the skeleton in the update cycle of the event
+	 *  @param _posture short corresponding to SkeletonPosture constants
+	 *  @param _frameCount the current update cycle
+	 *  @param _heldTime the time since the posture was entered in seconds, measured with the capture times of the frames */
+	public void postureHeld (SkeletonFrame _frame, short _posture, int _frameCount, float _heldTime);
+
+	/** The skeleton left a posture for the dwell time.
+	 *  @param _frame the skeleton in the update cycle of the event
+	 *  @param _posture short corresponding to SkeletonPosture constants
+	 *  @param _frameCount the update cycle the posture was left
+	 *  @param _heldTime the time the posture was held in seconds, measured with the capture times of the frames */
+	public void postureExited (SkeletonFrame _frame, short _posture, int _frameCount, float _heldTime);
+
+	/** The skeleton performed a gesture. Delivered once per gesture, not in every update cycle the gesture is recognized.
+	 *  @param _frame the skeleton in the update cycle of the event
+	 *  @param _gesture short corresponding to SkeletonGesture constants
+	 *  @param _frameCount the update cycle the gesture was recognized */
+	public void gestureRecognized (SkeletonFrame _frame, short _gesture, int _frameCount);
+}
@@ -0,0 +1,265 @@
+package therapeuticskeleton;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/** SkeletonEvents turns the postures and gestures a Skeleton evaluates every update cycle into events for SkeletonEventListeners. Access it with Skeleton.getEvents. <p>
+ *  Postures are debounced. A held posture is left only when it is not recognized with the posture tolerance plus the posture hysteresis anymore, see Skeleton.setPostureHysteresis.
+ *  A posture is entered or left only after the change persisted for the dwell time. While a posture is held, hold events are delivered every hold interval.
+ *  Dwell time, hold interval and held times are measured with the capture times of the frames, see Skeleton.getTimestamp, and rounded to whole update cycles. <p>
+ *  The events of an update cycle are collected and delivered in one batch after the update. Without executor the batch is delivered on the thread updating the skeleton,
+ *  with executor on the executor. Use a single threaded executor to receive batches in order. Batches are recycled, delivering events does not allocate. <br>
+ *  Every batch holds a SkeletonFrame of the update cycle of its events, so listeners on the executor read consistent data while the skeleton is updated meanwhile.
+ *  The frame belongs to the batch and is recycled after delivery: it cannot be retained, copy what is needed after the callback. <p>
+ *  Enter, exit and gesture events are also recorded in the event history with their capture times, see SkeletonEventHistory. */
+public class SkeletonEvents {
+
+	// event types
+	private static final short POSTURE_ENTERED = 0;
+	private static final short POSTURE_HELD = 1;
+	private static final short POSTURE_EXITED = 2;
+	private static final short GESTURE_RECOGNIZED = 3;
+	// at most exit and enter or hold, and every gesture per update cycle
+	private static final int MAX_EVENTS = 2+SkeletonGesture.NUMBER_OF_GESTURES;
+
+	// setup variables
+	private float dwellTime = 0.1f;
+	private float holdInterval = 1f;
+	private volatile SkeletonEventListener[] listeners = new SkeletonEventListener[0];
+	private volatile Executor executor = null;
+	// posture state: the posture entered and the posture that is about to replace it
+	private short activePosture = SkeletonPosture.NO_POSE;
+	// capture times in nanoseconds
+	private long activeSince = 0L;
+	private long nextHoldTime = 0L;
+	private short pendingPosture = SkeletonPosture.NO_POSE;
+	private long pendingSince = 0L;
+	private boolean pending = false;
+	private long lastGestures = 0L;
+	// batches of events, recycled when delivered
+	private Batch[] batchPool = new Batch[] {new Batch()};
+	private Batch batch = null;
+	private long eventCount = 0;
+	private SkeletonEventHistory history = new SkeletonEventHistory(1024);
+
+	/** Adds a listener. Listeners may be added and removed on any thread, delivery in progress is not affected
+	 *  @param _listener the listener */
+	public synchronized void addEventListener (SkeletonEventListener _listener) {
+		SkeletonEventListener[] extended = new SkeletonEventListener[listeners.length+1];
+		System.arraycopy(listeners,0,extended,0,listeners.length);
+		extended[listeners.length] = _listener;
+		listeners = extended;
+	}
+	/** Removes a listener.
+	 *  @param _listener the listener */
+	public synchronized void removeEventListener (SkeletonEventListener _listener) {
+		for (int i=0; i<listeners.length; i++) {
+			if (listeners[i] != _listener) continue;
+			SkeletonEventListener[] reduced = new SkeletonEventListener[listeners.length-1];
+			System.arraycopy(listeners,0,reduced,0,i);
+			System.arraycopy(listeners,i+1,reduced,i,listeners.length-i-1);
+			listeners = reduced;
+			return;
+		}
+	}
+	/** Getter for the number of listeners
+	 *  @return number of listeners */
+	public int getNumberOfEventListeners () {
+		return listeners.length;
+	}
+	/** Setter for the executor delivering the events.
+	 *  @param _executor the executor, null to deliver on the thread updating the skeleton */
+	public void setEventExecutor (Executor _executor) {
+		executor = _executor;
+	}
+	/** Getter for the executor delivering the events
+	 *  @return the executor or null */
+	public Executor getEventExecutor () {
+		return executor;
+	}
+	/** Setter for the dwell time. A posture is entered or left when the change persisted for the dwell time, i.e. the frames showing the change cover the dwell time.
+	 *  @param _dwellTime the dwell time in seconds, e.g. 0.1f for 3 frames at 30 fps. 0 enters and leaves postures immediately. If lower than 0, default dwell time 0.1f will be set */
+	public void setDwellTime (float _dwellTime) {
+		dwellTime = _dwellTime >= 0f ? _dwellTime : 0.1f;
+	}
+	/** Getter for the dwell time
+	 *  @return the dwell time in seconds */
+	public float getDwellTime () {
+		return dwellTime;
+	}
+	/** Setter for the hold interval. Hold events are delivered every hold interval while a posture is held.
+	 *  @param _holdInterval the hold interval in seconds, 0 for no hold events. If frames are dropped, one hold event is delivered for the skipped intervals. If lower than 0, default hold interval 1f will be set */
+	public void setHoldInterval (float _holdInterval) {
+		holdInterval = _holdInterval >= 0f ? _holdInterval : 1f;
+		nextHoldTime = activeSince+(long)(holdInterval*1e9);
+	}
+	/** Getter for the hold interval
+	 *  @return the hold interval in seconds */
+	public float getHoldInterval () {
+		return holdInterval;
+	}
+	/** Returns the debounced posture, i.e. the posture of the last enter event
+	 *  @return short corresponding to SkeletonPosture constants, NO_POSE if no posture is held */
+	public short getActivePosture () {
+		return activePosture;
+	}
+	/** Returns the number of events since the skeleton was created, delivered or not
+	 *  @return number of events */
+	public long getEventCount () {
+		return eventCount;
+	}
+	/** Returns the history of posture and gesture events
+	 *  @return the event history */
+	public SkeletonEventHistory getHistory () {
+		return history;
+	}
+	/** Setter for the capacity of the event history. Replaces the history, recorded events and counts are lost
+	 *  @param _capacity the number of events kept. If lower than 1, default capacity 1024 will be set */
+	public void setHistoryCapacity (int _capacity) {
+		history = new SkeletonEventHistory(_capacity);
+	}
+	/** Returns the number of event batches that were allocated. Stays 1 unless an executor delivers slower than the skeleton is updated
+	 *  @return number of batches */
+	public int getBatchPoolSize () {
+		return batchPool.length;
+	}
+
+	// called by Skeleton after posture and gesture were evaluated
+	void update (Skeleton _skeleton, SkeletonPosture _posture, SkeletonGesture _gesture, int _frameCount, float _frameRate) {
+		long timestamp = _skeleton.getTimestamp();
+		history.update(timestamp);
+		// durations are rounded to whole update cycles: a time is reached when less than half a frame is missing
+		long frameNanos = (long)(_skeleton.getFrameDuration()*1e9);
+		long holdNanos = (long)(holdInterval*1e9);
+		if (timestamp < activeSince) {
+			// the capture time went back, e.g. a replay was rewound
+			activeSince = timestamp;
+			nextHoldTime = timestamp+holdNanos;
+		}
+		short recognized = _posture.getCurrentUpperBodyPosture();
+		// a held posture is kept while it holds with hysteresis, even if another posture is recognized
+		short observed = activePosture != SkeletonPosture.NO_POSE && (recognized == activePosture || _posture.isPostureHeld(activePosture)) ? activePosture : recognized;
+		if (observed == activePosture) {
+			pending = false;
+			// compared with a threshold, so no hold event is lost if frames are dropped
+			if (activePosture != SkeletonPosture.NO_POSE && holdNanos > 0 && timestamp+frameNanos/2 >= nextHoldTime) {
+				addEvent(POSTURE_HELD,activePosture,_frameCount,(timestamp-activeSince)*1e-9f);
+				nextHoldTime += holdNanos*((timestamp+frameNanos/2-nextHoldTime)/holdNanos+1);
+			}
+		} else {
+			if (!pending || observed != pendingPosture) {
+				pendingPosture = observed;
+				pendingSince = timestamp;
+				pending = true;
+			}
+			// the frames showing the change cover the time since the first of them plus the duration of the current frame
+			if (timestamp-pendingSince+frameNanos+frameNanos/2 >= (long)(dwellTime*1e9)) {
+				if (activePosture != SkeletonPosture.NO_POSE) {
+					addEvent(POSTURE_EXITED,activePosture,_frameCount,(timestamp-activeSince)*1e-9f);
+				}
+				activePosture = pendingPosture;
+				activeSince = timestamp;
+				nextHoldTime = timestamp+holdNanos;
+				pending = false;
+				if (activePosture != SkeletonPosture.NO_POSE) {
+					addEvent(POSTURE_ENTERED,activePosture,_frameCount,0f);
+				}
+			}
+		}
+		// gestures are recognized in consecutive update cycles while their end pose is held
+		long gestures = _gesture.recognizedGestures();
+		for (long started = gestures & ~lastGestures; started != 0; started &= started-1) {
+			addEvent(GESTURE_RECOGNIZED,(short)Long.numberOfTrailingZeros(started),_frameCount,0f);
+		}
+		lastGestures = gestures;
+		dispatch(_skeleton,_frameCount,_frameRate);
+	}
+	// forgets the posture state without events, e.g. when posture evaluation is switched off
+	void reset () {
+		activePosture = SkeletonPosture.NO_POSE;
+		pendingPosture = SkeletonPosture.NO_POSE;
+		pending = false;
+		lastGestures = 0L;
+		history.reset();
+	}
+
+	// -----------------------------------------------------------------
+	// PRIVATE HELPER METHODS
+	private void addEvent (short _type, short _code, int _frameCount, float _heldTime) {
+		eventCount++;
+		switch (_type) {
+			case POSTURE_ENTERED: history.add(SkeletonEventHistory.POSTURE_ENTERED,_code); break;
+			case POSTURE_EXITED: history.add(SkeletonEventHistory.POSTURE_EXITED,_code); break;
+			case GESTURE_RECOGNIZED: history.add(SkeletonEventHistory.GESTURE_RECOGNIZED,_code); break;
+		}
+		SkeletonEventListener[] current = listeners;
+		if (current.length == 0) return;
+		if (batch == null) {
+			batch = acquireBatch();
+			batch.listeners = current;
+		}
+		int e = batch.numberOfEvents++;
+		batch.type[e] = _type;
+		batch.code[e] = _code;
+		batch.frameCount[e] = _frameCount;
+		batch.heldTime[e] = _heldTime;
+	}
+	private void dispatch (Skeleton _skeleton, int _frameCount, float _frameRate) {
+		if (batch == null) return;
+		Batch full = batch;
+		batch = null;
+		// listeners get a snapshot, never the skeleton that is updated meanwhile
+		full.frame.set(_skeleton,_frameCount,_frameRate);
+		Executor current = executor;
+		if (current == null) {
+			full.run();
+		} else {
+			current.execute(full);
+		}
+	}
+	// a free batch of the pool. the pool grows only if all batches are still queued at the executor
+	private Batch acquireBatch () {
+		for (int i=0; i<batchPool.length; i++) {
+			if (batchPool[i].busy.compareAndSet(false,true)) return batchPool[i];
+		}
+		Batch[] pool = new Batch[batchPool.length+1];
+		System.arraycopy(batchPool,0,pool,0,batchPool.length);
+		Batch added = new Batch();
+		added.busy.set(true);
+		pool[batchPool.length] = added;
+		batchPool = pool;
+		return added;
+	}
+
+	// the events of one update cycle
+	private static class Batch implements Runnable {
+		private final AtomicBoolean busy = new AtomicBoolean(false);
+		private final short[] type = new short[MAX_EVENTS];
+		private final short[] code = new short[MAX_EVENTS];
+		private final int[] frameCount = new int[MAX_EVENTS];
+		private final float[] heldTime = new float[MAX_EVENTS];
+		private final SkeletonFrame frame = new SkeletonFrame();
+		private int numberOfEvents = 0;
+		private SkeletonEventListener[] listeners = null;
+
+		public void run () {
+			try {
+				for (int e=0; e<numberOfEvents; e++) {
+					for (int l=0; l<listeners.length; l++) {
+						SkeletonEventListener listener = listeners[l];
+						switch (type[e]) {
+							case POSTURE_ENTERED: listener.postureEntered(frame,code[e],frameCount[e]); break;
+							case POSTURE_HELD: listener.postureHeld(frame,code[e],frameCount[e],heldTime[e]); break;
+							case POSTURE_EXITED: listener.postureExited(frame,code[e],frameCount[e],heldTime[e]); break;
+							default: listener.gestureRecognized(frame,code[e],frameCount[e]); break;
+						}
+					}
+				}
+			} finally {
+				numberOfEvents = 0;
+				listeners = null;
+				busy.set(false);
+			}
+		}
+	}
+}
@@ -0,0 +1,112 @@
+package therapeuticskeleton;
+
+import processing.core.*;
+
+/** SkeletonFeatures is the feature vector of the upper body, calculated once per update cycle and shared by the posture and gesture evaluators.
+ *  Features are angles in radians between the arm vectors and the axes of the local coordinate system (ANGLE_LEFT_ELBOW..ANGLE_RIGHT_HAND_SHOULDER_TO_Z),
+ *  followed by distances and positions in mm (DISTANCE_HANDS..RIGHT_HAND_Z).
+ *  Read them with Skeleton.getFeature or Skeleton.copyFeatures, the constants of this class are the indices of the features. */
+public class SkeletonFeatures {
+
+	/** Angle between left upper and left lower arm. 0 if the arm is straight */
+	public static final short ANGLE_LEFT_ELBOW = 0;
+	/** Angle between right upper and right lower arm. 0 if the arm is straight */
+	public static final short ANGLE_RIGHT_ELBOW = 1;
+	/** Angle between left and right upper arm */
+	public static final short ANGLE_UPPER_ARMS = 2;
+	/** Angle between left upper arm and the local y axis. 0 if the upper arm points up */
+	public static final short ANGLE_LEFT_UPPER_ARM_TO_Y = 3;
+	/** Angle between right upper arm and the local y axis. 0 if the upper arm points up */
+	public static final short ANGLE_RIGHT_UPPER_ARM_TO_Y = 4;
+	/** Angle between left lower arm and the local y axis. 0 if the lower arm points up */
+	public static final short ANGLE_LEFT_LOWER_ARM_TO_Y = 5;
+	/** Angle between right lower arm and the local y axis. 0 if the lower arm points up */
+	public static final short ANGLE_RIGHT_LOWER_ARM_TO_Y = 6;
+	/** Angle between the sum of both upper arms and the local y axis. NaN if the upper arms point in opposite directions */
+	public static final short ANGLE_UPPER_ARMS_TO_Y = 7;
+	/** Angle between left upper arm and the local y axis regardless of direction. 0 if the upper arm points up or down, at most PI/2 */
+	public static final short ANGLE_LEFT_UPPER_ARM_TO_Y_AXIS = 8;
+	/** Angle between left upper arm and the local z axis */
+	public static final short ANGLE_LEFT_UPPER_ARM_TO_Z = 9;
+	/** Angle between right upper arm and the local z axis */
+	public static final short ANGLE_RIGHT_UPPER_ARM_TO_Z = 10;
+	/** Angle between the vector from left hand to left shoulder and the local z axis */
+	public static final short ANGLE_LEFT_HAND_SHOULDER_TO_Z = 11;
+	/** Angle between the vector from right hand to right shoulder and the local z axis */
+	public static final short ANGLE_RIGHT_HAND_SHOULDER_TO_Z = 12;
+	/** Distance between left and right hand in mm */
+	public static final short DISTANCE_HANDS = 13;
+	/** Distance between left hand and left shoulder in mm */
+	public static final short DISTANCE_LEFT_HAND_SHOULDER = 14;
+	/** Distance between right hand and right shoulder in mm */
+	public static final short DISTANCE_RIGHT_HAND_SHOULDER = 15;
+	/** Position of the left hand relative to the left shoulder along the local x axis in mm */
+	public static final short LEFT_HAND_X = 16;
+	/** Position of the left hand relative to the left shoulder along the local y axis in mm. Positive if the hand is above the shoulder */
+	public static final short LEFT_HAND_Y = 17;
+	/** Position of the left hand relative to the left shoulder along the local z axis in mm */
+	public static final short LEFT_HAND_Z = 18;
+	/** Position of the right hand relative to the right shoulder along the local x axis in mm */
+	public static final short RIGHT_HAND_X = 19;
+	/** Position of the right hand relative to the right shoulder along the local y axis in mm. Positive if the hand is above the shoulder */
+	public static final short RIGHT_HAND_Y = 20;
+	/** Position of the right hand relative to the right shoulder along the local z axis in mm */
+	public static final short RIGHT_HAND_Z = 21;
+	/** Stores the number of features */
+	public static final short NUMBER_OF_FEATURES = 22;
+
+	private float[] features = new float[NUMBER_OF_FEATURES];
+	// scratch objects, reused every update
+	private PVector upperArmsSum = new PVector();
+	private PVector handShoulder = new PVector();
+
+	// calculates all features from the arm vectors, the local axes and the LCS joints. does not allocate
+	void calculate (PVector _lUpperArm, PVector _lLowerArm, PVector _rUpperArm, PVector _rLowerArm, PVector _orientationY, PVector _orientationZ, float[] _jointsLCS) {
+		features[ANGLE_LEFT_ELBOW] = angleBetween(_lUpperArm,_lLowerArm);
+		features[ANGLE_RIGHT_ELBOW] = angleBetween(_rUpperArm,_rLowerArm);
+		features[ANGLE_UPPER_ARMS] = angleBetween(_lUpperArm,_rUpperArm);
+		features[ANGLE_LEFT_UPPER_ARM_TO_Y] = angleBetween(_lUpperArm,_orientationY);
+		features[ANGLE_RIGHT_UPPER_ARM_TO_Y] = angleBetween(_rUpperArm,_orientationY);
+		features[ANGLE_LEFT_LOWER_ARM_TO_Y] = angleBetween(_lLowerArm,_orientationY);
+		features[ANGLE_RIGHT_LOWER_ARM_TO_Y] = angleBetween(_rLowerArm,_orientationY);
+		upperArmsSum.set(_lUpperArm);
+		upperArmsSum.add(_rUpperArm);
+		features[ANGLE_UPPER_ARMS_TO_Y] = angleBetween(upperArmsSum,_orientationY);
+		features[ANGLE_LEFT_UPPER_ARM_TO_Y_AXIS] = PApplet.min(features[ANGLE_LEFT_UPPER_ARM_TO_Y],PConstants.PI-features[ANGLE_LEFT_UPPER_ARM_TO_Y]);
+		features[ANGLE_LEFT_UPPER_ARM_TO_Z] = angleBetween(_lUpperArm,_orientationZ);
+		features[ANGLE_RIGHT_UPPER_ARM_TO_Z] = angleBetween(_rUpperArm,_orientationZ);
+		int l = Skeleton.LEFT_HAND*3, r = Skeleton.RIGHT_HAND*3;
+		float dx = _jointsLCS[r]-_jointsLCS[l], dy = _jointsLCS[r+1]-_jointsLCS[l+1], dz = _jointsLCS[r+2]-_jointsLCS[l+2];
+		features[DISTANCE_HANDS] = (float)Math.sqrt(dx*dx+dy*dy+dz*dz);
+		calculateHand(Skeleton.LEFT_HAND,Skeleton.LEFT_SHOULDER,_orientationZ,_jointsLCS,ANGLE_LEFT_HAND_SHOULDER_TO_Z,DISTANCE_LEFT_HAND_SHOULDER,LEFT_HAND_X);
+		calculateHand(Skeleton.RIGHT_HAND,Skeleton.RIGHT_SHOULDER,_orientationZ,_jointsLCS,ANGLE_RIGHT_HAND_SHOULDER_TO_Z,DISTANCE_RIGHT_HAND_SHOULDER,RIGHT_HAND_X);
+	}
+	// the feature vector of the current update cycle, read by the evaluators of this package
+	float[] values () {
+		return features;
+	}
+	/** Returns whether a feature is a distance or position in mm or an angle in radians.
+	 *  @param _feature short corresponding to SkeletonFeatures constants
+	 *  @return true if the feature is a distance or position, false if it is an angle or out of range */
+	public static boolean isDistance (short _feature) {
+		return _feature >= DISTANCE_HANDS && _feature <= RIGHT_HAND_Z;
+	}
+
+	// angle between two vectors as PVector.angleBetween, whose acos gets a cosine slightly beyond 1 or -1 for parallel vectors and returns NaN.
+	// NaN remains for zero length vectors
+	private static float angleBetween (PVector _a, PVector _b) {
+		double dot = _a.x*_b.x+_a.y*_b.y+_a.z*_b.z;
+		double cos = dot/(Math.sqrt(_a.x*_a.x+_a.y*_a.y+_a.z*_a.z)*Math.sqrt(_b.x*_b.x+_b.y*_b.y+_b.z*_b.z));
+		return (float)Math.acos(Math.max(-1.0,Math.min(1.0,cos)));
+	}
+	// features of one hand relative to its shoulder: angle of the hand-shoulder vector to the z axis, distance and position
+	private void calculateHand (short _hand, short _shoulder, PVector _orientationZ, float[] _jointsLCS, short _angle, short _distance, short _position) {
+		int h = _hand*3, s = _shoulder*3;
+		handShoulder.set(_jointsLCS[s]-_jointsLCS[h],_jointsLCS[s+1]-_jointsLCS[h+1],_jointsLCS[s+2]-_jointsLCS[h+2]);
+		features[_angle] = angleBetween(handShoulder,_orientationZ);
+		features[_distance] = handShoulder.mag();
+		features[_position] = -handShoulder.x;
+		features[_position+1] = -handShoulder.y;
+		features[_position+2] = -handShoulder.z;
+	}
+}
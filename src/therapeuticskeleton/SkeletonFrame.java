@@ -0,0 +1,241 @@
+package therapeuticskeleton;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import processing.core.*;
+
+/** SkeletonFrame is a snapshot of the analyzed state of one skeleton in one update cycle: frames from Skeleton.acquireFrame are immutable while retained,
+ *  frames of SkeletonPipeline and SkeletonEvents are refilled by their owner.
+ *  It holds joint positions, orientations, confidences, deltas, arm angles, posture and gesture, so it can be read on another thread than the one updating the skeleton. <br>
+ *  Skeleton publishes a frame in every update cycle if frame publishing is switched on, see Skeleton.acquireFrame. These frames are pooled and reference counted: 
+ *  a frame acquired from the skeleton must be released when done, afterwards it is recycled. A frame is never changed while a reference is held. <br>
+ *  SkeletonPipeline publishes SkeletonFrames to the draw thread. Its frames are preallocated and refilled, do not keep references across calls to SkeletonPipeline.readLatest.
+ *  SkeletonEvents hands a refilled frame to its listeners, it is valid during the notification only. */
+public class SkeletonFrame {
+
+	// reference count of pooled frames. 0: free, CLAIMED: being filled, >0: published or retained by readers
+	private static final int CLAIMED = -1;
+	private AtomicInteger references = new AtomicInteger(0);
+
+	private int userId = 0;
+	private int frameCount = 0;
+	private float frameRate = 0f;
+	private long timestamp = 0;
+	private float[] joint = new float[Skeleton.NUMBER_OF_JOINTS*3];
+	private float[] jointUnmirrored = new float[Skeleton.NUMBER_OF_JOINTS*3];
+	private float[] jointLCS = new float[Skeleton.NUMBER_OF_JOINTS*3];
+	private float[] jointLCSUnmirrored = new float[Skeleton.NUMBER_OF_JOINTS*3];
+	private float[] jointConfidence = new float[Skeleton.NUMBER_OF_JOINTS];
+	private float[] jointDelta = new float[Skeleton.NUMBER_OF_JOINTS];
+	// orientation matrices, 16 floats per joint row by row
+	private float[] jointOrientation = new float[Skeleton.NUMBER_OF_JOINTS*16];
+	private float[] jointOrientationConfidence = new float[Skeleton.NUMBER_OF_JOINTS];
+	// angles of the arms: left upper, left lower, right upper, right lower
+	private float[] armAngle = new float[4];
+	private int evaluatedJointMask = 0;
+	private int synthesizedJointMask = 0;
+	private int rejectedJointMask = 0;
+	private short upperBodyPosture = SkeletonPosture.NO_POSE;
+	private short upperBodyGesture = SkeletonGesture.NO_GESTURE;
+
+	// copies the current state of the skeleton, called on the thread updating the skeleton
+	void set (Skeleton _skeleton, int _frameCount, float _frameRate) {
+		userId = _skeleton.getUserId();
+		frameCount = _frameCount;
+		frameRate = _frameRate;
+		timestamp = _skeleton.getTimestamp();
+		_skeleton.copyJoints(joint,0);
+		_skeleton.copyJointsUnmirrored(jointUnmirrored,0);
+		_skeleton.copyJointsLCS(jointLCS,0);
+		_skeleton.copyJointsLCSUnmirrored(jointLCSUnmirrored,0);
+		_skeleton.copyConfidences(jointConfidence,0);
+		_skeleton.copyJointDeltas(jointDelta,0);
+		_skeleton.copyJointOrientations(jointOrientation,0);
+		_skeleton.copyJointOrientationConfidences(jointOrientationConfidence,0);
+		armAngle[0] = _skeleton.getAngleLeftUpperArm();
+		armAngle[1] = _skeleton.getAngleLeftLowerArm();
+		armAngle[2] = _skeleton.getAngleRightUpperArm();
+		armAngle[3] = _skeleton.getAngleRightLowerArm();
+		evaluatedJointMask = _skeleton.getEvaluatedJointMask();
+		synthesizedJointMask = _skeleton.getSynthesizedJointMask();
+		rejectedJointMask = _skeleton.getRejectedJointMask();
+		upperBodyPosture = _skeleton.getCurrentUpperBodyPosture();
+		upperBodyGesture = _skeleton.recognizedUpperBodyGesture();
+	}
+	// claims a free pooled frame for filling, readers cannot retain it until it is published
+	boolean claim () {
+		return references.compareAndSet(0,CLAIMED);
+	}
+	// hands the filled frame over, the reference is held by the skeleton until the next frame is published
+	void publish () {
+		references.set(1);
+	}
+
+	/** Retains the frame, so it is not recycled until released. Use it to hand a frame to another consumer, each retain needs its own release. Frames of SkeletonPipeline and SkeletonEvents are not reference counted and cannot be retained.
+	 *  @return true if the frame was retained, false if it was already recycled and must not be read */
+	public boolean retain () {
+		while (true) {
+			int count = references.get();
+			if (count <= 0) return false;
+			if (references.compareAndSet(count,count+1)) return true;
+		}
+	}
+	/** Releases a frame acquired from Skeleton.acquireFrame or retained with retain. The frame must not be read afterwards. */
+	public void release () {
+		while (true) {
+			int count = references.get();
+			// released too often: ignored, so a free or claimed frame is not corrupted
+			if (count <= 0) return;
+			if (references.compareAndSet(count,count-1)) return;
+		}
+	}
+
+	/** Getter for the user ID of the skeleton.
+	 *  @return the user ID */
+	public int getUserId () {
+		return userId;
+	}
+	/** Getter for the frame count of the update cycle the frame was taken in.
+	 *  @return the frame count of PApplet */
+	public int getFrameCount () {
+		return frameCount;
+	}
+	/** Getter for the frame rate of the update cycle the frame was taken in.
+	 *  @return the frame rate of PApplet */
+	public float getFrameRate () {
+		return frameRate;
+	}
+	/** Getter for the capture time of the frame, see JointSource.getTimestamp
+	 *  @return the capture time in nanoseconds on the time scale of System.nanoTime */
+	public long getTimestamp () {
+		return timestamp;
+	}
+	/** Getter for the joints evaluated in the update cycle. Information of other joints is outdated.
+	 *  @return the joint mask of the evaluated joints, see Skeleton.jointMask */
+	public int getEvaluatedJointMask () {
+		return evaluatedJointMask;
+	}
+	/** Returns the orientation matrix of a certain joint. See Skeleton.getJointOrientation
+	 *  @param _jointType short corresponding to Skeleton constants
+	 *  @return the orientation matrix. If _jointType out of range: 0-Matrix */
+	public PMatrix3D getJointOrientation (short _jointType) {
+		PMatrix3D returnValue = new PMatrix3D();
+		if (_jointType >= 0 && _jointType < Skeleton.NUMBER_OF_JOINTS) {
+			int i = _jointType*16;
+			returnValue.set(jointOrientation[i],jointOrientation[i+1],jointOrientation[i+2],jointOrientation[i+3],
+							jointOrientation[i+4],jointOrientation[i+5],jointOrientation[i+6],jointOrientation[i+7],
+							jointOrientation[i+8],jointOrientation[i+9],jointOrientation[i+10],jointOrientation[i+11],
+							jointOrientation[i+12],jointOrientation[i+13],jointOrientation[i+14],jointOrientation[i+15]);
+		}
+		return returnValue;
+	}
+	/** Returns the confidence value of the orientation of a certain joint. See Skeleton.getJointOrientationConfidence
+	 *  @param _jointType short corresponding to Skeleton constants
+	 *  @return the confidence value between 0f and 1f. If _jointType out of range: 0f */
+	public float getJointOrientationConfidence (short _jointType) {
+		if (_jointType >= 0 && _jointType < Skeleton.NUMBER_OF_JOINTS)
+			return jointOrientationConfidence[_jointType];
+		else
+			return 0f;
+	}
+	/** Getter for the joints synthesized by the validator in the update cycle. See Skeleton.getSynthesizedJointMask
+	 *  @return the joint mask of the synthesized joints */
+	public int getSynthesizedJointMask () {
+		return synthesizedJointMask;
+	}
+	/** Getter for the joints rejected by the validator in the update cycle. See Skeleton.getRejectedJointMask
+	 *  @return the joint mask of the rejected joints, 0 if the frame is valid */
+	public int getRejectedJointMask () {
+		return rejectedJointMask;
+	}
+	/** Returns the joint position of a certain joint in the global coordinate system. See Skeleton.getJoint
+	 *  @param _jointType short corresponding to Skeleton constants
+	 *  @return the position of the joint. If _jointType out of range: 0-vector */
+	public PVector getJoint (short _jointType) {
+		return vector(joint,_jointType);
+	}
+	/** Returns the unmirrored joint position of a certain joint in the global coordinate system. See Skeleton.getJointUnmirrored
+	 *  @param _jointType short corresponding to Skeleton constants
+	 *  @return the position of the joint. If _jointType out of range: 0-vector */
+	public PVector getJointUnmirrored (short _jointType) {
+		return vector(jointUnmirrored,_jointType);
+	}
+	/** Returns the joint position of a certain joint in the local coordinate system. See Skeleton.getJointLCS
+	 *  @param _jointType short corresponding to Skeleton constants
+	 *  @return the position of the joint. If _jointType out of range: 0-vector */
+	public PVector getJointLCS (short _jointType) {
+		return vector(jointLCS,_jointType);
+	}
+	/** Returns the unmirrored joint position of a certain joint in the local coordinate system. See Skeleton.getJointLCSUnmirrored
+	 *  @param _jointType short corresponding to Skeleton constants
+	 *  @return the position of the joint. If _jointType out of range: 0-vector */
+	public PVector getJointLCSUnmirrored (short _jointType) {
+		return vector(jointLCSUnmirrored,_jointType);
+	}
+	/** Returns the confidence value of a certain joint. See Skeleton.getJointConfidence
+	 *  @param _jointType short corresponding to Skeleton constants
+	 *  @return the confidence value between 0f and 1f. If _jointType out of range: 0f */
+	public float getJointConfidence (short _jointType) {
+		if (_jointType >= 0 && _jointType < Skeleton.NUMBER_OF_JOINTS)
+			return jointConfidence[_jointType];
+		else
+			return 0f;
+	}
+	/** Returns the distance a certain joint moved during the last update cycle. See Skeleton.getJointDelta
+	 *  @param _jointType short corresponding to Skeleton constants
+	 *  @return the distance. If _jointType out of range: 0f */
+	public float getJointDelta (short _jointType) {
+		if (_jointType >= 0 && _jointType < Skeleton.NUMBER_OF_JOINTS)
+			return jointDelta[_jointType];
+		else
+			return 0f;
+	}
+	/** Copies the positions of all joints in the global coordinate system to a caller-owned buffer. See Skeleton.copyJoints
+	 *  @param _dst the buffer to fill, 3*Skeleton.NUMBER_OF_JOINTS floats are written
+	 *  @param _offset the index in _dst at which the first joint's x value is written */
+	public void copyJoints (float[] _dst, int _offset) {
+		System.arraycopy(joint,0,_dst,_offset,Skeleton.NUMBER_OF_JOINTS*3);
+	}
+	/** Copies the positions of all joints in the local coordinate system to a caller-owned buffer. See Skeleton.copyJointsLCS
+	 *  @param _dst the buffer to fill, 3*Skeleton.NUMBER_OF_JOINTS floats are written
+	 *  @param _offset the index in _dst at which the first joint's x value is written */
+	public void copyJointsLCS (float[] _dst, int _offset) {
+		System.arraycopy(jointLCS,0,_dst,_offset,Skeleton.NUMBER_OF_JOINTS*3);
+	}
+	/** See Skeleton.getAngleLeftUpperArm
+	 *  @return The angle between the left upper Arm and the body axis. */
+	public float getAngleLeftUpperArm () {
+		return armAngle[0];
+	}
+	/** See Skeleton.getAngleLeftLowerArm
+	 *  @return The angle between the left lower Arm and the left upper arm. */
+	public float getAngleLeftLowerArm () {
+		return armAngle[1];
+	}
+	/** See Skeleton.getAngleRightUpperArm
+	 *  @return The angle between the right upper Arm and the body axis. */
+	public float getAngleRightUpperArm () {
+		return armAngle[2];
+	}
+	/** See Skeleton.getAngleRightLowerArm
+	 *  @return The angle between the right lower Arm and the right upper arm. */
+	public float getAngleRightLowerArm () {
+		return armAngle[3];
+	}
+	/** Returns the posture of the skeleton in the update cycle. See Skeleton.getCurrentUpperBodyPosture
+	 *  @return short, constants of SkeletonPosture class, NO_POSE if posture is not calculated */
+	public short getCurrentUpperBodyPosture () {
+		return upperBodyPosture;
+	}
+	/** Returns the gesture recognized in the update cycle. See Skeleton.isGestureRecognized
+	 *  @return short, constants of SkeletonGesture class, NO_GESTURE if no gesture was recognized */
+	public short getUpperBodyGesture () {
+		return upperBodyGesture;
+	}
+
+	private PVector vector (float[] _joints, short _jointType) {
+		PVector returnValue = new PVector();
+		if (_jointType >= 0 && _jointType < Skeleton.NUMBER_OF_JOINTS) returnValue.set(_joints[_jointType*3],_joints[_jointType*3+1],_joints[_jointType*3+2]);
+		return returnValue;
+	}
+}
@@ -2,30 +2,134 @@ package therapeuticskeleton;
 
 import processing.core.*;
 
+/** SkeletonGesture evaluates the gestures of the gesture table in one pass over the shared feature vector, see SkeletonFeatures. <p>
+ *  A gesture is a sequence of steps. A step is a set of conditions on features, like the postures of SkeletonPosture, and has to be reached
+ *  within a time after the previous step, measured with the capture times of the frames. Conditions marked hold must hold in every update cycle while the step is awaited.
+ *  The first step restarts the gesture whenever it holds and no later step is reached. A gesture is recognized in every update cycle its last step holds in time. <p>
+ *  The conditions of all gestures are evaluated once per update cycle, conditions shared by several gestures only once. A gesture that has not started
+ *  is only looked at when one selected condition of its first step holds, so the cost grows with the started gestures, not with the number of gestures. */
 public class SkeletonGesture {
 
 	/** No gesture of the upper body joints is recognized */
 	public static final short NO_GESTURE = 0;
 	/** A push gesture of the upper body joints is recognized when the hand and elbow joints are pushed forward in a quick movement */
 	public static final short PUSH_GESTURE = 1;
+	/** A swipe to the left is recognized when the right hand moves from the right side across the chest to the left */
+	public static final short SWIPE_LEFT_GESTURE = 2;
+	/** A swipe to the right is recognized when the left hand moves from the left side across the chest to the right */
+	public static final short SWIPE_RIGHT_GESTURE = 3;
+	/** Raising the arms is recognized when both straight arms move from hanging down to pointing up */
+	public static final short RAISE_ARMS_GESTURE = 4;
+	/** A circle is recognized when the right hand moves right, up, left, down and right again around the right shoulder */
+	public static final short CIRCLE_GESTURE = 5;
+	/** A reach is recognized when the right hand moves from the shoulder to the front with a straight arm */
+	public static final short REACH_GESTURE = 6;
 	/** Stores the number of available gestures */
-	public static final short NUMBER_OF_GESTURES = 2;
-	
+	public static final short NUMBER_OF_GESTURES = 7;
+	/** The joints gesture evaluation reads. See Skeleton.setJointMask */
+	public static final int REQUIRED_JOINTS = Skeleton.JOINT_MASK_ARMS;
+
+	// gesture table, one condition per line: gesture, step, feature, lower bound, upper bound, tolerance widens lower bound (1) or not (0), tolerance widens upper bound,
+	// milliseconds allowed since the previous step (same for all conditions of a step), condition must hold while the step is awaited (1) or not (0).
+	// angles in degree, distances in mm. gestures are ordered by constant, the conditions of a gesture are consecutive and ordered by step. if several gestures are recognized, the one with the lowest constant is the current gesture
+	private static final float[][] GESTURE_TABLE = {
+		// start: hands close to the shoulders, hand-shoulder vectors parallel to body z axis
+		{PUSH_GESTURE, 0, SkeletonFeatures.ANGLE_LEFT_HAND_SHOULDER_TO_Z, 0, 30, 0, 1, 0, 0},
+		{PUSH_GESTURE, 0, SkeletonFeatures.ANGLE_RIGHT_HAND_SHOULDER_TO_Z, 0, 30, 0, 1, 0, 0},
+		{PUSH_GESTURE, 0, SkeletonFeatures.DISTANCE_LEFT_HAND_SHOULDER, 0, 200, 0, 1, 0, 0},
+		{PUSH_GESTURE, 0, SkeletonFeatures.DISTANCE_RIGHT_HAND_SHOULDER, 0, 200, 0, 1, 0, 0},
+		// end: arms form a straight line parallel to body z axis. the hands move parallel to body z axis all the time
+		{PUSH_GESTURE, 1, SkeletonFeatures.ANGLE_LEFT_HAND_SHOULDER_TO_Z, 0, 30, 0, 1, 1000, 1},
+		{PUSH_GESTURE, 1, SkeletonFeatures.ANGLE_RIGHT_HAND_SHOULDER_TO_Z, 0, 30, 0, 1, 1000, 1},
+		{PUSH_GESTURE, 1, SkeletonFeatures.ANGLE_LEFT_ELBOW, 0, 30, 0, 1, 1000, 0},
+		{PUSH_GESTURE, 1, SkeletonFeatures.ANGLE_RIGHT_ELBOW, 0, 30, 0, 1, 1000, 0},
+		{PUSH_GESTURE, 1, SkeletonFeatures.ANGLE_LEFT_UPPER_ARM_TO_Z, 150, 180, 1, 0, 1000, 0},
+		{PUSH_GESTURE, 1, SkeletonFeatures.ANGLE_RIGHT_UPPER_ARM_TO_Z, 150, 180, 1, 0, 1000, 0},
+		// right hand right of the shoulder at chest height, then left of the shoulder. the hand stays at chest height
+		{SWIPE_LEFT_GESTURE, 0, SkeletonFeatures.RIGHT_HAND_X, 250, 1000, 1, 0, 0, 0},
+		{SWIPE_LEFT_GESTURE, 0, SkeletonFeatures.RIGHT_HAND_Y, -350, 100, 1, 1, 0, 0},
+		{SWIPE_LEFT_GESTURE, 1, SkeletonFeatures.RIGHT_HAND_X, -1000, -150, 0, 1, 500, 0},
+		{SWIPE_LEFT_GESTURE, 1, SkeletonFeatures.RIGHT_HAND_Y, -350, 100, 1, 1, 500, 1},
+		// left hand left of the shoulder at chest height, then right of the shoulder. the hand stays at chest height
+		{SWIPE_RIGHT_GESTURE, 0, SkeletonFeatures.LEFT_HAND_X, -1000, -250, 0, 1, 0, 0},
+		{SWIPE_RIGHT_GESTURE, 0, SkeletonFeatures.LEFT_HAND_Y, -350, 100, 1, 1, 0, 0},
+		{SWIPE_RIGHT_GESTURE, 1, SkeletonFeatures.LEFT_HAND_X, 150, 1000, 1, 0, 500, 0},
+		{SWIPE_RIGHT_GESTURE, 1, SkeletonFeatures.LEFT_HAND_Y, -350, 100, 1, 1, 500, 1},
+		// straight arms hanging down, then pointing up. the arms stay straight
+		{RAISE_ARMS_GESTURE, 0, SkeletonFeatures.ANGLE_LEFT_UPPER_ARM_TO_Y, 150, 180, 1, 0, 0, 0},
+		{RAISE_ARMS_GESTURE, 0, SkeletonFeatures.ANGLE_RIGHT_UPPER_ARM_TO_Y, 150, 180, 1, 0, 0, 0},
+		{RAISE_ARMS_GESTURE, 0, SkeletonFeatures.ANGLE_LEFT_ELBOW, 0, 30, 0, 1, 0, 0},
+		{RAISE_ARMS_GESTURE, 0, SkeletonFeatures.ANGLE_RIGHT_ELBOW, 0, 30, 0, 1, 0, 0},
+		{RAISE_ARMS_GESTURE, 1, SkeletonFeatures.ANGLE_LEFT_UPPER_ARM_TO_Y, 0, 30, 0, 1, 1500, 0},
+		{RAISE_ARMS_GESTURE, 1, SkeletonFeatures.ANGLE_RIGHT_UPPER_ARM_TO_Y, 0, 30, 0, 1, 1500, 0},
+		{RAISE_ARMS_GESTURE, 1, SkeletonFeatures.ANGLE_LEFT_ELBOW, 0, 30, 0, 1, 1500, 1},
+		{RAISE_ARMS_GESTURE, 1, SkeletonFeatures.ANGLE_RIGHT_ELBOW, 0, 30, 0, 1, 1500, 1},
+		// right hand right of, above, left of and below the shoulder, then right again
+		{CIRCLE_GESTURE, 0, SkeletonFeatures.RIGHT_HAND_X, 250, 1000, 1, 0, 0, 0},
+		{CIRCLE_GESTURE, 0, SkeletonFeatures.RIGHT_HAND_Y, -250, 250, 1, 1, 0, 0},
+		{CIRCLE_GESTURE, 1, SkeletonFeatures.RIGHT_HAND_Y, 250, 1000, 1, 0, 700, 0},
+		{CIRCLE_GESTURE, 2, SkeletonFeatures.RIGHT_HAND_X, -1000, -150, 0, 1, 700, 0},
+		{CIRCLE_GESTURE, 3, SkeletonFeatures.RIGHT_HAND_Y, -1000, -350, 0, 1, 700, 0},
+		{CIRCLE_GESTURE, 4, SkeletonFeatures.RIGHT_HAND_X, 250, 1000, 1, 0, 700, 0},
+		{CIRCLE_GESTURE, 4, SkeletonFeatures.RIGHT_HAND_Y, -250, 250, 1, 1, 700, 0},
+		// right hand close to the shoulder, then in front of the shoulder with a straight arm
+		{REACH_GESTURE, 0, SkeletonFeatures.DISTANCE_RIGHT_HAND_SHOULDER, 0, 300, 0, 1, 0, 0},
+		{REACH_GESTURE, 1, SkeletonFeatures.RIGHT_HAND_Z, -1000, -450, 0, 1, 1000, 0},
+		{REACH_GESTURE, 1, SkeletonFeatures.ANGLE_RIGHT_ELBOW, 0, 20, 0, 1, 1000, 0}
+	};
+	// tolerance of distances in mm at gesture tolerance 1
+	private static final float DISTANCE_TOLERANCE = 200f;
+
+	// the gesture table compiled once, shared by all skeletons
+	private static final Table TABLE = new Table(GESTURE_TABLE,NUMBER_OF_GESTURES);
+
 	private short currentUpperBodyGesture = NO_GESTURE;
+	// capture time of the update cycle in which the last gesture was recognized, see Skeleton.getTimestamp
+	private long timestampLastBodyGestureRecognized = 0L;
 	private int frameLastBodyGestureRecognized = -9999;
+	private boolean bodyGestureRecognized = false;
 	private float gestureTolerance = 0.5f;
 	private float gestureAngleTolerance = PApplet.radians(20)*gestureTolerance;
+	private float gestureDistanceTolerance = DISTANCE_TOLERANCE*gestureTolerance;
+
+	private Table table;
+	// bounds of the predicates including the tolerance, and the predicates holding in the current update cycle
+	private float[] lowerBound;
+	private float[] upperBound;
+	private long[] predicates;
+	// state per gesture: steps reached, capture time the last step was reached, evaluation the gesture was last looked at
+	private short[] gestureStep;
+	private long[] stepTime;
+	private int[] evaluatedIn;
+	private int evaluation = 0;
+	// started gestures
+	private short[] activeGestures;
+	private int numberOfActiveGestures = 0;
+	private long recognizedGestures = 0L;
 
-	// defining variables for push gesture
-	private final int pushGestureMaxFrames = 30; // max update cycles to perform push gesture
-	public static int pushGestureStartFrame = -9999;
-	
 	private Skeleton skeleton = null;
-	
+
 	public SkeletonGesture (Skeleton _skeleton) {
+		this(_skeleton,TABLE);
+	}
+	// the compiled gesture table, read by the benchmarks
+	static Table table () {
+		return TABLE;
+	}
+	// evaluates the gestures of another table, used by the benchmarks
+	SkeletonGesture (Skeleton _skeleton, Table _table) {
 		skeleton = _skeleton;
+		table = _table;
+		lowerBound = new float[table.predicateRow.length];
+		upperBound = new float[table.predicateRow.length];
+		predicates = new long[table.words];
+		gestureStep = new short[table.numberOfGestures];
+		stepTime = new long[table.numberOfGestures];
+		evaluatedIn = new int[table.numberOfGestures];
+		activeGestures = new short[table.numberOfGestures];
+		calculateBounds();
 	}
-	
+
 
 	/** Setter for the tolerance with which gesture will be detected. 0..1f.
 	 *  @param _gestureTolerance the tolerance between 0..1f. when higher than 1 or lower than 0, default tolerance 0.5f will be set */
@@ -36,6 +140,8 @@ public class SkeletonGesture {
 			gestureTolerance = 0.5f; // default gesture accuracy
 		}
 		gestureAngleTolerance = PApplet.radians(40)*gestureTolerance;
+		gestureDistanceTolerance = DISTANCE_TOLERANCE*gestureTolerance;
+		calculateBounds();
 	}
 	/** Getter for gesture tolerance
 	 *  @return the gesture tolerance */
@@ -43,63 +149,259 @@ public class SkeletonGesture {
 		return gestureTolerance;
 	}
 
-	/** Upper body gesture is evaluated corresponding to the following gestures. 
+	/** Upper body gesture is evaluated corresponding to the following gestures.
 	 *  --------------------------------------------<br>
 	 *  PUSH_GESTURE: A push gesture of the upper body joints is recognized when the hand and elbow joints are pushed forward in a quick movement <br>
+	 *  SWIPE_LEFT_GESTURE, SWIPE_RIGHT_GESTURE: A hand moves across the chest <br>
+	 *  RAISE_ARMS_GESTURE: Both straight arms are raised from hanging down to pointing up <br>
+	 *  CIRCLE_GESTURE: The right hand circles around the right shoulder <br>
+	 *  REACH_GESTURE: The right hand reaches forward <br>
 	 *  --------------------------------------------<br>
-	 *  @param _maxAge the maximum time in the past the last gesture should have been recognized.
-	 *  @return current upper body gesture. short, constants of Skeleton class, NO_GESTURE if no gesture was recognized in the given past update cycles or gesture evaluation is switched off */
+	 *  If several gestures are recognized in an update cycle, the one with the lowest constant is returned, see isGestureRecognized
+	 *  The age of the gesture is measured with the capture times of the frames, see Skeleton.getTimestamp
+	 *  @param _maxAgeMillis the maximum time in milliseconds before the current frame the last gesture should have been recognized. 0 for the current frame only
+	 *  @return current upper body gesture. short, constants of Skeleton class, NO_GESTURE if no gesture was recognized within the given time or gesture evaluation is switched off */
+	public short getLastUpperBodyGestureWithin (long _maxAgeMillis) {
+		// a rewound replay starts earlier than the last recognition
+		long age = skeleton.getTimestamp()-timestampLastBodyGestureRecognized;
+		if (bodyGestureRecognized && age >= 0L && age <= _maxAgeMillis*1000000L)
+			return currentUpperBodyGesture;
+		else
+			return NO_GESTURE;
+	}
+	/** Returns the last upper body gesture if it was recognized in or after the given update cycle. See getLastUpperBodyGestureWithin
+	 *  @param _maxAge the first update cycle in which the last gesture may have been recognized, a frame count passed to evaluate
+	 *  @return current upper body gesture. short, constants of Skeleton class, NO_GESTURE if no gesture was recognized since the given update cycle
+	 *  @deprecated frame counts depend on the frame rate of the sketch, use getLastUpperBodyGestureWithin with capture times */
+	@Deprecated
 	public short getLastUpperBodyGesture (int _maxAge) {
-		if (frameLastBodyGestureRecognized >= _maxAge)
+		if (bodyGestureRecognized && frameLastBodyGestureRecognized >= _maxAge)
 			return currentUpperBodyGesture;
 		else
 			return NO_GESTURE;
 	}
-	
-	/** Evaluate gestures and store results internally. Access recognized gestures using getter-methods. 
-	 *  @param _frameCount The current update cycle of the main applet. Is used to evaluate time critical gestures. 
+	// the gesture recognized in the last update cycle, NO_GESTURE if none. read by SkeletonFrame
+	short recognizedUpperBodyGesture () {
+		return recognizedGestures != 0 ? (short)Long.numberOfTrailingZeros(recognizedGestures) : NO_GESTURE;
+	}
+	/** Returns whether a gesture was recognized in the last update cycle. Several gestures may be recognized at once
+	 *  @param _gesture short corresponding to SkeletonGesture constants
+	 *  @return true if the gesture was recognized */
+	public boolean isGestureRecognized (short _gesture) {
+		return _gesture > NO_GESTURE && _gesture < table.numberOfGestures && (recognizedGestures & (1L<<_gesture)) != 0;
+	}
+	/** Returns the number of gestures whose first steps were performed and that wait for their next step
+	 *  @return number of started gestures */
+	public int getNumberOfActiveGestures () {
+		return numberOfActiveGestures;
+	}
+
+	/** Evaluate gestures and store results internally. Access recognized gestures using getter-methods.
+	 *  Time critical gestures are evaluated with the capture time of the frame, see Skeleton.getTimestamp
+	 *  @param _frameCount The current update cycle of the main applet.
 	 * */
 	public void evaluate (int _frameCount) {
-		if (evaluatePushGesture(_frameCount)) {
-			currentUpperBodyGesture = PUSH_GESTURE;
+		long timestamp = skeleton.getTimestamp();
+		evaluatePredicates(skeleton.features());
+		evaluation++;
+		recognizedGestures = 0L;
+		// started gestures are continued, the others are looked at only when their key predicate holds
+		int active = numberOfActiveGestures;
+		numberOfActiveGestures = 0;
+		for (int a=0; a<active; a++) {
+			evaluateGesture(activeGestures[a],timestamp);
+		}
+		int[] keyStart = table.keyStart;
+		short[] keyGestures = table.keyGestures;
+		for (int w=0; w<table.words; w++) {
+			long bits = predicates[w];
+			while (bits != 0) {
+				int p = w*64+Long.numberOfTrailingZeros(bits);
+				bits &= bits-1;
+				for (int k=keyStart[p]; k<keyStart[p+1]; k++) {
+					if (evaluatedIn[keyGestures[k]] != evaluation) evaluateGesture(keyGestures[k],timestamp);
+				}
+			}
+		}
+		if (recognizedGestures != 0) {
+			currentUpperBodyGesture = (short)Long.numberOfTrailingZeros(recognizedGestures);
+			timestampLastBodyGestureRecognized = timestamp;
 			frameLastBodyGestureRecognized = _frameCount;
-		} 
+			bodyGestureRecognized = true;
+		}
 	}
-	
+
+	// recognized gestures of the last update cycle, bit g set for gesture g. read by SkeletonEvents
+	long recognizedGestures () {
+		return recognizedGestures;
+	}
+
 	// helper functions
-	private boolean evaluatePushGesture (int _frameCount) {
-		// push gesture is found when a movement of the hands parallel to the body z-axis has occured and the end pose is reached. 
-		// The end pose is recognized when upper and lower arms form a straight line parallel to body z-axis. 
-		PVector rHandShoulder = PVector.sub(skeleton.getJointLCS(Skeleton.RIGHT_SHOULDER),skeleton.getJointLCS(Skeleton.RIGHT_HAND));
-		PVector lHandShoulder = PVector.sub(skeleton.getJointLCS(Skeleton.LEFT_SHOULDER),skeleton.getJointLCS(Skeleton.LEFT_HAND));
-		float angleRtoBodyZ = PVector.angleBetween(rHandShoulder, skeleton.getOrientationZ());
-		float angleLtoBodyZ = PVector.angleBetween(lHandShoulder, skeleton.getOrientationZ());
-		if (SkeletonMath.isValueBetween(angleRtoBodyZ,0,PApplet.radians(30)+gestureAngleTolerance) && SkeletonMath.isValueBetween(angleLtoBodyZ,0,PApplet.radians(30)+gestureAngleTolerance)) {
-			float handShoulderDistanceStartPose = 200f+200f*gestureTolerance;
-			if (rHandShoulder.mag() <= handShoulderDistanceStartPose && lHandShoulder.mag() <= handShoulderDistanceStartPose) {
-				// start pose recognized
-				pushGestureStartFrame = _frameCount;
+	private void evaluatePredicates (float[] _features) {
+		int[] predicateFeature = table.predicateFeature;
+		for (int w=0; w<predicates.length; w++) predicates[w] = 0L;
+		for (int p=0; p<predicateFeature.length; p++) {
+			float feature = _features[predicateFeature[p]];
+			if (feature >= lowerBound[p] && feature <= upperBound[p]) predicates[p>>6] |= 1L<<p;
+		}
+	}
+	// advances the steps of one gesture. the last step is awaited again after it was recognized, so the gesture is recognized while its end pose holds in time
+	private void evaluateGesture (short _gesture, long _timestamp) {
+		evaluatedIn[_gesture] = evaluation;
+		int first = table.gestureStart[_gesture];
+		int last = table.gestureStart[_gesture+1]-1;
+		int step = gestureStep[_gesture];
+		// the awaited step is missed if a hold condition fails or it is not reached in time
+		if (step > 0 && (!holds(table.stepHoldMask,first+step) || _timestamp-stepTime[_gesture] > table.stepMaxTime[first+step])) step = 0;
+		int reached = advance(_gesture,first,last,step,_timestamp);
+		if (reached == step && holds(table.stepMask,first)) {
+			// the first step (re)starts the gesture unless a later step was reached
+			if (first == last) {
+				recognizedGestures |= 1L<<_gesture;
+			} else {
+				stepTime[_gesture] = _timestamp;
+				reached = advance(_gesture,first,last,1,_timestamp);
+			}
+		}
+		gestureStep[_gesture] = (short)reached;
+		if (reached > 0) activeGestures[numberOfActiveGestures++] = _gesture;
+	}
+	// reaches the awaited steps that hold, several steps may be reached in one update cycle
+	private int advance (short _gesture, int _first, int _last, int _step, long _timestamp) {
+		while (_step > 0 && holds(table.stepMask,_first+_step)) {
+			if (_first+_step == _last) {
+				recognizedGestures |= 1L<<_gesture;
+				break;
+			}
+			_step++;
+			stepTime[_gesture] = _timestamp;
+		}
+		return _step;
+	}
+	private boolean holds (long[] _masks, int _step) {
+		int words = predicates.length;
+		for (int w=0; w<words; w++) {
+			long mask = _masks[_step*words+w];
+			if ((predicates[w] & mask) != mask) return false;
+		}
+		return true;
+	}
+	// bounds of the predicates including the current tolerance, calculated when the tolerance changes instead of every frame
+	private void calculateBounds () {
+		for (int p=0; p<table.predicateRow.length; p++) {
+			float[] condition = table.conditions[table.predicateRow[p]];
+			if (SkeletonFeatures.isDistance((short)table.predicateFeature[p])) {
+				lowerBound[p] = condition[5] != 0 ? condition[3]-gestureDistanceTolerance : condition[3];
+				upperBound[p] = condition[6] != 0 ? condition[4]+gestureDistanceTolerance : condition[4];
+			} else {
+				lowerBound[p] = condition[5] != 0 ? PApplet.radians(condition[3])-gestureAngleTolerance : PApplet.radians(condition[3]);
+				upperBound[p] = condition[6] != 0 ? PApplet.radians(condition[4])+gestureAngleTolerance : PApplet.radians(condition[4]);
+			}
+		}
+	}
+
+	// gesture table compiled to flat arrays. the conditions are merged to distinct predicates, a step is a bitset of predicates.
+	// the steps of gesture g are gestureStart[g]..gestureStart[g+1]-1, the words of step s in the bitsets are s*words..s*words+words-1. immutable
+	static class Table {
+		private final float[][] conditions;
+		private final int numberOfGestures;
+		private final int[] predicateRow;
+		private final int[] predicateFeature;
+		private final int words;
+		private final int[] gestureStart;
+		private final long[] stepMask;
+		private final long[] stepHoldMask;
+		private final long[] stepMaxTime;
+		// gestures that have not started, indexed by one predicate of their first step: the gestures of predicate p are keyGestures[keyStart[p]..keyStart[p+1]-1]
+		private final int[] keyStart;
+		private final short[] keyGestures;
+
+		// merges equal conditions of the table to predicates and builds the step bitsets and the index of first steps.
+		// the conditions are in the format of GESTURE_TABLE, with at most 64 gestures including NO_GESTURE
+		Table (float[][] _conditions, int _numberOfGestures) {
+			conditions = _conditions;
+			numberOfGestures = _numberOfGestures;
+			int[] conditionPredicate = new int[conditions.length];
+			int[] rows = new int[conditions.length];
+			int numberOfPredicates = 0;
+			int numberOfSteps = 0;
+			for (int c=0; c<conditions.length; c++) {
+				float[] condition = conditions[c];
+				if (c == 0 || condition[0] != conditions[c-1][0] || condition[1] != conditions[c-1][1]) numberOfSteps++;
+				int p = 0;
+				while (p < numberOfPredicates && !samePredicate(conditions[rows[p]],condition)) p++;
+				if (p == numberOfPredicates) rows[numberOfPredicates++] = c;
+				conditionPredicate[c] = p;
+			}
+			predicateRow = new int[numberOfPredicates];
+			predicateFeature = new int[numberOfPredicates];
+			for (int p=0; p<numberOfPredicates; p++) {
+				predicateRow[p] = rows[p];
+				predicateFeature[p] = (int)conditions[rows[p]][2];
 			}
-			if (_frameCount-pushGestureStartFrame <= pushGestureMaxFrames) {
-				float angleRightArm = PVector.angleBetween(skeleton.getRightUpperArmLCS(),skeleton.getRightLowerArmLCS());
-				float angleLeftArm = PVector.angleBetween(skeleton.getLeftUpperArmLCS(),skeleton.getLeftLowerArmLCS());
-				if (SkeletonMath.isValueBetween(angleRightArm,0,PApplet.radians(30)+gestureAngleTolerance) && SkeletonMath.isValueBetween(angleLeftArm,0,PApplet.radians(30)+gestureAngleTolerance)) {
-					// arms form a straight line
-					float angleRightArmToBodyZ = PVector.angleBetween(skeleton.getRightUpperArmLCS(),skeleton.getOrientationZ());
-					float angleLeftArmToBodyZ = PVector.angleBetween(skeleton.getLeftUpperArmLCS(),skeleton.getOrientationZ());
-					if (SkeletonMath.isValueBetween(angleRightArmToBodyZ,PApplet.radians(150)-gestureAngleTolerance,PApplet.radians(180)) && SkeletonMath.isValueBetween(angleLeftArmToBodyZ,PApplet.radians(150)-gestureAngleTolerance,PApplet.radians(180))) {
-						// arms are parallel to body z axis: end pose recognized
-						return true;
+			words = (numberOfPredicates+63)/64;
+			gestureStart = new int[numberOfGestures+1];
+			stepMask = new long[numberOfSteps*words];
+			stepHoldMask = new long[numberOfSteps*words];
+			stepMaxTime = new long[numberOfSteps];
+			boolean[] hasConditions = new boolean[numberOfGestures];
+			int step = -1;
+			for (int c=0; c<conditions.length; c++) {
+				float[] condition = conditions[c];
+				if (c == 0 || condition[0] != conditions[c-1][0] || condition[1] != conditions[c-1][1]) {
+					step++;
+					if (condition[1] == 0) {
+						gestureStart[(int)condition[0]] = step;
+						hasConditions[(int)condition[0]] = true;
 					}
+					stepMaxTime[step] = (long)condition[7]*1000000L;
 				}
-			} else {
-				// didn't recognize end pose within max cycles
-				pushGestureStartFrame = -9999;
+				int p = conditionPredicate[c];
+				stepMask[step*words+(p>>6)] |= 1L<<p;
+				if (condition[8] != 0) stepHoldMask[step*words+(p>>6)] |= 1L<<p;
 			}
-		} else {
-			// the movement needs to be parallel to z axis all the time
-			pushGestureStartFrame = -9999;
+			// gestures without conditions have no steps
+			gestureStart[numberOfGestures] = numberOfSteps;
+			for (int g=numberOfGestures-1; g>=NO_GESTURE; g--) {
+				if (!hasConditions[g]) gestureStart[g] = gestureStart[g+1];
+			}
+			// key of a gesture: the predicate of its first step that the fewest first steps share
+			int[] usage = new int[numberOfPredicates];
+			for (int g=NO_GESTURE+1; g<numberOfGestures; g++) {
+				for (int p=0; p<numberOfPredicates && gestureStart[g] < gestureStart[g+1]; p++) {
+					if ((stepMask[gestureStart[g]*words+(p>>6)] & 1L<<p) != 0) usage[p]++;
+				}
+			}
+			int[] key = new int[numberOfGestures];
+			keyStart = new int[numberOfPredicates+1];
+			for (int g=NO_GESTURE+1; g<numberOfGestures; g++) {
+				key[g] = -1;
+				for (int p=0; p<numberOfPredicates && gestureStart[g] < gestureStart[g+1]; p++) {
+					if ((stepMask[gestureStart[g]*words+(p>>6)] & 1L<<p) != 0 && (key[g] < 0 || usage[p] < usage[key[g]])) key[g] = p;
+				}
+				if (key[g] >= 0) keyStart[key[g]+1]++;
+			}
+			for (int p=0; p<numberOfPredicates; p++) keyStart[p+1] += keyStart[p];
+			keyGestures = new short[keyStart[numberOfPredicates]];
+			int[] fill = new int[numberOfPredicates];
+			for (int g=NO_GESTURE+1; g<numberOfGestures; g++) {
+				if (key[g] >= 0) keyGestures[keyStart[key[g]]+fill[key[g]]++] = (short)g;
+			}
+		}
+
+		// the conditions the table was compiled from. must not be changed
+		float[][] conditions () {
+			return conditions;
+		}
+		int getNumberOfGestures () {
+			return numberOfGestures;
+		}
+
+		private static boolean samePredicate (float[] _a, float[] _b) {
+			for (int i=2; i<7; i++) {
+				if (_a[i] != _b[i]) return false;
+			}
+			return true;
 		}
-		return false;
 	}
 }
@@ -0,0 +1,307 @@
+package therapeuticskeleton;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import SimpleOpenNI.SimpleOpenNI;
+
+/** SkeletonManager owns the skeletons of all tracked users of a joint source.
+ *  In every update cycle it creates skeletons for new users, retires skeletons of lost users and updates all skeletons in parallel on a fixed pool of worker threads.
+ *  update returns when all skeletons are updated, so the skeletons form a consistent set of frames until the next call to update.
+ *  The setup variables of the manager are applied to new skeletons. Skeletons can be set up individually after creation, e.g. in SkeletonManagerListener.skeletonAdded. */
+public class SkeletonManager {
+
+	/** The maximum number of users handled by a SkeletonManager */
+	public static final int MAX_USERS = 16;
+
+	private JointSource jointSource;
+	private SkeletonManagerListener listener = null;
+	private ExecutorService executor = null;
+	private int numberOfThreads;
+
+	// skeletons of tracked users, the first numberOfSkeletons entries are valid
+	private Skeleton[] skeletons = new Skeleton[MAX_USERS];
+	private int numberOfSkeletons = 0;
+	// preallocated buffers and update tasks, one per skeleton slot
+	private int[] trackedUsers = new int[MAX_USERS];
+	private UpdateTask[] tasks = new UpdateTask[MAX_USERS];
+	// number of tasks the workers have not finished yet, the last one unparks the thread calling update
+	private final AtomicInteger pendingTasks = new AtomicInteger(0);
+
+	// setup variables for new skeletons
+	private int jointMask = Skeleton.JOINT_MASK_ALL;
+	private short mirrorTherapy = Skeleton.MIRROR_THERAPY_OFF;
+	private short mirroredLimbs = Skeleton.MIRRORED_ARMS;
+	private boolean evaluatePostureAndGesture = false;
+	private boolean evaluateStatistics = false;
+	// custom postures of all skeletons
+	private PostureLibrary postureLibrary = null;
+
+	/** Constructor for the SkeletonManager. Uses as many worker threads as processors are available.
+	 *  @param _kinect Handle to the SimpleOpenNI object.
+	 *  @param _fullBodyTracking switches full body tracking on/off for new skeletons. */
+	public SkeletonManager (SimpleOpenNI _kinect, boolean _fullBodyTracking) {
+		this(new SimpleOpenNIJointSource(_kinect),_fullBodyTracking,Runtime.getRuntime().availableProcessors());
+	}
+	/** Constructor for the SkeletonManager.
+	 *  @param _jointSource the source of joint information shared by all skeletons. Must allow concurrent calls to fetchJoints for different users.
+	 *  @param _fullBodyTracking switches full body tracking on/off for new skeletons.
+	 *  @param _numberOfThreads the number of threads skeletons are updated on, including the thread calling update. 1 updates all skeletons sequentially */
+	public SkeletonManager (JointSource _jointSource, boolean _fullBodyTracking, int _numberOfThreads) {
+		jointSource = _jointSource;
+		setFullBodyTracking(_fullBodyTracking);
+		numberOfThreads = Math.max(1,_numberOfThreads);
+		for (int i=0; i<MAX_USERS; i++) {
+			tasks[i] = new UpdateTask(pendingTasks);
+		}
+		if (numberOfThreads > 1) {
+			executor = Executors.newFixedThreadPool(numberOfThreads-1,new ThreadFactory() {
+				private int threadCount = 0;
+				public Thread newThread (Runnable _runnable) {
+					Thread thread = new Thread(_runnable,"SkeletonManager-"+(++threadCount));
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+	}
+
+	/** Update method. Call it once per frame. Creates and retires skeletons according to the tracked users of the joint source and updates all skeletons in parallel.
+	 *  Returns when all skeletons are updated, also if the calling thread is interrupted meanwhile. The interrupt status is kept.
+	 *  @param _frameCount the current frame of PApplet, used for statistics
+	 *  @param _frameRate the current frame rate of PApplet, used for statistics */
+	public void update (int _frameCount, float _frameRate) {
+		updateUsers();
+		if (numberOfSkeletons == 0) return;
+
+		for (int i=0; i<numberOfSkeletons; i++) {
+			tasks[i].prepare(skeletons[i],_frameCount,_frameRate);
+		}
+		if (executor == null || numberOfSkeletons == 1) {
+			for (int i=0; i<numberOfSkeletons; i++) {
+				tasks[i].run();
+			}
+		} else {
+			// the calling thread updates the first skeleton itself, the others are handed to the workers
+			Thread caller = Thread.currentThread();
+			pendingTasks.set(numberOfSkeletons-1);
+			for (int i=1; i<numberOfSkeletons; i++) {
+				tasks[i].caller = caller;
+				try {
+					executor.execute(tasks[i]);
+				} catch (RejectedExecutionException e) {
+					// the workers were shut down meanwhile
+					tasks[i].run();
+				}
+			}
+			tasks[0].run();
+			// tasks must not be reused while workers still run them, so an interrupt does not end the wait. it is passed on afterwards
+			boolean interrupted = false;
+			while (pendingTasks.get() != 0) {
+				LockSupport.park(this);
+				if (Thread.interrupted()) interrupted = true;
+			}
+			if (interrupted) caller.interrupt();
+		}
+		for (int i=0; i<numberOfSkeletons; i++) {
+			if (tasks[i].failure != null) {
+				throw new RuntimeException("update of skeleton of user "+skeletons[i].getUserId()+" failed",tasks[i].failure);
+			}
+		}
+	}
+
+	/** Stops the worker threads. The manager can still be updated afterwards, skeletons are then updated sequentially. */
+	public void shutdown () {
+		if (executor != null) {
+			executor.shutdown();
+			executor = null;
+		}
+	}
+
+	// -----------------------------------------------------------------
+	// ACCESS TO SKELETONS
+	/** Getter for the number of currently tracked skeletons.
+	 *  @return the number of skeletons */
+	public int getNumberOfSkeletons () {
+		return numberOfSkeletons;
+	}
+	/** Getter for a skeleton by index. The order of skeletons may change when users are added or lost.
+	 *  @param _index the index of the skeleton, 0..getNumberOfSkeletons()-1
+	 *  @return the skeleton, null if the index is out of range */
+	public Skeleton getSkeleton (int _index) {
+		if (_index >= 0 && _index < numberOfSkeletons)
+			return skeletons[_index];
+		else
+			return null;
+	}
+	/** Getter for the skeleton of a certain user.
+	 *  @param _userId the user ID of the skeleton
+	 *  @return the skeleton of the user, null if the user is not tracked */
+	public Skeleton getSkeletonByUserId (int _userId) {
+		for (int i=0; i<numberOfSkeletons; i++) {
+			if (skeletons[i].getUserId() == _userId) return skeletons[i];
+		}
+		return null;
+	}
+	/** Getter for the joint source shared by all skeletons.
+	 *  @return the joint source */
+	public JointSource getJointSource () {
+		return jointSource;
+	}
+	/** Getter for the number of threads skeletons are updated on.
+	 *  @return the number of threads, including the thread calling update */
+	public int getNumberOfThreads () {
+		return executor != null ? numberOfThreads : 1;
+	}
+
+	// -----------------------------------------------------------------
+	// GETTERS AND SETTERS FOR SETUP VARIABLES
+	/** Setter for the listener that is notified about new and retired skeletons.
+	 *  @param _listener the listener, null to remove the listener */
+	public void setListener (SkeletonManagerListener _listener) {
+		listener = _listener;
+	}
+	/** Setter for full body tracking of new skeletons. See Skeleton.setFullBodyTracking
+	 *  @param _fullBodyTracking switch full body tracking on/off */
+	public void setFullBodyTracking (boolean _fullBodyTracking) {
+		jointMask = _fullBodyTracking ? Skeleton.JOINT_MASK_ALL : Skeleton.JOINT_MASK_UPPER_BODY;
+	}
+	/** Getter for full body tracking of new skeletons.
+	 *  @return true if leg joints are in the joint mask of new skeletons */
+	public boolean getFullBodyTracking () {
+		return (jointMask & ~Skeleton.JOINT_MASK_UPPER_BODY) != 0;
+	}
+	/** Setter for the joint mask of new skeletons. See Skeleton.setJointMask
+	 *  @param _jointMask the joints the application reads, bit i set for the joint with Skeleton constant i */
+	public void setJointMask (int _jointMask) {
+		jointMask = _jointMask & Skeleton.JOINT_MASK_ALL;
+	}
+	/** Getter for the joint mask of new skeletons.
+	 *  @return the joint mask */
+	public int getJointMask () {
+		return jointMask;
+	}
+	/** Setter for the mirror therapy modus of new skeletons. See Skeleton.setMirrorTherapy
+	 *  @param _mirrorTherapy short corresponding to Skeleton constants */
+	public void setMirrorTherapy (short _mirrorTherapy) {
+		mirrorTherapy = _mirrorTherapy;
+	}
+	/** Getter for the mirror therapy modus of new skeletons.
+	 *  @return short mirror therapy modus corresponding to Skeleton constants */
+	public short getMirrorTherapy () {
+		return mirrorTherapy;
+	}
+	/** Setter for the limbs mirrored in mirror therapy of new skeletons. See Skeleton.setMirroredLimbs
+	 *  @param _mirroredLimbs MIRRORED_ARMS, MIRRORED_LEGS or MIRRORED_ARMS_AND_LEGS of Skeleton */
+	public void setMirroredLimbs (short _mirroredLimbs) {
+		mirroredLimbs = _mirroredLimbs;
+	}
+	/** Getter for the limbs mirrored in mirror therapy of new skeletons.
+	 *  @return short corresponding to Skeleton constants */
+	public short getMirroredLimbs () {
+		return mirroredLimbs;
+	}
+	/** Setter for evaluating posture and gesture of new skeletons. See Skeleton.setEvaluatePostureAndGesture
+	 *  @param _evaluatePostureAndGesture switch to set evaluating posture and gesture on/off */
+	public void setEvaluatePostureAndGesture (boolean _evaluatePostureAndGesture) {
+		evaluatePostureAndGesture = _evaluatePostureAndGesture;
+	}
+	/** Getter for evaluating posture and gesture of new skeletons.
+	 *  @return boolean of evaluatePostureAndGesture-switch */
+	public boolean getEvaluatePostureAndGesture () {
+		return evaluatePostureAndGesture;
+	}
+	/** Setter for the library of custom postures, shared by all skeletons. The skeletons reload the library when its file changes. See Skeleton.setPostureLibrary
+	 *  @param _postureLibrary the posture library, null to evaluate no custom postures */
+	public void setPostureLibrary (PostureLibrary _postureLibrary) {
+		postureLibrary = _postureLibrary;
+		for (int i=0; i<numberOfSkeletons; i++) {
+			skeletons[i].setPostureLibrary(postureLibrary);
+		}
+	}
+	/** Getter for the library of custom postures
+	 *  @return the posture library or null */
+	public PostureLibrary getPostureLibrary () {
+		return postureLibrary;
+	}
+	/** Setter for evaluating statistics of new skeletons. Statistics are not logged. See Skeleton.setEvaluateStatistics
+	 *  @param _evaluateStatistics switch to set evaluating statistics on/off */
+	public void setEvaluateStatistics (boolean _evaluateStatistics) {
+		evaluateStatistics = _evaluateStatistics;
+	}
+	/** Getter for evaluating statistics of new skeletons.
+	 *  @return boolean of evaluateStatistics-switch */
+	public boolean getEvaluateStatistics () {
+		return evaluateStatistics;
+	}
+
+	// -----------------------------------------------------------------
+	// PRIVATE HELPER METHODS
+	private void updateUsers () {
+		int numberOfTrackedUsers = jointSource.getTrackedUsers(trackedUsers);
+		// retire skeletons of lost users, keep the array compact
+		for (int i=numberOfSkeletons-1; i>=0; i--) {
+			if (!isTracked(skeletons[i].getUserId(),numberOfTrackedUsers)) {
+				Skeleton retired = skeletons[i];
+				skeletons[i] = skeletons[numberOfSkeletons-1];
+				skeletons[numberOfSkeletons-1] = null;
+				numberOfSkeletons--;
+				if (listener != null) listener.skeletonRetired(retired);
+			}
+		}
+		// create skeletons for new users
+		for (int i=0; i<numberOfTrackedUsers; i++) {
+			if (getSkeletonByUserId(trackedUsers[i]) == null && numberOfSkeletons < MAX_USERS) {
+				Skeleton skeleton = new Skeleton(jointSource,trackedUsers[i],jointMask);
+				skeleton.setMirrorTherapy(mirrorTherapy);
+				skeleton.setMirroredLimbs(mirroredLimbs);
+				skeleton.setEvaluatePostureAndGesture(evaluatePostureAndGesture);
+				skeleton.setPostureLibrary(postureLibrary);
+				skeleton.setEvaluateStatistics(evaluateStatistics,null);
+				skeletons[numberOfSkeletons++] = skeleton;
+				if (listener != null) listener.skeletonAdded(skeleton);
+			}
+		}
+	}
+	private boolean isTracked (int _userId, int _numberOfTrackedUsers) {
+		for (int i=0; i<_numberOfTrackedUsers; i++) {
+			if (trackedUsers[i] == _userId) return true;
+		}
+		return false;
+	}
+
+	// updates one skeleton, reused every frame
+	private static class UpdateTask implements Runnable {
+		private final AtomicInteger pendingTasks;
+		private Skeleton skeleton;
+		private int frameCount;
+		private float frameRate;
+		private Thread caller = null;
+		private Throwable failure = null;
+
+		private UpdateTask (AtomicInteger _pendingTasks) {
+			pendingTasks = _pendingTasks;
+		}
+		private void prepare (Skeleton _skeleton, int _frameCount, float _frameRate) {
+			skeleton = _skeleton;
+			frameCount = _frameCount;
+			frameRate = _frameRate;
+			caller = null;
+			failure = null;
+		}
+		public void run () {
+			try {
+				skeleton.update(frameCount,frameRate);
+			} catch (Throwable t) {
+				failure = t;
+			} finally {
+				// tasks run by the calling thread itself are not counted
+				if (caller != null && pendingTasks.decrementAndGet() == 0) LockSupport.unpark(caller);
+			}
+		}
+	}
+}
@@ -0,0 +1,14 @@
+package therapeuticskeleton;
+
+/** Receives notifications from a SkeletonManager when skeletons are created for new users or retired for lost users.
+ *  Notifications are delivered on the thread calling SkeletonManager.update, before the skeletons are updated. */
+public interface SkeletonManagerListener {
+
+	/** A user's skeleton started being tracked and a new Skeleton was created for it. Use it to set up the skeleton, e.g. start statistics logging.
+	 *  @param _skeleton the new skeleton */
+	public void skeletonAdded (Skeleton _skeleton);
+
+	/** A user's skeleton is not tracked anymore and its Skeleton was retired. It will not be updated anymore.
+	 *  @param _skeleton the retired skeleton */
+	public void skeletonRetired (Skeleton _skeleton);
+}
@@ -8,10 +8,19 @@ public class SkeletonMath {
 	private Skeleton skeleton = null;
 	
 	// local coordination system of skeleton
-	private PVector origin;
-	private PVector orientationX, orientationY, orientationZ;
-	private PMatrix3D transformCoordSys;
-	private PMatrix3D transformCoordSysInv;
+	private PVector origin = new PVector();
+	private PVector orientationX = new PVector();
+	private PVector orientationY = new PVector();
+	private PVector orientationZ = new PVector();
+	private PMatrix3D transformCoordSys = new PMatrix3D();
+	private PMatrix3D transformCoordSysInv = new PMatrix3D();
+	
+	// scratch objects, reused every update to keep the update cycle free of allocations
+	private PVector leftShoulder = new PVector();
+	private PVector crossPoint = new PVector();
+	
+	// reflection at the sagittal plane as affine matrix: p' = H*p+2*d*n0 with H = I-2*n0*n0'. built once per frame with the body planes
+	private PMatrix3D mirrorReflection = new PMatrix3D();
 
 	// body planes in Hesse Normal Form, HNF: r*n0-d=0
 	private BodyPlaneHNF sagittal = new BodyPlaneHNF(); // sagittal plane is mirror plane
@@ -44,6 +53,9 @@ public class SkeletonMath {
 	public BodyPlaneHNF getTransversalPlane() {
 		return transversal;
 	}
+	public PMatrix3D getMirrorReflection() {
+		return mirrorReflection;
+	}
 	
 	// evaluate local coord sys
 	// origin: torso
@@ -51,11 +63,13 @@ public class SkeletonMath {
 	// +x-axis==left_shoulder -> right_shoulder
 	// -y-axis==orthogonal on +x and pointing to torso
 	// +z-axis==cross product of x and y
-	public void calculateLocalCoordSys () {
-		origin = skeleton.getJoint(Skeleton.TORSO);
+	public void calculateLocalCoordSys (float[] _joints) {
+		leftShoulder.set(_joints[Skeleton.LEFT_SHOULDER*3],_joints[Skeleton.LEFT_SHOULDER*3+1],_joints[Skeleton.LEFT_SHOULDER*3+2]);
+		origin.set(_joints[Skeleton.TORSO*3],_joints[Skeleton.TORSO*3+1],_joints[Skeleton.TORSO*3+2]);
 		// *** calculating local coordSys
 		// +x-axis==left_shoulder -> right_shoulder, 
-		orientationX = PVector.sub(skeleton.getJoint(Skeleton.RIGHT_SHOULDER),skeleton.getJoint(Skeleton.LEFT_SHOULDER));
+		orientationX.set(_joints[Skeleton.RIGHT_SHOULDER*3],_joints[Skeleton.RIGHT_SHOULDER*3+1],_joints[Skeleton.RIGHT_SHOULDER*3+2]);
+		orientationX.sub(leftShoulder);
 		// +y==orthogonal to +x-axis, pointing from torso to x-axis. 
 		// task: find point on orientationX
 		// - the plane that contains torso and has orientationX as normal vector is defined as: 
@@ -65,23 +79,27 @@ public class SkeletonMath {
 		// - use lambda in straight line equation to get crosspoint
 		// - +y is crosspoint-torso
 		float lambda = origin.dot(orientationX);
-		lambda -= orientationX.dot(skeleton.getJoint(Skeleton.LEFT_SHOULDER)); 
+		lambda -= orientationX.dot(leftShoulder); 
 		lambda /= orientationX.dot(orientationX);
-		PVector crossPoint = PVector.add(skeleton.getJoint(Skeleton.LEFT_SHOULDER),PVector.mult(orientationX,lambda));
-		orientationY = PVector.sub(crossPoint,origin);
+		PVector.mult(orientationX,lambda,crossPoint);
+		crossPoint.add(leftShoulder);
+		PVector.sub(crossPoint,origin,orientationY);
 		// =z-axis is cross product of y and x axis
-		orientationZ = orientationX.cross(orientationY);
+		orientationX.cross(orientationY,orientationZ);
 		
 		orientationX.normalize();
 		orientationY.normalize();
 		orientationZ.normalize();
 		
-		transformCoordSys = new PMatrix3D (orientationX.x,orientationY.x,orientationZ.x,origin.x,
-										   orientationX.y,orientationY.y,orientationZ.y,origin.y,
-										   orientationX.z,orientationY.z,orientationZ.z,origin.z,
-										   0f,0f,0f,1f);
-		transformCoordSysInv = new PMatrix3D(transformCoordSys);
-		transformCoordSysInv.invert();
+		transformCoordSys.set(orientationX.x,orientationY.x,orientationZ.x,origin.x,
+							  orientationX.y,orientationY.y,orientationZ.y,origin.y,
+							  orientationX.z,orientationY.z,orientationZ.z,origin.z,
+							  0f,0f,0f,1f);
+		// the axes are orthonormal, so the inverse is the transposed rotation and the rotated negative origin
+		transformCoordSysInv.set(orientationX.x,orientationX.y,orientationX.z,-orientationX.dot(origin),
+								 orientationY.x,orientationY.y,orientationY.z,-orientationY.dot(origin),
+								 orientationZ.x,orientationZ.y,orientationZ.z,-orientationZ.dot(origin),
+								 0f,0f,0f,1f);
 	}
 	// transform joint coordinates to local coordsys. 
 	public PVector getJointLCS (PVector globalVector) {
@@ -89,6 +107,20 @@ public class SkeletonMath {
 			transformCoordSysInv.mult(globalVector,localVector);
 			return localVector;
 	}
+	// transform all joints of jointMask of an xyz interleaved joint array to local coordsys in one pass. does not allocate.
+	public void getJointsLCS (float[] globalJoints, float[] localJoints, int jointMask) {
+			PMatrix3D m = transformCoordSysInv;
+			float m00 = m.m00, m01 = m.m01, m02 = m.m02, m03 = m.m03;
+			float m10 = m.m10, m11 = m.m11, m12 = m.m12, m13 = m.m13;
+			float m20 = m.m20, m21 = m.m21, m22 = m.m22, m23 = m.m23;
+			for (int j=0, i=0; j<Skeleton.NUMBER_OF_JOINTS; j++, i+=3) {
+				if ((jointMask & (1<<j)) == 0) continue;
+				float x = globalJoints[i], y = globalJoints[i+1], z = globalJoints[i+2];
+				localJoints[i] = m00*x + m01*y + m02*z + m03;
+				localJoints[i+1] = m10*x + m11*y + m12*z + m13;
+				localJoints[i+2] = m20*x + m21*y + m22*z + m23;
+			}
+	}
 	
 	// MIRROR THERAPY CAPABILITY
 	// calculate body planes in HNF, Sagittal body plane is mirror plane
@@ -102,6 +134,13 @@ public class SkeletonMath {
 		frontal.d = PVector.dot(frontal.r,frontal.n0);
 		sagittal.d = PVector.dot(sagittal.r,sagittal.n0);
 		transversal.d = PVector.dot(transversal.r,transversal.n0);
+		
+		// reflection at the sagittal plane
+		float nx = sagittal.n0.x, ny = sagittal.n0.y, nz = sagittal.n0.z, d2 = 2f*sagittal.d;
+		mirrorReflection.set(1f-2f*nx*nx,-2f*nx*ny,-2f*nx*nz,d2*nx,
+							 -2f*ny*nx,1f-2f*ny*ny,-2f*ny*nz,d2*ny,
+							 -2f*nz*nx,-2f*nz*ny,1f-2f*nz*nz,d2*nz,
+							 0f,0f,0f,1f);
 		/* OLD CALCULATION. IS REDUNDANT SINCE LCS HOLDS THE SAME INFORMATION
 		// calculate frontal body plane defined by Shoulder and Torso points in HNF
 		// HNF: r*n0-d = 0
@@ -131,28 +170,70 @@ public class SkeletonMath {
 	
 	// mirror joint
 	public PVector mirrorJointVector (PVector mirrorJoint) {
-		float distanceToMP = PVector.dot(mirrorJoint,sagittal.n0) - sagittal.d;
-		return PVector.add(mirrorJoint,PVector.mult(sagittal.n0,-2*distanceToMP));
+		PMatrix3D m = mirrorReflection;
+		float x = mirrorJoint.x, y = mirrorJoint.y, z = mirrorJoint.z;
+		return new PVector(m.m00*x + m.m01*y + m.m02*z + m.m03,
+						   m.m10*x + m.m11*y + m.m12*z + m.m13,
+						   m.m20*x + m.m21*y + m.m22*z + m.m23);
+	}
+	
+	// mirror joints of an xyz interleaved joint array onto their counterparts in one pass: from[k] is mirrored onto to[k], if to[k] is in targetMask. does not allocate
+	public void mirrorJoints (float[] joints, short[] from, short[] to, int targetMask) {
+		PMatrix3D m = mirrorReflection;
+		float m00 = m.m00, m01 = m.m01, m02 = m.m02, m03 = m.m03;
+		float m10 = m.m10, m11 = m.m11, m12 = m.m12, m13 = m.m13;
+		float m20 = m.m20, m21 = m.m21, m22 = m.m22, m23 = m.m23;
+		for (int k=0; k<to.length; k++) {
+			if ((targetMask & (1<<to[k])) == 0) continue;
+			int i = from[k]*3;
+			int j = to[k]*3;
+			float x = joints[i], y = joints[i+1], z = joints[i+2];
+			joints[j] = m00*x + m01*y + m02*z + m03;
+			joints[j+1] = m10*x + m11*y + m12*z + m13;
+			joints[j+2] = m20*x + m21*y + m22*z + m23;
+		}
 	}
 	
 	// mirror joint orientation
 	public PMatrix3D mirrorOrientationMatrix (PMatrix3D mirrorMatrix) {
-		PVector x = new PVector(mirrorMatrix.m00,mirrorMatrix.m10,mirrorMatrix.m20);
-		PVector y = new PVector(mirrorMatrix.m01,mirrorMatrix.m11,mirrorMatrix.m21);
-		PVector z = new PVector(mirrorMatrix.m02,mirrorMatrix.m12,mirrorMatrix.m22);
-		x.add(sagittal.r);
-		y.add(sagittal.r);
-		z.add(sagittal.r);
-		float distanceToMP = PVector.dot(x,sagittal.n0) - sagittal.d;
-		x.set(PVector.add(x,PVector.mult(sagittal.n0,-2*distanceToMP)));
-		distanceToMP = PVector.dot(y,sagittal.n0) - sagittal.d;
-		y.set(PVector.add(y,PVector.mult(sagittal.n0,-2*distanceToMP)));
-		distanceToMP = PVector.dot(z,sagittal.n0) - sagittal.d;
-		z.set(PVector.add(z,PVector.mult(sagittal.n0,-2*distanceToMP)));
-		x.sub(sagittal.r);
-		y.sub(sagittal.r);
-		z.sub(sagittal.r);
-		return new PMatrix3D(-x.x,y.x,z.x,mirrorMatrix.m03,-x.y,y.y,z.y,mirrorMatrix.m13,-x.z,y.z,z.z,mirrorMatrix.m23,mirrorMatrix.m30,mirrorMatrix.m31,mirrorMatrix.m32,mirrorMatrix.m33);		
+		PMatrix3D mirroredMatrix = new PMatrix3D();
+		mirrorOrientationMatrix(mirrorMatrix,mirroredMatrix);
+		return mirroredMatrix;
+	}
+	// mirror joint orientation, result is written to mirroredMatrix. does not allocate
+	// the axes are directions, so only the linear part of the reflection applies. the x-axis is flipped to keep a right-handed orientation
+	public void mirrorOrientationMatrix (PMatrix3D mirrorMatrix, PMatrix3D mirroredMatrix) {
+		PMatrix3D h = mirrorReflection;
+		PMatrix3D r = mirrorMatrix;
+		float x0 = h.m00*r.m00 + h.m01*r.m10 + h.m02*r.m20;
+		float x1 = h.m10*r.m00 + h.m11*r.m10 + h.m12*r.m20;
+		float x2 = h.m20*r.m00 + h.m21*r.m10 + h.m22*r.m20;
+		float y0 = h.m00*r.m01 + h.m01*r.m11 + h.m02*r.m21;
+		float y1 = h.m10*r.m01 + h.m11*r.m11 + h.m12*r.m21;
+		float y2 = h.m20*r.m01 + h.m21*r.m11 + h.m22*r.m21;
+		float z0 = h.m00*r.m02 + h.m01*r.m12 + h.m02*r.m22;
+		float z1 = h.m10*r.m02 + h.m11*r.m12 + h.m12*r.m22;
+		float z2 = h.m20*r.m02 + h.m21*r.m12 + h.m22*r.m22;
+		mirroredMatrix.set(-x0,y0,z0,r.m03,
+						   -x1,y1,z1,r.m13,
+						   -x2,y2,z2,r.m23,
+						   r.m30,r.m31,r.m32,r.m33);
+	}
+	
+	// mirror joint orientations onto their counterparts in one pass: from[k] is mirrored onto to[k], if to[k] is in targetMask. does not allocate
+	public void mirrorOrientations (PMatrix3D[] orientations, short[] from, short[] to, int targetMask) {
+		for (int k=0; k<to.length; k++) {
+			if ((targetMask & (1<<to[k])) != 0) mirrorOrientationMatrix(orientations[from[k]],orientations[to[k]]);
+		}
+	}
+	
+	// projection to the kinect's projective plane without a sensor. pinhole model approximating the depth camera: 640x480, focal length 525 pixels
+	public static void convertRealWorldToProjective (PVector realWorld, PVector projective) {
+		if (realWorld.z != 0f) {
+			projective.set(320f+525f*realWorld.x/realWorld.z,240f-525f*realWorld.y/realWorld.z,realWorld.z);
+		} else {
+			projective.set(320f,240f,0f);
+		}
 	}
 	
 	public static boolean isValueBetween (float val, float lowerBound, float upperBound) {
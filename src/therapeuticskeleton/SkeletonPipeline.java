@@ -0,0 +1,392 @@
+package therapeuticskeleton;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import processing.core.*;
+
+/** SkeletonPipeline decouples acquisition of joints from their analysis, so slow posture, gesture or statistics evaluation does not lower the frame rate of the sketch.
+ *  It runs in three stages: <p>
+ *  Capture: the draw thread calls capture once per frame. The raw joints of all tracked users are copied from the capture source into a preallocated slot of a
+ *  lock-free single-producer/single-consumer ring. <br>
+ *  Analysis: a background thread takes the raw frames from the ring and updates the skeletons of a SkeletonManager with them.
+ *  The results are written to SkeletonFrames. <br>
+ *  Reading: the draw thread calls readLatest to get the latest fully analyzed frames without blocking. <p>
+ *  If the ring is full, capture either drops the oldest raw frame (BACK_PRESSURE_DROP_OLDEST) or waits until the analysis thread took a frame (BACK_PRESSURE_BLOCK).
+ *  Set up the skeletons with the setters of getManager before calling start. Skeletons must not be accessed directly while the pipeline runs,
+ *  use the frames instead. capture and readLatest must be called from the same thread, usually the draw thread. */
+public class SkeletonPipeline {
+
+	/** If the ring is full, capture drops the oldest raw frame */
+	public static final short BACK_PRESSURE_DROP_OLDEST = 0;
+	/** If the ring is full, capture waits until the analysis thread took a raw frame */
+	public static final short BACK_PRESSURE_BLOCK = 1;
+
+	// time the analysis thread sleeps at most when the ring is empty, the capture thread wakes it up earlier
+	private static final long IDLE_NANOS = 10000000L;
+	// time capture sleeps between checks for space in the ring with BACK_PRESSURE_BLOCK
+	private static final long BLOCK_NANOS = 100000L;
+
+	private JointSource captureSource;
+	private int captureJointMask = Skeleton.JOINT_MASK_ALL;
+	private int[] captureUsers = new int[SkeletonManager.MAX_USERS];
+	private short backPressure;
+	private SkeletonManager manager;
+
+	// ring of raw frames. head is advanced by the analysis thread when it took a frame, or by capture when it drops the oldest frame.
+	// tail is only advanced by capture. slot i%ring.length holds raw frame i
+	private RawFrame[] ring;
+	private AtomicLong head = new AtomicLong(0);
+	private AtomicLong tail = new AtomicLong(0);
+	// the raw frame the analysis thread is working on, served to the manager by analysisSource
+	private RawFrame analysisFrame = new RawFrame();
+	private AnalysisJointSource analysisSource = new AnalysisJointSource();
+
+	// triple buffer of analyzed frames. the analysis thread writes frameSets[writeIndex], the draw thread reads frameSets[readIndex],
+	// the third set is exchanged through latestIndex. FRESH is set when the exchanged set was not read yet
+	private static final int FRESH = 4;
+	private FrameSet[] frameSets = { new FrameSet(), new FrameSet(), new FrameSet() };
+	private int writeIndex = 0;
+	private AtomicInteger latestIndex = new AtomicInteger(1);
+	private int readIndex = 2;
+
+	private Thread analysisThread = null;
+	private volatile boolean running = false;
+	private volatile Throwable failure = null;
+
+	// measurement
+	private volatile long captureCount = 0;
+	private volatile long dropCount = 0;
+	private volatile long analysisCount = 0;
+	private volatile long blockedNanos = 0;
+	private volatile long maxQueueDepth = 0;
+	private volatile long lastLatencyNanos = 0;
+
+	/** Constructor for the SkeletonPipeline.
+	 *  @param _captureSource the source raw joints are captured from, e.g. SimpleOpenNIJointSource. It is only accessed by the thread calling capture
+	 *  @param _fullBodyTracking switches full body tracking on/off for the skeletons
+	 *  @param _ringSize the number of raw frames that can be queued between capture and analysis. Lower than 1 is treated as 1
+	 *  @param _backPressure BACK_PRESSURE_DROP_OLDEST or BACK_PRESSURE_BLOCK */
+	public SkeletonPipeline (JointSource _captureSource, boolean _fullBodyTracking, int _ringSize, short _backPressure) {
+		captureSource = _captureSource;
+		backPressure = _backPressure == BACK_PRESSURE_BLOCK ? BACK_PRESSURE_BLOCK : BACK_PRESSURE_DROP_OLDEST;
+		ring = new RawFrame[Math.max(1,_ringSize)];
+		for (int i=0; i<ring.length; i++) {
+			ring[i] = new RawFrame();
+		}
+		manager = new SkeletonManager(analysisSource,_fullBodyTracking,1);
+	}
+
+	/** Starts the analysis thread. */
+	public synchronized void start () {
+		if (running) return;
+		running = true;
+		failure = null;
+		analysisThread = new Thread(new Runnable() {
+			public void run () {
+				analyze();
+			}
+		},"SkeletonPipeline-analysis");
+		analysisThread.setDaemon(true);
+		analysisThread.start();
+	}
+	/** Stops the analysis thread and waits for it to finish. Raw frames left in the ring are not analyzed. */
+	public synchronized void stop () {
+		if (!running) return;
+		running = false;
+		LockSupport.unpark(analysisThread);
+		try {
+			analysisThread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		analysisThread = null;
+	}
+
+	// -----------------------------------------------------------------
+	// CAPTURE STAGE
+	/** Captures the raw joints of all tracked users and queues them for analysis. Call it once per frame, after updating the sensor.
+	 *  @param _frameCount the current frame of PApplet
+	 *  @param _frameRate the current frame rate of PApplet
+	 *  @return false if an older raw frame was dropped to make room for this one */
+	public boolean capture (int _frameCount, float _frameRate) {
+		boolean dropped = false;
+		long t = tail.get();
+		while (t-head.get() >= ring.length) {
+			if (backPressure == BACK_PRESSURE_DROP_OLDEST || !running) {
+				// if the analysis thread took the frame in the meantime, there is room now as well
+				long h = head.get();
+				if (t-h >= ring.length && head.compareAndSet(h,h+1)) {
+					dropCount++;
+					dropped = true;
+				}
+			} else {
+				long start = System.nanoTime();
+				LockSupport.parkNanos(BLOCK_NANOS);
+				blockedNanos += System.nanoTime()-start;
+			}
+		}
+		RawFrame slot = ring[(int)(t%ring.length)];
+		slot.timestamp = System.nanoTime();
+		slot.frameCount = _frameCount;
+		slot.frameRate = _frameRate;
+		slot.numberOfUsers = 0;
+		int numberOfUsers = captureSource.getTrackedUsers(captureUsers);
+		for (int i=0; i<numberOfUsers; i++) {
+			int u = slot.numberOfUsers;
+			if (captureSource.fetchJoints(captureUsers[i],captureJointMask,slot.position[u],slot.positionConfidence[u],slot.orientation[u],slot.orientationConfidence[u])) {
+				slot.userId[u] = captureUsers[i];
+				slot.captureTimestamp[u] = captureSource.getTimestamp(captureUsers[i]);
+				slot.jointMask[u] = captureJointMask;
+				slot.numberOfUsers++;
+			}
+		}
+		// publishing the new tail makes the slot visible to the analysis thread
+		tail.set(t+1);
+		captureCount++;
+		long depth = t+1-head.get();
+		if (depth > maxQueueDepth) maxQueueDepth = depth;
+		if (analysisThread != null) LockSupport.unpark(analysisThread);
+		return !dropped;
+	}
+
+	// -----------------------------------------------------------------
+	// READING STAGE
+	/** Takes over the latest fully analyzed frames, if there are new ones. Does not block. Access the frames with getFrame and getFrameByUserId.
+	 *  @return true if new frames were analyzed since the last call, false if the frames of the last call are kept
+	 *  @throws RuntimeException if the analysis thread failed */
+	public boolean readLatest () {
+		if (failure != null) {
+			throw new RuntimeException("analysis of skeleton frames failed",failure);
+		}
+		if ((latestIndex.get() & FRESH) == 0) return false;
+		readIndex = latestIndex.getAndSet(readIndex) & ~FRESH;
+		return true;
+	}
+	/** Getter for the number of frames taken over by the last call to readLatest, i.e. the number of tracked skeletons.
+	 *  @return the number of frames */
+	public int getNumberOfFrames () {
+		return frameSets[readIndex].numberOfFrames;
+	}
+	/** Getter for a frame taken over by the last call to readLatest.
+	 *  @param _index the index of the frame, 0..getNumberOfFrames()-1
+	 *  @return the frame, null if the index is out of range */
+	public SkeletonFrame getFrame (int _index) {
+		FrameSet frameSet = frameSets[readIndex];
+		if (_index >= 0 && _index < frameSet.numberOfFrames)
+			return frameSet.frames[_index];
+		else
+			return null;
+	}
+	/** Getter for the frame of a certain user taken over by the last call to readLatest.
+	 *  @param _userId the user ID of the skeleton
+	 *  @return the frame of the user, null if the user is not tracked */
+	public SkeletonFrame getFrameByUserId (int _userId) {
+		FrameSet frameSet = frameSets[readIndex];
+		for (int i=0; i<frameSet.numberOfFrames; i++) {
+			if (frameSet.frames[i].getUserId() == _userId) return frameSet.frames[i];
+		}
+		return null;
+	}
+
+	// -----------------------------------------------------------------
+	// GETTERS AND SETTERS
+	/** Getter for the manager of the skeletons that are updated by the analysis thread. Use its setters to set up the skeletons before start.
+	 *  @return the skeleton manager */
+	public SkeletonManager getManager () {
+		return manager;
+	}
+	/** Setter for the joints captured from the capture source. Joints not captured are not available to the skeletons.
+	 *  @param _jointMask the joint mask, see Skeleton.jointMask. default is all joints */
+	public void setCaptureJointMask (int _jointMask) {
+		captureJointMask = _jointMask & Skeleton.JOINT_MASK_ALL;
+	}
+	/** Getter for the joints captured from the capture source.
+	 *  @return the joint mask */
+	public int getCaptureJointMask () {
+		return captureJointMask;
+	}
+	/** Getter for the back-pressure policy.
+	 *  @return BACK_PRESSURE_DROP_OLDEST or BACK_PRESSURE_BLOCK */
+	public short getBackPressure () {
+		return backPressure;
+	}
+	/** Getter for the capacity of the ring.
+	 *  @return the number of raw frames that can be queued */
+	public int getRingSize () {
+		return ring.length;
+	}
+	/** Getter for the number of raw frames currently queued for analysis.
+	 *  @return the queue depth */
+	public int getQueueDepth () {
+		return (int)(tail.get()-head.get());
+	}
+	/** Getter for the highest number of raw frames queued for analysis since creation or last reset of the measurement.
+	 *  @return the maximum queue depth */
+	public int getMaxQueueDepth () {
+		return (int)maxQueueDepth;
+	}
+	/** Getter for the number of captured raw frames.
+	 *  @return the number of calls to capture */
+	public long getCaptureCount () {
+		return captureCount;
+	}
+	/** Getter for the number of raw frames dropped with BACK_PRESSURE_DROP_OLDEST.
+	 *  @return the number of dropped raw frames */
+	public long getDropCount () {
+		return dropCount;
+	}
+	/** Getter for the number of analyzed raw frames.
+	 *  @return the number of raw frames the analysis thread updated the skeletons with */
+	public long getAnalysisCount () {
+		return analysisCount;
+	}
+	/** Getter for the time capture waited for room in the ring with BACK_PRESSURE_BLOCK.
+	 *  @return the time in nanoseconds */
+	public long getBlockedNanos () {
+		return blockedNanos;
+	}
+	/** Getter for the time between capture and publishing of the last analyzed frame.
+	 *  @return the latency in nanoseconds */
+	public long getLastLatencyNanos () {
+		return lastLatencyNanos;
+	}
+	/** Resets the measurement of the pipeline. Call it from the thread calling capture. */
+	public void resetMeasurement () {
+		captureCount = 0;
+		dropCount = 0;
+		analysisCount = 0;
+		blockedNanos = 0;
+		maxQueueDepth = 0;
+		lastLatencyNanos = 0;
+	}
+
+	// -----------------------------------------------------------------
+	// ANALYSIS STAGE
+	private void analyze () {
+		try {
+			while (running) {
+				if (!takeRawFrame()) {
+					LockSupport.parkNanos(IDLE_NANOS);
+					continue;
+				}
+				manager.update(analysisFrame.frameCount,analysisFrame.frameRate);
+				FrameSet frameSet = frameSets[writeIndex];
+				frameSet.numberOfFrames = manager.getNumberOfSkeletons();
+				for (int i=0; i<frameSet.numberOfFrames; i++) {
+					frameSet.frames[i].set(manager.getSkeleton(i),analysisFrame.frameCount,analysisFrame.frameRate);
+				}
+				// publish the written set, take over the one published before or left by the reader
+				writeIndex = latestIndex.getAndSet(writeIndex | FRESH) & ~FRESH;
+				analysisCount++;
+				lastLatencyNanos = System.nanoTime()-analysisFrame.timestamp;
+			}
+		} catch (Throwable t) {
+			failure = t;
+			running = false;
+		}
+	}
+	// copies the oldest raw frame to analysisFrame. the copy is only valid if capture did not drop the frame meanwhile, which is checked when committing the new head
+	private boolean takeRawFrame () {
+		while (true) {
+			long h = head.get();
+			if (h >= tail.get()) return false;
+			analysisFrame.set(ring[(int)(h%ring.length)]);
+			if (head.compareAndSet(h,h+1)) return true;
+		}
+	}
+
+	// raw joints of all tracked users of one frame
+	private static class RawFrame {
+		// time the frame was queued, for the latency, and capture time of the capture source, for the skeletons
+		private long timestamp;
+		private long[] captureTimestamp = new long[SkeletonManager.MAX_USERS];
+		private int frameCount;
+		private float frameRate;
+		private int numberOfUsers = 0;
+		private int[] userId = new int[SkeletonManager.MAX_USERS];
+		private int[] jointMask = new int[SkeletonManager.MAX_USERS];
+		private float[][] position = new float[SkeletonManager.MAX_USERS][Skeleton.NUMBER_OF_JOINTS*3];
+		private float[][] positionConfidence = new float[SkeletonManager.MAX_USERS][Skeleton.NUMBER_OF_JOINTS];
+		private PMatrix3D[][] orientation = new PMatrix3D[SkeletonManager.MAX_USERS][Skeleton.NUMBER_OF_JOINTS];
+		private float[][] orientationConfidence = new float[SkeletonManager.MAX_USERS][Skeleton.NUMBER_OF_JOINTS];
+
+		private RawFrame () {
+			for (int u=0; u<SkeletonManager.MAX_USERS; u++) {
+				for (int i=0; i<Skeleton.NUMBER_OF_JOINTS; i++) {
+					orientation[u][i] = new PMatrix3D();
+				}
+			}
+		}
+		private void set (RawFrame _frame) {
+			timestamp = _frame.timestamp;
+			frameCount = _frame.frameCount;
+			frameRate = _frame.frameRate;
+			numberOfUsers = _frame.numberOfUsers;
+			for (int u=0; u<numberOfUsers; u++) {
+				userId[u] = _frame.userId[u];
+				captureTimestamp[u] = _frame.captureTimestamp[u];
+				jointMask[u] = _frame.jointMask[u];
+				System.arraycopy(_frame.position[u],0,position[u],0,Skeleton.NUMBER_OF_JOINTS*3);
+				System.arraycopy(_frame.positionConfidence[u],0,positionConfidence[u],0,Skeleton.NUMBER_OF_JOINTS);
+				System.arraycopy(_frame.orientationConfidence[u],0,orientationConfidence[u],0,Skeleton.NUMBER_OF_JOINTS);
+				for (int i=0; i<Skeleton.NUMBER_OF_JOINTS; i++) {
+					orientation[u][i].set(_frame.orientation[u][i]);
+				}
+			}
+		}
+	}
+
+	// analyzed frames of all skeletons of one update cycle
+	private static class FrameSet {
+		private SkeletonFrame[] frames = new SkeletonFrame[SkeletonManager.MAX_USERS];
+		private int numberOfFrames = 0;
+
+		private FrameSet () {
+			for (int i=0; i<frames.length; i++) {
+				frames[i] = new SkeletonFrame();
+			}
+		}
+	}
+
+	// serves the raw frame taken by the analysis thread to the skeletons
+	private class AnalysisJointSource implements JointSource {
+		public boolean fetchJoints (int _userId, int _jointMask, float[] _position, float[] _positionConfidence, PMatrix3D[] _orientation, float[] _orientationConfidence) {
+			RawFrame frame = analysisFrame;
+			for (int u=0; u<frame.numberOfUsers; u++) {
+				if (frame.userId[u] != _userId) continue;
+				int jointMask = _jointMask & frame.jointMask[u];
+				for (int i=0; i<Skeleton.NUMBER_OF_JOINTS; i++) {
+					if ((jointMask & (1<<i)) == 0) continue;
+					_position[i*3] = frame.position[u][i*3];
+					_position[i*3+1] = frame.position[u][i*3+1];
+					_position[i*3+2] = frame.position[u][i*3+2];
+					_positionConfidence[i] = frame.positionConfidence[u][i];
+					_orientation[i].set(frame.orientation[u][i]);
+					_orientationConfidence[i] = frame.orientationConfidence[u][i];
+				}
+				return true;
+			}
+			return false;
+		}
+		public int getTrackedUsers (int[] _userIds) {
+			RawFrame frame = analysisFrame;
+			int numberOfUsers = Math.min(frame.numberOfUsers,_userIds.length);
+			System.arraycopy(frame.userId,0,_userIds,0,numberOfUsers);
+			return numberOfUsers;
+		}
+		/** The capture time of the user in the raw frame, so the skeletons time frames by capture, not by analysis. For users not in the frame the capture time of the first user, or the time the frame was queued */
+		public long getTimestamp (int _userId) {
+			RawFrame frame = analysisFrame;
+			for (int u=0; u<frame.numberOfUsers; u++) {
+				if (frame.userId[u] == _userId) return frame.captureTimestamp[u];
+			}
+			return frame.numberOfUsers > 0 ? frame.captureTimestamp[0] : frame.timestamp;
+		}
+		/** Delegates to the capture source. Not called during analysis, only if an application reads projective joints of the skeletons. */
+		public void convertRealWorldToProjective (PVector _realWorld, PVector _projective) {
+			captureSource.convertRealWorldToProjective(_realWorld,_projective);
+		}
+	}
+}
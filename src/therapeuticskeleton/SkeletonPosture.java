@@ -1,7 +1,6 @@
 package therapeuticskeleton;
 
 import processing.core.PApplet;
-import processing.core.PVector;
 
 public class SkeletonPosture {
 	/** Upper body joints form no articulated pose */
@@ -71,17 +70,105 @@ public class SkeletonPosture {
 	public static final short HANDS_FORWARD_DOWN_POSE = 9;
 	/** Stores the number of available poses */
 	public static final short NUMBER_OF_POSES = 10;
+	/** The joints posture evaluation reads. See Skeleton.setJointMask */
+	public static final int REQUIRED_JOINTS = Skeleton.JOINT_MASK_ARMS;
+	
+	// posture table, one condition per line: posture, feature, lower bound, upper bound, tolerance widens lower bound (1) or not (0), tolerance widens upper bound. 
+	// angles in degree, distances in mm. the conditions of a posture are consecutive, postures are evaluated in table order and the first posture whose conditions all hold is recognized
+	private static final float[][] POSTURE_TABLE = {
+		// arms form a straight line, upper arms ~90 degree, sum of upper arms parallel to body y axis
+		{V_SHAPE, SkeletonFeatures.ANGLE_LEFT_ELBOW, 0, 10, 0, 1},
+		{V_SHAPE, SkeletonFeatures.ANGLE_RIGHT_ELBOW, 0, 10, 0, 1},
+		{V_SHAPE, SkeletonFeatures.ANGLE_UPPER_ARMS, 85, 95, 1, 1},
+		{V_SHAPE, SkeletonFeatures.ANGLE_UPPER_ARMS_TO_Y, 0, 15, 0, 1},
+		// arms form a straight line, upper arms ~90 degree, sum of upper arms antiparallel to body y axis
+		{A_SHAPE, SkeletonFeatures.ANGLE_LEFT_ELBOW, 0, 10, 0, 1},
+		{A_SHAPE, SkeletonFeatures.ANGLE_RIGHT_ELBOW, 0, 10, 0, 1},
+		{A_SHAPE, SkeletonFeatures.ANGLE_UPPER_ARMS, 85, 95, 1, 1},
+		{A_SHAPE, SkeletonFeatures.ANGLE_UPPER_ARMS_TO_Y, 165, 180, 1, 0},
+		// elbows ~90 degree, upper arms form a straight line, lower arms upwards
+		{U_SHAPE, SkeletonFeatures.ANGLE_LEFT_ELBOW, 85, 95, 1, 1},
+		{U_SHAPE, SkeletonFeatures.ANGLE_RIGHT_ELBOW, 85, 95, 1, 1},
+		{U_SHAPE, SkeletonFeatures.ANGLE_UPPER_ARMS, 170, 180, 1, 0},
+		{U_SHAPE, SkeletonFeatures.ANGLE_LEFT_LOWER_ARM_TO_Y, 0, 15, 0, 1},
+		// elbows ~90 degree, upper arms form a straight line, lower arms downwards
+		{N_SHAPE, SkeletonFeatures.ANGLE_LEFT_ELBOW, 85, 95, 1, 1},
+		{N_SHAPE, SkeletonFeatures.ANGLE_RIGHT_ELBOW, 85, 95, 1, 1},
+		{N_SHAPE, SkeletonFeatures.ANGLE_UPPER_ARMS, 170, 180, 1, 0},
+		{N_SHAPE, SkeletonFeatures.ANGLE_LEFT_LOWER_ARM_TO_Y, 165, 180, 1, 0},
+		// hands close, upper arms ~45 degree, elbows ~100 degree, sum of upper arms parallel to body y axis
+		{O_SHAPE, SkeletonFeatures.DISTANCE_HANDS, 0, 100, 0, 1},
+		{O_SHAPE, SkeletonFeatures.ANGLE_LEFT_UPPER_ARM_TO_Y, 40, 50, 1, 1},
+		{O_SHAPE, SkeletonFeatures.ANGLE_RIGHT_UPPER_ARM_TO_Y, 40, 50, 1, 1},
+		{O_SHAPE, SkeletonFeatures.ANGLE_LEFT_ELBOW, 95, 105, 1, 1},
+		{O_SHAPE, SkeletonFeatures.ANGLE_RIGHT_ELBOW, 95, 105, 1, 1},
+		{O_SHAPE, SkeletonFeatures.ANGLE_UPPER_ARMS_TO_Y, 0, 15, 0, 1},
+		// arms form a straight line, arms are parallel, arms are parallel to the body y axis (up or down)
+		{I_SHAPE, SkeletonFeatures.ANGLE_LEFT_ELBOW, 0, 10, 0, 1},
+		{I_SHAPE, SkeletonFeatures.ANGLE_RIGHT_ELBOW, 0, 10, 0, 1},
+		{I_SHAPE, SkeletonFeatures.ANGLE_UPPER_ARMS, 0, 15, 0, 1},
+		{I_SHAPE, SkeletonFeatures.ANGLE_LEFT_UPPER_ARM_TO_Y_AXIS, 0, 15, 0, 1},
+		// arms form a straight line, arms are parallel, arms downward 45 degree, arms forward
+		{HANDS_FORWARD_DOWN_POSE, SkeletonFeatures.ANGLE_LEFT_ELBOW, 0, 10, 0, 1},
+		{HANDS_FORWARD_DOWN_POSE, SkeletonFeatures.ANGLE_RIGHT_ELBOW, 0, 10, 0, 1},
+		{HANDS_FORWARD_DOWN_POSE, SkeletonFeatures.ANGLE_UPPER_ARMS, 0, 15, 0, 1},
+		{HANDS_FORWARD_DOWN_POSE, SkeletonFeatures.ANGLE_LEFT_UPPER_ARM_TO_Y, 130, 140, 1, 1},
+		{HANDS_FORWARD_DOWN_POSE, SkeletonFeatures.ANGLE_LEFT_UPPER_ARM_TO_Z, 90, 180, 0, 0},
+		// M and W shape are evaluated last, so they do not take precedence over the other postures in ambiguous poses
+		// upper arms raised sideways ~45 degree, lower arms hanging downwards
+		{M_SHAPE, SkeletonFeatures.ANGLE_LEFT_UPPER_ARM_TO_Y, 30, 60, 1, 1},
+		{M_SHAPE, SkeletonFeatures.ANGLE_RIGHT_UPPER_ARM_TO_Y, 30, 60, 1, 1},
+		{M_SHAPE, SkeletonFeatures.ANGLE_UPPER_ARMS, 60, 120, 1, 1},
+		{M_SHAPE, SkeletonFeatures.ANGLE_LEFT_LOWER_ARM_TO_Y, 150, 180, 1, 0},
+		{M_SHAPE, SkeletonFeatures.ANGLE_RIGHT_LOWER_ARM_TO_Y, 150, 180, 1, 0},
+		// upper arms lowered sideways ~45 degree, lower arms pointing upwards
+		{W_SHAPE, SkeletonFeatures.ANGLE_LEFT_UPPER_ARM_TO_Y, 120, 150, 1, 1},
+		{W_SHAPE, SkeletonFeatures.ANGLE_RIGHT_UPPER_ARM_TO_Y, 120, 150, 1, 1},
+		{W_SHAPE, SkeletonFeatures.ANGLE_UPPER_ARMS, 60, 120, 1, 1},
+		{W_SHAPE, SkeletonFeatures.ANGLE_LEFT_LOWER_ARM_TO_Y, 0, 30, 0, 1},
+		{W_SHAPE, SkeletonFeatures.ANGLE_RIGHT_LOWER_ARM_TO_Y, 0, 30, 0, 1}
+	};
+	// tolerance of distances in mm at posture tolerance 1
+	private static final float DISTANCE_TOLERANCE = 100f;
+	// distance outside the bounds at which the score of a condition drops to 0, angles in radians, distances in mm
+	private static final float ANGLE_FALLOFF = PApplet.radians(30);
+	private static final float DISTANCE_FALLOFF = 150f;
+	// score of a posture whose conditions hold while an earlier posture of the table is recognized, the largest float below 1
+	private static final float SHADOWED_SCORE = 0.99999994f;
 	
 	// current upper body posture and gesture
 	private short currentUpperBodyPosture = NO_POSE;
 	
 	private float postureTolerance = 0.5f;
 	private float postureAngleTolerance = PApplet.radians(20)*postureTolerance;
+	// additional tolerance while a posture is held, so it does not flicker at the bounds
+	private float postureHysteresis = 0.2f;
+
+	// posture table compiled to flat arrays: the conditions of row r are rowStart[r]..rowStart[r+1]-1. bounds include the tolerance
+	private short[] rowPosture;
+	private int[] rowStart;
+	private int[] conditionFeature = new int[POSTURE_TABLE.length];
+	private float[] lowerBound = new float[POSTURE_TABLE.length];
+	private float[] upperBound = new float[POSTURE_TABLE.length];
+	private float[] heldLowerBound = new float[POSTURE_TABLE.length];
+	private float[] heldUpperBound = new float[POSTURE_TABLE.length];
+	private float[] inverseFalloff = new float[POSTURE_TABLE.length];
+	// match scores of the postures, calculated on first access after evaluate
+	private float[] postureScores = new float[NUMBER_OF_POSES];
+	private short bestScoringPosture = NO_POSE;
+	private boolean scoresCalculated = false;
+
+	// custom postures of the library, evaluated after the postures above. the index the current posture was classified with resolves its name
+	private PostureLibrary library = null;
+	private PostureLibrary.Index libraryIndex = null;
+	private int currentLibraryPosture = PostureLibrary.NO_POSTURE;
+	private int[] libraryIntervals = new int[0];
 
 	private Skeleton skeleton = null;
 	
 	public SkeletonPosture (Skeleton _skeleton) {
 		skeleton = _skeleton;
+		compileTable();
 	}
 
 	/** Setter for the tolerance with which posture will be detected. 0..1f.
@@ -93,12 +180,93 @@ public class SkeletonPosture {
 			postureTolerance = 0.5f; // default posture accuracy
 		}
 		postureAngleTolerance = PApplet.radians(20)*postureTolerance;
+		calculateBounds();
 	}
 	/** Getter for posture tolerance
 	 *  @return the posture tolerance */
 	public float getPostureTolerance () {
 		return postureTolerance;
 	}
+	/** Copies the match scores of all postures to a caller-owned buffer without allocating. A score is 1 if the posture is recognized with the current tolerance 
+	 *  and drops linearly to 0 the further the worst condition of the posture is outside its bounds: 30 degree for angles, 150 mm for distances.
+	 *  A posture whose conditions hold but that loses to a posture earlier in the table scores just below 1.
+	 *  The score of NO_POSE is 1 minus the best score. Works only if posture was calculated in the current update cycle
+	 *  @param _scores the buffer to fill. NUMBER_OF_POSES floats are written in the order of the posture constants */
+	public void copyPostureScores (float[] _scores) {
+		ensureScores();
+		System.arraycopy(postureScores,0,_scores,0,NUMBER_OF_POSES);
+	}
+	/** Returns the match score of a posture, see copyPostureScores
+	 *  @param _posture short corresponding to SkeletonPosture constants
+	 *  @return the score 0..1f. If _posture out of range: 0f */
+	public float getPostureScore (short _posture) {
+		if (_posture < 0 || _posture >= NUMBER_OF_POSES) return 0f;
+		ensureScores();
+		return postureScores[_posture];
+	}
+	/** Returns the posture with the highest match score. If the current upper body posture is recognized, it is the best scoring posture
+	 *  @return short corresponding to SkeletonPosture constants, NO_POSE if all postures score 0 */
+	public short getBestScoringPosture () {
+		ensureScores();
+		return bestScoringPosture;
+	}
+	/** Setter for the hysteresis of posture detection. A held posture is left only when it is not detected with tolerance plus hysteresis anymore, see isPostureHeld.
+	 *  @param _postureHysteresis the additional tolerance, 0..1f. when higher than 1 or lower than 0, default hysteresis 0.2f will be set */
+	public void setPostureHysteresis (float _postureHysteresis) {
+		if (_postureHysteresis >= 0f && _postureHysteresis <= 1f) {
+			postureHysteresis = _postureHysteresis;
+		} else {
+			postureHysteresis = 0.2f;
+		}
+		calculateBounds();
+	}
+	/** Getter for posture hysteresis
+	 *  @return the posture hysteresis */
+	public float getPostureHysteresis () {
+		return postureHysteresis;
+	}
+	/** Returns whether a posture still holds with the tolerance widened by the hysteresis. Used to leave a held posture only when clearly left. 
+	 *  Works only if posture was calculated in the current update cycle
+	 *  @param _posture short corresponding to SkeletonPosture constants
+	 *  @return true if all conditions of the posture hold with tolerance plus hysteresis */
+	public boolean isPostureHeld (short _posture) {
+		float[] features = skeleton.features();
+		for (int r=0; r<rowPosture.length; r++) {
+			if (rowPosture[r] != _posture) continue;
+			int c = rowStart[r];
+			int end = rowStart[r+1];
+			while (c < end && features[conditionFeature[c]] >= heldLowerBound[c] && features[conditionFeature[c]] <= heldUpperBound[c]) c++;
+			if (c == end) return true;
+		}
+		return false;
+	}
+	/** Setter for the library of custom postures, evaluated additionally to the postures of this class. See PostureLibrary
+	 *  @param _library the posture library, null to evaluate no custom postures */
+	public void setPostureLibrary (PostureLibrary _library) {
+		library = _library;
+		libraryIndex = null;
+		currentLibraryPosture = PostureLibrary.NO_POSTURE;
+	}
+	/** Getter for the library of custom postures
+	 *  @return the posture library or null */
+	public PostureLibrary getPostureLibrary () {
+		return library;
+	}
+	/** Returns the joints posture evaluation reads: REQUIRED_JOINTS and the joints of the custom postures
+	 *  @return joint mask of the required joints */
+	public int getRequiredJointMask () {
+		return library != null ? REQUIRED_JOINTS | library.getRequiredJointMask() : REQUIRED_JOINTS;
+	}
+	/** Returns the recognized posture of the posture library. works only if posture was calculated in the current update cycle
+	 *  @return the id of the posture in the library, PostureLibrary.NO_POSTURE if no custom posture is recognized */
+	public int getCurrentLibraryPosture () {
+		return currentLibraryPosture;
+	}
+	/** Returns the name of the recognized posture of the posture library. The name refers to the postures the posture was recognized with, even if the library was reloaded since
+	 *  @return the name of the posture, null if no custom posture is recognized */
+	public String getCurrentLibraryPostureName () {
+		return libraryIndex != null ? libraryIndex.getPostureName(currentLibraryPosture) : null;
+	}
 	/** Upper body posture is evaluated corresponding to one of the following shapes on the local x-axis or to one of the other articulated poses. 
 	 *  This method returns the evaluated upper body posture. works only if posture was calculated in the current update cycle<p>
 	 *  (H = hand, E = elbow, S = shoulder)<br>
@@ -147,131 +315,97 @@ public class SkeletonPosture {
 	
 	/** Evaluate posture and store results internally. Access recognized posture using getter-methods. */
 	public void evaluate () {
-		if (evaluateVShape()) currentUpperBodyPosture = V_SHAPE;
-		else if (evaluateAShape()) currentUpperBodyPosture = A_SHAPE;
-		else if (evaluateUShape()) currentUpperBodyPosture = U_SHAPE;
-		else if (evaluateNShape()) currentUpperBodyPosture = N_SHAPE;
-		else if (evaluateMShape()) currentUpperBodyPosture = M_SHAPE;
-		else if (evaluateWShape()) currentUpperBodyPosture = W_SHAPE;
-		else if (evaluateOShape()) currentUpperBodyPosture = O_SHAPE;
-		else if (evaluateIShape()) currentUpperBodyPosture = I_SHAPE;
-		else if (evaluateHandsForwardDownPose()) currentUpperBodyPosture = HANDS_FORWARD_DOWN_POSE;
-		else currentUpperBodyPosture = NO_POSE;
-	}
-	
-	private boolean evaluateIShape() {
-		float angleLArm = PVector.angleBetween(skeleton.getLeftUpperArmLCS(),skeleton.getLeftLowerArmLCS());
-		float angleRArm = PVector.angleBetween(skeleton.getRightUpperArmLCS(),skeleton.getRightLowerArmLCS());
-		float angleIShape = PVector.angleBetween(skeleton.getLeftUpperArmLCS(),skeleton.getRightUpperArmLCS());
-		float angleToBodyY = PVector.angleBetween(skeleton.getLeftUpperArmLCS(),skeleton.getOrientationY());
-		if (SkeletonMath.isValueBetween(angleLArm,0,PApplet.radians(10)+postureAngleTolerance) && SkeletonMath.isValueBetween(angleRArm,0,PApplet.radians(10)+postureAngleTolerance)) { // arms form a straight line
-			if (SkeletonMath.isValueBetween(angleIShape,0,PApplet.radians(15)+postureAngleTolerance)) { // arms are parallel
-				if (SkeletonMath.isValueBetween(angleToBodyY,0,PApplet.radians(15)+postureAngleTolerance) || SkeletonMath.isValueBetween(angleToBodyY,PApplet.radians(165)-postureAngleTolerance,PApplet.radians(180))) { // arms are parallel to y body axis
-					return true;
-				}
+		scoresCalculated = false;
+		evaluateLibrary();
+		float[] features = skeleton.features();
+		for (int r=0; r<rowPosture.length; r++) {
+			int c = rowStart[r];
+			int end = rowStart[r+1];
+			while (c < end && features[conditionFeature[c]] >= lowerBound[c] && features[conditionFeature[c]] <= upperBound[c]) c++;
+			if (c == end) {
+				currentUpperBodyPosture = rowPosture[r];
+				return;
 			}
 		}
-		return false;
+		currentUpperBodyPosture = NO_POSE;
 	}
 	
-	private boolean evaluateOShape() {
-		PVector rHandlHand = PVector.sub(skeleton.getJointLCS(Skeleton.RIGHT_HAND),skeleton.getJointLCS(Skeleton.LEFT_HAND));
-		if (SkeletonMath.isValueBetween(rHandlHand.mag(),0,100+(100*postureTolerance))) {
-			float angleLUpper = PVector.angleBetween(skeleton.getLeftUpperArmLCS(),skeleton.getOrientationY());
-			float angleRUpper = PVector.angleBetween(skeleton.getRightUpperArmLCS(),skeleton.getOrientationY());
-			float angleLLower = PVector.angleBetween(skeleton.getLeftLowerArmLCS(),skeleton.getLeftUpperArmLCS());
-			float angleRLower = PVector.angleBetween(skeleton.getRightLowerArmLCS(),skeleton.getRightUpperArmLCS());
-			float angleToBody = PVector.angleBetween(PVector.add(skeleton.getLeftUpperArmLCS(),skeleton.getRightUpperArmLCS()),skeleton.getOrientationY());
-			if (SkeletonMath.isValueBetween(angleLUpper,PApplet.radians(40)-postureAngleTolerance,PApplet.radians(50)+postureAngleTolerance) && SkeletonMath.isValueBetween(angleRUpper,PApplet.radians(40)-postureAngleTolerance,PApplet.radians(50)+postureAngleTolerance)) { // ~45 degree
-				if (SkeletonMath.isValueBetween(angleLLower,PApplet.radians(95)-postureAngleTolerance,PApplet.radians(105)+postureAngleTolerance) && SkeletonMath.isValueBetween(angleRLower,PApplet.radians(95)-postureAngleTolerance,PApplet.radians(105)+postureAngleTolerance)) { // ~100 degree
-					if (SkeletonMath.isValueBetween(angleToBody,0,PApplet.radians(15)+postureAngleTolerance)) { // sum of upper arms parallel to body y axis
-						return true;
-					}
-				}
-			}
+	private void evaluateLibrary () {
+		if (library == null) return;
+		libraryIndex = library.index();
+		if (libraryIntervals.length < libraryIndex.getNumberOfFeatures()) {
+			// grows only when a reloaded library reads more features
+			libraryIntervals = new int[libraryIndex.getNumberOfFeatures()];
 		}
-		return false;
-	}
-	
-	private boolean evaluateWShape() {
-		// TODO Auto-generated method stub
-		return false;
+		currentLibraryPosture = libraryIndex.classify(skeleton.jointsLCS(),libraryIntervals);
 	}
-	private boolean evaluateMShape() {
-		// TODO Auto-generated method stub
-		return false;
-	}
-	private boolean evaluateNShape() {
-		float angleL = PVector.angleBetween(skeleton.getLeftUpperArmLCS(),skeleton.getLeftLowerArmLCS());
-		float angleR = PVector.angleBetween(skeleton.getRightUpperArmLCS(),skeleton.getRightLowerArmLCS());
-		float angleNShape = PVector.angleBetween(skeleton.getLeftUpperArmLCS(), skeleton.getRightUpperArmLCS());
-		float angleToBodyY = PVector.angleBetween(skeleton.getLeftLowerArmLCS(),skeleton.getOrientationY());
-		if (SkeletonMath.isValueBetween(angleL,PApplet.radians(85)-postureAngleTolerance,PApplet.radians(95)+postureAngleTolerance) && SkeletonMath.isValueBetween(angleR,PApplet.radians(85)-postureAngleTolerance,PApplet.radians(95)+postureAngleTolerance)) { // arms angle ~90 degree
-			if (SkeletonMath.isValueBetween(angleNShape,PApplet.radians(170)-postureAngleTolerance,PApplet.radians(180))) { // upper arms form a straight line
-				if (SkeletonMath.isValueBetween(angleToBodyY,PApplet.radians(165)-postureAngleTolerance,PApplet.radians(180))) {// arms downwards 
-					return true;
-				}
+	// fuzzy version of evaluate: the score of a posture is the lowest score of its conditions. it is 1 exactly if the posture is recognized,
+	// postures that hold after the recognized one in table order are shadowed by it
+	private void ensureScores () {
+		if (scoresCalculated) return;
+		float[] features = skeleton.features();
+		for (int p=0; p<NUMBER_OF_POSES; p++) postureScores[p] = 0f;
+		float bestScore = 0f;
+		bestScoringPosture = NO_POSE;
+		for (int r=0; r<rowPosture.length; r++) {
+			float score = 1f;
+			for (int c=rowStart[r]; c<rowStart[r+1] && score > 0f; c++) {
+				float feature = features[conditionFeature[c]];
+				float outside = feature < lowerBound[c] ? lowerBound[c]-feature : feature > upperBound[c] ? feature-upperBound[c] : 0f;
+				// undefined features score 0
+				float conditionScore = feature == feature ? 1f-outside*inverseFalloff[c] : 0f;
+				if (conditionScore < score) score = conditionScore;
 			}
-		}
-		return false;
-	}
-	private boolean evaluateUShape() {
-		float angleL = PVector.angleBetween(skeleton.getLeftUpperArmLCS(),skeleton.getLeftLowerArmLCS());
-		float angleR = PVector.angleBetween(skeleton.getRightUpperArmLCS(),skeleton.getRightLowerArmLCS());
-		float angleUShape = PVector.angleBetween(skeleton.getLeftUpperArmLCS(), skeleton.getRightUpperArmLCS());
-		float angleToBodyY = PVector.angleBetween(skeleton.getLeftLowerArmLCS(),skeleton.getOrientationY());
-		if (SkeletonMath.isValueBetween(angleL,PApplet.radians(85)-postureAngleTolerance,PApplet.radians(95)+postureAngleTolerance) && SkeletonMath.isValueBetween(angleR,PApplet.radians(85)-postureAngleTolerance,PApplet.radians(95)+postureAngleTolerance)) { // arms angle ~90 degree
-			if (SkeletonMath.isValueBetween(angleUShape,PApplet.radians(170)-postureAngleTolerance,PApplet.radians(180))) { // upper arms form a straight line
-				if (SkeletonMath.isValueBetween(angleToBodyY,0,PApplet.radians(15)+postureAngleTolerance)) {// arms upwards 
-					return true;
-				}
+			if (score < 0f) score = 0f;
+			if (score == 1f && rowPosture[r] != currentUpperBodyPosture) score = SHADOWED_SCORE;
+			if (score > postureScores[rowPosture[r]]) postureScores[rowPosture[r]] = score;
+			// first posture in table order wins ties, as in evaluate
+			if (score > bestScore) {
+				bestScore = score;
+				bestScoringPosture = rowPosture[r];
 			}
 		}
-		return false;
+		postureScores[NO_POSE] = 1f-bestScore;
+		scoresCalculated = true;
 	}
-	private boolean evaluateAShape() {
-		float angleL = PVector.angleBetween(skeleton.getLeftUpperArmLCS(),skeleton.getLeftLowerArmLCS());
-		float angleR = PVector.angleBetween(skeleton.getRightUpperArmLCS(),skeleton.getRightLowerArmLCS());
-		float angleAShape = PVector.angleBetween(skeleton.getLeftUpperArmLCS(), skeleton.getRightUpperArmLCS());
-		float angleToBody = PVector.angleBetween(PVector.add(skeleton.getLeftUpperArmLCS(),skeleton.getRightUpperArmLCS()),skeleton.getOrientationY());
-		if (SkeletonMath.isValueBetween(angleL,0,PApplet.radians(10)+postureAngleTolerance) && SkeletonMath.isValueBetween(angleR,0,PApplet.radians(10)+postureAngleTolerance)) { // arms form a straight line
-			if (SkeletonMath.isValueBetween(angleAShape,PApplet.radians(85)-postureAngleTolerance,PApplet.radians(95)+postureAngleTolerance)) { // arms angle ~90 degree
-				if (SkeletonMath.isValueBetween(angleToBody,PApplet.radians(165)-postureAngleTolerance,PApplet.radians(180))) { // sum of upper arms parallel to body y axis
-					return true;
-				}
-			}
+	// groups the consecutive conditions of the posture table to rows
+	private void compileTable () {
+		int numberOfRows = 0;
+		for (int c=0; c<POSTURE_TABLE.length; c++) {
+			if (c == 0 || POSTURE_TABLE[c][0] != POSTURE_TABLE[c-1][0]) numberOfRows++;
+			conditionFeature[c] = (int)POSTURE_TABLE[c][1];
+			inverseFalloff[c] = SkeletonFeatures.isDistance((short)conditionFeature[c]) ? 1f/DISTANCE_FALLOFF : 1f/ANGLE_FALLOFF;
 		}
-		return false;
-	}
-	private boolean evaluateVShape() {
-		float angleL = PVector.angleBetween(skeleton.getLeftUpperArmLCS(),skeleton.getLeftLowerArmLCS());
-		float angleR = PVector.angleBetween(skeleton.getRightUpperArmLCS(),skeleton.getRightLowerArmLCS());
-		float angleVShape = PVector.angleBetween(skeleton.getLeftUpperArmLCS(), skeleton.getRightUpperArmLCS());
-		float angleToBody = PVector.angleBetween(PVector.add(skeleton.getLeftUpperArmLCS(),skeleton.getRightUpperArmLCS()),skeleton.getOrientationY());
-		if (SkeletonMath.isValueBetween(angleL,0,PApplet.radians(10)+postureAngleTolerance) && SkeletonMath.isValueBetween(angleR,0,PApplet.radians(10)+postureAngleTolerance)) { // arms form a straight line
-			if (SkeletonMath.isValueBetween(angleVShape,PApplet.radians(85)-postureAngleTolerance,PApplet.radians(95)+postureAngleTolerance)) { // arms angle ~90 degree
-				if (SkeletonMath.isValueBetween(angleToBody,0,PApplet.radians(15)+postureAngleTolerance)) { // sum of upper arms parallel to body y axis
-					return true;
-				}
+		rowPosture = new short[numberOfRows];
+		rowStart = new int[numberOfRows+1];
+		int r = 0;
+		for (int c=0; c<POSTURE_TABLE.length; c++) {
+			if (c == 0 || POSTURE_TABLE[c][0] != POSTURE_TABLE[c-1][0]) {
+				rowPosture[r] = (short)POSTURE_TABLE[c][0];
+				rowStart[r++] = c;
 			}
 		}
-		return false;
+		rowStart[numberOfRows] = POSTURE_TABLE.length;
+		calculateBounds();
 	}
-	private boolean evaluateHandsForwardDownPose() {
-		float angleL = PVector.angleBetween(skeleton.getLeftUpperArmLCS(),skeleton.getLeftLowerArmLCS());
-		float angleR = PVector.angleBetween(skeleton.getRightUpperArmLCS(),skeleton.getRightLowerArmLCS());
-		float angleUpperArms = PVector.angleBetween(skeleton.getLeftUpperArmLCS(), skeleton.getRightUpperArmLCS());
-		float angleDownward = PVector.angleBetween(skeleton.getLeftUpperArmLCS(),skeleton.getOrientationY());
-		float angleForward = PVector.angleBetween(skeleton.getLeftUpperArmLCS(),skeleton.getOrientationZ());
-		if (SkeletonMath.isValueBetween(angleL,0,PApplet.radians(10)+postureAngleTolerance) && SkeletonMath.isValueBetween(angleR,0,PApplet.radians(10)+postureAngleTolerance)) { // arms form a straight line
-			if (SkeletonMath.isValueBetween(angleUpperArms,0,PApplet.radians(15)+postureAngleTolerance)) { // arms are parallel
-				if (SkeletonMath.isValueBetween(angleDownward,PApplet.radians(130)-postureAngleTolerance,PApplet.radians(140)+postureAngleTolerance)) {// arms downward 45 degree 
-					if (SkeletonMath.isValueBetween(angleForward,PApplet.radians(90),PApplet.radians(180))) {// arms forward 
-						return true;
-					}
-				}
+	// bounds of the conditions including the current tolerance, calculated when the tolerance changes instead of every frame
+	private void calculateBounds () {
+		calculateBounds(postureTolerance,postureAngleTolerance,lowerBound,upperBound);
+		// bounds of held postures, widened by the hysteresis
+		float heldTolerance = postureTolerance+postureHysteresis;
+		calculateBounds(heldTolerance,PApplet.radians(20)*heldTolerance,heldLowerBound,heldUpperBound);
+	}
+	private void calculateBounds (float _tolerance, float _angleTolerance, float[] _lowerBound, float[] _upperBound) {
+		float distanceTolerance = DISTANCE_TOLERANCE*_tolerance;
+		for (int c=0; c<POSTURE_TABLE.length; c++) {
+			float[] condition = POSTURE_TABLE[c];
+			if (SkeletonFeatures.isDistance((short)conditionFeature[c])) {
+				_lowerBound[c] = condition[4] != 0 ? condition[2]-distanceTolerance : condition[2];
+				_upperBound[c] = condition[5] != 0 ? condition[3]+distanceTolerance : condition[3];
+			} else {
+				_lowerBound[c] = condition[4] != 0 ? PApplet.radians(condition[2])-_angleTolerance : PApplet.radians(condition[2]);
+				_upperBound[c] = condition[5] != 0 ? PApplet.radians(condition[3])+_angleTolerance : PApplet.radians(condition[3]);
 			}
 		}
-		return false;
 	}
 }
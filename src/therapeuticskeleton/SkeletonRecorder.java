@@ -0,0 +1,129 @@
+package therapeuticskeleton;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+import processing.core.*;
+
+/** SkeletonRecorder writes everything a Skeleton fetched from its joint source to a binary session file. The file can be replayed with SkeletonReplayer.
+ *  Attach it to a skeleton with Skeleton.startRecording. Several skeletons may share one recorder, their frames are interleaved in the file. <p>
+ *  The file consists of a header followed by frames of fixed size. All values are little endian.<br>
+ *  Header: int magic 'TSKL', int version, int frame size in bytes, int number of joints.<br>
+ *  Frame: long capture timestamp (System.nanoTime), int frame count, float frame rate, int user ID, int flags (bit 0: user tracked, bits 8..22: joint mask of the fetched joints),
+ *  3*15 floats joint positions, 15 floats position confidences, 15*12 floats orientation matrices (rows 0..2 of each PMatrix3D), 15 floats orientation confidences. */
+public class SkeletonRecorder {
+
+	// file format
+	static final int MAGIC = 0x4C4B5354; // 'TSKL' in little endian
+	static final int VERSION = 2;
+	static final int HEADER_SIZE = 16;
+	static final int FLAG_TRACKED = 1;
+	static final int JOINT_MASK_SHIFT = 8;
+	static final int OFFSET_TIMESTAMP = 0;
+	static final int OFFSET_FRAME_COUNT = 8;
+	static final int OFFSET_FRAME_RATE = 12;
+	static final int OFFSET_USER_ID = 16;
+	static final int OFFSET_FLAGS = 20;
+	static final int OFFSET_POSITION = 24;
+	static final int OFFSET_POSITION_CONFIDENCE = OFFSET_POSITION+Skeleton.NUMBER_OF_JOINTS*3*4;
+	static final int OFFSET_ORIENTATION = OFFSET_POSITION_CONFIDENCE+Skeleton.NUMBER_OF_JOINTS*4;
+	static final int OFFSET_ORIENTATION_CONFIDENCE = OFFSET_ORIENTATION+Skeleton.NUMBER_OF_JOINTS*12*4;
+	static final int FRAME_SIZE = OFFSET_ORIENTATION_CONFIDENCE+Skeleton.NUMBER_OF_JOINTS*4;
+
+	// number of frames collected before they are written to the file
+	private static final int FRAMES_PER_WRITE = 64;
+
+	private RandomAccessFile file = null;
+	private FileChannel channel = null;
+	private ByteBuffer buffer = ByteBuffer.allocateDirect(FRAME_SIZE*FRAMES_PER_WRITE).order(ByteOrder.LITTLE_ENDIAN);
+	private long numberOfFrames = 0;
+
+	/** Constructor for the SkeletonRecorder. Creates the session file, an existing file will be overwritten.
+	 *  @param _fileName the path of the session file
+	 *  @throws IOException if the file could not be created */
+	public SkeletonRecorder (String _fileName) throws IOException {
+		file = new RandomAccessFile(_fileName,"rw");
+		file.setLength(0);
+		channel = file.getChannel();
+		buffer.putInt(MAGIC);
+		buffer.putInt(VERSION);
+		buffer.putInt(FRAME_SIZE);
+		buffer.putInt(Skeleton.NUMBER_OF_JOINTS);
+		flush();
+	}
+
+	/** Records one frame. Called by Skeleton.update, does not allocate.
+	 *  @param _timestamp the capture time of the frame, System.nanoTime
+	 *  @param _frameCount the current frame of PApplet
+	 *  @param _frameRate the current frame rate of PApplet
+	 *  @param _userId the user ID of the skeleton
+	 *  @param _tracked true if the joint source delivered joints for the user
+	 *  @param _jointMask the joints that were fetched, see Skeleton.jointMask
+	 *  @param _position joint positions, 3*15 floats xyz interleaved
+	 *  @param _positionConfidence confidence values of joint positions, 15 floats
+	 *  @param _orientation orientation matrices, 15 entries
+	 *  @param _orientationConfidence confidence values of joint orientations, 15 floats */
+	public synchronized void recordFrame (long _timestamp, int _frameCount, float _frameRate, int _userId, boolean _tracked, int _jointMask,
+										  float[] _position, float[] _positionConfidence, PMatrix3D[] _orientation, float[] _orientationConfidence) {
+		if (channel == null) return;
+		buffer.putLong(_timestamp);
+		buffer.putInt(_frameCount);
+		buffer.putFloat(_frameRate);
+		buffer.putInt(_userId);
+		buffer.putInt((_tracked ? FLAG_TRACKED : 0) | ((_jointMask & Skeleton.JOINT_MASK_ALL) << JOINT_MASK_SHIFT));
+		for (int i=0; i<Skeleton.NUMBER_OF_JOINTS*3; i++) {
+			buffer.putFloat(_position[i]);
+		}
+		for (int i=0; i<Skeleton.NUMBER_OF_JOINTS; i++) {
+			buffer.putFloat(_positionConfidence[i]);
+		}
+		for (int i=0; i<Skeleton.NUMBER_OF_JOINTS; i++) {
+			PMatrix3D m = _orientation[i];
+			buffer.putFloat(m.m00); buffer.putFloat(m.m01); buffer.putFloat(m.m02); buffer.putFloat(m.m03);
+			buffer.putFloat(m.m10); buffer.putFloat(m.m11); buffer.putFloat(m.m12); buffer.putFloat(m.m13);
+			buffer.putFloat(m.m20); buffer.putFloat(m.m21); buffer.putFloat(m.m22); buffer.putFloat(m.m23);
+		}
+		for (int i=0; i<Skeleton.NUMBER_OF_JOINTS; i++) {
+			buffer.putFloat(_orientationConfidence[i]);
+		}
+		numberOfFrames++;
+		if (buffer.remaining() < FRAME_SIZE) {
+			flush();
+		}
+	}
+
+	/** Writes all recorded frames to the file and closes it. Further frames will be ignored. */
+	public synchronized void close () {
+		if (channel == null) return;
+		flush();
+		try {
+			channel.close();
+			file.close();
+		} catch (IOException e) {
+			PApplet.println("couldn't close session file, io exception");
+		}
+		channel = null;
+		file = null;
+	}
+
+	/** Getter for the number of frames recorded so far.
+	 *  @return the number of recorded frames */
+	public long getNumberOfFrames () {
+		return numberOfFrames;
+	}
+
+	private void flush () {
+		buffer.flip();
+		try {
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+		} catch (IOException e) {
+			PApplet.println("couldn't write to session file, io exception");
+		}
+		buffer.clear();
+	}
+}
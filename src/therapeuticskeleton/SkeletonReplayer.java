@@ -0,0 +1,148 @@
+package therapeuticskeleton;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import processing.core.*;
+
+/** SkeletonReplayer replays a session file written by SkeletonRecorder. It is a JointSource, so skeletons created with it re-run
+ *  posture, gesture and statistics evaluation on the recorded joints. The file is memory-mapped, reading frames does not allocate.
+ *  Replay is not bound to real time: <p>
+ *  <code>while (replayer.nextFrame()) skeleton.update(replayer.getFrameCount(),replayer.getFrameRate());</code><p>
+ *  Frames of several users recorded in the same update cycle are grouped: nextFrame advances to the next group of consecutive frames with the same frame count
+ *  and distinct users, getTrackedUsers returns the users of that group. A user recorded twice with the same frame count, e.g. if the frame count does not advance,
+ *  starts a new group, so no recorded frame is skipped. Session files are limited to 2GB. */
+public class SkeletonReplayer implements JointSource {
+
+	private MappedByteBuffer buffer;
+	private int numberOfRecords;
+	// current group of records [groupStart,groupEnd) sharing the same frame count, each user at most once
+	private int groupStart = 0;
+	private int groupEnd = 0;
+
+	/** Constructor for the SkeletonReplayer. Maps the session file to memory. Call nextFrame to move to the first frame.
+	 *  @param _fileName the path of the session file
+	 *  @throws IOException if the file could not be read or is no session file */
+	public SkeletonReplayer (String _fileName) throws IOException {
+		RandomAccessFile file = new RandomAccessFile(_fileName,"r");
+		try {
+			FileChannel channel = file.getChannel();
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY,0,channel.size());
+		} finally {
+			file.close();
+		}
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		if (buffer.limit() < SkeletonRecorder.HEADER_SIZE || buffer.getInt(0) != SkeletonRecorder.MAGIC) {
+			throw new IOException(_fileName+" is no skeleton session file");
+		}
+		if (buffer.getInt(4) != SkeletonRecorder.VERSION || buffer.getInt(8) != SkeletonRecorder.FRAME_SIZE || buffer.getInt(12) != Skeleton.NUMBER_OF_JOINTS) {
+			throw new IOException(_fileName+" has an unsupported session file format");
+		}
+		numberOfRecords = (buffer.limit()-SkeletonRecorder.HEADER_SIZE)/SkeletonRecorder.FRAME_SIZE;
+	}
+
+	/** Moves to the next frame, i.e. the next group of recorded frames with the same frame count and distinct users.
+	 *  @return false if the end of the session is reached */
+	public boolean nextFrame () {
+		if (groupEnd >= numberOfRecords) {
+			groupStart = groupEnd;
+			return false;
+		}
+		groupStart = groupEnd;
+		int frameCount = buffer.getInt(recordOffset(groupStart)+SkeletonRecorder.OFFSET_FRAME_COUNT);
+		groupEnd = groupStart+1;
+		while (groupEnd < numberOfRecords && buffer.getInt(recordOffset(groupEnd)+SkeletonRecorder.OFFSET_FRAME_COUNT) == frameCount
+				&& findRecord(buffer.getInt(recordOffset(groupEnd)+SkeletonRecorder.OFFSET_USER_ID)) < 0) {
+			groupEnd++;
+		}
+		return true;
+	}
+	/** Moves back to the start of the session. Call nextFrame to move to the first frame. */
+	public void rewind () {
+		groupStart = 0;
+		groupEnd = 0;
+	}
+	/** Getter for the number of recorded frames of all users.
+	 *  @return the number of records in the session file */
+	public int getNumberOfRecords () {
+		return numberOfRecords;
+	}
+	/** Getter for the recorded frame count of the current frame.
+	 *  @return the frame count of PApplet when the frame was recorded, -1 if there is no current frame */
+	public int getFrameCount () {
+		return hasFrame() ? buffer.getInt(recordOffset(groupStart)+SkeletonRecorder.OFFSET_FRAME_COUNT) : -1;
+	}
+	/** Getter for the recorded frame rate of the current frame.
+	 *  @return the frame rate of PApplet when the frame was recorded, 0f if there is no current frame */
+	public float getFrameRate () {
+		return hasFrame() ? buffer.getFloat(recordOffset(groupStart)+SkeletonRecorder.OFFSET_FRAME_RATE) : 0f;
+	}
+	/** Getter for the capture time of the current frame.
+	 *  @return the recorded capture time of the first user of the frame, 0 if there is no current frame */
+	public long getTimestamp () {
+		return hasFrame() ? buffer.getLong(recordOffset(groupStart)+SkeletonRecorder.OFFSET_TIMESTAMP) : 0L;
+	}
+	/** The recorded capture time of the user in the current frame. Users of one frame may have been captured at different times, e.g. by a SkeletonPipeline.
+	 *  If the user was not recorded in the current frame, the capture time of the first user of the frame is returned. */
+	public long getTimestamp (int _userId) {
+		int record = findRecord(_userId);
+		return record >= 0 ? buffer.getLong(recordOffset(record)+SkeletonRecorder.OFFSET_TIMESTAMP) : getTimestamp();
+	}
+
+	public boolean fetchJoints (int _userId, int _jointMask, float[] _position, float[] _positionConfidence, PMatrix3D[] _orientation, float[] _orientationConfidence) {
+		int record = findRecord(_userId);
+		if (record < 0) return false;
+		int offset = recordOffset(record);
+		int flags = buffer.getInt(offset+SkeletonRecorder.OFFSET_FLAGS);
+		if ((flags & SkeletonRecorder.FLAG_TRACKED) == 0) return false;
+		// only joints that were recorded are replayed
+		int jointMask = _jointMask & (flags >>> SkeletonRecorder.JOINT_MASK_SHIFT);
+		for (int i=0; i<Skeleton.NUMBER_OF_JOINTS; i++) {
+			if ((jointMask & (1<<i)) == 0) continue;
+			int p = offset+SkeletonRecorder.OFFSET_POSITION+i*12;
+			_position[i*3] = buffer.getFloat(p);
+			_position[i*3+1] = buffer.getFloat(p+4);
+			_position[i*3+2] = buffer.getFloat(p+8);
+			_positionConfidence[i] = buffer.getFloat(offset+SkeletonRecorder.OFFSET_POSITION_CONFIDENCE+i*4);
+			int o = offset+SkeletonRecorder.OFFSET_ORIENTATION+i*48;
+			_orientation[i].set(buffer.getFloat(o),buffer.getFloat(o+4),buffer.getFloat(o+8),buffer.getFloat(o+12),
+								buffer.getFloat(o+16),buffer.getFloat(o+20),buffer.getFloat(o+24),buffer.getFloat(o+28),
+								buffer.getFloat(o+32),buffer.getFloat(o+36),buffer.getFloat(o+40),buffer.getFloat(o+44),
+								0f,0f,0f,1f);
+			_orientationConfidence[i] = buffer.getFloat(offset+SkeletonRecorder.OFFSET_ORIENTATION_CONFIDENCE+i*4);
+		}
+		return true;
+	}
+
+	public int getTrackedUsers (int[] _userIds) {
+		int numberOfUsers = 0;
+		for (int i=groupStart; i<groupEnd && numberOfUsers<_userIds.length; i++) {
+			int offset = recordOffset(i);
+			if ((buffer.getInt(offset+SkeletonRecorder.OFFSET_FLAGS) & SkeletonRecorder.FLAG_TRACKED) != 0) {
+				_userIds[numberOfUsers++] = buffer.getInt(offset+SkeletonRecorder.OFFSET_USER_ID);
+			}
+		}
+		return numberOfUsers;
+	}
+
+	/** Projects with a pinhole model approximating the Kinect depth camera. See SkeletonMath.convertRealWorldToProjective */
+	public void convertRealWorldToProjective (PVector _realWorld, PVector _projective) {
+		SkeletonMath.convertRealWorldToProjective(_realWorld,_projective);
+	}
+
+	private boolean hasFrame () {
+		return groupStart < groupEnd;
+	}
+	private int recordOffset (int _record) {
+		return SkeletonRecorder.HEADER_SIZE+_record*SkeletonRecorder.FRAME_SIZE;
+	}
+	private int findRecord (int _userId) {
+		for (int i=groupStart; i<groupEnd; i++) {
+			if (buffer.getInt(recordOffset(i)+SkeletonRecorder.OFFSET_USER_ID) == _userId) return i;
+		}
+		return -1;
+	}
+}
@@ -1,14 +1,17 @@
 package therapeuticskeleton;
 
 import java.io.BufferedWriter;
-import java.util.ArrayList;
 import processing.core.*;
 
 public class SkeletonStatistics {
-	private ArrayList<PVector> historyLeftHand = new ArrayList<PVector>();
-	private ArrayList<PVector> historyLeftElbow = new ArrayList<PVector>();
-	private ArrayList<PVector> historyRightHand = new ArrayList<PVector>();
-	private ArrayList<PVector> historyRightElbow = new ArrayList<PVector>();
+	/** The joints statistics are calculated from. See Skeleton.setJointMask */
+	public static final int REQUIRED_JOINTS = Skeleton.JOINT_MASK_ARMS;
+	
+	// trails of hands and elbows, bounded: recent positions of every update cycle, older ones downsampled. see JointHistory
+	private JointHistory historyLeftHand = new JointHistory(300,4);
+	private JointHistory historyLeftElbow = new JointHistory(300,4);
+	private JointHistory historyRightHand = new JointHistory(300,4);
+	private JointHistory historyRightElbow = new JointHistory(300,4);
 	
 	// overall distance of joints
 	private float distanceLeftHand = 0f;
@@ -27,6 +30,11 @@ public class SkeletonStatistics {
 	private PVector directionOfMovementLeftElbow = new PVector();
 	private PVector directionOfMovementRightHand = new PVector();
 	private PVector directionOfMovementRightElbow = new PVector();
+	// directions of the last update, swapped with the current ones, so no vector is allocated
+	private PVector lastDirectionOfMovementLeftHand = new PVector();
+	private PVector lastDirectionOfMovementLeftElbow = new PVector();
+	private PVector lastDirectionOfMovementRightHand = new PVector();
+	private PVector lastDirectionOfMovementRightElbow = new PVector();
 	private int counterConstantMovementLeftHand = 0;
 	private int counterConstantMovementLeftElbow = 0;
 	private int counterConstantMovementRightHand = 0;
@@ -47,6 +55,9 @@ public class SkeletonStatistics {
 	private BufferedWriter buffer = null;
 	private int lastFrameCount = -9999;
 	private float seconds = 0.0f; // for logfile
+	// scratch objects, reused every update
+	private float[] joints = new float[Skeleton.NUMBER_OF_JOINTS*3];
+	private PVector lastPosition = new PVector();
 	
 	public SkeletonStatistics (Skeleton _skeleton) {
 		skeleton = _skeleton;
@@ -107,10 +118,10 @@ public class SkeletonStatistics {
 	/** Constructor that provides a deep copy of SkeletonStatistics. Only the linked Skeleton is not copied. 
 	 *  Can be used to get access to a not anymore updated copy at a given time of statistics. */
 	public SkeletonStatistics (SkeletonStatistics _statistics) {
-		historyLeftHand.addAll(_statistics.getHistoryLeftHand());
-		historyLeftElbow.addAll(_statistics.getHistoryLeftElbow());
-		historyRightHand.addAll(_statistics.getHistoryRightHand());
-		historyRightElbow.addAll(_statistics.getHistoryRightElbow());
+		historyLeftHand = new JointHistory(_statistics.getHistoryLeftHand());
+		historyLeftElbow = new JointHistory(_statistics.getHistoryLeftElbow());
+		historyRightHand = new JointHistory(_statistics.getHistoryRightHand());
+		historyRightElbow = new JointHistory(_statistics.getHistoryRightElbow());
 		
 		distanceLeftHand = _statistics.getDistanceLeftHand();
 		distanceLeftElbow = _statistics.getDistanceLeftElbow();
@@ -122,10 +133,10 @@ public class SkeletonStatistics {
 		velocityRightHand = _statistics.getVelocityRightHand();
 		velocityRightElbow = _statistics.getVelocityRightElbow();
 		
-		directionOfMovementLeftHand = _statistics.getDirectionOfMovementLeftHand();
-		directionOfMovementLeftElbow = _statistics.getDirectionOfMovementLeftElbow();
-		directionOfMovementRightHand = _statistics.getDirectionOfMovementRightHand();
-		directionOfMovementRightElbow = _statistics.getDirectionOfMovementRightElbow();
+		directionOfMovementLeftHand = _statistics.getDirectionOfMovementLeftHand().get();
+		directionOfMovementLeftElbow = _statistics.getDirectionOfMovementLeftElbow().get();
+		directionOfMovementRightHand = _statistics.getDirectionOfMovementRightHand().get();
+		directionOfMovementRightElbow = _statistics.getDirectionOfMovementRightElbow().get();
 
 		counterConstantMovementLeftHand = _statistics.getCounterConstantMovementLeftHand();
 		counterConstantMovementLeftElbow = _statistics.getCounterConstantMovementLeftElbow();
@@ -144,31 +155,29 @@ public class SkeletonStatistics {
 	}
 	
 	public void update (int _frameCount, float _frameRate) {
+		// time between frames from the capture times, so velocities are right when the frame rate fluctuates or frames are dropped
+		float dt = skeleton != null ? skeleton.getFrameDuration() : 1f/_frameRate;
 		if (lastFrameCount != -9999) {
-			seconds += (_frameCount-lastFrameCount)/_frameRate;
+			seconds += dt;
 		}
 		lastFrameCount = _frameCount;
 		if (skeleton != null) {
-			// copy joint information to new pvector to store in history
-			PVector tempLeftHand = new PVector();
-			tempLeftHand.set(skeleton.getJointUnmirrored(Skeleton.LEFT_HAND));
-			PVector tempLeftElbow = new PVector();
-			tempLeftElbow.set(skeleton.getJointUnmirrored(Skeleton.LEFT_ELBOW));
-			PVector tempRightHand = new PVector();
-			tempRightHand.set(skeleton.getJointUnmirrored(Skeleton.RIGHT_HAND));
-			PVector tempRightElbow = new PVector();
-			tempRightElbow.set(skeleton.getJointUnmirrored(Skeleton.RIGHT_ELBOW));
+			skeleton.copyJointsUnmirrored(joints,0);
 			
 			// calculation of constant movement indicators
-			if (historyLeftHand.size() > 0) {
-				PVector lastDirectionOfMovementLeftHand = directionOfMovementLeftHand;
-				PVector lastDirectionOfMovementLeftElbow = directionOfMovementLeftElbow;
-				PVector lastDirectionOfMovementRightHand = directionOfMovementRightHand;
-				PVector lastDirectionOfMovementRightElbow = directionOfMovementRightElbow;
-				directionOfMovementLeftHand = PVector.sub(tempLeftHand,historyLeftHand.get(historyLeftHand.size()-1));
-				directionOfMovementLeftElbow = PVector.sub(tempLeftElbow,historyLeftElbow.get(historyLeftElbow.size()-1));
-				directionOfMovementRightHand = PVector.sub(tempRightHand,historyRightHand.get(historyRightHand.size()-1));
-				directionOfMovementRightElbow = PVector.sub(tempRightElbow,historyRightElbow.get(historyRightElbow.size()-1));
+			if (historyLeftHand.getSize() > 0) {
+				PVector swap = lastDirectionOfMovementLeftHand;
+				lastDirectionOfMovementLeftHand = directionOfMovementLeftHand;
+				directionOfMovementLeftHand = directionOfMovement(historyLeftHand,Skeleton.LEFT_HAND,swap);
+				swap = lastDirectionOfMovementLeftElbow;
+				lastDirectionOfMovementLeftElbow = directionOfMovementLeftElbow;
+				directionOfMovementLeftElbow = directionOfMovement(historyLeftElbow,Skeleton.LEFT_ELBOW,swap);
+				swap = lastDirectionOfMovementRightHand;
+				lastDirectionOfMovementRightHand = directionOfMovementRightHand;
+				directionOfMovementRightHand = directionOfMovement(historyRightHand,Skeleton.RIGHT_HAND,swap);
+				swap = lastDirectionOfMovementRightElbow;
+				lastDirectionOfMovementRightElbow = directionOfMovementRightElbow;
+				directionOfMovementRightElbow = directionOfMovement(historyRightElbow,Skeleton.RIGHT_ELBOW,swap);
 				if (PVector.angleBetween(directionOfMovementLeftHand,lastDirectionOfMovementLeftHand) < PConstants.HALF_PI) counterConstantMovementLeftHand++;
 				else counterConstantMovementLeftHand = 0;
 				if (PVector.angleBetween(directionOfMovementLeftElbow,lastDirectionOfMovementLeftElbow) < PConstants.HALF_PI) counterConstantMovementLeftElbow++;
@@ -180,10 +189,11 @@ public class SkeletonStatistics {
 			}
 
 			// store hand and elbow points to draw history
-			historyLeftHand.add(tempLeftHand);
-			historyLeftElbow.add(tempLeftElbow);
-			historyRightHand.add(tempRightHand);
-			historyRightElbow.add(tempRightElbow);
+			long timestamp = skeleton.getTimestamp();
+			addToHistory(historyLeftHand,Skeleton.LEFT_HAND,timestamp);
+			addToHistory(historyLeftElbow,Skeleton.LEFT_ELBOW,timestamp);
+			addToHistory(historyRightHand,Skeleton.RIGHT_HAND,timestamp);
+			addToHistory(historyRightElbow,Skeleton.RIGHT_ELBOW,timestamp);
 
 			// accumulation of distance of joints 
 			distanceLeftHand += skeleton.getJointDeltaUnmirrored(Skeleton.LEFT_HAND);
@@ -192,10 +202,11 @@ public class SkeletonStatistics {
 			distanceRightElbow += skeleton.getJointDeltaUnmirrored(Skeleton.RIGHT_ELBOW);
 			
 			// calculation of velocity of joints in mm/second
-			velocityLeftHand = skeleton.getJointDeltaUnmirrored(Skeleton.LEFT_HAND)*_frameRate;
-			velocityLeftElbow = skeleton.getJointDeltaUnmirrored(Skeleton.LEFT_ELBOW)*_frameRate;
-			velocityRightHand = skeleton.getJointDeltaUnmirrored(Skeleton.RIGHT_HAND)*_frameRate;
-			velocityRightElbow = skeleton.getJointDeltaUnmirrored(Skeleton.RIGHT_ELBOW)*_frameRate;
+			float perSecond = dt > 0f ? 1f/dt : 0f;
+			velocityLeftHand = skeleton.getJointDeltaUnmirrored(Skeleton.LEFT_HAND)*perSecond;
+			velocityLeftElbow = skeleton.getJointDeltaUnmirrored(Skeleton.LEFT_ELBOW)*perSecond;
+			velocityRightHand = skeleton.getJointDeltaUnmirrored(Skeleton.RIGHT_HAND)*perSecond;
+			velocityRightElbow = skeleton.getJointDeltaUnmirrored(Skeleton.RIGHT_ELBOW)*perSecond;
 			
 			// calculation of max angles
 			angleLeftLowerArm = skeleton.getAngleLeftLowerArmUnmirrored();
@@ -241,19 +252,29 @@ public class SkeletonStatistics {
 		}
 	}
 
-	public ArrayList<PVector> getHistoryLeftHand() {
+	/** Setter for the size of the joint histories. The histories are replaced, recorded positions are lost. See JointHistory
+	 *  @param _capacity the number of positions per level, e.g. 300 keeps every position of the last 10 seconds at 30 fps
+	 *  @param _levels the number of levels, each level covers twice the time of the previous one with half the resolution */
+	public void setHistorySize (int _capacity, int _levels) {
+		historyLeftHand = new JointHistory(_capacity,_levels);
+		historyLeftElbow = new JointHistory(_capacity,_levels);
+		historyRightHand = new JointHistory(_capacity,_levels);
+		historyRightElbow = new JointHistory(_capacity,_levels);
+	}
+
+	public JointHistory getHistoryLeftHand() {
 		return historyLeftHand;
 	}
 
-	public ArrayList<PVector> getHistoryLeftElbow() {
+	public JointHistory getHistoryLeftElbow() {
 		return historyLeftElbow;
 	}
 
-	public ArrayList<PVector> getHistoryRightHand() {
+	public JointHistory getHistoryRightHand() {
 		return historyRightHand;
 	}
 
-	public ArrayList<PVector> getHistoryRightElbow() {
+	public JointHistory getHistoryRightElbow() {
 		return historyRightElbow;
 	}
 
@@ -360,5 +381,17 @@ public class SkeletonStatistics {
 	public float getAngleRightUpperArm() {
 		return angleRightUpperArm;
 	}
-	
+
+	// -----------------------------------------------------------------
+	// PRIVATE HELPER METHODS
+	// movement of a joint since the newest position of its history
+	private PVector directionOfMovement (JointHistory _history, short _joint, PVector _dst) {
+		_history.get(_history.getSize()-1,lastPosition);
+		_dst.set(joints[_joint*3]-lastPosition.x,joints[_joint*3+1]-lastPosition.y,joints[_joint*3+2]-lastPosition.z);
+		return _dst;
+	}
+	private void addToHistory (JointHistory _history, short _joint, long _timestamp) {
+		_history.add(joints[_joint*3],joints[_joint*3+1],joints[_joint*3+2],_timestamp);
+	}
+
 }
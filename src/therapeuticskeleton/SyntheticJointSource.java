@@ -0,0 +1,138 @@
+package therapeuticskeleton;
+
+import processing.core.*;
+
+/** JointSource that generates the joints of standing users without a sensor. Useful for testing and benchmarking without a Kinect.
+ *  Every user slowly raises and lowers both arms sideways (abduction 0..170 degrees, period of 4 seconds) while bending the elbows.
+ *  The right arm only reaches 3/4 of the range of motion of the left arm, so mirroring the left side has a visible effect.
+ *  Users are placed side by side with an offset of 800mm on the x-axis, 2.5m in front of the sensor. Movement of user n is delayed by (n-1)*0.5 seconds.
+ *  The generated data is deterministic: it only depends on the frame count and the frame rate, also the timestamps. Call nextFrame once per update cycle to advance time. */
+public class SyntheticJointSource implements JointSource {
+
+	// anthropometric measures in mm
+	private static final float NECK_TO_TORSO = 300f;
+	private static final float HEAD_TO_NECK = 200f;
+	private static final float SHOULDER_WIDTH = 360f;
+	private static final float UPPER_ARM = 300f;
+	private static final float LOWER_ARM = 280f;
+	private static final float HIP_WIDTH = 200f;
+	private static final float TORSO_TO_HIP = 200f;
+	private static final float UPPER_LEG = 450f;
+	private static final float LOWER_LEG = 420f;
+
+	private float frameRate = 30f;
+	private int frameCount = 0;
+	private int numberOfUsers = 1;
+
+	/** Constructor for the SyntheticJointSource.
+	 *  @param _frameRate the frame rate with which frames are generated, i.e. the number of calls to nextFrame per second */
+	public SyntheticJointSource (float _frameRate) {
+		frameRate = _frameRate;
+	}
+
+	/** Advances the generated movement by one frame. */
+	public void nextFrame () {
+		frameCount++;
+	}
+	/** Getter for the current frame.
+	 *  @return the number of frames generated so far */
+	public int getFrameCount () {
+		return frameCount;
+	}
+	/** Setter for the current frame.
+	 *  @param _frameCount the frame the generated movement jumps to */
+	public void setFrameCount (int _frameCount) {
+		frameCount = _frameCount;
+	}
+	/** Getter for the frame rate.
+	 *  @return the frame rate with which frames are generated */
+	public float getFrameRate () {
+		return frameRate;
+	}
+	/** Setter for the number of generated users. Users get the IDs 1.._numberOfUsers.
+	 *  @param _numberOfUsers the number of users. Lower than 0 is treated as 0 */
+	public void setNumberOfUsers (int _numberOfUsers) {
+		numberOfUsers = PApplet.max(0,_numberOfUsers);
+	}
+	/** Getter for the number of generated users.
+	 *  @return the number of users */
+	public int getNumberOfUsers () {
+		return numberOfUsers;
+	}
+
+	public boolean fetchJoints (int _userId, int _jointMask, float[] _position, float[] _positionConfidence, PMatrix3D[] _orientation, float[] _orientationConfidence) {
+		if (_userId < 1 || _userId > numberOfUsers) return false;
+
+		float seconds = frameCount/frameRate - (_userId-1)*0.5f;
+		float abduction = PApplet.radians(85f)*(1f-PApplet.cos(PConstants.TWO_PI*seconds/4f));
+		float flexion = PApplet.radians(20f)+PApplet.radians(20f)*(1f+PApplet.sin(PConstants.TWO_PI*seconds/4f));
+		float sinF = PApplet.sin(flexion), cosF = PApplet.cos(flexion);
+
+		// the user faces the sensor: anatomical left is +x, up is +y, anterior is -z
+		float torsoX = (_userId-1)*800f;
+		float torsoY = 0f;
+		float torsoZ = 2500f;
+		setJoint(_position,_jointMask,Skeleton.TORSO,torsoX,torsoY,torsoZ);
+		setJoint(_position,_jointMask,Skeleton.NECK,torsoX,torsoY+NECK_TO_TORSO,torsoZ);
+		setJoint(_position,_jointMask,Skeleton.HEAD,torsoX,torsoY+NECK_TO_TORSO+HEAD_TO_NECK,torsoZ);
+		for (int side=-1; side<=1; side+=2) {
+			// side == 1: left body side, side == -1: right body side
+			short shoulder = side == 1 ? Skeleton.LEFT_SHOULDER : Skeleton.RIGHT_SHOULDER;
+			short elbow = side == 1 ? Skeleton.LEFT_ELBOW : Skeleton.RIGHT_ELBOW;
+			short hand = side == 1 ? Skeleton.LEFT_HAND : Skeleton.RIGHT_HAND;
+			float sideAbduction = side == 1 ? abduction : abduction*0.75f;
+			float sinA = PApplet.sin(sideAbduction), cosA = PApplet.cos(sideAbduction);
+			float shoulderX = torsoX+side*SHOULDER_WIDTH/2f;
+			float shoulderY = torsoY+NECK_TO_TORSO;
+			setJoint(_position,_jointMask,shoulder,shoulderX,shoulderY,torsoZ);
+			// upper arm in the frontal plane, lower arm bent anterior
+			float upperX = side*sinA, upperY = -cosA;
+			float elbowX = shoulderX+UPPER_ARM*upperX;
+			float elbowY = shoulderY+UPPER_ARM*upperY;
+			setJoint(_position,_jointMask,elbow,elbowX,elbowY,torsoZ);
+			setJoint(_position,_jointMask,hand,elbowX+LOWER_ARM*upperX*cosF,elbowY+LOWER_ARM*upperY*cosF,torsoZ-LOWER_ARM*sinF);
+			if ((_jointMask & ~Skeleton.JOINT_MASK_UPPER_BODY) != 0) {
+				short hip = side == 1 ? Skeleton.LEFT_HIP : Skeleton.RIGHT_HIP;
+				short knee = side == 1 ? Skeleton.LEFT_KNEE : Skeleton.RIGHT_KNEE;
+				short foot = side == 1 ? Skeleton.LEFT_FOOT : Skeleton.RIGHT_FOOT;
+				float hipX = torsoX+side*HIP_WIDTH/2f;
+				setJoint(_position,_jointMask,hip,hipX,torsoY-TORSO_TO_HIP,torsoZ);
+				setJoint(_position,_jointMask,knee,hipX,torsoY-TORSO_TO_HIP-UPPER_LEG,torsoZ);
+				setJoint(_position,_jointMask,foot,hipX,torsoY-TORSO_TO_HIP-UPPER_LEG-LOWER_LEG,torsoZ);
+			}
+		}
+
+		for (int i=0; i<Skeleton.NUMBER_OF_JOINTS; i++) {
+			if ((_jointMask & (1<<i)) == 0) continue;
+			_positionConfidence[i] = 1f;
+			_orientation[i].reset();
+			_orientationConfidence[i] = 1f;
+		}
+		return true;
+	}
+
+	/** The time of the generated movement: frame count divided by frame rate, in nanoseconds. The same for all users. */
+	public long getTimestamp (int _userId) {
+		return (long)(frameCount*1e9/frameRate);
+	}
+
+	public int getTrackedUsers (int[] _userIds) {
+		int numberOfUsersWritten = PApplet.min(numberOfUsers,_userIds.length);
+		for (int i=0; i<numberOfUsersWritten; i++) {
+			_userIds[i] = i+1;
+		}
+		return numberOfUsersWritten;
+	}
+
+	/** Projects with a pinhole model approximating the Kinect depth camera. See SkeletonMath.convertRealWorldToProjective */
+	public void convertRealWorldToProjective (PVector _realWorld, PVector _projective) {
+		SkeletonMath.convertRealWorldToProjective(_realWorld,_projective);
+	}
+
+	private void setJoint (float[] _position, int _jointMask, short _jointType, float _x, float _y, float _z) {
+		if ((_jointMask & (1<<_jointType)) == 0) return;
+		_position[_jointType*3] = _x;
+		_position[_jointType*3+1] = _y;
+		_position[_jointType*3+2] = _z;
+	}
+}